@@ -1,5 +1,7 @@
 package com.neeraj.alertservice.entity;
 
+import com.neeraj.alertservice.model.AlertStatus;
+import com.neeraj.kafka.event.AlertType;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -15,8 +17,11 @@ import java.time.LocalDateTime;
 @Builder
 @Entity
 public class Alert {
+    // IDs come in blocks of 100 from a pooled table generator, so inserts can be JDBC-batched (IDENTITY cannot)
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "alert_id")
+    @TableGenerator(name = "alert_id", table = "id_generator", pkColumnName = "name", valueColumnName = "next_val",
+            pkColumnValue = "alert", allocationSize = 100)
     private Long id;
 
     @Column(name = "user_id", nullable = false)
@@ -25,6 +30,56 @@ public class Alert {
     @Column(name = "sent", nullable = false)
     private Boolean sent;
 
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false)
+    private AlertStatus status;
+
+    @Column(name = "email")
+    private String email;
+
+    // Message of the alerting events collected in this digest; a digest only holds events with the same message
+    @Column(name = "message")
+    private String message;
+
+    // Kind of the collected events, null for alerts recorded before it was sent along
+    @Enumerated(EnumType.STRING)
+    @Column(name = "alert_type")
+    private AlertType type;
+
+    @Column(name = "subject")
+    private String subject;
+
+    @Column(name = "body")
+    private String body;
+
+    @Column(name = "attempts", nullable = false)
+    private int attempts;
+
+    @Column(name = "next_attempt_at")
+    private LocalDateTime nextAttemptAt;
+
+    // Digest of the alerts of one user within [windowStart, windowEnd): how many, and the highest usage reported
+    @Column(name = "alert_count", nullable = false)
+    private int alertCount;
+
+    @Column(name = "peak_usage")
+    private Double peakUsage;
+
+    @Column(name = "threshold")
+    private Double threshold;
+
+    @Column(name = "window_start")
+    private LocalDateTime windowStart;
+
+    @Column(name = "window_end")
+    private LocalDateTime windowEnd;
+
+    // Keeps a digest that is being sent from being extended (and re-sent) at the same time, and makes
+    // claiming an alert for sending fail for copies read before its last change
+    @Version
+    @Column(name = "version", nullable = false)
+    private long version;
+
     @Column(name = "created_at", nullable = false, updatable = false)
     @CreationTimestamp
     private LocalDateTime createdAt;
@@ -0,0 +1,14 @@
+package com.neeraj.alertservice.model;
+
+/**
+ * Delivery state of an alert email.
+ */
+public enum AlertStatus {
+    // Persisted and waiting for (another) delivery attempt
+    PENDING,
+    // Claimed by an email worker until next_attempt_at; retried by the sweep if the claim expires
+    SENDING,
+    SENT,
+    // Given up after the configured number of attempts
+    FAILED
+}
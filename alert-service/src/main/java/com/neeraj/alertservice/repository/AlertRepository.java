@@ -1,9 +1,38 @@
 package com.neeraj.alertservice.repository;
 
 import com.neeraj.alertservice.entity.Alert;
+import com.neeraj.alertservice.model.AlertStatus;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 
 @Repository
 public interface AlertRepository extends JpaRepository<Alert, Long> {
-}
\ No newline at end of file
+    List<Alert> findByStatusInAndNextAttemptAtLessThanEqualOrderByNextAttemptAt(Collection<AlertStatus> statuses, LocalDateTime now, Limit limit);
+
+    // Claims an alert for sending until the given time; only succeeds (returns 1) if the row is still at the read version
+    @Modifying
+    @Transactional
+    @Query("update Alert a set a.status = :status, a.nextAttemptAt = :claimedUntil, a.version = a.version + 1 "
+            + "where a.id = :id and a.version = :version")
+    int claim(@Param("id") Long id, @Param("version") long version,
+              @Param("status") AlertStatus status, @Param("claimedUntil") LocalDateTime claimedUntil);
+
+    // The most recent digest of each of the users
+    @Query("select a from Alert a where a.userId in :userIds and a.windowEnd = "
+            + "(select max(b.windowEnd) from Alert b where b.userId = a.userId)")
+    List<Alert> findLatestDigests(@Param("userIds") Collection<Long> userIds);
+
+    // The most recent digest of each of the users per message
+    @Query("select a from Alert a where a.userId in :userIds and a.message in :messages and a.windowEnd = "
+            + "(select max(b.windowEnd) from Alert b where b.userId = a.userId and b.message = a.message)")
+    List<Alert> findLatestDigestsByMessage(@Param("userIds") Collection<Long> userIds, @Param("messages") Collection<String> messages);
+}
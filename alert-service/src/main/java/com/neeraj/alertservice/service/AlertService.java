@@ -1,25 +1,241 @@
 package com.neeraj.alertservice.service;
 
+import com.neeraj.alertservice.entity.Alert;
+import com.neeraj.alertservice.model.AlertStatus;
+import com.neeraj.alertservice.repository.AlertRepository;
+import com.neeraj.kafka.event.AlertType;
 import com.neeraj.kafka.event.AlertingEvent;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 @Service
 @Slf4j
 @RequiredArgsConstructor
 public class AlertService {
 
-    private final EmailService emailService;
+    // Message of events sent without one (the hourly threshold alert)
+    private static final String DEFAULT_MESSAGE = "ALERT: Energy usage exceeded threshold";
+
+    private final AlertRepository alertRepository;
+    private final EmailDispatcher emailDispatcher;
+
+    // Alerts of a user are collected into one digest email for this long
+    @Value("${alert.digest.window:5m}")
+    private Duration digestWindow;
+
+    // At most this many digest emails per user and hour; further alerts wait for the next allowed slot
+    @Value("${alert.digest.max-per-hour:4}")
+    private int maxDigestsPerHour;
+
+    /**
+     * Handles a whole poll of alerting events at once, coalescing them into one digest per user and message.
+     * Events with the same message are of the same kind (e.g. the hourly threshold, a budget, one rule or one
+     * device's anomalies), so a digest never mixes the thresholds and values of different kinds. A user's
+     * alerts are added to the open digest of their message (the one whose window has not ended yet), or start
+     * a new one. A digest is persisted as PENDING and only sent once its window has ended, as a single email
+     * and a single row with the number of alerts and the peak usage, so email volume and database writes
+     * grow with the number of alerting users rather than with the number of events. New windows never
+     * end closer than an hour / max-per-hour after the user's previous one (of any message), which caps the
+     * emails per user. The offsets are committed after the listener returns, i.e. only once the digests are
+     * safely in the database. This method orchestrates the following steps:
+     * 1. Group the events of the poll by user and message
+     * 2. Load the latest digest of every user and of every user and message in the poll
+     * 3. Extend each open digest, or start a new one after the user's previous window
+     * 4. Persist the digests in one batch and hand the already due ones to the email dispatcher
+     */
+    @KafkaListener(topics = "energy-alerts", groupId = "alert-service", batch = "true")
+    public void processEnergyUsageAlerts(List<AlertingEvent> alertEvents) {
+        log.info("Received {} alerting events", alertEvents.size());
+
+        // Step 1: Group the events of the poll by user and message
+        final Map<DigestKey, List<AlertingEvent>> eventsByKey = new LinkedHashMap<>();
+        for (AlertingEvent alertEvent : alertEvents) {
+            if (alertEvent != null && alertEvent.userId() != null) {
+                eventsByKey.computeIfAbsent(DigestKey.of(alertEvent), key -> new ArrayList<>()).add(alertEvent);
+            }
+        }
+        if (eventsByKey.isEmpty()) {
+            return;
+        }
+
+        // Step 2: Load the latest digest of every user and of every user and message in the poll
+        final Set<Long> userIds = new HashSet<>();
+        final Set<String> messages = new HashSet<>();
+        eventsByKey.keySet().forEach(key -> {
+            userIds.add(key.userId());
+            messages.add(key.message());
+        });
+        final Map<Long, Alert> latestByUser = new HashMap<>();
+        alertRepository.findLatestDigests(userIds).forEach(digest -> latestByUser.merge(digest.getUserId(), digest, AlertService::later));
+        final Map<DigestKey, Alert> latestByKey = new HashMap<>();
+        alertRepository.findLatestDigestsByMessage(userIds, messages)
+                .forEach(digest -> latestByKey.put(new DigestKey(digest.getUserId(), digest.getMessage()), digest));
+
+        // Step 3: Extend each open digest, or start a new one after the user's previous window
+        final LocalDateTime now = LocalDateTime.now();
+        final List<Alert> digests = new ArrayList<>(eventsByKey.size());
+        eventsByKey.forEach((key, events) -> {
+            final Alert latest = latestByKey.get(key);
+            final Alert digest;
+            if (isOpen(latest, now)) {
+                digest = latest;
+            } else {
+                digest = newDigest(key, latestByUser.get(key.userId()), now);
+                // Further new digests of the user in this poll are spaced after this one
+                latestByUser.merge(key.userId(), digest, AlertService::later);
+            }
+            for (AlertingEvent event : events) {
+                addToDigest(digest, event);
+            }
+            digest.setSubject(subjectOf(digest));
+            digest.setBody(digestBody(digest));
+            digests.add(digest);
+        });
+
+        // Step 4: Persist the digests in one batch and hand the already due ones to the email dispatcher
+        final List<Alert> saved = alertRepository.saveAll(digests);
+        emailDispatcher.dispatch(saved.stream()
+                .filter(digest -> !digest.getNextAttemptAt().isAfter(now))
+                .toList());
+    }
+
+    /**
+     * @return Whether alerts can still be added to the digest: not attempted yet, and its window has not ended
+     */
+    private static boolean isOpen(Alert digest, LocalDateTime now) {
+        return digest != null
+                && digest.getStatus() == AlertStatus.PENDING
+                && digest.getAttempts() == 0
+                && digest.getWindowEnd().isAfter(now);
+    }
+
+    private static Alert later(Alert first, Alert second) {
+        return second.getWindowEnd().isAfter(first.getWindowEnd()) ? second : first;
+    }
+
+    private Alert newDigest(DigestKey key, Alert previous, LocalDateTime now) {
+        final Long userId = key.userId();
+        // Respect the per-user email rate: a new window ends no earlier than the minimum spacing after the previous one
+        LocalDateTime windowEnd = now.plus(digestWindow);
+        if (previous != null && maxDigestsPerHour > 0) {
+            final LocalDateTime earliestEnd = previous.getWindowEnd().plus(Duration.ofHours(1).dividedBy(maxDigestsPerHour));
+            if (earliestEnd.isAfter(windowEnd)) {
+                windowEnd = earliestEnd;
+            }
+        }
+
+        return Alert.builder()
+                .userId(userId)
+                .sent(false)
+                .status(AlertStatus.PENDING)
+                .message(key.message())
+                .attempts(0)
+                .alertCount(0)
+                .windowStart(now)
+                .windowEnd(windowEnd)
+                // Sent once the window has ended
+                .nextAttemptAt(windowEnd)
+                .createdAt(now)
+                .build();
+    }
+
+    private static void addToDigest(Alert digest, AlertingEvent event) {
+        digest.setAlertCount(digest.getAlertCount() + 1);
+        if (event.totalEnergyUsage() != null && (digest.getPeakUsage() == null || event.totalEnergyUsage() > digest.getPeakUsage())) {
+            digest.setPeakUsage(event.totalEnergyUsage());
+        }
+        // The latest event carries the user's current threshold and email
+        if (event.threshold() != null) {
+            digest.setThreshold(event.threshold());
+        }
+        if (event.email() != null) {
+            digest.setEmail(event.email());
+        }
+        if (event.type() != null) {
+            digest.setType(event.type());
+        }
+    }
+
+    /**
+     * Identifies the digest an alerting event belongs to: its user and its message.
+     */
+    private record DigestKey(Long userId, String message) {
 
-    @KafkaListener(topics = "energy-alerts", groupId = "alert-service")
-    public void processEnergyUsageAlert(AlertingEvent alertEvent) {
-        log.info("Received alerting alertEvent: {}", alertEvent);
+        static DigestKey of(AlertingEvent event) {
+            return new DigestKey(event.userId(), event.message() == null ? DEFAULT_MESSAGE : event.message());
+        }
+    }
+
+    private static String subjectOf(Alert digest) {
+        final String kind = digest.getType() == AlertType.FORECAST ? "Warning" : "Alert";
+        return "Energy Usage " + kind + " for User " + digest.getUserId();
+    }
+
+    /**
+     * Words the digest after the kind of its alerts: what was exceeded (or, for a forecast, is only
+     * projected to be exceeded; for a device anomaly, what the device usually uses), the value reported
+     * for it, and how often it happened in the window.
+     */
+    private static String digestBody(Alert digest) {
+        final StringBuilder body = new StringBuilder("Dear User,\n\n")
+                .append(headlineOf(digest.getMessage())).append(".\n\n");
+
+        if (digest.getType() == AlertType.FORECAST) {
+            body.append("Projected energy usage: ").append(digest.getPeakUsage()).append(" kWh, against your threshold of ")
+                    .append(digest.getThreshold()).append(" kWh.\n")
+                    .append("This is a projection of your current usage trend, your usage has not exceeded the threshold yet.\n");
+            if (digest.getAlertCount() > 1) {
+                body.append("This warning was raised ").append(digest.getAlertCount()).append(" times between ")
+                        .append(digest.getWindowStart()).append(" and ").append(digest.getWindowEnd())
+                        .append(", the highest projection is shown.\n");
+            }
+        } else if (digest.getType() == AlertType.SPIKE || digest.getType() == AlertType.SUSTAINED_USAGE) {
+            final String value = digest.getType() == AlertType.SPIKE ? "A reading of" : "The recent average reading of";
+            body.append(value).append(" this device was ").append(digest.getPeakUsage())
+                    .append(" kWh, while its readings are usually at most ").append(digest.getThreshold()).append(" kWh.\n");
+            if (digest.getAlertCount() > 1) {
+                body.append("This was detected ").append(digest.getAlertCount()).append(" times between ")
+                        .append(digest.getWindowStart()).append(" and ").append(digest.getWindowEnd())
+                        .append(", the highest value is shown.\n");
+            }
+        } else {
+            final String limit = switch (digest.getType() == null ? AlertType.THRESHOLD : digest.getType()) {
+                case DAILY_BUDGET -> "daily budget";
+                case MONTHLY_BUDGET -> "monthly budget";
+                case RULE -> "rule threshold";
+                default -> "threshold";
+            };
+            body.append("Your ").append(limit).append(" is ").append(digest.getThreshold()).append(" kWh.\n");
+            if (digest.getAlertCount() == 1) {
+                body.append("Total energy usage: ").append(digest.getPeakUsage()).append(" kWh.\n");
+            } else {
+                body.append("It was exceeded ").append(digest.getAlertCount()).append(" times between ")
+                        .append(digest.getWindowStart()).append(" and ").append(digest.getWindowEnd())
+                        .append(".\nPeak total energy usage: ").append(digest.getPeakUsage()).append(" kWh.\n");
+            }
+        }
+        return body.append("\nBest regards,\nEnergy Tracker Team").toString();
+    }
 
-        // Send email
-        String subject = "Energy Usage Alert for User " + alertEvent.userId();
-        String body = "Dear User,\n\nYour energy usage has exceeded the threshold of " + alertEvent.threshold() + " kWh.\n\nTotal energy usage: " + alertEvent.totalEnergyUsage() + " kWh.\n\nBest regards,\nEnergy Tracker Team";
-        emailService.sendEmail(alertEvent.email(), subject, body, alertEvent.userId());
+    /**
+     * @return The message without its "ALERT: " / "WARNING: " prefix
+     */
+    private static String headlineOf(String message) {
+        final String text = message == null ? DEFAULT_MESSAGE : message;
+        final int prefixEnd = text.indexOf(": ");
+        return prefixEnd < 0 ? text : text.substring(prefixEnd + 2);
     }
 }
@@ -0,0 +1,229 @@
+package com.neeraj.alertservice.service;
+
+import com.neeraj.alertservice.entity.Alert;
+import com.neeraj.alertservice.model.AlertStatus;
+import com.neeraj.alertservice.repository.AlertRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Delivers alert emails off the Kafka listener thread. Alerts are handed over only after they were
+ * persisted as PENDING, so the database (not this queue) is the durable handoff: the bounded queue feeds
+ * a pool of workers, each sending what it takes from the queue in batches over one SMTP connection and
+ * saving the outcomes in one batch. Before sending, a worker claims every alert with a conditional update
+ * (PENDING to SENDING, only at the version it read), and only sends the alerts it claimed, so a stale copy
+ * queued by the sweep while another worker was saving the outcome is dropped instead of sent twice.
+ * Failed emails are retried with exponential backoff until the attempts run out; a periodic sweep
+ * re-queues due retries, alerts that did not fit into the queue, alerts left PENDING by a restart, and
+ * alerts whose claim expired because their worker died.
+ */
+@Component
+@Slf4j
+public class EmailDispatcher {
+
+    private final EmailService emailService;
+    private final AlertRepository alertRepository;
+
+    private final BlockingQueue<Alert> queue;
+    // IDs of the alerts queued or being sent, so the sweep never queues an alert twice
+    private final Set<Long> inFlight = ConcurrentHashMap.newKeySet();
+    private final ExecutorService workers;
+    private final int workerCount;
+
+    @Value("${alert.email.batch-size:50}")
+    private int batchSize;
+
+    @Value("${alert.email.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${alert.email.initial-backoff:30s}")
+    private Duration initialBackoff;
+
+    @Value("${alert.email.max-backoff:30m}")
+    private Duration maxBackoff;
+
+    // How long a claimed alert is left to its worker before the sweep retries it
+    @Value("${alert.email.claim-timeout:5m}")
+    private Duration claimTimeout;
+
+    public EmailDispatcher(EmailService emailService, AlertRepository alertRepository,
+                           @Value("${alert.email.queue-capacity:10000}") int queueCapacity,
+                           @Value("${alert.email.workers:4}") int workerCount) {
+        this.emailService = emailService;
+        this.alertRepository = alertRepository;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.workerCount = workerCount;
+        this.workers = Executors.newFixedThreadPool(workerCount, runnable -> {
+            final Thread thread = new Thread(runnable, "alert-email");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        for (int i = 0; i < workerCount; i++) {
+            workers.submit(this::work);
+        }
+        log.info("Started {} alert email workers", workerCount);
+    }
+
+    @PreDestroy
+    public void stop() {
+        // Queued alerts stay PENDING in the database and are picked up again after the restart
+        workers.shutdownNow();
+    }
+
+    /**
+     * Queues persisted alerts for delivery. Alerts that do not fit into the queue are left to the sweep.
+     *
+     * @param alerts Alerts already saved as PENDING
+     */
+    public void dispatch(List<Alert> alerts) {
+        int deferred = 0;
+        for (Alert alert : alerts) {
+            if (!enqueue(alert)) {
+                deferred++;
+            }
+        }
+        if (deferred > 0) {
+            log.warn("Alert email queue is full, {} alerts are delivered by the next sweep", deferred);
+        }
+    }
+
+    /**
+     * Queues the alerts that are due: digests whose window has ended, retries whose backoff has passed,
+     * alerts that were never queued (a full queue, or a restart before delivery), and claimed alerts whose
+     * claim has expired.
+     */
+    @Scheduled(fixedDelayString = "${alert.email.sweep-interval:10000}")
+    public void sweep() {
+        final int room = queue.remainingCapacity();
+        if (room == 0) {
+            return;
+        }
+
+        final List<Alert> due = alertRepository.findByStatusInAndNextAttemptAtLessThanEqualOrderByNextAttemptAt(
+                List.of(AlertStatus.PENDING, AlertStatus.SENDING), LocalDateTime.now(), Limit.of(room));
+        int queued = 0;
+        for (Alert alert : due) {
+            if (enqueue(alert)) {
+                queued++;
+            }
+        }
+        if (queued > 0) {
+            log.info("Queued {} pending alert emails", queued);
+        }
+    }
+
+    private boolean enqueue(Alert alert) {
+        if (!inFlight.add(alert.getId())) {
+            // Already queued or being sent
+            return true;
+        }
+        if (!queue.offer(alert)) {
+            inFlight.remove(alert.getId());
+            return false;
+        }
+        return true;
+    }
+
+    private void work() {
+        final List<Alert> batch = new ArrayList<>(batchSize);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                batch.add(queue.take());
+                queue.drainTo(batch, batchSize - 1);
+                deliver(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                // The alerts stay PENDING (or SENDING until their claim expires) in the database, the sweep retries them
+                log.error("Failed to deliver {} alert emails: {}", batch.size(), e.getMessage(), e);
+            } finally {
+                batch.forEach(alert -> inFlight.remove(alert.getId()));
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Sends a batch of alerts and records the outcome of each: sent, retried later with exponential
+     * backoff, or failed once the attempts are used up. This method orchestrates the following steps:
+     * 1. Claim the alerts, dropping those changed (sent, extended or claimed) since they were read
+     * 2. Send the claimed alerts over one SMTP connection
+     * 3. Save the outcomes in one batch
+     */
+    private void deliver(List<Alert> batch) {
+        // Step 1: Claim the alerts, dropping those changed since they were read
+        final List<Alert> claimed = claim(batch);
+        if (claimed.isEmpty()) {
+            return;
+        }
+
+        // Step 2: Send the claimed alerts over one SMTP connection
+        final Set<Alert> failed = emailService.sendEmails(claimed);
+
+        // Step 3: Save the outcomes in one batch
+        final LocalDateTime now = LocalDateTime.now();
+        for (Alert alert : claimed) {
+            alert.setAttempts(alert.getAttempts() + 1);
+            if (!failed.contains(alert)) {
+                alert.setStatus(AlertStatus.SENT);
+                alert.setSent(true);
+                alert.setNextAttemptAt(null);
+            } else if (alert.getAttempts() >= maxAttempts) {
+                alert.setStatus(AlertStatus.FAILED);
+                alert.setNextAttemptAt(null);
+                log.warn("Giving up on the alert email of alert {} to {} after {} attempts", alert.getId(), alert.getEmail(), alert.getAttempts());
+            } else {
+                alert.setStatus(AlertStatus.PENDING);
+                alert.setNextAttemptAt(now.plus(backoff(alert.getAttempts())));
+            }
+        }
+
+        // Save alert states to database in one batch
+        alertRepository.saveAll(claimed);
+    }
+
+    private List<Alert> claim(List<Alert> batch) {
+        final LocalDateTime claimedUntil = LocalDateTime.now().plus(claimTimeout);
+        final List<Alert> claimed = new ArrayList<>(batch.size());
+        for (Alert alert : batch) {
+            if (alertRepository.claim(alert.getId(), alert.getVersion(), AlertStatus.SENDING, claimedUntil) == 1) {
+                // Mirror the update, so saving the outcome matches the claimed row's version
+                alert.setStatus(AlertStatus.SENDING);
+                alert.setNextAttemptAt(claimedUntil);
+                alert.setVersion(alert.getVersion() + 1);
+                claimed.add(alert);
+            }
+        }
+
+        if (claimed.size() < batch.size()) {
+            log.info("Skipped {} alert emails that were changed or claimed since they were queued", batch.size() - claimed.size());
+        }
+        return claimed;
+    }
+
+    private Duration backoff(int attempts) {
+        final Duration backoff = initialBackoff.multipliedBy(1L << Math.min(attempts - 1, 20));
+        return backoff.compareTo(maxBackoff) > 0 ? maxBackoff : backoff;
+    }
+}
@@ -1,15 +1,19 @@
 package com.neeraj.alertservice.service;
 
 import com.neeraj.alertservice.entity.Alert;
-import com.neeraj.alertservice.repository.AlertRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
 import org.springframework.mail.SimpleMailMessage;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.stereotype.Service;
 
-import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @Service
 @Slf4j
@@ -17,41 +21,49 @@ import java.time.LocalDateTime;
 public class EmailService {
 
     private final JavaMailSender javaMailSender;
-    private final AlertRepository alertRepository;
 
-    public void sendEmail(String recipient, String subject, String body, Long userId) {
-        log.info("Sending email to {} for user {}", recipient, userId);
+    /**
+     * Sends the emails of a batch of alerts over a single SMTP connection (JavaMailSender connects once
+     * per send call and delivers every message of the call through it).
+     *
+     * @param alerts Alerts carrying the recipient, subject and body of their email
+     * @return The alerts whose email could not be sent
+     */
+    public Set<Alert> sendEmails(List<Alert> alerts) {
+        log.info("Sending {} alert emails", alerts.size());
 
-        SimpleMailMessage message = new SimpleMailMessage();
-        message.setTo(recipient);
-        message.setFrom("energy-tracker@neeraj.com");
-        message.setSubject(subject);
-        message.setText(body);
+        final Map<SimpleMailMessage, Alert> alertsByMessage = new IdentityHashMap<>();
+        for (Alert alert : alerts) {
+            SimpleMailMessage message = new SimpleMailMessage();
+            message.setTo(alert.getEmail());
+            message.setFrom("energy-tracker@neeraj.com");
+            message.setSubject(alert.getSubject());
+            message.setText(alert.getBody());
+            alertsByMessage.put(message, alert);
+        }
 
+        final Set<Alert> failed = Collections.newSetFromMap(new IdentityHashMap<>());
         try {
-            javaMailSender.send(message);
-
-            // Save alert success state to database
-            final Alert sentAlert = Alert.builder()
-                    .userId(userId)
-                    .sent(true)
-                    .createdAt(LocalDateTime.now())
-                    .build();
-
-            alertRepository.saveAndFlush(sentAlert);
+            javaMailSender.send(alertsByMessage.keySet().toArray(SimpleMailMessage[]::new));
+        } catch (MailSendException e) {
+            // Only the listed messages failed; a connection failure lists all of them
+            e.getFailedMessages().forEach((message, cause) -> {
+                final Alert alert = alertsByMessage.get(message);
+                if (alert != null) {
+                    log.error("Error sending email to {} for user {}: {}", alert.getEmail(), alert.getUserId(), cause.getMessage());
+                    failed.add(alert);
+                }
+            });
+            if (e.getFailedMessages().isEmpty()) {
+                log.error("Error sending {} alert emails", alerts.size(), e);
+                failed.addAll(alerts);
+            }
         } catch (MailException e) {
-            log.error("Error sending email to {} for user {}", recipient, userId, e);
-
-            // Save alert failure state to database
-            final Alert failedAlert = Alert.builder()
-                    .userId(userId)
-                    .sent(false)
-                    .createdAt(LocalDateTime.now())
-                    .build();
-
-            alertRepository.saveAndFlush(failedAlert);
+            log.error("Error sending {} alert emails", alerts.size(), e);
+            failed.addAll(alerts);
         }
 
-        log.info("Email sent to {} for user {}", recipient, userId);
+        log.info("Sent {} of {} alert emails", alerts.size() - failed.size(), alerts.size());
+        return failed;
     }
 }
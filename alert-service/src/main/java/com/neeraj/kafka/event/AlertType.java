@@ -0,0 +1,20 @@
+package com.neeraj.kafka.event;
+
+/**
+ * Kind of an alerting event, which decides how the alert is worded.
+ */
+public enum AlertType {
+    // The user's usage in the last hour exceeded their threshold
+    THRESHOLD,
+    // The user's usage so far today / this month exceeded their budget
+    DAILY_BUDGET,
+    MONTHLY_BUDGET,
+    // An alert rule's total within its window exceeded the rule's threshold
+    RULE,
+    // A single reading of a device was far above its usual readings
+    SPIKE,
+    // The recent average reading of a device has stayed far above its usual readings for a while
+    SUSTAINED_USAGE,
+    // The user's usage is projected to exceed their threshold; nothing has been exceeded yet
+    FORECAST
+}
@@ -5,6 +5,7 @@ import lombok.Builder;
 @Builder
 public record AlertingEvent(
         Long userId,
+        AlertType type,
         String message,
         Double threshold,
         Double totalEnergyUsage,
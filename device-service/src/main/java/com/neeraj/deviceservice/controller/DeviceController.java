@@ -16,6 +16,14 @@ public class DeviceController {
 
     private final DeviceService deviceService;
 
+    // Registered device IDs in ascending order, paged by the last ID seen (e.g. for the ingestion admission filter)
+    @GetMapping("/ids")
+    public ResponseEntity<List<Long>> getDeviceIds(@RequestParam(defaultValue = "0") Long afterId,
+                                                   @RequestParam(defaultValue = "10000") int limit) {
+        List<Long> deviceIds = deviceService.getDeviceIds(afterId, limit);
+        return ResponseEntity.ok(deviceIds);
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<DeviceDTO> getDevice(@PathVariable Long id) {
         DeviceDTO device = deviceService.getDevice(id);
@@ -45,4 +53,11 @@ public class DeviceController {
         List<DeviceDTO> devices = deviceService.getAllDevicesForUser(userId);
         return ResponseEntity.ok(devices);
     }
+
+    // Devices of many users in one call, for batch consumers such as the bulk usage export
+    @PostMapping("/users")
+    public ResponseEntity<List<DeviceDTO>> getAllDevicesForUsers(@RequestBody List<Long> userIds) {
+        List<DeviceDTO> devices = deviceService.getAllDevicesForUsers(userIds);
+        return ResponseEntity.ok(devices);
+    }
 }
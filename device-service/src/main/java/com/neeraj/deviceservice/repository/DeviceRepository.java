@@ -1,12 +1,21 @@
 package com.neeraj.deviceservice.repository;
 
 import com.neeraj.deviceservice.entity.Device;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface DeviceRepository extends JpaRepository<Device, Long> {
     List<Device> findAllByUserId(Long userId);
+
+    List<Device> findAllByUserIdIn(Collection<Long> userIds);
+
+    @Query("select d.id from Device d where d.id > :afterId order by d.id")
+    List<Long> findIdsAfter(@Param("afterId") Long afterId, Limit limit);
 }
\ No newline at end of file
@@ -6,6 +6,7 @@ import com.neeraj.deviceservice.exception.DeviceNotFoundException;
 import com.neeraj.deviceservice.repository.DeviceRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
@@ -68,4 +69,24 @@ public class DeviceService {
         List<Device> devices = deviceRepository.findAllByUserId(userId);
         return devices.stream().map(this::toDeviceDTO).toList();
     }
+
+    public List<DeviceDTO> getAllDevicesForUsers(List<Long> userIds) {
+        if (userIds == null || userIds.isEmpty()) {
+            return List.of();
+        }
+        List<Device> devices = deviceRepository.findAllByUserIdIn(userIds);
+        return devices.stream().map(this::toDeviceDTO).toList();
+    }
+
+    /**
+     * Returns the IDs of the registered devices in ascending order, one page at a time (keyset pagination),
+     * so consumers can mirror the set of registered devices without fetching the devices themselves.
+     *
+     * @param afterId Only IDs greater than this one are returned
+     * @param limit   Maximum number of IDs to return, capped at 10000
+     * @return The next page of device IDs
+     */
+    public List<Long> getDeviceIds(Long afterId, int limit) {
+        return deviceRepository.findIdsAfter(afterId, Limit.of(Math.clamp(limit, 1, 10_000)));
+    }
 }
@@ -0,0 +1,47 @@
+package com.neeraj.ingestionservice.client;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+@Slf4j
+@Component
+public class DeviceClient {
+    private final RestTemplate restTemplate;
+    private final String baseUrl;
+
+    public DeviceClient(@Value("${device.service.url}") String baseUrl,
+                        @Value("${device.service.connect-timeout:2s}") Duration connectTimeout,
+                        @Value("${device.service.read-timeout:5s}") Duration readTimeout) {
+        // Bounded, since a catch-up lookup runs while an ingestion request waits
+        final SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(connectTimeout);
+        requestFactory.setReadTimeout(readTimeout);
+        this.restTemplate = new RestTemplate(requestFactory);
+        this.baseUrl = baseUrl;
+    }
+
+    /**
+     * Fetches the next page of registered device IDs in ascending order. Failures are thrown, so a failed
+     * refresh is never mistaken for an empty device registry.
+     */
+    public List<Long> getDeviceIdsAfter(long afterId, int limit) {
+        String url = UriComponentsBuilder.fromUriString(baseUrl)
+                .path("/api/v1/device/ids")
+                .queryParam("afterId", afterId)
+                .queryParam("limit", limit)
+                .toUriString();
+
+        log.debug("Calling device-service: {}", url);
+
+        Long[] deviceIds = restTemplate.getForObject(url, Long[].class);
+        return deviceIds == null ? List.of() : Arrays.asList(deviceIds);
+    }
+}
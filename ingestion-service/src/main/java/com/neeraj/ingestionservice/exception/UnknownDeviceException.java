@@ -0,0 +1,7 @@
+package com.neeraj.ingestionservice.exception;
+
+public class UnknownDeviceException extends RuntimeException {
+    public UnknownDeviceException(String message) {
+        super(message);
+    }
+}
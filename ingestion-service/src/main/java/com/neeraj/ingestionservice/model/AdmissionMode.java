@@ -0,0 +1,11 @@
+package com.neeraj.ingestionservice.model;
+
+/**
+ * What happens to readings of devices that are not registered in device-service.
+ */
+public enum AdmissionMode {
+    // Answer with a 422 Unprocessable Entity
+    REJECT,
+    // Send the reading to the divert topic instead of energy-usage
+    DIVERT
+}
@@ -0,0 +1,153 @@
+package com.neeraj.ingestionservice.model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compressed set of device IDs. IDs are split into chunks of 65536 by their high bits; a chunk holding
+ * few IDs stores their low 16 bits as a sorted char array (2 bytes per ID), and a chunk that fills up is
+ * switched to a plain 8 KB bitmap (1 bit per possible ID). Device IDs are assigned sequentially, so the
+ * registered devices end up in a few dense bitmap chunks while sparse ranges stay small.
+ */
+public class DeviceIdBitmap {
+
+    // Beyond this many IDs a sorted array takes more room than a bitmap of the chunk
+    private static final int ARRAY_MAX = 4096;
+    private static final int CHUNK_WORDS = 1024;
+
+    private final Map<Long, Object> chunks = new HashMap<>();
+    private long cardinality;
+    private long maxId = -1;
+
+    public synchronized boolean contains(long deviceId) {
+        if (deviceId < 0) {
+            return false;
+        }
+
+        final Object chunk = chunks.get(deviceId >>> 16);
+        final char low = (char) deviceId;
+        if (chunk instanceof long[] bits) {
+            return (bits[low >>> 6] & (1L << low)) != 0;
+        }
+        return chunk instanceof char[] values && Arrays.binarySearch(values, low) >= 0;
+    }
+
+    /**
+     * Adds a device ID. Negative IDs are ignored.
+     *
+     * @return true if the ID was not in the set yet
+     */
+    public synchronized boolean add(long deviceId) {
+        if (deviceId < 0) {
+            return false;
+        }
+
+        final long key = deviceId >>> 16;
+        final char low = (char) deviceId;
+        final Object chunk = chunks.get(key);
+        final boolean added;
+        if (chunk instanceof long[] bits) {
+            added = (bits[low >>> 6] & (1L << low)) == 0;
+            bits[low >>> 6] |= 1L << low;
+        } else {
+            final char[] values = chunk instanceof char[] existing ? existing : new char[0];
+            final int index = Arrays.binarySearch(values, low);
+            added = index < 0;
+            if (added) {
+                chunks.put(key, insert(values, -index - 1, low));
+            }
+        }
+
+        if (added) {
+            cardinality++;
+            maxId = Math.max(maxId, deviceId);
+        }
+        return added;
+    }
+
+    /**
+     * Removes a device ID.
+     *
+     * @return true if the ID was in the set
+     */
+    public synchronized boolean remove(long deviceId) {
+        if (deviceId < 0) {
+            return false;
+        }
+
+        final long key = deviceId >>> 16;
+        final char low = (char) deviceId;
+        final Object chunk = chunks.get(key);
+        final boolean removed;
+        if (chunk instanceof long[] bits) {
+            removed = (bits[low >>> 6] & (1L << low)) != 0;
+            bits[low >>> 6] &= ~(1L << low);
+        } else if (chunk instanceof char[] values) {
+            final int index = Arrays.binarySearch(values, low);
+            removed = index >= 0;
+            if (removed) {
+                final char[] shrunk = new char[values.length - 1];
+                System.arraycopy(values, 0, shrunk, 0, index);
+                System.arraycopy(values, index + 1, shrunk, index, values.length - index - 1);
+                if (shrunk.length == 0) {
+                    chunks.remove(key);
+                } else {
+                    chunks.put(key, shrunk);
+                }
+            }
+        } else {
+            removed = false;
+        }
+
+        if (removed) {
+            cardinality--;
+        }
+        return removed;
+    }
+
+    /**
+     * @return The number of IDs in the set
+     */
+    public synchronized long cardinality() {
+        return cardinality;
+    }
+
+    /**
+     * @return The highest ID ever added (removals do not lower it), or -1 if the set was always empty
+     */
+    public synchronized long maxId() {
+        return maxId;
+    }
+
+    /**
+     * @return The approximate memory held by the chunks, in bytes
+     */
+    public synchronized long sizeInBytes() {
+        long bytes = 0;
+        for (Object chunk : chunks.values()) {
+            bytes += chunk instanceof long[] ? CHUNK_WORDS * 8L : ((char[]) chunk).length * 2L;
+        }
+        return bytes;
+    }
+
+    /**
+     * Inserts a value into a sorted chunk array, switching the chunk to a bitmap once the array is full.
+     */
+    private static Object insert(char[] values, int index, char low) {
+        if (values.length >= ARRAY_MAX) {
+            final long[] bits = new long[CHUNK_WORDS];
+            for (char value : values) {
+                bits[value >>> 6] |= 1L << value;
+            }
+            bits[low >>> 6] |= 1L << low;
+            return bits;
+        }
+
+        final char[] grown = new char[values.length + 1];
+        System.arraycopy(values, 0, grown, 0, index);
+        grown[index] = low;
+        System.arraycopy(values, index, grown, index + 1, values.length - index);
+        return grown;
+    }
+}
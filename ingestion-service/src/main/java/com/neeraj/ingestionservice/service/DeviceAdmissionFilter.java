@@ -0,0 +1,173 @@
+package com.neeraj.ingestionservice.service;
+
+import com.neeraj.ingestionservice.client.DeviceClient;
+import com.neeraj.ingestionservice.model.DeviceIdBitmap;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClientException;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides whether readings are admitted into the pipeline, based on a locally held {@link DeviceIdBitmap}
+ * of the devices registered in device-service. The bitmap is rebuilt from the full ID list periodically
+ * (which also drops deleted devices) and updated in between by fetching only the IDs above the highest
+ * one known, since device IDs are assigned in ascending order. For the same reason a reading of a device
+ * above the highest known ID may come from a device registered since the last update: it triggers one
+ * immediate catch-up update (at most one per catch-up interval) instead of being rejected. Until the first
+ * full load succeeds, and whenever a catch-up fails, readings are admitted, so an unreachable device-service
+ * never stops ingestion.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class DeviceAdmissionFilter {
+
+    // device-service returns at most this many IDs per page
+    private static final int MAX_PAGE_SIZE = 10000;
+
+    private final DeviceClient deviceClient;
+
+    // Serializes catch-up updates, and the time of the last one (epoch ms)
+    private final Object catchUpLock = new Object();
+    private volatile long lastCatchUp;
+
+    private volatile DeviceIdBitmap registeredDevices;
+
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong unknown = new AtomicLong();
+
+    @Value("${ingestion.admission.enabled:false}")
+    private boolean enabled;
+
+    @Value("${ingestion.admission.page-size:10000}")
+    private int pageSize;
+
+    @Value("${ingestion.admission.catch-up-interval:1s}")
+    private Duration catchUpInterval;
+
+    /**
+     * @param deviceId The ID of the device a reading belongs to
+     * @return false only if the filter is enabled, loaded, and the device is not registered
+     */
+    public boolean admits(Long deviceId) {
+        final DeviceIdBitmap devices = registeredDevices;
+        if (!enabled || devices == null) {
+            return true;
+        }
+
+        if (deviceId != null && (devices.contains(deviceId) || registeredSinceUpdate(devices, deviceId))) {
+            admitted.incrementAndGet();
+            return true;
+        }
+        unknown.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Catches up on the devices registered since the last update when a reading comes from a device above
+     * the highest known ID.
+     *
+     * @return Whether the device turned out to be registered, or device-service could not be asked
+     */
+    private boolean registeredSinceUpdate(DeviceIdBitmap devices, long deviceId) {
+        if (deviceId <= devices.maxId()) {
+            return false;
+        }
+
+        synchronized (catchUpLock) {
+            // Another reading may have caught up already
+            if (devices.contains(deviceId)) {
+                return true;
+            }
+            final long now = System.currentTimeMillis();
+            if (now - lastCatchUp < catchUpInterval.toMillis()) {
+                return false;
+            }
+            lastCatchUp = now;
+
+            try {
+                final int added = fetchIdsAfter(devices, devices.maxId());
+                log.info("Caught up on {} newly registered device IDs for a reading of device {}", added, deviceId);
+                return devices.contains(deviceId);
+            } catch (RestClientException e) {
+                log.warn("Failed to catch up on newly registered devices, admitting the reading of device {}: {}", deviceId, e.getMessage());
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the bitmap from the full list of registered device IDs and swaps it in once complete.
+     */
+    @Scheduled(fixedDelayString = "${ingestion.admission.refresh-interval:1800000}")
+    public void refresh() {
+        if (!enabled) {
+            return;
+        }
+
+        try {
+            final DeviceIdBitmap devices = new DeviceIdBitmap();
+            fetchIdsAfter(devices, -1);
+            registeredDevices = devices;
+            log.info("Loaded {} registered device IDs into the admission filter ({} bytes); {} readings admitted, {} from unknown devices so far",
+                    devices.cardinality(), devices.sizeInBytes(), admitted.get(), unknown.get());
+        } catch (RestClientException e) {
+            log.warn("Failed to refresh the device admission filter, keeping the previous one: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Adds the devices registered since the last refresh or update.
+     */
+    @Scheduled(fixedDelayString = "${ingestion.admission.update-interval:30000}",
+            initialDelayString = "${ingestion.admission.update-interval:30000}")
+    public void update() {
+        final DeviceIdBitmap devices = registeredDevices;
+        if (!enabled || devices == null) {
+            return;
+        }
+
+        try {
+            final int added = fetchIdsAfter(devices, devices.maxId());
+            if (added > 0) {
+                log.info("Added {} newly registered device IDs to the admission filter", added);
+            }
+        } catch (RestClientException e) {
+            log.warn("Failed to update the device admission filter: {}", e.getMessage());
+        }
+    }
+
+    public long admittedReadings() {
+        return admitted.get();
+    }
+
+    public long unknownReadings() {
+        return unknown.get();
+    }
+
+    private int fetchIdsAfter(DeviceIdBitmap devices, long afterId) {
+        final int limit = Math.min(pageSize, MAX_PAGE_SIZE);
+        int added = 0;
+        long lastId = afterId;
+        while (true) {
+            final List<Long> page = deviceClient.getDeviceIdsAfter(lastId, limit);
+            // Only an empty page marks the end, a short one may just be capped by device-service
+            if (page.isEmpty()) {
+                return added;
+            }
+
+            for (Long deviceId : page) {
+                if (devices.add(deviceId)) {
+                    added++;
+                }
+            }
+            lastId = page.get(page.size() - 1);
+        }
+    }
+}
@@ -1,9 +1,12 @@
 package com.neeraj.ingestionservice.service;
 
 import com.neeraj.ingestionservice.dto.EnergyUsageDTO;
+import com.neeraj.ingestionservice.exception.UnknownDeviceException;
+import com.neeraj.ingestionservice.model.AdmissionMode;
 import com.neeraj.kafka.event.EnergyUsageEvent;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
 
@@ -13,6 +16,13 @@ import org.springframework.stereotype.Service;
 public class IngestionService {
 
     private final KafkaTemplate<String, EnergyUsageEvent> kafkaTemplate;
+    private final DeviceAdmissionFilter deviceAdmissionFilter;
+
+    @Value("${ingestion.admission.mode:REJECT}")
+    private AdmissionMode admissionMode;
+
+    @Value("${ingestion.admission.divert-topic:energy-usage-unknown}")
+    private String divertTopic;
 
     public void ingestEnergyUsage(EnergyUsageDTO usageDTO) {
         // Convert DTO to Event
@@ -22,8 +32,18 @@ public class IngestionService {
                 .timestamp(usageDTO.timestamp())
                 .build();
 
-        // Send Event to Kafka
-        kafkaTemplate.send("energy-usage", event);
+        // Keep readings of unregistered devices out of the energy-usage topic (and so out of InfluxDB)
+        if (!deviceAdmissionFilter.admits(event.deviceId())) {
+            if (admissionMode == AdmissionMode.DIVERT) {
+                kafkaTemplate.send(divertTopic, event);
+                log.debug("Diverted energy usage event of unknown device {}", event.deviceId());
+                return;
+            }
+            throw new UnknownDeviceException("Device is not registered: " + event.deviceId());
+        }
+
+        // Send Event to Kafka, keyed by device so all readings of a device land on one partition, in order
+        kafkaTemplate.send("energy-usage", String.valueOf(event.deviceId()), event);
         log.info("Ingested energy usage event {}", event);
     }
 }
@@ -1,6 +1,6 @@
 package com.neeraj.insightservice.client;
 
-import com.neeraj.insightservice.dto.UsageDTO;
+import com.neeraj.insightservice.dto.UsageBreakdownDTO;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
@@ -19,21 +19,22 @@ public class UsageClient {
         this.baseUrl = baseUrl;
     }
 
-    public UsageDTO getXDaysUsageForUser(Long userId, int days) {
+    public UsageBreakdownDTO getUsageBreakdown(Long userId, int days, int top) {
         String url = UriComponentsBuilder.fromUriString(baseUrl)
-                .path("/{userId}")
+                .path("/{userId}/breakdown")
                 .queryParam("days", days)
+                .queryParam("top", top)
                 .buildAndExpand(userId)
                 .toUriString();
 
         try {
-            ResponseEntity<UsageDTO> response = restTemplate.getForEntity(url, UsageDTO.class);
+            ResponseEntity<UsageBreakdownDTO> response = restTemplate.getForEntity(url, UsageBreakdownDTO.class);
             return response.getBody();
         } catch (Exception e) {
-            log.error("Error calling usage-service for user {}: {}", userId, e.getMessage());
-            return UsageDTO.builder()
+            log.error("Error calling usage-service breakdown for user {}: {}", userId, e.getMessage());
+            return UsageBreakdownDTO.builder()
                     .userId(userId)
-                    .devices(null)
+                    .deviceCount(0)
                     .build();
         }
     }
@@ -1,12 +0,0 @@
-package com.neeraj.insightservice.dto;
-
-import lombok.Builder;
-
-import java.util.List;
-
-@Builder
-public record UsageDTO(
-        Long userId,
-        List<DeviceDTO> devices
-) {
-}
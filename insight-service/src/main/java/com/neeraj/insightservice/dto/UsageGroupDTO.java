@@ -0,0 +1,12 @@
+package com.neeraj.insightservice.dto;
+
+import lombok.Builder;
+
+@Builder
+public record UsageGroupDTO(
+        String key,
+        Double energyConsumed,
+        Integer deviceCount,
+        Double share
+) {
+}
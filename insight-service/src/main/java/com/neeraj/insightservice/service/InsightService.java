@@ -1,14 +1,15 @@
 package com.neeraj.insightservice.service;
 import com.neeraj.insightservice.client.UsageClient;
-import com.neeraj.insightservice.dto.DeviceDTO;
 import com.neeraj.insightservice.dto.InsightDTO;
-import com.neeraj.insightservice.dto.UsageDTO;
+import com.neeraj.insightservice.dto.UsageBreakdownDTO;
+import com.neeraj.insightservice.dto.UsageGroupDTO;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.model.ChatResponse;
 import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.ai.ollama.OllamaChatModel;
 import org.springframework.stereotype.Service;
+import java.util.List;
 @Service
 @Slf4j
 @RequiredArgsConstructor
@@ -16,9 +17,10 @@ public class InsightService {
     private final UsageClient usageClient;
     private final OllamaChatModel ollamaChatModel;
     public InsightDTO getSavingTips(Long userId) {
-        final UsageDTO usageData = usageClient.getXDaysUsageForUser(userId, 5);
+        // Only the totals are needed, so don't ask for any devices
+        final UsageBreakdownDTO usageData = usageClient.getUsageBreakdown(userId, 5, 0);
         // Handle null or empty devices list
-        if (usageData.devices() == null || usageData.devices().isEmpty()) {
+        if (usageData.deviceCount() == null || usageData.deviceCount() == 0) {
             log.warn("No devices found for user {} or unable to fetch usage data", userId);
             return InsightDTO.builder()
                     .userId(userId)
@@ -26,9 +28,7 @@ public class InsightService {
                     .totalEnergyUsage(0.0)
                     .build();
         }
-        Double totalEnergyConsumed = usageData.devices().stream()
-                .mapToDouble(DeviceDTO::energyConsumed)
-                .sum();
+        Double totalEnergyConsumed = usageData.totalEnergyConsumed();
         log.info("Generating energy-saving tips for user {} with total energy usage: {} kWh", userId, totalEnergyConsumed);
         String prompt = String.format("""
                         ENERGY CONSUMPTION DATA:
@@ -43,7 +43,7 @@ public class InsightService {
                         Keep your response concise and practical.
                         """,
                 totalEnergyConsumed,
-                usageData.devices().size()
+                usageData.deviceCount()
         );
         ChatResponse response = ollamaChatModel.call(new Prompt(prompt));
         String aiResponse = response.getResult().getOutput().getText();
@@ -54,9 +54,10 @@ public class InsightService {
                 .build();
     }
     public InsightDTO getOverview(Long userId) {
-        final UsageDTO usageData = usageClient.getXDaysUsageForUser(userId, 5);
+        // usage-service groups the devices, so only the top consumers and the group totals are transferred
+        final UsageBreakdownDTO usageData = usageClient.getUsageBreakdown(userId, 5, 5);
         // Handle null or empty devices list
-        if (usageData.devices() == null || usageData.devices().isEmpty()) {
+        if (usageData.deviceCount() == null || usageData.deviceCount() == 0) {
             log.warn("No devices found for user {} or unable to fetch usage data", userId);
             return InsightDTO.builder()
                     .userId(userId)
@@ -64,13 +65,11 @@ public class InsightService {
                     .totalEnergyUsage(0.0)
                     .build();
         }
-        Double totalEnergyConsumed = usageData.devices().stream()
-                .mapToDouble(DeviceDTO::energyConsumed)
-                .sum();
+        Double totalEnergyConsumed = usageData.totalEnergyConsumed();
         log.info("Generating energy overview for user {} with total energy usage: {} kWh", userId, totalEnergyConsumed);
-        // Build detailed device breakdown for better insights
+        // Build the top device and group breakdown for better insights
         StringBuilder deviceBreakdown = new StringBuilder();
-        usageData.devices().forEach(device ->
+        usageData.topDevices().forEach(device ->
                 deviceBreakdown.append(String.format(
                         "- %s (%s) in %s: %.2f kWh\n",
                         device.name(),
@@ -85,7 +84,11 @@ public class InsightService {
                         - Period: Last 5 days
                         - Total Energy: %.2f kWh
                         - Number of Devices: %d
-                        DEVICE BREAKDOWN:
+                        TOP DEVICES:
+                        %s
+                        BY DEVICE TYPE:
+                        %s
+                        BY LOCATION:
                         %s
                         Provide a brief analysis with:
                         1. Overall Assessment (1-2 sentences on total consumption level)
@@ -94,8 +97,10 @@ public class InsightService {
                         Be concise, specific, and focus only on the devices listed above.
                         """,
                 totalEnergyConsumed,
-                usageData.devices().size(),
-                deviceBreakdown.toString()
+                usageData.deviceCount(),
+                deviceBreakdown.toString(),
+                formatGroups(usageData.byType()),
+                formatGroups(usageData.byLocation())
         );
         ChatResponse response = ollamaChatModel.call(new Prompt(prompt));
         String aiResponse = response.getResult().getOutput().getText();
@@ -105,4 +110,17 @@ public class InsightService {
                 .totalEnergyUsage(totalEnergyConsumed)
                 .build();
     }
+    private static String formatGroups(List<UsageGroupDTO> groups) {
+        StringBuilder breakdown = new StringBuilder();
+        groups.forEach(group ->
+                breakdown.append(String.format(
+                        "- %s: %.2f kWh (%d devices, %.0f%%)\n",
+                        group.key(),
+                        group.energyConsumed(),
+                        group.deviceCount(),
+                        group.share()
+                ))
+        );
+        return breakdown.toString();
+    }
 }
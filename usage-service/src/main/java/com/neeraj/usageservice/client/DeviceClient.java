@@ -1,14 +1,20 @@
 package com.neeraj.usageservice.client;
 
 import com.neeraj.usageservice.dto.DeviceDTO;
+import com.neeraj.usageservice.exception.DeviceServiceException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import java.time.Duration;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 
 @Slf4j
@@ -17,11 +23,21 @@ public class DeviceClient {
     private final RestTemplate restTemplate;
     private final String baseUrl;
 
-    public DeviceClient(@Value("${device.service.url}") String baseUrl) {
-        this.restTemplate = new RestTemplate();
+    public DeviceClient(@Value("${device.service.url}") String baseUrl,
+                        @Value("${device.service.connect-timeout:2s}") Duration connectTimeout,
+                        @Value("${device.service.read-timeout:5s}") Duration readTimeout) {
+        // Bounded, so a hanging device-service cannot stall the callers (some of them on the Kafka listener thread)
+        final SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(connectTimeout);
+        requestFactory.setReadTimeout(readTimeout);
+        this.restTemplate = new RestTemplate(requestFactory);
         this.baseUrl = baseUrl;
     }
 
+    /**
+     * Fetches a device. A device that device-service does not know is reported as null; other failures
+     * are thrown, so an outage is never mistaken for a deleted device.
+     */
     public DeviceDTO getDeviceById(Long deviceId) {
         String url = UriComponentsBuilder.fromUriString(baseUrl)
                 .path("/api/v1/device/{deviceId}")
@@ -33,12 +49,21 @@ public class DeviceClient {
         try {
             ResponseEntity<DeviceDTO> response = restTemplate.getForEntity(url, DeviceDTO.class);
             return response.getBody();
-        } catch (Exception e) {
-            log.error("Error fetching device {}: {}", deviceId, e.getMessage());
+        } catch (HttpClientErrorException.NotFound e) {
+            log.debug("Device {} not found in device-service", deviceId);
             return null;
+        } catch (RestClientException e) {
+            log.error("Error fetching device {}: {}", deviceId, e.getMessage());
+            throw e;
         }
     }
 
+    /**
+     * Fetches the devices of a user. Failures are thrown, so an outage is never mistaken for a user
+     * without devices (and never ends up in a seed or a cached result).
+     *
+     * @throws DeviceServiceException if device-service cannot be reached or answers with an error
+     */
     public List<DeviceDTO> getAllDevicesForUser(Long userId) {
         String url = UriComponentsBuilder.fromUriString(baseUrl)
                 .path("/api/v1/device/user/{userId}")
@@ -51,13 +76,27 @@ public class DeviceClient {
 
             if (devicesArray == null) {
                 log.warn("Received null response from device-service for user {}", userId);
-                return List.of();
+                throw new DeviceServiceException("Empty device list response for user " + userId);
             }
 
             return Arrays.asList(devicesArray);
-        } catch (Exception e) {
+        } catch (RestClientException e) {
             log.error("Error fetching devices for user {}: {}", userId, e.getMessage());
-            return List.of();
+            throw new DeviceServiceException("Failed to fetch devices for user " + userId + ": " + e.getMessage(), e);
         }
     }
+
+    /**
+     * Fetches the devices of many users in one call. Unlike the single-user lookup, failures are thrown,
+     * so a batch is never mistaken for users without devices.
+     */
+    public List<DeviceDTO> getAllDevicesForUsers(Collection<Long> userIds) {
+        String url = UriComponentsBuilder.fromUriString(baseUrl)
+                .path("/api/v1/device/users")
+                .toUriString();
+
+        ResponseEntity<DeviceDTO[]> response = restTemplate.postForEntity(url, userIds, DeviceDTO[].class);
+        DeviceDTO[] devicesArray = response.getBody();
+        return devicesArray == null ? List.of() : Arrays.asList(devicesArray);
+    }
 }
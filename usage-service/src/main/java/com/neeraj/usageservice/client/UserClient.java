@@ -1,19 +1,31 @@
 package com.neeraj.usageservice.client;
 
+import com.neeraj.usageservice.dto.AlertRuleDTO;
 import com.neeraj.usageservice.dto.UserDTO;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
 @Component
 public class UserClient {
     private final RestTemplate restTemplate;
     private final String baseUrl;
 
-    public UserClient(@Value("${user.service.url}") String baseUrl) {
-        this.restTemplate = new RestTemplate();
+    public UserClient(@Value("${user.service.url}") String baseUrl,
+                    @Value("${user.service.connect-timeout:2s}") Duration connectTimeout,
+                    @Value("${user.service.read-timeout:5s}") Duration readTimeout) {
+        // Bounded, so a hanging user-service cannot stall the callers (some of them on the Kafka listener thread)
+        final SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(connectTimeout);
+        requestFactory.setReadTimeout(readTimeout);
+        this.restTemplate = new RestTemplate(requestFactory);
         this.baseUrl = baseUrl;
     }
 
@@ -26,4 +38,15 @@ public class UserClient {
         ResponseEntity<UserDTO> response = restTemplate.getForEntity(url, UserDTO.class);
         return response.getBody();
     }
+
+    public List<AlertRuleDTO> getAlertRules(Long userId) {
+        String url = UriComponentsBuilder.fromUriString(baseUrl)
+                .path("/api/v1/user/{userId}/alert-rules")
+                .buildAndExpand(userId)
+                .toUriString();
+
+        ResponseEntity<AlertRuleDTO[]> response = restTemplate.getForEntity(url, AlertRuleDTO[].class);
+        AlertRuleDTO[] alertRules = response.getBody();
+        return alertRules == null ? List.of() : Arrays.asList(alertRules);
+    }
 }
@@ -6,6 +6,11 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
 @Configuration
 public class InfluxDBConfig {
 
@@ -18,8 +23,22 @@ public class InfluxDBConfig {
     @Value("${influxdb.org}")
     private String influxDbOrg;
 
+    @Value("${influxdb.query-parallelism:4}")
+    private int queryParallelism;
+
+    @Value("${influxdb.query-queue-capacity:100}")
+    private int queryQueueCapacity;
+
     @Bean
     public InfluxDBClient influxDBClient() {
         return InfluxDBClientFactory.create(influxDbUrl, influxDbToken.toCharArray(), influxDbOrg);
     }
+
+    // Bounded pool and queue for running chunked Flux queries in parallel; once the queue is full the
+    // submitting request thread runs the query itself, which slows down callers instead of piling up work
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService influxQueryExecutor() {
+        return new ThreadPoolExecutor(queryParallelism, queryParallelism, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queryQueueCapacity), new ThreadPoolExecutor.CallerRunsPolicy());
+    }
 }
@@ -0,0 +1,109 @@
+package com.neeraj.usageservice.config;
+
+import com.neeraj.usageservice.model.TariffPlan;
+import com.neeraj.usageservice.service.TariffCatalog;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.DayOfWeek;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+@Configuration
+@EnableConfigurationProperties(TariffProperties.class)
+public class TariffConfig {
+
+    private static final String FLAT_PLAN = "flat";
+
+    /**
+     * Expands the configured plans into hour-of-week rate tables once at startup, so pricing a reading
+     * is a single array lookup. Invalid plans fail the startup.
+     */
+    @Bean
+    public TariffCatalog tariffCatalog(TariffProperties properties) {
+        final Map<String, TariffPlan> plans = new HashMap<>();
+        if (properties.plans() != null) {
+            properties.plans().forEach((name, plan) -> plans.put(name, toTariffPlan(name, plan)));
+        }
+
+        final String defaultPlanName = properties.defaultPlan() == null ? FLAT_PLAN : properties.defaultPlan();
+        final TariffPlan defaultPlan = plans.get(defaultPlanName);
+        if (defaultPlan == null) {
+            throw new IllegalStateException("Default tariff plan " + defaultPlanName + " is not configured");
+        }
+        return new TariffCatalog(plans, defaultPlan);
+    }
+
+    private static TariffPlan toTariffPlan(String name, TariffProperties.Plan plan) {
+        final double[] rates = new double[TariffPlan.HOURS_PER_WEEK];
+        Arrays.fill(rates, plan.rate());
+
+        if (plan.periods() != null) {
+            for (TariffProperties.Period period : plan.periods()) {
+                final int[] hours = parseHours(name, period.hours());
+                for (DayOfWeek day : parseDays(name, period.days())) {
+                    final int dayOffset = (day.getValue() - 1) * 24;
+                    Arrays.fill(rates, dayOffset + hours[0], dayOffset + hours[1], period.rate());
+                }
+            }
+        }
+        return new TariffPlan(name, plan.currency(), rates);
+    }
+
+    /**
+     * Parses "MON-FRI", "SAT,SUN" or "MON-WED,SAT" (null means every day).
+     */
+    private static Set<DayOfWeek> parseDays(String plan, String days) {
+        if (days == null || days.isBlank()) {
+            return EnumSet.allOf(DayOfWeek.class);
+        }
+
+        final Set<DayOfWeek> parsed = EnumSet.noneOf(DayOfWeek.class);
+        for (String part : days.split(",")) {
+            final String[] range = part.trim().split("-");
+            final DayOfWeek first = parseDay(plan, range[0]);
+            final DayOfWeek last = range.length > 1 ? parseDay(plan, range[1]) : first;
+            for (DayOfWeek day = first; ; day = day.plus(1)) {
+                parsed.add(day);
+                if (day == last) {
+                    break;
+                }
+            }
+        }
+        return parsed;
+    }
+
+    private static DayOfWeek parseDay(String plan, String day) {
+        final String prefix = day.trim().toUpperCase(Locale.ROOT);
+        return Arrays.stream(DayOfWeek.values())
+                .filter(candidate -> prefix.length() >= 3 && candidate.name().startsWith(prefix))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("Invalid day '" + day + "' in tariff plan " + plan));
+    }
+
+    /**
+     * Parses "17-21" into [17, 21) (null means the whole day).
+     */
+    private static int[] parseHours(String plan, String hours) {
+        if (hours == null || hours.isBlank()) {
+            return new int[]{0, 24};
+        }
+
+        try {
+            final String[] range = hours.trim().split("-");
+            final int from = Integer.parseInt(range[0].trim());
+            final int to = Integer.parseInt(range[1].trim());
+            if (from < 0 || to > 24 || from >= to) {
+                throw new IllegalStateException("Invalid hours '" + hours + "' in tariff plan " + plan);
+            }
+            return new int[]{from, to};
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            throw new IllegalStateException("Invalid hours '" + hours + "' in tariff plan " + plan, e);
+        }
+    }
+}
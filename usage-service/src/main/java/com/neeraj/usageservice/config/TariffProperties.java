@@ -0,0 +1,31 @@
+package com.neeraj.usageservice.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Time-of-use tariff plans, e.g.
+ * <pre>
+ * usage.tariff:
+ *   default-plan: standard
+ *   plans:
+ *     standard:
+ *       currency: EUR
+ *       rate: 0.30
+ *       periods:
+ *         - { days: MON-FRI, hours: 17-21, rate: 0.42 }
+ * </pre>
+ * A plan charges its base rate per kWh except in its periods; later periods override earlier ones.
+ * Days are a range or list of weekdays (MON-FRI, SAT,SUN), hours a range of local hours (end exclusive).
+ */
+@ConfigurationProperties(prefix = "usage.tariff")
+public record TariffProperties(String defaultPlan, Map<String, Plan> plans) {
+
+    public record Plan(String currency, double rate, List<Period> periods) {
+    }
+
+    public record Period(String days, String hours, double rate) {
+    }
+}
@@ -1,20 +1,122 @@
 package com.neeraj.usageservice.controller;
 
+import com.neeraj.usageservice.dto.UsageBreakdownDTO;
+import com.neeraj.usageservice.dto.UsageComparisonDTO;
+import com.neeraj.usageservice.dto.UsageCostDTO;
 import com.neeraj.usageservice.dto.UsageDTO;
-import com.neeraj.usageservice.service.UsageService;
+import com.neeraj.usageservice.dto.UsagePercentileDTO;
+import com.neeraj.usageservice.model.CachedUsage;
+import com.neeraj.usageservice.model.ExportFormat;
+import com.neeraj.usageservice.model.UsageExportRequest;
+import com.neeraj.usageservice.model.UsageSeriesRequest;
+import com.neeraj.usageservice.service.UsageBreakdownService;
+import com.neeraj.usageservice.service.UsageBulkService;
+import com.neeraj.usageservice.service.UsageComparisonService;
+import com.neeraj.usageservice.service.UsageCostService;
+import com.neeraj.usageservice.service.UsageExportService;
+import com.neeraj.usageservice.service.UsagePercentileService;
+import com.neeraj.usageservice.service.UsageResultCache;
+import com.neeraj.usageservice.service.UsageSeriesService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.time.Instant;
+import java.util.List;
 
 @RestController
 @RequestMapping("/api/v1/usage")
 @RequiredArgsConstructor
 public class UsageController {
-    private final UsageService usageService;
+    private final UsageResultCache usageResultCache;
+    private final UsageSeriesService usageSeriesService;
+    private final UsageCostService usageCostService;
+    private final UsagePercentileService usagePercentileService;
+    private final UsageBreakdownService usageBreakdownService;
+    private final UsageComparisonService usageComparisonService;
+    private final UsageBulkService usageBulkService;
+    private final UsageExportService usageExportService;
 
     @GetMapping("/{userId}")
     public ResponseEntity<UsageDTO> getUserDeviceUsage(@PathVariable Long userId, @RequestParam(defaultValue = "3") int days) {
-        final UsageDTO usage = usageService.getXDaysUsageForUser(userId, days);
-        return ResponseEntity.ok(usage);
+        final CachedUsage usage = usageResultCache.getXDaysUsageForUser(userId, days);
+
+        // Spring answers with 304 Not Modified when the request's If-None-Match matches the ETag
+        return ResponseEntity.ok()
+                .eTag(usage.getEtag())
+                .cacheControl(CacheControl.maxAge(usageResultCache.timeToLive(usage)).mustRevalidate())
+                .body(usage.getUsage());
+    }
+
+    @GetMapping("/{userId}/breakdown")
+    public ResponseEntity<UsageBreakdownDTO> getUserUsageBreakdown(@PathVariable Long userId,
+                                                                   @RequestParam(defaultValue = "3") int days,
+                                                                   @RequestParam(defaultValue = "5") int top) {
+        return ResponseEntity.ok(usageBreakdownService.getBreakdown(userId, days, top));
+    }
+
+    @GetMapping("/{userId}/compare")
+    public ResponseEntity<UsageComparisonDTO> compareUserUsage(@PathVariable Long userId, @RequestParam(defaultValue = "7") int days) {
+        return ResponseEntity.ok(usageComparisonService.compare(userId, days));
+    }
+
+    @PostMapping("/bulk")
+    public ResponseEntity<StreamingResponseBody> getBulkUsage(@RequestBody List<Long> userIds,
+                                                              @RequestParam(defaultValue = "3") int days) {
+        // Validate before the response is committed, so bad requests still get a 400
+        final List<Long> validatedUserIds = usageBulkService.prepareBulk(userIds, days);
+
+        // One UsageDTO per line, flushed batch by batch
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(outputStream -> usageBulkService.writeBulkUsage(validatedUserIds, days, outputStream));
+    }
+
+    @GetMapping("/{userId}/series")
+    public ResponseEntity<StreamingResponseBody> getUserDeviceUsageSeries(@PathVariable Long userId,
+                                                                          @RequestParam Instant from,
+                                                                          @RequestParam(required = false) Instant to,
+                                                                          @RequestParam(required = false) String step) {
+        // Validate before the response is committed, so bad requests still get a 400
+        final UsageSeriesRequest request = usageSeriesService.prepareSeries(userId, from, to, step);
+
+        // The body is written on an async thread while the query result streams in from InfluxDB
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(outputStream -> usageSeriesService.writeSeries(request, outputStream));
+    }
+
+    @GetMapping("/{userId}/export")
+    public ResponseEntity<StreamingResponseBody> exportUserDeviceUsage(@PathVariable Long userId,
+                                                                       @RequestParam Instant from,
+                                                                       @RequestParam(required = false) Instant to,
+                                                                       @RequestParam(required = false) String step,
+                                                                       @RequestParam(required = false) String format,
+                                                                       @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        // Validate before the response is committed, so bad requests still get a 400
+        final UsageExportRequest request = usageExportService.prepareExport(userId, from, to, step, format, acceptEncoding);
+
+        // No Content-Length: the rows are sent chunked as they stream in from InfluxDB
+        final ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(request.getFormat() == ExportFormat.CSV ? new MediaType("text", "csv") : MediaType.APPLICATION_NDJSON)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (request.isGzip()) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(outputStream -> usageExportService.writeExport(request, outputStream));
+    }
+
+    @GetMapping("/{userId}/cost")
+    public ResponseEntity<UsageCostDTO> getUserCurrentCost(@PathVariable Long userId) {
+        return ResponseEntity.ok(usageCostService.getCurrentCost(userId));
+    }
+
+    @GetMapping("/{userId}/percentile")
+    public ResponseEntity<UsagePercentileDTO> getUserUsagePercentile(@PathVariable Long userId) {
+        return ResponseEntity.ok(usagePercentileService.getPercentile(userId));
     }
 }
@@ -0,0 +1,37 @@
+package com.neeraj.usageservice.controller;
+
+import com.neeraj.usageservice.dto.AggregationStatsDTO;
+import com.neeraj.usageservice.dto.DeviceDirectoryStatsDTO;
+import com.neeraj.usageservice.dto.HotSeriesStatsDTO;
+import com.neeraj.usageservice.service.AggregationScheduler;
+import com.neeraj.usageservice.service.DeviceDirectory;
+import com.neeraj.usageservice.service.HotSeriesStore;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/v1/usage-stats")
+@RequiredArgsConstructor
+public class UsageStatsController {
+    private final HotSeriesStore hotSeriesStore;
+    private final DeviceDirectory deviceDirectory;
+    private final AggregationScheduler aggregationScheduler;
+
+    @GetMapping("/hot-series")
+    public ResponseEntity<HotSeriesStatsDTO> getHotSeriesStats() {
+        return ResponseEntity.ok(hotSeriesStore.stats());
+    }
+
+    @GetMapping("/device-directory")
+    public ResponseEntity<DeviceDirectoryStatsDTO> getDeviceDirectoryStats() {
+        return ResponseEntity.ok(deviceDirectory.stats());
+    }
+
+    @GetMapping("/aggregation")
+    public ResponseEntity<AggregationStatsDTO> getAggregationStats() {
+        return ResponseEntity.ok(aggregationScheduler.stats());
+    }
+}
@@ -0,0 +1,22 @@
+package com.neeraj.usageservice.dto;
+
+import lombok.Builder;
+
+import java.time.Duration;
+import java.time.Instant;
+
+@Builder
+public record AggregationStatsDTO(
+        boolean enabled,
+        Duration interval,
+        long cycles,
+        long overruns,
+        long skippedTicks,
+        long failures,
+        long lastDurationMillis,
+        double averageDurationMillis,
+        long maxDurationMillis,
+        long lastLagMillis,
+        Instant lastStartedAt
+) {
+}
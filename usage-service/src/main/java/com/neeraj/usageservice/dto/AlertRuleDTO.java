@@ -0,0 +1,16 @@
+package com.neeraj.usageservice.dto;
+
+import com.neeraj.usageservice.model.AlertRuleScope;
+import lombok.Builder;
+
+@Builder
+public record AlertRuleDTO(
+        Long id,
+        Long userId,
+        AlertRuleScope scope,
+        String target,
+        Integer windowMinutes,
+        Double threshold,
+        Boolean enabled
+) {
+}
@@ -0,0 +1,17 @@
+package com.neeraj.usageservice.dto;
+
+import lombok.Builder;
+
+@Builder
+public record DeviceComparisonDTO(
+        Long id,
+        String name,
+        String type,
+        String location,
+        Double currentEnergyConsumed,
+        Double previousEnergyConsumed,
+        Double delta,
+        // Change relative to the previous period in percent, null if the previous period had no usage
+        Double deltaPercent
+) {
+}
@@ -0,0 +1,13 @@
+package com.neeraj.usageservice.dto;
+
+import lombok.Builder;
+
+@Builder
+public record DeviceDirectoryStatsDTO(
+        int cachedDevices,
+        int missingDevices,
+        long remoteLookups,
+        long skippedLookups,
+        long failedLookups
+) {
+}
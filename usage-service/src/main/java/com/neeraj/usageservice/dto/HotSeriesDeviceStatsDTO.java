@@ -0,0 +1,19 @@
+package com.neeraj.usageservice.dto;
+
+import lombok.Builder;
+
+import java.time.Instant;
+
+@Builder
+public record HotSeriesDeviceStatsDTO(
+        Long deviceId,
+        Long userId,
+        long points,
+        int blocks,
+        long bytes,
+        double bytesPerPoint,
+        Instant oldest,
+        Instant newest,
+        Instant completeSince
+) {
+}
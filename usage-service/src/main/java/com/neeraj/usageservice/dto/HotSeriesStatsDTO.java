@@ -0,0 +1,16 @@
+package com.neeraj.usageservice.dto;
+
+import lombok.Builder;
+
+import java.util.List;
+
+@Builder
+public record HotSeriesStatsDTO(
+        boolean enabled,
+        long usedBytes,
+        long maxBytes,
+        long points,
+        long evictedBlocks,
+        List<HotSeriesDeviceStatsDTO> devices
+) {
+}
@@ -0,0 +1,13 @@
+package com.neeraj.usageservice.dto;
+
+import lombok.Builder;
+
+import java.time.Instant;
+
+@Builder
+public record PeriodCostDTO(
+        Instant start,
+        Double energyUsage,
+        Double cost
+) {
+}
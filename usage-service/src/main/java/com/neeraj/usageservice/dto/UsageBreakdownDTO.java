@@ -0,0 +1,17 @@
+package com.neeraj.usageservice.dto;
+
+import lombok.Builder;
+
+import java.util.List;
+
+@Builder
+public record UsageBreakdownDTO(
+        Long userId,
+        Integer days,
+        Double totalEnergyConsumed,
+        Integer deviceCount,
+        List<UsageGroupDTO> byType,
+        List<UsageGroupDTO> byLocation,
+        List<DeviceDTO> topDevices
+) {
+}
@@ -0,0 +1,21 @@
+package com.neeraj.usageservice.dto;
+
+import lombok.Builder;
+
+import java.time.Instant;
+import java.util.List;
+
+@Builder
+public record UsageComparisonDTO(
+        Long userId,
+        Integer days,
+        Instant previousStart,
+        Instant currentStart,
+        Instant currentStop,
+        Double currentEnergyConsumed,
+        Double previousEnergyConsumed,
+        Double delta,
+        Double deltaPercent,
+        List<DeviceComparisonDTO> devices
+) {
+}
@@ -0,0 +1,16 @@
+package com.neeraj.usageservice.dto;
+
+import lombok.Builder;
+
+@Builder
+public record UsageCostDTO(
+        Long userId,
+        String tariffPlan,
+        String currency,
+        String timezone,
+        PeriodCostDTO day,
+        PeriodCostDTO month,
+        // false if the usage from before tracking began could not be read yet
+        boolean complete
+) {
+}
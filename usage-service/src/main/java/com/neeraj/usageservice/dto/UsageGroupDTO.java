@@ -0,0 +1,13 @@
+package com.neeraj.usageservice.dto;
+
+import lombok.Builder;
+
+@Builder
+public record UsageGroupDTO(
+        String key,
+        Double energyConsumed,
+        Integer deviceCount,
+        // Share of the total usage (0-100)
+        Double share
+) {
+}
@@ -0,0 +1,18 @@
+package com.neeraj.usageservice.dto;
+
+import lombok.Builder;
+
+import java.time.LocalDate;
+
+@Builder
+public record UsagePercentileDTO(
+        Long userId,
+        LocalDate day,
+        Double dailyUsage,
+        String segment,
+        // Share of the segment's daily totals below the user's (0-100)
+        Double percentile,
+        // Daily totals the user was ranked against; a home is counted once per retained day
+        Long userDays
+) {
+}
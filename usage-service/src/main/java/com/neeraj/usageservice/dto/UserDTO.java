@@ -11,5 +11,9 @@ public record UserDTO (
     String email,
     String address,
     Boolean alertEnabled,
-    Double energyAlertThreshold
+    Double energyAlertThreshold,
+    Double dailyBudget,
+    Double monthlyBudget,
+    String timezone,
+    String tariffPlan
 ) {}
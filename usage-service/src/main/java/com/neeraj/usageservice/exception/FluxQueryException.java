@@ -0,0 +1,11 @@
+package com.neeraj.usageservice.exception;
+
+public class FluxQueryException extends RuntimeException {
+    public FluxQueryException(String message) {
+        super(message);
+    }
+
+    public FluxQueryException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,7 @@
+package com.neeraj.usageservice.exception;
+
+public class InvalidUsageQueryException extends RuntimeException {
+    public InvalidUsageQueryException(String message) {
+        super(message);
+    }
+}
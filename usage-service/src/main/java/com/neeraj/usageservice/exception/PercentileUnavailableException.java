@@ -0,0 +1,7 @@
+package com.neeraj.usageservice.exception;
+
+public class PercentileUnavailableException extends RuntimeException {
+    public PercentileUnavailableException(String message) {
+        super(message);
+    }
+}
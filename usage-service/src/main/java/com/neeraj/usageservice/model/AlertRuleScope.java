@@ -0,0 +1,12 @@
+package com.neeraj.usageservice.model;
+
+/**
+ * What an alert rule limits: a single device, all devices of a type, all devices in a location,
+ * or all devices of the user.
+ */
+public enum AlertRuleScope {
+    DEVICE,
+    DEVICE_TYPE,
+    LOCATION,
+    USER
+}
@@ -0,0 +1,11 @@
+package com.neeraj.usageservice.model;
+
+/**
+ * Kinds of unusual device behaviour detected by the anomaly detector.
+ */
+public enum AnomalyType {
+    // A single reading far above the device's baseline (e.g. a faulty meter)
+    SPIKE,
+    // Readings staying well above the baseline for a long time (e.g. a stuck-on appliance)
+    SUSTAINED
+}
@@ -0,0 +1,24 @@
+package com.neeraj.usageservice.model;
+
+import com.neeraj.usageservice.dto.UsageDTO;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.Map;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class CachedUsage {
+    private UsageDTO usage;
+    private Map<Long, Double> deviceEnergy;
+    private Instant windowStart;
+    private Instant windowEnd;
+    private int incrementalRefreshes;
+    private String etag;
+    private volatile Instant lastAccessed;
+}
@@ -0,0 +1,378 @@
+package com.neeraj.usageservice.model;
+
+import lombok.Getter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A read-only, memory-mapped file holding one UTC day of energy usage points, one columnar block
+ * per (device, owner) series. Layout:
+ * <pre>
+ * header   magic (int) | version (int) | day start, epoch ms (long)
+ * blocks   deflate(count (varint) | timestamps as zigzag varint deltas | values XOR previous, 8 bytes each)
+ * footer   one fixed-size index entry per block: device, owner, count, min/max time, sum, offset, lengths
+ * trailer  entry count (int) | footer offset (long) | magic (int)
+ * </pre>
+ * The footer is read once when the file is opened; a block is only inflated when a query covers
+ * part of its day, since whole-day queries use the per-block sum from the index. The mapping is
+ * reference counted: {@link #open(Path)} holds the first reference, readers {@link #retain()} and
+ * {@link #release()} one around each use, and the file is unmapped once the last one is released.
+ */
+public final class ColdSegment implements Closeable {
+
+    public static final long NO_USER = -1L;
+
+    private static final int MAGIC = 0x55435331; // "UCS1"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    private static final int ENTRY_BYTES = 60;
+    private static final int TRAILER_BYTES = 16;
+
+    @Getter
+    private final LocalDate day;
+
+    @Getter
+    private final long sizeInBytes;
+
+    @Getter
+    private final List<ColdSeriesEntry> entries;
+
+    private final Arena arena;
+    private final ByteBuffer buffer;
+    private final Map<Long, List<ColdSeriesEntry>> entriesByDevice = new HashMap<>();
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    private ColdSegment(LocalDate day, Arena arena, ByteBuffer buffer, List<ColdSeriesEntry> entries) {
+        this.day = day;
+        this.arena = arena;
+        this.buffer = buffer;
+        this.sizeInBytes = buffer.capacity();
+        this.entries = entries;
+        entries.forEach(entry -> entriesByDevice.computeIfAbsent(entry.getDeviceId(), id -> new ArrayList<>()).add(entry));
+    }
+
+    /**
+     * Maps a segment file and reads its footer index.
+     *
+     * @param path The segment file
+     * @return The opened segment
+     * @throws IOException if the file cannot be read or is not a valid segment
+     */
+    public static ColdSegment open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES + TRAILER_BYTES || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Invalid cold segment size: " + path);
+            }
+
+            // The mapping stays valid after the channel is closed, until the arena is closed
+            final Arena arena = Arena.ofShared();
+            try {
+                final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena).asByteBuffer();
+                return read(path, arena, buffer);
+            } catch (IOException | RuntimeException e) {
+                arena.close();
+                throw e;
+            }
+        }
+    }
+
+    private static ColdSegment read(Path path, Arena arena, ByteBuffer buffer) throws IOException {
+        final int trailer = buffer.capacity() - TRAILER_BYTES;
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(trailer + 12) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a cold segment file: " + path);
+        }
+
+        final LocalDate day = LocalDate.ofEpochDay(Math.floorDiv(buffer.getLong(8), 86_400_000L));
+        final int entryCount = buffer.getInt(trailer);
+        int position = (int) buffer.getLong(trailer + 4);
+
+        final List<ColdSeriesEntry> entries = new ArrayList<>(entryCount);
+        for (int i = 0; i < entryCount; i++, position += ENTRY_BYTES) {
+            entries.add(ColdSeriesEntry.builder()
+                    .deviceId(buffer.getLong(position))
+                    .userId(buffer.getLong(position + 8))
+                    .count(buffer.getInt(position + 16))
+                    .minTime(buffer.getLong(position + 20))
+                    .maxTime(buffer.getLong(position + 28))
+                    .sum(buffer.getDouble(position + 36))
+                    .offset(buffer.getLong(position + 44))
+                    .length(buffer.getInt(position + 52))
+                    .rawLength(buffer.getInt(position + 56))
+                    .build());
+        }
+        return new ColdSegment(day, arena, buffer, entries);
+    }
+
+    /**
+     * Takes a reference, keeping the file mapped until it is released.
+     */
+    public void retain() {
+        if (references.getAndIncrement() <= 0) {
+            references.decrementAndGet();
+            throw new IllegalStateException("Cold segment " + day + " is already unmapped");
+        }
+    }
+
+    /**
+     * Releases a reference, unmapping the file once none is left.
+     */
+    public void release() {
+        if (references.decrementAndGet() == 0) {
+            arena.close();
+        }
+    }
+
+    /**
+     * Releases the reference taken by {@link #open(Path)}.
+     */
+    @Override
+    public void close() {
+        release();
+    }
+
+    /**
+     * @return The index entries of a device's series in this segment (empty if it has none)
+     */
+    public List<ColdSeriesEntry> entriesFor(Long deviceId) {
+        return entriesByDevice.getOrDefault(deviceId, List.of());
+    }
+
+    /**
+     * Inflates and decodes the points of one series. Safe to call from several threads.
+     *
+     * @param entry    Index entry of the series
+     * @param consumer Receiver of the points
+     */
+    public void forEachPoint(ColdSeriesEntry entry, PointConsumer consumer) {
+        final byte[] raw = new byte[entry.getRawLength()];
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(buffer.slice((int) entry.getOffset(), entry.getLength()));
+            if (inflater.inflate(raw) != raw.length) {
+                throw new IllegalStateException("Truncated block in cold segment " + day);
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt block in cold segment " + day, e);
+        } finally {
+            inflater.end();
+        }
+
+        final ByteBuffer in = ByteBuffer.wrap(raw);
+        final int count = (int) readVarLong(in);
+        final long[] times = new long[count];
+        long time = day.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+        for (int i = 0; i < count; i++) {
+            final long zigzag = readVarLong(in);
+            time += (zigzag >>> 1) ^ -(zigzag & 1);
+            times[i] = time;
+        }
+
+        long valueBits = 0;
+        for (int i = 0; i < count; i++) {
+            valueBits ^= in.getLong();
+            consumer.accept(times[i], Double.longBitsToDouble(valueBits));
+        }
+    }
+
+    private static long readVarLong(ByteBuffer in) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    /**
+     * Writes a segment file series by series. Points of a series must be appended contiguously;
+     * the file is written to a temporary path and only moved into place by {@link #commit()}.
+     */
+    public static final class Writer implements Closeable {
+
+        private final Path target;
+        private final Path temp;
+        private final FileChannel channel;
+        private final long dayStart;
+        private final List<ColdSeriesEntry> entries = new ArrayList<>();
+        private final Deflater deflater = new Deflater();
+        private boolean committed;
+
+        private long deviceId;
+        private long userId;
+        private long[] times = new long[1024];
+        private double[] values = new double[1024];
+        private int count;
+
+        private Writer(Path target, LocalDate day) throws IOException {
+            this.target = target;
+            this.temp = target.resolveSibling(target.getFileName() + ".tmp");
+            this.dayStart = day.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+            this.channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE);
+
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putInt(VERSION).putLong(dayStart).flip();
+            write(header);
+        }
+
+        public static Writer create(Path target, LocalDate day) throws IOException {
+            Files.createDirectories(target.getParent());
+            return new Writer(target, day);
+        }
+
+        /**
+         * Appends a point to the current series, closing it first if the point belongs to another series.
+         */
+        public void append(long deviceId, long userId, long time, double value) throws IOException {
+            if (count > 0 && (deviceId != this.deviceId || userId != this.userId)) {
+                flushSeries();
+            }
+
+            this.deviceId = deviceId;
+            this.userId = userId;
+            if (count == times.length) {
+                times = Arrays.copyOf(times, count * 2);
+                values = Arrays.copyOf(values, count * 2);
+            }
+            times[count] = time;
+            values[count] = value;
+            count++;
+        }
+
+        /**
+         * Writes the footer and atomically moves the finished file into place.
+         */
+        public void commit() throws IOException {
+            flushSeries();
+
+            final long footerOffset = channel.position();
+            final ByteBuffer footer = ByteBuffer.allocate(entries.size() * ENTRY_BYTES + TRAILER_BYTES);
+            for (ColdSeriesEntry entry : entries) {
+                footer.putLong(entry.getDeviceId())
+                        .putLong(entry.getUserId())
+                        .putInt(entry.getCount())
+                        .putLong(entry.getMinTime())
+                        .putLong(entry.getMaxTime())
+                        .putDouble(entry.getSum())
+                        .putLong(entry.getOffset())
+                        .putInt(entry.getLength())
+                        .putInt(entry.getRawLength());
+            }
+            footer.putInt(entries.size()).putLong(footerOffset).putInt(MAGIC).flip();
+            write(footer);
+
+            channel.force(true);
+            channel.close();
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            committed = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            deflater.end();
+            if (!committed) {
+                channel.close();
+                Files.deleteIfExists(temp);
+            }
+        }
+
+        private void flushSeries() throws IOException {
+            if (count == 0) {
+                return;
+            }
+
+            // Timestamps and values are stored as separate columns, which compress better than rows
+            final ByteArrayOutputStream raw = new ByteArrayOutputStream(count * 10);
+            writeVarLong(raw, count);
+            long previousTime = dayStart;
+            long minTime = Long.MAX_VALUE;
+            long maxTime = Long.MIN_VALUE;
+            for (int i = 0; i < count; i++) {
+                final long delta = times[i] - previousTime;
+                writeVarLong(raw, (delta << 1) ^ (delta >> 63));
+                previousTime = times[i];
+                minTime = Math.min(minTime, times[i]);
+                maxTime = Math.max(maxTime, times[i]);
+            }
+
+            double sum = 0.0;
+            long previousBits = 0;
+            final ByteBuffer valueBytes = ByteBuffer.allocate(count * 8);
+            for (int i = 0; i < count; i++) {
+                final long bits = Double.doubleToRawLongBits(values[i]);
+                valueBytes.putLong(bits ^ previousBits);
+                previousBits = bits;
+                sum += values[i];
+            }
+            raw.write(valueBytes.array(), 0, valueBytes.position());
+
+            final byte[] uncompressed = raw.toByteArray();
+            final byte[] compressed = deflate(uncompressed);
+            final long offset = channel.position();
+            write(ByteBuffer.wrap(compressed));
+
+            entries.add(ColdSeriesEntry.builder()
+                    .deviceId(deviceId)
+                    .userId(userId)
+                    .count(count)
+                    .minTime(minTime)
+                    .maxTime(maxTime)
+                    .sum(sum)
+                    .offset(offset)
+                    .length(compressed.length)
+                    .rawLength(uncompressed.length)
+                    .build());
+            count = 0;
+        }
+
+        private byte[] deflate(byte[] uncompressed) {
+            deflater.reset();
+            deflater.setInput(uncompressed);
+            deflater.finish();
+
+            final ByteArrayOutputStream compressed = new ByteArrayOutputStream(uncompressed.length / 4 + 64);
+            final byte[] chunk = new byte[8192];
+            while (!deflater.finished()) {
+                compressed.write(chunk, 0, deflater.deflate(chunk));
+            }
+            return compressed.toByteArray();
+        }
+
+        private void write(ByteBuffer bytes) throws IOException {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        }
+
+        private static void writeVarLong(ByteArrayOutputStream out, long value) {
+            while ((value & ~0x7FL) != 0) {
+                out.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.write((int) value);
+        }
+    }
+}
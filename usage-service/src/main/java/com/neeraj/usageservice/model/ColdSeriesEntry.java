@@ -0,0 +1,23 @@
+package com.neeraj.usageservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class ColdSeriesEntry {
+    private long deviceId;
+    // Owner the points were tagged with, or ColdSegment.NO_USER for untagged points
+    private long userId;
+    private int count;
+    private long minTime;
+    private long maxTime;
+    private double sum;
+    private long offset;
+    private int length;
+    private int rawLength;
+}
@@ -0,0 +1,203 @@
+package com.neeraj.usageservice.model;
+
+import lombok.Getter;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * The recent energy usage points of one device, held as a chain of compressed blocks that each
+ * cover a fixed slice of time (by arrival), so old data can be dropped a whole block at a time.
+ * Tracks the time from which the series is known to hold every point of the device.
+ */
+public class CompressedSeries {
+
+    @Getter
+    private final Long deviceId;
+
+    // Owner the points were recorded for (null while the device is unknown)
+    @Getter
+    private final Long userId;
+
+    private final long blockMillis;
+    private final Deque<GorillaBlock> blocks = new ArrayDeque<>();
+    private long activeBlockEnd = Long.MIN_VALUE;
+    private long sizeInBytes;
+
+    // Every point with a timestamp at or after this (epoch ms) is held by the series
+    @Getter
+    private volatile long completeSince;
+
+    public CompressedSeries(Long deviceId, Long userId, long blockMillis, long completeSince) {
+        this.deviceId = deviceId;
+        this.userId = userId;
+        this.blockMillis = blockMillis;
+        this.completeSince = completeSince;
+    }
+
+    /**
+     * Appends a point, starting a new block when the point falls past the end of the active one.
+     *
+     * @return Change of the series size in bytes
+     */
+    public synchronized long append(long time, double value) {
+        final long sizeBefore = sizeInBytes;
+
+        GorillaBlock active = blocks.peekLast();
+        if (active == null || time >= activeBlockEnd) {
+            if (active != null) {
+                sizeInBytes -= active.sizeInBytes();
+                active.seal();
+                sizeInBytes += active.sizeInBytes();
+            }
+            active = new GorillaBlock();
+            blocks.addLast(active);
+            sizeInBytes += active.sizeInBytes();
+            activeBlockEnd = time - Math.floorMod(time, blockMillis) + blockMillis;
+        }
+
+        sizeInBytes -= active.sizeInBytes();
+        active.append(time, value);
+        sizeInBytes += active.sizeInBytes();
+        return sizeInBytes - sizeBefore;
+    }
+
+    /**
+     * Sums the values with a timestamp in [start, stop). Blocks entirely inside the range
+     * contribute their precomputed sum; only blocks straddling a bound are decoded.
+     */
+    public synchronized double sum(long start, long stop) {
+        double total = 0.0;
+        for (GorillaBlock block : blocks) {
+            if (block.getMaxTime() < start || block.getMinTime() >= stop) {
+                continue;
+            }
+            if (block.getMinTime() >= start && block.getMaxTime() < stop) {
+                total += block.getSum();
+                continue;
+            }
+
+            final double[] partial = {0.0};
+            block.forEach((time, value) -> {
+                if (time >= start && time < stop) {
+                    partial[0] += value;
+                }
+            });
+            total += partial[0];
+        }
+        return total;
+    }
+
+    /**
+     * Drops the blocks whose newest point is older than the cutoff.
+     *
+     * @return Number of bytes freed
+     */
+    public synchronized long evictBefore(long cutoff) {
+        long freed = 0;
+        while (!blocks.isEmpty() && blocks.peekFirst().getMaxTime() < cutoff) {
+            freed += dropOldest();
+        }
+        return freed;
+    }
+
+    /**
+     * Drops the oldest block, e.g. to stay within the memory budget.
+     *
+     * @return Number of bytes freed
+     */
+    public synchronized long evictOldest() {
+        return blocks.isEmpty() ? 0 : dropOldest();
+    }
+
+    /**
+     * @return The time of the newest point of the oldest block, or Long.MAX_VALUE if the series is empty
+     */
+    public synchronized long oldestBlockMaxTime() {
+        return blocks.isEmpty() ? Long.MAX_VALUE : blocks.peekFirst().getMaxTime();
+    }
+
+    public synchronized boolean isEmpty() {
+        return blocks.isEmpty();
+    }
+
+    public synchronized long sizeInBytes() {
+        return sizeInBytes;
+    }
+
+    public synchronized int blockCount() {
+        return blocks.size();
+    }
+
+    public synchronized long pointCount() {
+        long points = 0;
+        for (GorillaBlock block : blocks) {
+            points += block.getCount();
+        }
+        return points;
+    }
+
+    public synchronized long minTime() {
+        long min = Long.MAX_VALUE;
+        for (GorillaBlock block : blocks) {
+            min = Math.min(min, block.getMinTime());
+        }
+        return min;
+    }
+
+    public synchronized long maxTime() {
+        long max = Long.MIN_VALUE;
+        for (GorillaBlock block : blocks) {
+            max = Math.max(max, block.getMaxTime());
+        }
+        return max;
+    }
+
+    /**
+     * Serializes the series and all of its blocks.
+     */
+    public synchronized void writeTo(DataOutput out) throws IOException {
+        out.writeLong(deviceId);
+        out.writeLong(userId == null ? -1L : userId);
+        out.writeLong(blockMillis);
+        out.writeLong(completeSince);
+        out.writeLong(activeBlockEnd);
+        out.writeInt(blocks.size());
+        for (GorillaBlock block : blocks) {
+            block.writeTo(out);
+        }
+    }
+
+    /**
+     * Reads a series written by {@link #writeTo(DataOutput)}.
+     */
+    public static CompressedSeries readFrom(ByteBuffer in) {
+        final long deviceId = in.getLong();
+        final long userId = in.getLong();
+        final CompressedSeries series = new CompressedSeries(deviceId, userId < 0 ? null : userId, in.getLong(), in.getLong());
+        series.activeBlockEnd = in.getLong();
+
+        final int blockCount = in.getInt();
+        for (int i = 0; i < blockCount; i++) {
+            final GorillaBlock block = GorillaBlock.readFrom(in);
+            series.blocks.addLast(block);
+            series.sizeInBytes += block.sizeInBytes();
+        }
+        return series;
+    }
+
+    private long dropOldest() {
+        final GorillaBlock oldest = blocks.pollFirst();
+        final long freed = oldest.sizeInBytes();
+        sizeInBytes -= freed;
+
+        // Points up to the dropped block's newest timestamp may be gone now
+        if (oldest.getCount() > 0) {
+            completeSince = Math.max(completeSince, oldest.getMaxTime() + 1);
+        }
+        return freed;
+    }
+}
@@ -0,0 +1,21 @@
+package com.neeraj.usageservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class DailyUsage {
+    private Long userId;
+    // The day (UTC)
+    private LocalDate day;
+    private double energyUsage;
+    // Device types that reported usage during the day (see DeviceTypeMix)
+    private int deviceTypes;
+}
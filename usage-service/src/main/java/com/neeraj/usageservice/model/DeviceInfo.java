@@ -0,0 +1,21 @@
+package com.neeraj.usageservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class DeviceInfo {
+    private Long id;
+    private String name;
+    private String type;
+    private String location;
+    private Long userId;
+    private Instant resolvedAt;
+}
@@ -0,0 +1,9 @@
+package com.neeraj.usageservice.model;
+
+/**
+ * Receives the points of several devices' series.
+ */
+@FunctionalInterface
+public interface DevicePointConsumer {
+    void accept(long deviceId, long time, double value);
+}
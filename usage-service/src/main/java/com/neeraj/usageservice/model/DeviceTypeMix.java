@@ -0,0 +1,57 @@
+package com.neeraj.usageservice.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Encodes sets of device types as bit masks, one bit per type known to device-service
+ * (unknown types count as OTHER), so a user's device-type mix fits in an int.
+ */
+public final class DeviceTypeMix {
+
+    // Mirrors device-service's DeviceType; the order defines the bits and must only ever be appended to
+    private static final List<String> TYPES = List.of(
+            "PHONE", "LAPTOP", "TABLET", "SPEAKER", "HEADPHONES", "CAMERA", "TELEVISION",
+            "GAMING_CONSOLE", "AIR_CONDITIONER", "REFRIGERATOR", "MICROWAVE", "THERMOSTAT", "OTHER");
+
+    private static final int OTHER = TYPES.indexOf("OTHER");
+
+    private DeviceTypeMix() {
+    }
+
+    /**
+     * @return The bit of a device type, or 0 for a null type
+     */
+    public static int bitOf(String type) {
+        if (type == null) {
+            return 0;
+        }
+        final int index = TYPES.indexOf(type.trim().toUpperCase(Locale.ROOT));
+        return 1 << (index < 0 ? OTHER : index);
+    }
+
+    /**
+     * @return The mask of the given device types
+     */
+    public static int maskOf(List<String> types) {
+        int mask = 0;
+        for (String type : types) {
+            mask |= bitOf(type);
+        }
+        return mask;
+    }
+
+    /**
+     * @return The device types in a mask, in bit order
+     */
+    public static List<String> typesOf(int mask) {
+        final List<String> types = new ArrayList<>();
+        for (int bit = 0; bit < TYPES.size(); bit++) {
+            if ((mask & (1 << bit)) != 0) {
+                types.add(TYPES.get(bit));
+            }
+        }
+        return types;
+    }
+}
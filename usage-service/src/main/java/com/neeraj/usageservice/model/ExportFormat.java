@@ -0,0 +1,11 @@
+package com.neeraj.usageservice.model;
+
+/**
+ * Row formats of the usage export.
+ */
+public enum ExportFormat {
+    // One "deviceId,time,energyUsage" line per reading, with a header line
+    CSV,
+    // One {"deviceId":..,"time":..,"energyUsage":..} object per line
+    NDJSON
+}
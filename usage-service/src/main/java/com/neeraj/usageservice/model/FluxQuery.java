@@ -0,0 +1,18 @@
+package com.neeraj.usageservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class FluxQuery {
+    // Flux script referencing its values only through the "params" record
+    private String flux;
+    private Map<String, Object> params;
+}
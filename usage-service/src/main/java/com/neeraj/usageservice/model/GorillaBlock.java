@@ -0,0 +1,285 @@
+package com.neeraj.usageservice.model;
+
+import lombok.Getter;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * An append-only block of (timestamp, value) points compressed with the Gorilla encoding:
+ * timestamps are stored as zigzag-encoded deltas-of-deltas (a regular reporting interval costs one bit
+ * per point, and out-of-order points still encode), values as the XOR with the previous value,
+ * reusing the previous window of meaningful bits when possible.
+ * Not thread safe - access is guarded by the owning {@link CompressedSeries}.
+ */
+public class GorillaBlock {
+
+    // Approximate fixed cost of a block (object header, fields, array header)
+    private static final long OVERHEAD_BYTES = 96;
+
+    private long[] words = new long[8];
+    private int bitCount;
+
+    @Getter
+    private int count;
+
+    @Getter
+    private long minTime = Long.MAX_VALUE;
+
+    @Getter
+    private long maxTime = Long.MIN_VALUE;
+
+    // Sum of all values, so blocks fully inside a queried range are never decoded
+    @Getter
+    private double sum;
+
+    @Getter
+    private boolean sealed;
+
+    private long previousTime;
+    private long previousDelta;
+    private long previousValueBits;
+    private int previousLeading = -1;
+    private int previousTrailing;
+
+    /**
+     * Appends a point to the block.
+     *
+     * @param time  Epoch milliseconds
+     * @param value The value
+     */
+    public void append(long time, double value) {
+        if (sealed) {
+            throw new IllegalStateException("Cannot append to a sealed block");
+        }
+
+        final long valueBits = Double.doubleToRawLongBits(value);
+        if (count == 0) {
+            writeBits(time, 64);
+            writeBits(valueBits, 64);
+        } else {
+            final long delta = time - previousTime;
+            writeDeltaOfDelta(delta - previousDelta);
+            writeValue(valueBits ^ previousValueBits);
+            previousDelta = delta;
+        }
+
+        previousTime = time;
+        previousValueBits = valueBits;
+        count++;
+        minTime = Math.min(minTime, time);
+        maxTime = Math.max(maxTime, time);
+        sum += value;
+    }
+
+    /**
+     * Decodes every point of the block in append order.
+     *
+     * @param consumer Receiver of the points
+     */
+    public void forEach(PointConsumer consumer) {
+        if (count == 0) {
+            return;
+        }
+
+        final BitReader reader = new BitReader();
+        long time = reader.read(64);
+        long valueBits = reader.read(64);
+        consumer.accept(time, Double.longBitsToDouble(valueBits));
+
+        long delta = 0;
+        int leading = 0;
+        int trailing = 0;
+        for (int i = 1; i < count; i++) {
+            delta += readDeltaOfDelta(reader);
+            time += delta;
+
+            if (reader.read(1) == 1) {
+                // '11' starts a new window of meaningful bits, '10' reuses the previous one
+                if (reader.read(1) == 1) {
+                    leading = (int) reader.read(5);
+                    final int significant = (int) reader.read(6) + 1;
+                    trailing = 64 - leading - significant;
+                }
+                valueBits ^= reader.read(64 - leading - trailing) << trailing;
+            }
+            consumer.accept(time, Double.longBitsToDouble(valueBits));
+        }
+    }
+
+    /**
+     * Releases the unused capacity of the block; no more points can be appended afterwards.
+     */
+    public void seal() {
+        words = Arrays.copyOf(words, (bitCount + 63) >>> 6);
+        sealed = true;
+    }
+
+    /**
+     * Serializes the block, including the encoder state needed to keep appending to it.
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(bitCount);
+        out.writeInt(count);
+        out.writeLong(minTime);
+        out.writeLong(maxTime);
+        out.writeDouble(sum);
+        out.writeBoolean(sealed);
+        out.writeLong(previousTime);
+        out.writeLong(previousDelta);
+        out.writeLong(previousValueBits);
+        out.writeInt(previousLeading);
+        out.writeInt(previousTrailing);
+
+        final int usedWords = (bitCount + 63) >>> 6;
+        out.writeInt(usedWords);
+        for (int i = 0; i < usedWords; i++) {
+            out.writeLong(words[i]);
+        }
+    }
+
+    /**
+     * Reads a block written by {@link #writeTo(DataOutput)}.
+     */
+    public static GorillaBlock readFrom(ByteBuffer in) {
+        final GorillaBlock block = new GorillaBlock();
+        block.bitCount = in.getInt();
+        block.count = in.getInt();
+        block.minTime = in.getLong();
+        block.maxTime = in.getLong();
+        block.sum = in.getDouble();
+        block.sealed = in.get() != 0;
+        block.previousTime = in.getLong();
+        block.previousDelta = in.getLong();
+        block.previousValueBits = in.getLong();
+        block.previousLeading = in.getInt();
+        block.previousTrailing = in.getInt();
+
+        final int usedWords = in.getInt();
+        // Active blocks get spare capacity back for further appends
+        block.words = new long[block.sealed ? usedWords : Math.max(8, usedWords * 2)];
+        for (int i = 0; i < usedWords; i++) {
+            block.words[i] = in.getLong();
+        }
+        return block;
+    }
+
+    public long sizeInBytes() {
+        return OVERHEAD_BYTES + words.length * 8L;
+    }
+
+    private void writeDeltaOfDelta(long deltaOfDelta) {
+        final long zigzag = (deltaOfDelta << 1) ^ (deltaOfDelta >> 63);
+        if (zigzag == 0) {
+            writeBits(0b0, 1);
+        } else if (Long.compareUnsigned(zigzag, 1L << 7) < 0) {
+            writeBits(0b10, 2);
+            writeBits(zigzag, 7);
+        } else if (Long.compareUnsigned(zigzag, 1L << 9) < 0) {
+            writeBits(0b110, 3);
+            writeBits(zigzag, 9);
+        } else if (Long.compareUnsigned(zigzag, 1L << 12) < 0) {
+            writeBits(0b1110, 4);
+            writeBits(zigzag, 12);
+        } else if (Long.compareUnsigned(zigzag, 1L << 32) < 0) {
+            writeBits(0b11110, 5);
+            writeBits(zigzag, 32);
+        } else {
+            writeBits(0b11111, 5);
+            writeBits(zigzag, 64);
+        }
+    }
+
+    private static long readDeltaOfDelta(BitReader reader) {
+        int ones = 0;
+        while (ones < 5 && reader.read(1) == 1) {
+            ones++;
+        }
+
+        final int bits = switch (ones) {
+            case 0 -> 0;
+            case 1 -> 7;
+            case 2 -> 9;
+            case 3 -> 12;
+            case 4 -> 32;
+            default -> 64;
+        };
+        if (bits == 0) {
+            return 0;
+        }
+
+        final long zigzag = reader.read(bits);
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+
+    private void writeValue(long xor) {
+        if (xor == 0) {
+            writeBits(0b0, 1);
+            return;
+        }
+
+        // Leading zeros are stored in 5 bits
+        final int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+        final int trailing = Long.numberOfTrailingZeros(xor);
+
+        if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing) {
+            writeBits(0b10, 2);
+            writeBits(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+            return;
+        }
+
+        final int significant = 64 - leading - trailing;
+        writeBits(0b11, 2);
+        writeBits(leading, 5);
+        // 1..64 meaningful bits are stored as 0..63
+        writeBits(significant - 1, 6);
+        writeBits(xor >>> trailing, significant);
+        previousLeading = leading;
+        previousTrailing = trailing;
+    }
+
+    /**
+     * Writes the lowest {@code bits} bits of a value, most significant first.
+     */
+    private void writeBits(long value, int bits) {
+        final int required = (bitCount + bits + 63) >>> 6;
+        if (required > words.length) {
+            words = Arrays.copyOf(words, Math.max(required, words.length * 2));
+        }
+
+        int remaining = bits;
+        while (remaining > 0) {
+            final int free = 64 - (bitCount & 63);
+            final int chunk = Math.min(free, remaining);
+            final long part = (value >>> (remaining - chunk)) & mask(chunk);
+            words[bitCount >>> 6] |= part << (free - chunk);
+            bitCount += chunk;
+            remaining -= chunk;
+        }
+    }
+
+    private static long mask(int bits) {
+        return bits == 64 ? -1L : (1L << bits) - 1;
+    }
+
+    private final class BitReader {
+
+        private int position;
+
+        long read(int bits) {
+            long result = 0;
+            int remaining = bits;
+            while (remaining > 0) {
+                final int free = 64 - (position & 63);
+                final int chunk = Math.min(free, remaining);
+                final long part = (words[position >>> 6] >>> (free - chunk)) & mask(chunk);
+                result = (result << chunk) | part;
+                position += chunk;
+                remaining -= chunk;
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.neeraj.usageservice.model;
+
+import java.util.BitSet;
+
+/**
+ * Time-bounded set of device IDs that device-service does not know, kept as two generations of bitmaps
+ * (one bit per device ID, so a million IDs take 125 KB per generation). IDs are marked in the current
+ * generation; when a generation is older than the TTL it becomes the previous one and the oldest is
+ * dropped, so every ID is forgotten - and looked up again - between one and two TTLs after it was marked.
+ * IDs outside [0, maxDeviceId) are never marked.
+ */
+public class MissingDeviceFilter {
+
+    private final long ttlMillis;
+    private final int maxDeviceId;
+
+    private BitSet current = new BitSet();
+    private BitSet previous = new BitSet();
+    private long generationStart;
+
+    public MissingDeviceFilter(long ttlMillis, int maxDeviceId, long now) {
+        this.ttlMillis = ttlMillis;
+        this.maxDeviceId = maxDeviceId;
+        this.generationStart = now;
+    }
+
+    /**
+     * @return Whether the device was marked missing within the last one to two TTLs
+     */
+    public synchronized boolean contains(long deviceId, long now) {
+        if (!inRange(deviceId)) {
+            return false;
+        }
+        rotate(now);
+        return current.get((int) deviceId) || previous.get((int) deviceId);
+    }
+
+    /**
+     * Marks a device as missing.
+     *
+     * @return false if the ID is out of the tracked range
+     */
+    public synchronized boolean add(long deviceId, long now) {
+        if (!inRange(deviceId)) {
+            return false;
+        }
+        rotate(now);
+        current.set((int) deviceId);
+        return true;
+    }
+
+    /**
+     * Forgets a device, e.g. once it has been registered after all.
+     */
+    public synchronized void remove(long deviceId) {
+        if (inRange(deviceId)) {
+            current.clear((int) deviceId);
+            previous.clear((int) deviceId);
+        }
+    }
+
+    /**
+     * @return The number of devices currently marked missing
+     */
+    public synchronized int size() {
+        final BitSet union = (BitSet) current.clone();
+        union.or(previous);
+        return union.cardinality();
+    }
+
+    private boolean inRange(long deviceId) {
+        return deviceId >= 0 && deviceId < maxDeviceId;
+    }
+
+    private void rotate(long now) {
+        if (now - generationStart < ttlMillis) {
+            return;
+        }
+
+        // After more than two TTLs without activity both generations have expired
+        previous = now - generationStart < 2 * ttlMillis ? current : new BitSet();
+        current = new BitSet();
+        generationStart = now;
+    }
+}
@@ -0,0 +1,250 @@
+package com.neeraj.usageservice.model;
+
+import lombok.Getter;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+/**
+ * Running energy usage and cost totals of one user for the current day and month in the user's timezone.
+ * Every reading is priced at the rate of the user's tariff plan at the reading's time, and totals are
+ * updated per event and reset when an event (or the evaluation clock) crosses into the next period, so
+ * neither budgets nor the current cost require scanning the period's history.
+ * Only events at or after {@code trackedSince} are counted; the usage of the current periods before
+ * that is added once through {@link #applySeed}.
+ */
+public class PeriodAccumulator {
+
+    @Getter
+    private final Long userId;
+
+    @Getter
+    private final ZoneId zone;
+
+    // Name of the tariff plan the costs are priced with
+    @Getter
+    private final String tariffPlan;
+
+    // Events with a timestamp at or after this (epoch ms) are counted by the accumulator
+    @Getter
+    private final long trackedSince;
+
+    private boolean seeded;
+
+    private long dayStart;
+    private long dayEnd = Long.MIN_VALUE;
+    private double dayEnergy;
+    private double dayCost;
+
+    private long monthStart;
+    private long monthEnd = Long.MIN_VALUE;
+    private double monthEnergy;
+    private double monthCost;
+
+    // Start of the last period an alert was sent for, so every period alerts at most once
+    private long dailyAlertedFor = Long.MIN_VALUE;
+    private long monthlyAlertedFor = Long.MIN_VALUE;
+
+    public PeriodAccumulator(Long userId, ZoneId zone, String tariffPlan, long trackedSince) {
+        this.userId = userId;
+        this.zone = zone;
+        this.tariffPlan = tariffPlan;
+        this.trackedSince = trackedSince;
+        rollTo(trackedSince);
+    }
+
+    /**
+     * Adds a reading. Readings of an earlier day (or month) than the current one only count
+     * towards the periods they belong to that are still current.
+     *
+     * @param time  Timestamp of the reading (epoch ms)
+     * @param value Energy used
+     * @param rate  Price per unit of energy at the reading's time
+     */
+    public synchronized void add(long time, double value, double rate) {
+        if (time < trackedSince) {
+            return;
+        }
+
+        rollTo(time);
+        if (time >= dayStart) {
+            dayEnergy += value;
+            dayCost += value * rate;
+        }
+        if (time >= monthStart) {
+            monthEnergy += value;
+            monthCost += value * rate;
+        }
+    }
+
+    /**
+     * Moves the current periods forward to the ones containing the given time, resetting their totals.
+     */
+    public synchronized void rollTo(long time) {
+        if (time >= dayEnd) {
+            final LocalDate day = Instant.ofEpochMilli(time).atZone(zone).toLocalDate();
+            dayStart = startOf(day);
+            dayEnd = startOf(day.plusDays(1));
+            dayEnergy = 0.0;
+            dayCost = 0.0;
+        }
+        if (time >= monthEnd) {
+            final LocalDate month = Instant.ofEpochMilli(time).atZone(zone).toLocalDate().withDayOfMonth(1);
+            monthStart = startOf(month);
+            monthEnd = startOf(month.plusMonths(1));
+            monthEnergy = 0.0;
+            monthCost = 0.0;
+        }
+
+        // Periods starting after tracking began are fully covered by the counted events
+        if (trackedSince <= monthStart) {
+            seeded = true;
+        }
+    }
+
+    /**
+     * @return Whether the usage of the current periods before {@code trackedSince} still has to be added
+     */
+    public synchronized boolean needsSeed() {
+        return !seeded;
+    }
+
+    /**
+     * Adds the usage of the current periods recorded before tracking began. Ignored if the periods
+     * rolled over since the seed was computed.
+     *
+     * @param seededDayStart   Day start the day seed was computed for
+     * @param daySeed          Usage within [day start, trackedSince)
+     * @param dayCostSeed      Cost of that usage
+     * @param seededMonthStart Month start the month seed was computed for
+     * @param monthSeed        Usage within [month start, trackedSince)
+     * @param monthCostSeed    Cost of that usage
+     */
+    public synchronized void applySeed(long seededDayStart, double daySeed, double dayCostSeed,
+                                       long seededMonthStart, double monthSeed, double monthCostSeed) {
+        if (seeded) {
+            return;
+        }
+
+        if (seededDayStart == dayStart) {
+            dayEnergy += daySeed;
+            dayCost += dayCostSeed;
+        }
+        if (seededMonthStart == monthStart) {
+            monthEnergy += monthSeed;
+            monthCost += monthCostSeed;
+        }
+        seeded = true;
+    }
+
+    /**
+     * Marks the current day as alerted.
+     *
+     * @return false if an alert was already sent for the current day
+     */
+    public synchronized boolean markDailyAlerted() {
+        if (dailyAlertedFor == dayStart) {
+            return false;
+        }
+        dailyAlertedFor = dayStart;
+        return true;
+    }
+
+    /**
+     * Marks the current month as alerted.
+     *
+     * @return false if an alert was already sent for the current month
+     */
+    public synchronized boolean markMonthlyAlerted() {
+        if (monthlyAlertedFor == monthStart) {
+            return false;
+        }
+        monthlyAlertedFor = monthStart;
+        return true;
+    }
+
+    public synchronized long dayStart() {
+        return dayStart;
+    }
+
+    public synchronized double dayEnergy() {
+        return dayEnergy;
+    }
+
+    public synchronized double dayCost() {
+        return dayCost;
+    }
+
+    public synchronized long monthStart() {
+        return monthStart;
+    }
+
+    public synchronized double monthEnergy() {
+        return monthEnergy;
+    }
+
+    public synchronized double monthCost() {
+        return monthCost;
+    }
+
+    /**
+     * Serializes the accumulator.
+     */
+    public synchronized void writeTo(DataOutput out) throws IOException {
+        out.writeLong(userId);
+        out.writeUTF(zone.getId());
+        out.writeUTF(tariffPlan);
+        out.writeLong(trackedSince);
+        out.writeBoolean(seeded);
+        out.writeLong(dayStart);
+        out.writeLong(dayEnd);
+        out.writeDouble(dayEnergy);
+        out.writeDouble(dayCost);
+        out.writeLong(monthStart);
+        out.writeLong(monthEnd);
+        out.writeDouble(monthEnergy);
+        out.writeDouble(monthCost);
+        out.writeLong(dailyAlertedFor);
+        out.writeLong(monthlyAlertedFor);
+    }
+
+    /**
+     * Reads an accumulator written by {@link #writeTo(DataOutput)}.
+     */
+    public static PeriodAccumulator readFrom(ByteBuffer in) {
+        final long userId = in.getLong();
+        final ZoneId zone = ZoneId.of(readUtf(in));
+        final String tariffPlan = readUtf(in);
+        final PeriodAccumulator accumulator = new PeriodAccumulator(userId, zone, tariffPlan, in.getLong());
+
+        accumulator.seeded = in.get() != 0;
+        accumulator.dayStart = in.getLong();
+        accumulator.dayEnd = in.getLong();
+        accumulator.dayEnergy = in.getDouble();
+        accumulator.dayCost = in.getDouble();
+        accumulator.monthStart = in.getLong();
+        accumulator.monthEnd = in.getLong();
+        accumulator.monthEnergy = in.getDouble();
+        accumulator.monthCost = in.getDouble();
+        accumulator.dailyAlertedFor = in.getLong();
+        accumulator.monthlyAlertedFor = in.getLong();
+        return accumulator;
+    }
+
+    private static String readUtf(ByteBuffer in) {
+        final byte[] bytes = new byte[Short.toUnsignedInt(in.getShort())];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private long startOf(LocalDate day) {
+        final ZonedDateTime start = day.atStartOfDay(zone);
+        return start.toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,9 @@
+package com.neeraj.usageservice.model;
+
+/**
+ * Receives decoded (timestamp, value) points without boxing.
+ */
+@FunctionalInterface
+public interface PointConsumer {
+    void accept(long time, double value);
+}
@@ -0,0 +1,232 @@
+package com.neeraj.usageservice.model;
+
+import lombok.Getter;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Mergeable quantile sketch of non-negative values with a fixed 1% relative accuracy. Values are counted
+ * in logarithmic buckets (bucket i holds values in (gamma^(i-1), gamma^i]), so two sketches merge exactly
+ * by adding their bucket counts, no matter how the values were split between them (e.g. across replicas).
+ * The bucket range only grows with the spread of the values: about 700 buckets cover 1e-6 to 1e6.
+ * {@link #rank} is O(1) once {@link #seal} has built the cumulative counts; a sealed sketch is read-only.
+ */
+public class QuantileSketch {
+
+    public static final double RELATIVE_ACCURACY = 0.01;
+
+    private static final double GAMMA = (1 + RELATIVE_ACCURACY) / (1 - RELATIVE_ACCURACY);
+    private static final double LOG_GAMMA = Math.log(GAMMA);
+
+    // Values at or below this are counted as zero, values above MAX_VALUE are clamped
+    private static final double MIN_VALUE = 1e-6;
+    private static final double MAX_VALUE = 1e9;
+
+    // Index of the bucket at counts[0]
+    private int offset;
+    private long[] counts = new long[0];
+
+    private long zeroCount;
+
+    @Getter
+    private long total;
+
+    // Cumulative counts (excluding zeros) up to and including each bucket, built by seal()
+    private long[] cumulative;
+
+    public void add(double value) {
+        add(value, 1);
+    }
+
+    public void add(double value, long count) {
+        checkWritable();
+        if (Double.isNaN(value) || count <= 0) {
+            return;
+        }
+
+        total += count;
+        if (value <= MIN_VALUE) {
+            zeroCount += count;
+            return;
+        }
+
+        final int index = indexOf(value);
+        ensureCapacity(index, index);
+        counts[index - offset] += count;
+    }
+
+    /**
+     * Adds all values of another sketch to this one.
+     */
+    public void merge(QuantileSketch other) {
+        checkWritable();
+        if (other.total == 0) {
+            return;
+        }
+
+        total += other.total;
+        zeroCount += other.zeroCount;
+        if (other.counts.length == 0) {
+            return;
+        }
+
+        ensureCapacity(other.offset, other.offset + other.counts.length - 1);
+        for (int i = 0; i < other.counts.length; i++) {
+            counts[other.offset + i - offset] += other.counts[i];
+        }
+    }
+
+    /**
+     * Builds the cumulative counts and makes the sketch read-only.
+     *
+     * @return This sketch
+     */
+    public QuantileSketch seal() {
+        final long[] built = new long[counts.length];
+        long running = 0;
+        for (int i = 0; i < counts.length; i++) {
+            running += counts[i];
+            built[i] = running;
+        }
+        cumulative = built;
+        return this;
+    }
+
+    /**
+     * Returns the fraction of values below the given value; values in the same bucket count half.
+     * Requires a sealed sketch.
+     *
+     * @return The rank in [0, 1], or NaN if the sketch is empty
+     */
+    public double rank(double value) {
+        if (cumulative == null) {
+            throw new IllegalStateException("Sketch must be sealed before ranking");
+        }
+        if (total == 0) {
+            return Double.NaN;
+        }
+        if (value <= MIN_VALUE) {
+            return zeroCount / 2.0 / total;
+        }
+
+        final int bucket = indexOf(value) - offset;
+        final long below;
+        final long equal;
+        if (bucket < 0) {
+            below = zeroCount;
+            equal = 0;
+        } else if (bucket >= counts.length) {
+            below = total;
+            equal = 0;
+        } else {
+            below = zeroCount + (bucket == 0 ? 0 : cumulative[bucket - 1]);
+            equal = counts[bucket];
+        }
+        return (below + equal / 2.0) / total;
+    }
+
+    /**
+     * @return A writable copy of this sketch
+     */
+    public QuantileSketch copy() {
+        final QuantileSketch copy = new QuantileSketch();
+        copy.offset = offset;
+        copy.counts = counts.clone();
+        copy.zeroCount = zeroCount;
+        copy.total = total;
+        return copy;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public long getZeroCount() {
+        return zeroCount;
+    }
+
+    public long[] getCounts() {
+        return counts.clone();
+    }
+
+    /**
+     * Rebuilds a sketch from its buckets, e.g. as read back by {@link #readFrom(ByteBuffer)}.
+     */
+    public static QuantileSketch of(int offset, long zeroCount, long[] counts) {
+        final QuantileSketch sketch = new QuantileSketch();
+        long total = zeroCount;
+        for (long count : counts) {
+            if (count < 0) {
+                throw new IllegalArgumentException("Negative bucket count");
+            }
+            total += count;
+        }
+        sketch.offset = offset;
+        sketch.counts = counts.clone();
+        sketch.zeroCount = zeroCount;
+        sketch.total = total;
+        return sketch;
+    }
+
+    /**
+     * Serializes the sketch.
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(offset);
+        out.writeLong(zeroCount);
+        out.writeInt(counts.length);
+        for (long count : counts) {
+            out.writeLong(count);
+        }
+    }
+
+    /**
+     * Reads a sketch written by {@link #writeTo(DataOutput)}.
+     */
+    public static QuantileSketch readFrom(ByteBuffer in) {
+        final int offset = in.getInt();
+        final long zeroCount = in.getLong();
+        final int length = in.getInt();
+        if (length < 0 || (long) length * Long.BYTES > in.remaining()) {
+            throw new IllegalStateException("Invalid sketch with " + length + " buckets");
+        }
+
+        final long[] counts = new long[length];
+        for (int i = 0; i < length; i++) {
+            counts[i] = in.getLong();
+        }
+        return of(offset, zeroCount, counts);
+    }
+
+    private static int indexOf(double value) {
+        return (int) Math.ceil(Math.log(Math.min(value, MAX_VALUE)) / LOG_GAMMA);
+    }
+
+    private void ensureCapacity(int minIndex, int maxIndex) {
+        if (counts.length == 0) {
+            offset = minIndex;
+            counts = new long[maxIndex - minIndex + 1];
+            return;
+        }
+
+        final int newOffset = Math.min(offset, minIndex);
+        final int newEnd = Math.max(offset + counts.length - 1, maxIndex);
+        if (newOffset == offset && newEnd == offset + counts.length - 1) {
+            return;
+        }
+
+        final long[] grown = new long[newEnd - newOffset + 1];
+        System.arraycopy(counts, 0, grown, offset - newOffset, counts.length);
+        counts = grown;
+        offset = newOffset;
+    }
+
+    private void checkWritable() {
+        if (cumulative != null) {
+            throw new IllegalStateException("Sealed sketches are read-only");
+        }
+    }
+
+}
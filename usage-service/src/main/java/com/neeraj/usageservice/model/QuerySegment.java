@@ -5,12 +5,14 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.time.Instant;
+
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
 @Builder
-public class DeviceWithEnergyUsageForUser {
-    private Long deviceId;
-    private Double energyUsage;
-    private Long userId;
+public class QuerySegment {
+    private StorageTier tier;
+    private Instant start;
+    private Instant stop;
 }
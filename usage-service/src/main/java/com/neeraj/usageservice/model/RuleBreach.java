@@ -0,0 +1,23 @@
+package com.neeraj.usageservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class RuleBreach {
+    private Long ruleId;
+    private Long userId;
+    private AlertRuleScope scope;
+    private String target;
+    private int windowMinutes;
+    private double threshold;
+    private double total;
+    private Instant detectedAt;
+}
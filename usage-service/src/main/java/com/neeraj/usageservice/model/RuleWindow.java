@@ -0,0 +1,179 @@
+package com.neeraj.usageservice.model;
+
+import lombok.Getter;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * One alert rule together with the sliding-window total it is evaluated against. The window is a ring
+ * buffer of at most 60 time buckets (one minute each for windows up to an hour, window / 60 beyond),
+ * so adding a reading and sliding the window are O(1) amortized regardless of the window length.
+ * The rule fires once when the total crosses the threshold and re-arms when it drops back below.
+ */
+public class RuleWindow {
+
+    private static final int MAX_BUCKETS = 60;
+    private static final long MINUTE_MILLIS = 60_000L;
+
+    @Getter
+    private final Long ruleId;
+
+    @Getter
+    private final Long userId;
+
+    @Getter
+    private final AlertRuleScope scope;
+
+    @Getter
+    private final String target;
+
+    @Getter
+    private final int windowMinutes;
+
+    @Getter
+    private volatile double threshold;
+
+    private final long bucketMillis;
+    private final double[] buckets;
+
+    // Index (time / bucketMillis) of the newest bucket, Long.MIN_VALUE while nothing was added
+    private long headBucket = Long.MIN_VALUE;
+    private double total;
+    private boolean breached;
+
+    public RuleWindow(Long ruleId, Long userId, AlertRuleScope scope, String target, int windowMinutes, double threshold) {
+        this.ruleId = ruleId;
+        this.userId = userId;
+        this.scope = scope;
+        this.target = target;
+        this.windowMinutes = windowMinutes;
+        this.threshold = threshold;
+
+        final int bucketCount = Math.min(windowMinutes, MAX_BUCKETS);
+        this.buckets = new double[bucketCount];
+        this.bucketMillis = windowMinutes * MINUTE_MILLIS / bucketCount;
+    }
+
+    /**
+     * Adds a reading, sliding the window forward if the reading is newer than the newest bucket.
+     * Readings older than the window are ignored.
+     *
+     * @return true if the reading made the total cross the threshold
+     */
+    public synchronized boolean add(long time, double value) {
+        final long bucket = Math.floorDiv(time, bucketMillis);
+        if (headBucket == Long.MIN_VALUE) {
+            headBucket = bucket;
+        } else if (bucket > headBucket) {
+            advance(bucket);
+        }
+
+        if (bucket <= headBucket - buckets.length) {
+            return false;
+        }
+
+        buckets[(int) Math.floorMod(bucket, (long) buckets.length)] += value;
+        total += value;
+
+        if (!breached && total > threshold) {
+            breached = true;
+            return true;
+        }
+        return false;
+    }
+
+    public synchronized double total() {
+        return total;
+    }
+
+    /**
+     * @return Whether the rule still evaluates the same window (so its state can be kept when rules are reloaded)
+     */
+    public boolean sameDefinition(AlertRuleScope scope, String target, int windowMinutes) {
+        return this.scope == scope && Objects.equals(this.target, target) && this.windowMinutes == windowMinutes;
+    }
+
+    public void updateThreshold(double threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * Serializes the rule and its window.
+     */
+    public synchronized void writeTo(DataOutput out) throws IOException {
+        out.writeLong(ruleId);
+        out.writeLong(userId);
+        out.writeUTF(scope.name());
+        out.writeBoolean(target != null);
+        if (target != null) {
+            out.writeUTF(target);
+        }
+        out.writeInt(windowMinutes);
+        out.writeDouble(threshold);
+        out.writeLong(headBucket);
+        out.writeDouble(total);
+        out.writeBoolean(breached);
+        out.writeInt(buckets.length);
+        for (double bucket : buckets) {
+            out.writeDouble(bucket);
+        }
+    }
+
+    /**
+     * Reads a rule written by {@link #writeTo(DataOutput)}.
+     */
+    public static RuleWindow readFrom(ByteBuffer in) {
+        final long ruleId = in.getLong();
+        final long userId = in.getLong();
+        final AlertRuleScope scope = AlertRuleScope.valueOf(readUtf(in));
+        final String target = in.get() != 0 ? readUtf(in) : null;
+        final int windowMinutes = in.getInt();
+        final RuleWindow window = new RuleWindow(ruleId, userId, scope, target, windowMinutes, in.getDouble());
+
+        window.headBucket = in.getLong();
+        window.total = in.getDouble();
+        window.breached = in.get() != 0;
+        final int bucketCount = in.getInt();
+        if (bucketCount != window.buckets.length) {
+            throw new IllegalStateException("Unexpected bucket count " + bucketCount + " for rule " + ruleId);
+        }
+        for (int i = 0; i < bucketCount; i++) {
+            window.buckets[i] = in.getDouble();
+        }
+        return window;
+    }
+
+    private void advance(long bucket) {
+        final long steps = bucket - headBucket;
+        if (steps >= buckets.length) {
+            Arrays.fill(buckets, 0.0);
+            total = 0.0;
+        } else {
+            for (long i = 1; i <= steps; i++) {
+                final int index = (int) Math.floorMod(headBucket + i, (long) buckets.length);
+                total -= buckets[index];
+                buckets[index] = 0.0;
+            }
+            // Repeated subtraction can leave rounding noise behind
+            if (total < 1e-9) {
+                total = 0.0;
+            }
+        }
+        headBucket = bucket;
+
+        if (breached && total <= threshold) {
+            breached = false;
+        }
+    }
+
+    private static String readUtf(ByteBuffer in) {
+        final byte[] bytes = new byte[Short.toUnsignedInt(in.getShort())];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
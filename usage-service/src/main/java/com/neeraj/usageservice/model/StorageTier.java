@@ -0,0 +1,8 @@
+package com.neeraj.usageservice.model;
+
+public enum StorageTier {
+    RAW,
+    HOURLY,
+    DAILY,
+    COLD
+}
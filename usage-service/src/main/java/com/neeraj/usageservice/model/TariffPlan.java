@@ -0,0 +1,41 @@
+package com.neeraj.usageservice.model;
+
+import lombok.Getter;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+/**
+ * A time-of-use tariff: the price per kWh for every hour of the week (in the user's local time).
+ */
+public class TariffPlan {
+
+    public static final int HOURS_PER_WEEK = 7 * 24;
+
+    @Getter
+    private final String name;
+
+    @Getter
+    private final String currency;
+
+    // Price per kWh by hour of the week, Monday 00:00 first
+    private final double[] hourlyRates;
+
+    public TariffPlan(String name, String currency, double[] hourlyRates) {
+        if (hourlyRates.length != HOURS_PER_WEEK) {
+            throw new IllegalArgumentException("A tariff plan needs " + HOURS_PER_WEEK + " hourly rates");
+        }
+        this.name = name;
+        this.currency = currency;
+        this.hourlyRates = hourlyRates.clone();
+    }
+
+    /**
+     * @return The price per kWh at the given time in the given timezone
+     */
+    public double rateAt(long epochMillis, ZoneId zone) {
+        final ZonedDateTime time = Instant.ofEpochMilli(epochMillis).atZone(zone);
+        return hourlyRates[(time.getDayOfWeek().getValue() - 1) * 24 + time.getHour()];
+    }
+}
@@ -0,0 +1,22 @@
+package com.neeraj.usageservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class ThresholdForecast {
+    private Long userId;
+    private double threshold;
+    // Usage of the current window so far
+    private double currentTotal;
+    private double projectedTotal;
+    private Instant windowEnd;
+    private Instant detectedAt;
+}
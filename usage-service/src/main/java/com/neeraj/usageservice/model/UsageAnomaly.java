@@ -0,0 +1,23 @@
+package com.neeraj.usageservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class UsageAnomaly {
+    private Long deviceId;
+    private Long userId;
+    private AnomalyType type;
+    private double value;
+    // Upper bound of the usual readings at detection time
+    private double expected;
+    private double zScore;
+    private Instant detectedAt;
+}
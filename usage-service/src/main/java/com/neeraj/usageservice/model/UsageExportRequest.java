@@ -0,0 +1,26 @@
+package com.neeraj.usageservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class UsageExportRequest {
+    private Long userId;
+    private Instant from;
+    private Instant to;
+    // Window size of the downsampled readings, null to export the raw readings
+    private Duration step;
+    private ExportFormat format;
+    private boolean gzip;
+    private List<Long> deviceIds;
+    private List<QuerySegment> segments;
+}
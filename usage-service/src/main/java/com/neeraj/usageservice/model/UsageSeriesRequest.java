@@ -0,0 +1,24 @@
+package com.neeraj.usageservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class UsageSeriesRequest {
+    private Long userId;
+    private Instant from;
+    private Instant to;
+    private Duration requestedStep;
+    private Duration step;
+    private List<Device> devices;
+    private List<QuerySegment> segments;
+}
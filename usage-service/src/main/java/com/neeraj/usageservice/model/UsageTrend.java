@@ -0,0 +1,207 @@
+package com.neeraj.usageservice.model;
+
+import lombok.Getter;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Constant-size usage trend of one user: the running total of the current (epoch-aligned) threshold
+ * window plus an exponentially weighted least-squares line over the totals of the recent slices.
+ * Slice totals are regressed against the slice index relative to the current slice, so the fit is kept
+ * in five running sums that are decayed and shifted when a slice closes. The projected total of the
+ * current window is its total so far plus the line extrapolated over the rest of the window.
+ */
+public class UsageTrend {
+
+    // Gaps longer than this many slices reset the fit instead of replaying every empty slice
+    private static final int MAX_GAP_SLICES = 64;
+
+    @Getter
+    private final Long userId;
+
+    private final long sliceMillis;
+    private final long windowMillis;
+
+    private long currentSlice = Long.MIN_VALUE;
+    private double sliceTotal;
+
+    private long windowStart = Long.MIN_VALUE;
+    private double windowTotal;
+
+    // Weighted sums of the closed slices with x = slice index relative to the current slice (always < 0)
+    private double sumW;
+    private double sumX;
+    private double sumY;
+    private double sumXX;
+    private double sumXY;
+    private int closedSlices;
+
+    // Start of the last window a warning was issued for, so every window warns at most once
+    private long warnedFor = Long.MIN_VALUE;
+
+    public UsageTrend(Long userId, long sliceMillis, long windowMillis) {
+        this.userId = userId;
+        this.sliceMillis = sliceMillis;
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     * Adds a reading. Readings of an earlier slice than the current one count towards the window total
+     * (if still in the current window) but no longer change the fit.
+     *
+     * @param time  Timestamp of the reading (epoch ms)
+     * @param value Energy used
+     * @param decay Weight kept by the older slices each time a slice closes (0..1)
+     */
+    public synchronized void add(long time, double value, double decay) {
+        final long slice = Math.floorDiv(time, sliceMillis);
+        if (currentSlice == Long.MIN_VALUE) {
+            currentSlice = slice;
+        } else if (slice > currentSlice) {
+            advance(slice, decay);
+        }
+
+        final long window = time - Math.floorMod(time, windowMillis);
+        if (window > windowStart) {
+            windowStart = window;
+            windowTotal = 0.0;
+        }
+
+        if (window == windowStart) {
+            windowTotal += value;
+        }
+        if (slice == currentSlice) {
+            sliceTotal += value;
+        }
+    }
+
+    /**
+     * Projects the total of the window containing the given time.
+     *
+     * @param now       Current time (epoch ms)
+     * @param minSlices Number of closed slices needed before projecting
+     * @return The projected window total, or NaN if there is not enough history or no current window
+     */
+    public synchronized double projectedTotal(long now, int minSlices) {
+        if (closedSlices < minSlices || sumW <= 0.0 || now - Math.floorMod(now, windowMillis) != windowStart) {
+            return Double.NaN;
+        }
+
+        // Weighted least squares; falls back to the weighted mean if the x values are degenerate
+        final double denominator = sumW * sumXX - sumX * sumX;
+        final double slope = Math.abs(denominator) < 1e-9 ? 0.0 : (sumW * sumXY - sumX * sumY) / denominator;
+        final double intercept = (sumY - slope * sumX) / sumW;
+
+        // Rest of the current slice, then every slice up to the end of the window
+        final long sliceStart = currentSlice * sliceMillis;
+        final double remainingFraction = Math.max(0.0, (sliceStart + sliceMillis - now) / (double) sliceMillis);
+        double projected = windowTotal + Math.max(0.0, intercept) * remainingFraction;
+
+        final long windowEnd = windowStart + windowMillis;
+        final long remainingSlices = Math.max(0, Math.ceilDiv(windowEnd - sliceStart, sliceMillis) - 1);
+        for (int x = 1; x <= remainingSlices; x++) {
+            projected += Math.max(0.0, intercept + slope * x);
+        }
+        return projected;
+    }
+
+    public synchronized double windowTotal() {
+        return windowTotal;
+    }
+
+    public synchronized long windowStart() {
+        return windowStart;
+    }
+
+    /**
+     * Marks the current window as warned.
+     *
+     * @return false if a warning was already issued for the current window
+     */
+    public synchronized boolean markWarned() {
+        if (warnedFor == windowStart) {
+            return false;
+        }
+        warnedFor = windowStart;
+        return true;
+    }
+
+    /**
+     * Closes the current slice and moves to the given one. Every skipped slice is added as an empty one.
+     */
+    private void advance(long slice, double decay) {
+        final long steps = slice - currentSlice;
+        if (steps > MAX_GAP_SLICES) {
+            sumW = sumX = sumY = sumXX = sumXY = 0.0;
+            closedSlices = 0;
+        } else {
+            double y = sliceTotal;
+            for (int step = 0; step < steps; step++) {
+                // The closing slice sits at x = 0; after shifting by one it becomes x = -1
+                sumW = decay * sumW + 1.0;
+                sumY = decay * sumY + y;
+                sumX = decay * sumX;
+                sumXX = decay * sumXX;
+                sumXY = decay * sumXY;
+
+                sumXX = sumXX - 2 * sumX + sumW;
+                sumXY = sumXY - sumY;
+                sumX = sumX - sumW;
+
+                closedSlices++;
+                y = 0.0;
+            }
+        }
+
+        currentSlice = slice;
+        sliceTotal = 0.0;
+    }
+
+    /**
+     * Serializes the trend.
+     */
+    public synchronized void writeTo(DataOutput out) throws IOException {
+        out.writeLong(userId);
+        out.writeLong(sliceMillis);
+        out.writeLong(windowMillis);
+        out.writeLong(currentSlice);
+        out.writeDouble(sliceTotal);
+        out.writeLong(windowStart);
+        out.writeDouble(windowTotal);
+        out.writeDouble(sumW);
+        out.writeDouble(sumX);
+        out.writeDouble(sumY);
+        out.writeDouble(sumXX);
+        out.writeDouble(sumXY);
+        out.writeInt(closedSlices);
+        out.writeLong(warnedFor);
+    }
+
+    /**
+     * Reads a trend written by {@link #writeTo(DataOutput)}.
+     */
+    public static UsageTrend readFrom(ByteBuffer in) {
+        final UsageTrend trend = new UsageTrend(in.getLong(), in.getLong(), in.getLong());
+        trend.currentSlice = in.getLong();
+        trend.sliceTotal = in.getDouble();
+        trend.windowStart = in.getLong();
+        trend.windowTotal = in.getDouble();
+        trend.sumW = in.getDouble();
+        trend.sumX = in.getDouble();
+        trend.sumY = in.getDouble();
+        trend.sumXX = in.getDouble();
+        trend.sumXY = in.getDouble();
+        trend.closedSlices = in.getInt();
+        trend.warnedFor = in.getLong();
+        return trend;
+    }
+
+    /**
+     * @return Whether the trend was built with the given slice and window sizes
+     */
+    public boolean hasGeometry(long sliceMillis, long windowMillis) {
+        return this.sliceMillis == sliceMillis && this.windowMillis == windowMillis;
+    }
+}
@@ -0,0 +1,29 @@
+package com.neeraj.usageservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.time.ZoneId;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class UserProfile {
+    private Long id;
+    private String email;
+    private boolean alertEnabled;
+    private Double energyAlertThreshold;
+    private Double dailyBudget;
+    private Double monthlyBudget;
+    private ZoneId zone;
+    private String tariffPlan;
+    private Instant resolvedAt;
+
+    public boolean hasBudget() {
+        return dailyBudget != null || monthlyBudget != null;
+    }
+}
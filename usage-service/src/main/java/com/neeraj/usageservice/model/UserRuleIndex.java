@@ -0,0 +1,98 @@
+package com.neeraj.usageservice.model;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * The alert rules of one user, indexed by what they reference (device ID, device type, location,
+ * or the whole user), so a reading only visits the rules that can be affected by it.
+ * The index is immutable; reloading the rules builds a new one.
+ */
+public class UserRuleIndex {
+
+    @Getter
+    private final Long userId;
+
+    @Getter
+    private final List<RuleWindow> rules;
+
+    private final Map<Long, List<RuleWindow>> byDevice = new HashMap<>();
+    private final Map<String, List<RuleWindow>> byType = new HashMap<>();
+    private final Map<String, List<RuleWindow>> byLocation = new HashMap<>();
+    private final List<RuleWindow> userWide = new ArrayList<>();
+
+    // When the rules were fetched from user-service (epoch ms)
+    @Getter
+    private volatile long loadedAt;
+
+    public UserRuleIndex(Long userId, List<RuleWindow> rules, long loadedAt) {
+        this.userId = userId;
+        this.rules = List.copyOf(rules);
+        this.loadedAt = loadedAt;
+
+        for (RuleWindow rule : this.rules) {
+            switch (rule.getScope()) {
+                case DEVICE -> byDevice.computeIfAbsent(Long.valueOf(rule.getTarget()), id -> new ArrayList<>()).add(rule);
+                case DEVICE_TYPE -> byType.computeIfAbsent(normalize(rule.getTarget()), type -> new ArrayList<>()).add(rule);
+                case LOCATION -> byLocation.computeIfAbsent(normalize(rule.getTarget()), location -> new ArrayList<>()).add(rule);
+                case USER -> userWide.add(rule);
+            }
+        }
+    }
+
+    /**
+     * Calls the action for every rule that references the device, its type, its location or its owner.
+     */
+    public void forEachMatching(DeviceInfo device, Consumer<RuleWindow> action) {
+        visit(byDevice.get(device.getId()), action);
+        if (device.getType() != null) {
+            visit(byType.get(normalize(device.getType())), action);
+        }
+        if (device.getLocation() != null) {
+            visit(byLocation.get(normalize(device.getLocation())), action);
+        }
+        visit(userWide, action);
+    }
+
+    /**
+     * @return The rule with the given ID, or null
+     */
+    public RuleWindow find(Long ruleId) {
+        for (RuleWindow rule : rules) {
+            if (rule.getRuleId().equals(ruleId)) {
+                return rule;
+            }
+        }
+        return null;
+    }
+
+    public boolean isEmpty() {
+        return rules.isEmpty();
+    }
+
+    /**
+     * Postpones the next reload, e.g. while user-service is unreachable.
+     */
+    public void touch(long loadedAt) {
+        this.loadedAt = loadedAt;
+    }
+
+    /**
+     * Normalizes device types and locations so rule targets match case-insensitively.
+     */
+    public static String normalize(String value) {
+        return value.trim().toUpperCase(Locale.ROOT);
+    }
+
+    private static void visit(List<RuleWindow> rules, Consumer<RuleWindow> action) {
+        if (rules != null) {
+            rules.forEach(action);
+        }
+    }
+}
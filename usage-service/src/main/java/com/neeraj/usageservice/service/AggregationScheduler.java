@@ -0,0 +1,187 @@
+package com.neeraj.usageservice.service;
+
+import com.neeraj.usageservice.dto.AggregationStatsDTO;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the usage aggregation job ({@link UsageService#aggregateDeviceEnergyUsage()}) on its own thread,
+ * so a slow cycle never starves the other scheduled tasks. Cycles start on epoch-aligned ticks of the
+ * current interval. Every cycle is timed: a cycle longer than the interval is flagged as an overrun, and
+ * the ticks it ran over are coalesced into the next cycle (the job always looks at the last hour, so one
+ * run catches up on all of them) and counted as skipped. The interval adapts to the cycle duration: it is
+ * doubled (up to the maximum) while cycles take most of it, and halved back towards the base interval
+ * once they are short again.
+ */
+@Component
+@Slf4j
+public class AggregationScheduler {
+
+    // Weight of the latest cycle in the average cycle duration
+    private static final double DURATION_ALPHA = 0.3;
+    // The interval grows when the average cycle takes more than this share of it, and shrinks below a quarter
+    private static final double GROW_LOAD = 0.8;
+    private static final double SHRINK_LOAD = 0.25;
+
+    private final UsageService usageService;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "usage-aggregation");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Value("${usage.aggregation.enabled:true}")
+    private boolean enabled;
+
+    @Value("${usage.aggregation.interval:10s}")
+    private Duration baseInterval;
+
+    @Value("${usage.aggregation.max-interval:1m}")
+    private Duration maxInterval;
+
+    // State below is only written by the aggregation thread; volatile so stats() sees recent values
+    private volatile long intervalMillis;
+    private volatile long cycles;
+    private volatile long overruns;
+    private volatile long skippedTicks;
+    private volatile long failures;
+    private volatile long lastDurationMillis;
+    private volatile double averageDurationMillis;
+    private volatile long maxDurationMillis;
+    private volatile long lastLagMillis;
+    private volatile long lastStartedAt;
+
+    public AggregationScheduler(UsageService usageService) {
+        this.usageService = usageService;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            log.info("Usage aggregation is disabled");
+            return;
+        }
+
+        intervalMillis = baseInterval.toMillis();
+        scheduleAt(nextTick(System.currentTimeMillis()));
+        log.info("Usage aggregation runs every {} (adapting up to {}) on its own thread", baseInterval, maxInterval);
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Reports the cycle durations, the lag behind the schedule and the ticks that were skipped.
+     */
+    public AggregationStatsDTO stats() {
+        return AggregationStatsDTO.builder()
+                .enabled(enabled)
+                .interval(Duration.ofMillis(intervalMillis))
+                .cycles(cycles)
+                .overruns(overruns)
+                .skippedTicks(skippedTicks)
+                .failures(failures)
+                .lastDurationMillis(lastDurationMillis)
+                .averageDurationMillis(averageDurationMillis)
+                .maxDurationMillis(maxDurationMillis)
+                .lastLagMillis(lastLagMillis)
+                .lastStartedAt(lastStartedAt == 0 ? null : Instant.ofEpochMilli(lastStartedAt))
+                .build();
+    }
+
+    /**
+     * Runs one cycle that was scheduled for the given tick and schedules the next one.
+     * This method orchestrates the following steps:
+     * 1. Run the aggregation job and time it
+     * 2. Flag an overrun and count the ticks it ran over
+     * 3. Adapt the interval to the average cycle duration
+     * 4. Schedule the next cycle on the first tick after now
+     */
+    private void runCycle(long scheduledAt) {
+        try {
+            // Step 1: Run the aggregation job and time it
+            final long startedAt = System.currentTimeMillis();
+            lastStartedAt = startedAt;
+            lastLagMillis = Math.max(0, startedAt - scheduledAt);
+            try {
+                usageService.aggregateDeviceEnergyUsage();
+            } catch (RuntimeException e) {
+                // Keep the schedule alive; the next cycle looks at the same hour again
+                failures++;
+                log.error("Usage aggregation cycle failed: {}", e.getMessage(), e);
+            }
+
+            final long finishedAt = System.currentTimeMillis();
+            final long duration = finishedAt - startedAt;
+            cycles++;
+            lastDurationMillis = duration;
+            maxDurationMillis = Math.max(maxDurationMillis, duration);
+            averageDurationMillis = cycles == 1 ? duration : averageDurationMillis + DURATION_ALPHA * (duration - averageDurationMillis);
+
+            // Step 2: Flag an overrun and count the ticks it ran over
+            final long next = nextTick(finishedAt);
+            final long missed = Math.max(0, (next - scheduledAt) / intervalMillis - 1);
+            if (duration > intervalMillis || missed > 0) {
+                overruns++;
+                skippedTicks += missed;
+                log.warn("Usage aggregation cycle took {} ms (interval {} ms, lag {} ms), coalescing {} missed tick(s)",
+                        duration, intervalMillis, lastLagMillis, missed);
+            }
+
+            // Step 3: Adapt the interval to the average cycle duration
+            adaptInterval();
+        } catch (Error e) {
+            failures++;
+            log.error("Usage aggregation cycle failed: {}", e.getMessage(), e);
+            throw e;
+        } finally {
+            // Step 4: Schedule the next cycle on the first tick after now, even if this one died with an Error
+            scheduleAt(nextTick(System.currentTimeMillis()));
+        }
+    }
+
+    private void adaptInterval() {
+        final long base = baseInterval.toMillis();
+        final long max = Math.max(base, maxInterval.toMillis());
+        final long current = intervalMillis;
+
+        long adapted = current;
+        if (averageDurationMillis > GROW_LOAD * current && current < max) {
+            adapted = Math.min(max, current * 2);
+        } else if (averageDurationMillis < SHRINK_LOAD * current && current > base) {
+            adapted = Math.max(base, current / 2);
+        }
+
+        // Stay on multiples of the base interval, so the ticks keep lining up with the base schedule
+        adapted = Math.max(base, adapted / base * base);
+        if (adapted != current) {
+            intervalMillis = adapted;
+            log.info("Usage aggregation interval changed from {} ms to {} ms (average cycle {} ms)",
+                    current, adapted, Math.round(averageDurationMillis));
+        }
+    }
+
+    private long nextTick(long now) {
+        return now - Math.floorMod(now, intervalMillis) + intervalMillis;
+    }
+
+    private void scheduleAt(long tick) {
+        if (executor.isShutdown()) {
+            return;
+        }
+        executor.schedule(() -> runCycle(tick), Math.max(0, tick - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+    }
+}
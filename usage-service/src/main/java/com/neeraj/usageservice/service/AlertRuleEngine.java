@@ -0,0 +1,208 @@
+package com.neeraj.usageservice.service;
+
+import com.neeraj.usageservice.client.UserClient;
+import com.neeraj.usageservice.dto.AlertRuleDTO;
+import com.neeraj.usageservice.model.AlertRuleScope;
+import com.neeraj.usageservice.model.DeviceInfo;
+import com.neeraj.usageservice.model.RuleBreach;
+import com.neeraj.usageservice.model.RuleWindow;
+import com.neeraj.usageservice.model.UserRuleIndex;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClientException;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Evaluates the per-device, per-device-type, per-location and per-user alert rules configured in
+ * user-service. Every energy usage event is added to the sliding windows of only the rules that
+ * reference its device (looked up through a {@link UserRuleIndex}), so the cost of an event does not
+ * grow with the total number of rules. Rules that cross their threshold are queued as
+ * {@link RuleBreach}es for the alerting job to send.
+ * Rules are fetched lazily per user, in the background so the Kafka listener never waits for user-service,
+ * and reloaded once older than the configured TTL; a rule whose window definition did not change keeps its
+ * running window. Windows only count the readings seen
+ * since the rule was loaded (or restored from the usage snapshot).
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class AlertRuleEngine implements SnapshotParticipant {
+
+    private final UserClient userClient;
+    private final CacheRefresher cacheRefresher;
+
+    private final Map<Long, UserRuleIndex> rulesByUser = new ConcurrentHashMap<>();
+    private final Queue<RuleBreach> breaches = new ConcurrentLinkedQueue<>();
+
+    @Value("${usage.alert-rules.enabled:true}")
+    private boolean enabled;
+
+    @Value("${usage.alert-rules.ttl:5m}")
+    private Duration ttl;
+
+    /**
+     * Adds a reading to the windows of the rules referencing its device.
+     *
+     * @param device The device the reading belongs to (with its current owner)
+     * @param time   Timestamp of the reading
+     * @param value  Energy used
+     */
+    public void record(DeviceInfo device, Instant time, double value) {
+        if (!enabled || device == null || device.getUserId() == null || time == null) {
+            return;
+        }
+
+        final UserRuleIndex index = rulesFor(device.getUserId());
+        if (index.isEmpty()) {
+            return;
+        }
+
+        final long timeMillis = time.toEpochMilli();
+        index.forEachMatching(device, rule -> {
+            if (rule.add(timeMillis, value)) {
+                breaches.add(RuleBreach.builder()
+                        .ruleId(rule.getRuleId())
+                        .userId(rule.getUserId())
+                        .scope(rule.getScope())
+                        .target(rule.getTarget())
+                        .windowMinutes(rule.getWindowMinutes())
+                        .threshold(rule.getThreshold())
+                        .total(rule.total())
+                        .detectedAt(time)
+                        .build());
+            }
+        });
+    }
+
+    /**
+     * @return The rule breaches detected since the last call
+     */
+    public List<RuleBreach> drainBreaches() {
+        final List<RuleBreach> drained = new ArrayList<>();
+        RuleBreach breach;
+        while ((breach = breaches.poll()) != null) {
+            drained.add(breach);
+        }
+        return drained;
+    }
+
+    @Override
+    public String snapshotName() {
+        return "alert-rules";
+    }
+
+    @Override
+    public void writeSnapshot(DataOutputStream out) throws IOException {
+        final List<UserRuleIndex> snapshot = List.copyOf(rulesByUser.values());
+        out.writeInt(snapshot.size());
+        for (UserRuleIndex index : snapshot) {
+            out.writeLong(index.getUserId());
+            out.writeLong(index.getLoadedAt());
+            out.writeInt(index.getRules().size());
+            for (RuleWindow rule : index.getRules()) {
+                rule.writeTo(out);
+            }
+        }
+    }
+
+    @Override
+    public void restoreSnapshot(ByteBuffer section) {
+        final Map<Long, UserRuleIndex> restored = new HashMap<>();
+        final int userCount = section.getInt();
+        for (int i = 0; i < userCount; i++) {
+            final long userId = section.getLong();
+            final long loadedAt = section.getLong();
+
+            final List<RuleWindow> rules = new ArrayList<>();
+            final int ruleCount = section.getInt();
+            for (int j = 0; j < ruleCount; j++) {
+                rules.add(RuleWindow.readFrom(section));
+            }
+            restored.put(userId, new UserRuleIndex(userId, rules, loadedAt));
+        }
+
+        rulesByUser.putAll(restored);
+        log.info("Restored alert rules of {} users from snapshot", restored.size());
+    }
+
+    /**
+     * Returns the cached rules of a user without waiting for user-service: rules that are not loaded yet
+     * (or expired) are loaded in the background, and until then the user has no (or its current) rules.
+     */
+    private UserRuleIndex rulesFor(Long userId) {
+        final long now = System.currentTimeMillis();
+        final UserRuleIndex cached = rulesByUser.get(userId);
+        if (cached == null || cached.getLoadedAt() + ttl.toMillis() <= now) {
+            cacheRefresher.refresh("alert-rules:" + userId, () -> loadRules(userId));
+        }
+        return cached != null ? cached : new UserRuleIndex(userId, List.of(), now);
+    }
+
+    private void loadRules(Long userId) {
+        final long now = System.currentTimeMillis();
+        final UserRuleIndex cached = rulesByUser.get(userId);
+        try {
+            rulesByUser.put(userId, buildIndex(userId, userClient.getAlertRules(userId), cached, now));
+        } catch (HttpClientErrorException.NotFound e) {
+            // User was deleted - drop its rules
+            rulesByUser.put(userId, new UserRuleIndex(userId, List.of(), now));
+        } catch (RestClientException e) {
+            log.warn("Failed to fetch alert rules for user {}, keeping the current ones: {}", userId, e.getMessage());
+
+            // Back off until the next TTL instead of retrying on every event
+            final UserRuleIndex current = cached != null ? cached : new UserRuleIndex(userId, List.of(), now);
+            current.touch(now);
+            rulesByUser.put(userId, current);
+        }
+    }
+
+    private static UserRuleIndex buildIndex(Long userId, List<AlertRuleDTO> alertRules, UserRuleIndex previous, long now) {
+        final List<RuleWindow> rules = new ArrayList<>();
+        for (AlertRuleDTO alertRule : alertRules) {
+            if (!isUsable(alertRule)) {
+                continue;
+            }
+
+            final String target = alertRule.scope() == AlertRuleScope.USER ? null : alertRule.target().trim();
+            final RuleWindow existing = previous == null ? null : previous.find(alertRule.id());
+            if (existing != null && existing.sameDefinition(alertRule.scope(), target, alertRule.windowMinutes())) {
+                existing.updateThreshold(alertRule.threshold());
+                rules.add(existing);
+            } else {
+                rules.add(new RuleWindow(alertRule.id(), userId, alertRule.scope(), target,
+                        alertRule.windowMinutes(), alertRule.threshold()));
+            }
+        }
+        return new UserRuleIndex(userId, rules, now);
+    }
+
+    private static boolean isUsable(AlertRuleDTO alertRule) {
+        if (alertRule.id() == null || alertRule.scope() == null || alertRule.threshold() == null
+                || alertRule.windowMinutes() == null || alertRule.windowMinutes() < 1
+                || Boolean.FALSE.equals(alertRule.enabled())) {
+            return false;
+        }
+        if (alertRule.scope() == AlertRuleScope.USER) {
+            return true;
+        }
+        if (alertRule.target() == null || alertRule.target().isBlank()) {
+            return false;
+        }
+        return alertRule.scope() != AlertRuleScope.DEVICE || alertRule.target().trim().matches("\\d+");
+    }
+}
@@ -0,0 +1,327 @@
+package com.neeraj.usageservice.service;
+
+import com.neeraj.usageservice.model.AnomalyType;
+import com.neeraj.usageservice.model.UsageAnomaly;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Streaming per-device anomaly detection on the energy-usage events. Every device keeps a constant-size
+ * state: an exponentially weighted mean and variance of its readings (the baseline) and a faster EWMA of
+ * the recent level. A reading far above the baseline is reported as a SPIKE; a recent level that stays
+ * well above the baseline for many consecutive readings is reported as SUSTAINED (e.g. a stuck-on appliance).
+ * State lives in parallel primitive arrays indexed through an open-addressing device ID -> slot table
+ * (about 80 bytes per device), capped at a configured number of devices. Each device reports at most one
+ * anomaly per cooldown, and detected anomalies are queued (bounded) for the alerting job. The EWMAs assume
+ * a device's readings arrive in order at one instance, which holds because ingestion keys them by device ID.
+ */
+@Component
+@Slf4j
+public class AnomalyDetector implements SnapshotParticipant {
+
+    private static final long EMPTY = Long.MIN_VALUE;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // Device ID -> slot, open addressing with linear probing
+    private long[] tableKeys;
+    private int[] tableSlots;
+
+    // Per-slot state
+    private long[] deviceIds;
+    private double[] mean;
+    private double[] variance;
+    private double[] level;
+    private int[] count;
+    private int[] elevatedRun;
+    private long[] lastReportedAt;
+    private int size;
+
+    private boolean capacityWarned;
+
+    private final BlockingQueue<UsageAnomaly> anomalies = new ArrayBlockingQueue<>(10_000);
+    private final AtomicLong droppedAnomalies = new AtomicLong();
+
+    @Value("${usage.anomaly.enabled:true}")
+    private boolean enabled;
+
+    @Value("${usage.anomaly.max-devices:1000000}")
+    private int maxDevices;
+
+    @Value("${usage.anomaly.baseline-alpha:0.01}")
+    private double baselineAlpha;
+
+    @Value("${usage.anomaly.level-alpha:0.2}")
+    private double levelAlpha;
+
+    @Value("${usage.anomaly.warmup-readings:60}")
+    private int warmupReadings;
+
+    @Value("${usage.anomaly.spike-z:6.0}")
+    private double spikeZ;
+
+    @Value("${usage.anomaly.sustained-z:3.0}")
+    private double sustainedZ;
+
+    @Value("${usage.anomaly.sustained-readings:30}")
+    private int sustainedReadings;
+
+    @Value("${usage.anomaly.cooldown:1h}")
+    private Duration cooldown;
+
+    public AnomalyDetector() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Updates the device's state with a reading and queues an anomaly if the reading (or the recent
+     * level) deviates strongly from the device's baseline.
+     *
+     * @param deviceId The device ID
+     * @param userId   The ID of the user owning the device (may be null), carried into the anomaly
+     * @param time     Timestamp of the reading
+     * @param value    Energy used
+     */
+    public synchronized void record(Long deviceId, Long userId, Instant time, double value) {
+        if (!enabled || deviceId == null || time == null || Double.isNaN(value)) {
+            return;
+        }
+
+        final int slot = slotFor(deviceId);
+        if (slot < 0) {
+            return;
+        }
+
+        if (count[slot] == 0) {
+            mean[slot] = value;
+            variance[slot] = 0.0;
+            level[slot] = value;
+            count[slot] = 1;
+            return;
+        }
+
+        // Floor the deviation so devices with a (nearly) constant signal do not flag tiny changes
+        final double std = Math.max(Math.sqrt(variance[slot]), Math.abs(mean[slot]) * 0.05 + 1e-6);
+        final double z = (value - mean[slot]) / std;
+        level[slot] += levelAlpha * (value - level[slot]);
+        final double levelZ = (level[slot] - mean[slot]) / std;
+        if (count[slot] < Integer.MAX_VALUE) {
+            count[slot]++;
+        }
+
+        if (count[slot] > warmupReadings) {
+            if (z > spikeZ) {
+                report(slot, userId, AnomalyType.SPIKE, time, value, mean[slot] + spikeZ * std, z);
+            }
+
+            elevatedRun[slot] = levelZ > sustainedZ ? elevatedRun[slot] + 1 : 0;
+            if (elevatedRun[slot] >= sustainedReadings) {
+                report(slot, userId, AnomalyType.SUSTAINED, time, level[slot], mean[slot] + sustainedZ * std, levelZ);
+                elevatedRun[slot] = 0;
+            }
+        }
+
+        // Clip the reading so a single spike does not drag the baseline along. Unusually high readings only
+        // nudge the mean and leave the variance alone, so a stuck-on device is flagged before its level
+        // becomes the new normal. During warm-up the baseline is a plain running mean / variance.
+        final double clipped = Math.min(value, mean[slot] + spikeZ * std);
+        final double diff = clipped - mean[slot];
+        if (count[slot] <= warmupReadings || (z <= sustainedZ && elevatedRun[slot] == 0)) {
+            final double alpha = Math.max(baselineAlpha, 1.0 / count[slot]);
+            final double increment = alpha * diff;
+            mean[slot] += increment;
+            variance[slot] = (1 - alpha) * (variance[slot] + diff * increment);
+        } else {
+            mean[slot] += baselineAlpha / 10 * diff;
+        }
+    }
+
+    /**
+     * @return The anomalies detected since the last call
+     */
+    public List<UsageAnomaly> drainAnomalies() {
+        final List<UsageAnomaly> drained = new ArrayList<>();
+        anomalies.drainTo(drained);
+        return drained;
+    }
+
+    public synchronized int trackedDevices() {
+        return size;
+    }
+
+    public long droppedAnomalies() {
+        return droppedAnomalies.get();
+    }
+
+    @Override
+    public String snapshotName() {
+        return "anomaly-detector";
+    }
+
+    @Override
+    public synchronized void writeSnapshot(DataOutputStream out) throws IOException {
+        out.writeInt(size);
+        for (int slot = 0; slot < size; slot++) {
+            out.writeLong(deviceIds[slot]);
+            out.writeDouble(mean[slot]);
+            out.writeDouble(variance[slot]);
+            out.writeDouble(level[slot]);
+            out.writeInt(count[slot]);
+            out.writeInt(elevatedRun[slot]);
+            out.writeLong(lastReportedAt[slot]);
+        }
+    }
+
+    @Override
+    public synchronized void restoreSnapshot(ByteBuffer section) {
+        final int restoredSize = section.getInt();
+        if (restoredSize > maxDevices || (long) restoredSize * 52 > section.remaining()) {
+            throw new IllegalStateException("Invalid anomaly detector section with " + restoredSize + " devices");
+        }
+
+        // Restore into fresh arrays and swap them in only once the whole section was read
+        final AnomalyDetector restored = new AnomalyDetector();
+        restored.allocate(Math.max(INITIAL_CAPACITY, Integer.highestOneBit(Math.max(1, restoredSize)) << 1));
+        for (int i = 0; i < restoredSize; i++) {
+            final int slot = restored.insert(section.getLong());
+            restored.mean[slot] = section.getDouble();
+            restored.variance[slot] = section.getDouble();
+            restored.level[slot] = section.getDouble();
+            restored.count[slot] = section.getInt();
+            restored.elevatedRun[slot] = section.getInt();
+            restored.lastReportedAt[slot] = section.getLong();
+        }
+
+        tableKeys = restored.tableKeys;
+        tableSlots = restored.tableSlots;
+        deviceIds = restored.deviceIds;
+        mean = restored.mean;
+        variance = restored.variance;
+        level = restored.level;
+        count = restored.count;
+        elevatedRun = restored.elevatedRun;
+        lastReportedAt = restored.lastReportedAt;
+        size = restored.size;
+        log.info("Restored anomaly detection state of {} devices from snapshot", size);
+    }
+
+    private void report(int slot, Long userId, AnomalyType type, Instant time, double value, double expected, double zScore) {
+        final long timeMillis = time.toEpochMilli();
+        if (timeMillis - lastReportedAt[slot] < cooldown.toMillis()) {
+            return;
+        }
+        lastReportedAt[slot] = timeMillis;
+
+        final UsageAnomaly anomaly = UsageAnomaly.builder()
+                .deviceId(deviceIds[slot])
+                .userId(userId)
+                .type(type)
+                .value(value)
+                .expected(expected)
+                .zScore(zScore)
+                .detectedAt(time)
+                .build();
+        if (!anomalies.offer(anomaly)) {
+            droppedAnomalies.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return The slot of the device, adding it if there is room, or -1 if the device limit is reached
+     */
+    private int slotFor(long deviceId) {
+        int index = indexOf(deviceId, tableKeys);
+        if (tableKeys[index] == deviceId) {
+            return tableSlots[index];
+        }
+
+        if (size >= maxDevices) {
+            if (!capacityWarned) {
+                log.warn("Anomaly detection is tracking the maximum of {} devices, new devices are not monitored", maxDevices);
+                capacityWarned = true;
+            }
+            return -1;
+        }
+        return insert(deviceId);
+    }
+
+    private int insert(long deviceId) {
+        if (size == deviceIds.length) {
+            growSlots();
+        }
+        // Keep the table at most half full
+        if ((size + 1) * 2 > tableKeys.length) {
+            rehash(tableKeys.length * 2);
+        }
+
+        final int slot = size++;
+        final int index = indexOf(deviceId, tableKeys);
+        tableKeys[index] = deviceId;
+        tableSlots[index] = slot;
+        deviceIds[slot] = deviceId;
+        lastReportedAt[slot] = Long.MIN_VALUE / 2;
+        return slot;
+    }
+
+    private void allocate(int capacity) {
+        tableKeys = new long[capacity * 2];
+        Arrays.fill(tableKeys, EMPTY);
+        tableSlots = new int[capacity * 2];
+        deviceIds = new long[capacity];
+        mean = new double[capacity];
+        variance = new double[capacity];
+        level = new double[capacity];
+        count = new int[capacity];
+        elevatedRun = new int[capacity];
+        lastReportedAt = new long[capacity];
+        size = 0;
+    }
+
+    private void growSlots() {
+        final int capacity = deviceIds.length * 2;
+        deviceIds = Arrays.copyOf(deviceIds, capacity);
+        mean = Arrays.copyOf(mean, capacity);
+        variance = Arrays.copyOf(variance, capacity);
+        level = Arrays.copyOf(level, capacity);
+        count = Arrays.copyOf(count, capacity);
+        elevatedRun = Arrays.copyOf(elevatedRun, capacity);
+        lastReportedAt = Arrays.copyOf(lastReportedAt, capacity);
+    }
+
+    private void rehash(int tableSize) {
+        final long[] keys = new long[tableSize];
+        Arrays.fill(keys, EMPTY);
+        final int[] slots = new int[tableSize];
+        for (int slot = 0; slot < size; slot++) {
+            final int index = indexOf(deviceIds[slot], keys);
+            keys[index] = deviceIds[slot];
+            slots[index] = slot;
+        }
+        tableKeys = keys;
+        tableSlots = slots;
+    }
+
+    /**
+     * @return The table index holding the device ID, or the empty index where it would be inserted
+     */
+    private static int indexOf(long deviceId, long[] keys) {
+        final int mask = keys.length - 1;
+        int index = Long.hashCode(deviceId * 0x9E3779B97F4A7C15L) & mask;
+        while (keys[index] != EMPTY && keys[index] != deviceId) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+}
@@ -0,0 +1,70 @@
+package com.neeraj.usageservice.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Refreshes expired cache entries (devices, user profiles, alert rules) off the Kafka listener thread, so
+ * readings are applied with the stale entry instead of waiting for a remote call. Requests to refresh an
+ * entry that is already being refreshed are ignored; when the queue is full the refresh is dropped and the
+ * stale entry keeps being served until a later reading asks again.
+ */
+@Component
+@Slf4j
+public class CacheRefresher {
+
+    private final ExecutorService executor;
+
+    // Keys of the entries queued or being refreshed
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    public CacheRefresher(@Value("${usage.cache-refresh.threads:2}") int threads,
+                          @Value("${usage.cache-refresh.queue-capacity:10000}") int queueCapacity) {
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+            final Thread thread = new Thread(runnable, "cache-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Runs a refresh in the background unless one for the same entry is already pending.
+     *
+     * @param key     Identifies the entry, e.g. "device:42"
+     * @param refresh Reloads the entry and stores it in its cache
+     */
+    public void refresh(String key, Runnable refresh) {
+        if (!pending.add(key)) {
+            return;
+        }
+
+        try {
+            executor.execute(() -> {
+                try {
+                    refresh.run();
+                } catch (RuntimeException e) {
+                    log.warn("Failed to refresh {}: {}", key, e.getMessage());
+                } finally {
+                    pending.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.remove(key);
+        }
+    }
+}
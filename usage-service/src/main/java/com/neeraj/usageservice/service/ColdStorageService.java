@@ -0,0 +1,370 @@
+package com.neeraj.usageservice.service;
+
+import com.neeraj.usageservice.model.ColdSegment;
+import com.neeraj.usageservice.model.ColdSeriesEntry;
+import com.neeraj.usageservice.model.DevicePointConsumer;
+import com.neeraj.usageservice.model.FluxQuery;
+import com.neeraj.usageservice.model.QuerySegment;
+import com.neeraj.usageservice.model.StorageTier;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Cold storage tier for usage history that has aged out of the raw InfluxDB bucket. Every completed
+ * UTC day still inside the raw retention is exported once into a local columnar segment file (see
+ * {@link ColdSegment}); queries read the files through memory mapping for the COLD segments planned
+ * by {@link UsageQueryPlanner} and merge the result with what InfluxDB returns for the rest. Only the
+ * most recently used segments stay mapped, and files older than the cold retention are deleted.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class ColdStorageService {
+
+    private static final String FILE_PREFIX = "usage-";
+    private static final String FILE_SUFFIX = ".ucs";
+
+    private final FluxQueryBuilder fluxQueryBuilder;
+    private final FluxQueryExecutor fluxQueryExecutor;
+
+    // Opened (memory-mapped) segments by day, least recently used first; guarded by itself
+    private final LinkedHashMap<LocalDate, ColdSegment> segments = new LinkedHashMap<>(16, 0.75f, true);
+
+    @Value("${usage.cold.enabled:true}")
+    private boolean coldEnabled;
+
+    @Value("${usage.cold.directory:data/usage-cold}")
+    private Path directory;
+
+    @Value("${usage.cold.settle:1h}")
+    private Duration settle;
+
+    @Value("${usage.cold.export-timeout:10m}")
+    private Duration exportTimeout;
+
+    @Value("${usage.cold.retention:1825d}")
+    private Duration coldRetention;
+
+    // Segments mapped at the same time; the least recently used one is unmapped beyond this
+    @Value("${usage.cold.max-open-segments:64}")
+    private int maxOpenSegments;
+
+    @Value("${usage.rollup.raw-retention}")
+    private Duration rawRetention;
+
+    /**
+     * Exports any days missed while the service was down.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void initializeColdStorage() {
+        if (!coldEnabled) {
+            log.info("Cold storage is disabled, usage older than the raw retention is read from rollups only");
+            return;
+        }
+        exportCompletedDays();
+    }
+
+    /**
+     * Exports every completed day that is still fully inside the raw retention and has no segment file yet.
+     * A day is considered complete once late readings had time to arrive.
+     */
+    @Scheduled(cron = "${usage.cold.export-cron:0 30 * * * *}")
+    public void exportCompletedDays() {
+        if (!coldEnabled) {
+            return;
+        }
+
+        final Instant now = Instant.now();
+        final LocalDate firstDay = LocalDate.ofInstant(now.minus(rawRetention), ZoneOffset.UTC).plusDays(1);
+        final LocalDate lastDay = LocalDate.ofInstant(now.minus(settle), ZoneOffset.UTC).minusDays(1);
+
+        for (LocalDate day = firstDay; !day.isAfter(lastDay); day = day.plusDays(1)) {
+            if (Files.exists(pathFor(day))) {
+                continue;
+            }
+
+            try {
+                exportDay(day);
+            } catch (Exception e) {
+                log.error("Failed to export usage for {} to cold storage: {}", day, e.getMessage(), e);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Deletes the segment files of days older than the cold retention, unmapping them first.
+     */
+    @Scheduled(cron = "${usage.cold.export-cron:0 30 * * * *}")
+    public void deleteExpiredDays() {
+        if (!coldEnabled || !Files.isDirectory(directory)) {
+            return;
+        }
+
+        // Never below the raw retention, or the export would write the deleted days again
+        final Duration retention = coldRetention.compareTo(rawRetention) < 0 ? rawRetention : coldRetention;
+        final LocalDate firstRetainedDay = LocalDate.ofInstant(Instant.now().minus(retention), ZoneOffset.UTC);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, FILE_PREFIX + "*" + FILE_SUFFIX)) {
+            for (Path path : files) {
+                final LocalDate day = dayOf(path);
+                if (day == null || !day.isBefore(firstRetainedDay)) {
+                    continue;
+                }
+
+                unmap(day);
+                Files.deleteIfExists(path);
+                log.info("Deleted cold segment {} (older than the cold retention of {})", path, retention);
+            }
+        } catch (IOException e) {
+            log.error("Failed to delete expired cold segments: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Sums the usage per device over the COLD segments of a query plan.
+     *
+     * @param userId    The ID of the user owning the devices
+     * @param deviceIds IDs of the devices to include
+     * @param plan      Segments planned for the query; non-COLD segments are ignored
+     * @return Map of deviceId to energy used (empty if the plan has no COLD segments)
+     */
+    public Map<Long, Double> sumByDevice(Long userId, Collection<Long> deviceIds, List<QuerySegment> plan) {
+        final Map<Long, Double> deviceEnergyMap = new HashMap<>();
+        final Set<Long> wanted = new HashSet<>(deviceIds);
+
+        for (QuerySegment segment : coldSegments(plan)) {
+            final long start = segment.getStart().toEpochMilli();
+            final long stop = segment.getStop().toEpochMilli();
+
+            forEachSeries(userId, wanted, segment, (coldSegment, entry) -> {
+                // Whole-day series use the sum from the footer index without inflating the block
+                if (entry.getMinTime() >= start && entry.getMaxTime() < stop) {
+                    deviceEnergyMap.merge(entry.getDeviceId(), entry.getSum(), Double::sum);
+                    return;
+                }
+
+                final double[] partial = {0.0};
+                coldSegment.forEachPoint(entry, (time, value) -> {
+                    if (time >= start && time < stop) {
+                        partial[0] += value;
+                    }
+                });
+                deviceEnergyMap.merge(entry.getDeviceId(), partial[0], Double::sum);
+            });
+        }
+        return deviceEnergyMap;
+    }
+
+    /**
+     * Streams the raw points of the devices within the COLD segments of a query plan, one stored series
+     * at a time (each in time order), without collecting them.
+     *
+     * @param userId    The ID of the user owning the devices
+     * @param deviceIds IDs of the devices to include
+     * @param plan      Segments planned for the query; non-COLD segments are ignored
+     * @param consumer  Receiver of the points
+     */
+    public void forEachPoint(Long userId, Collection<Long> deviceIds, List<QuerySegment> plan, DevicePointConsumer consumer) {
+        final Set<Long> wanted = new HashSet<>(deviceIds);
+
+        for (QuerySegment segment : coldSegments(plan)) {
+            final long start = segment.getStart().toEpochMilli();
+            final long stop = segment.getStop().toEpochMilli();
+
+            forEachSeries(userId, wanted, segment, (coldSegment, entry) -> coldSegment.forEachPoint(entry, (time, value) -> {
+                if (time >= start && time < stop) {
+                    consumer.accept(entry.getDeviceId(), time, value);
+                }
+            }));
+        }
+    }
+
+    /**
+     * Sums the usage per device into epoch-aligned windows of the given step (the same windows as
+     * Flux's aggregateWindow) over the COLD segments of a query plan.
+     *
+     * @param userId    The ID of the user owning the devices
+     * @param deviceIds IDs of the devices to include
+     * @param plan      Segments planned for the query; non-COLD segments are ignored
+     * @param step      Window size
+     * @return Map of deviceId to (window start, epoch ms -> energy used)
+     */
+    public Map<Long, NavigableMap<Long, Double>> windowedByDevice(Long userId, Collection<Long> deviceIds,
+                                                                  List<QuerySegment> plan, Duration step) {
+        final Map<Long, NavigableMap<Long, Double>> windows = new HashMap<>();
+        final Set<Long> wanted = new HashSet<>(deviceIds);
+        final long stepMillis = step.toMillis();
+
+        for (QuerySegment segment : coldSegments(plan)) {
+            final long start = segment.getStart().toEpochMilli();
+            final long stop = segment.getStop().toEpochMilli();
+
+            forEachSeries(userId, wanted, segment, (coldSegment, entry) -> {
+                final NavigableMap<Long, Double> deviceWindows = windows.computeIfAbsent(entry.getDeviceId(), id -> new TreeMap<>());
+                coldSegment.forEachPoint(entry, (time, value) -> {
+                    if (time >= start && time < stop) {
+                        deviceWindows.merge(time - Math.floorMod(time, stepMillis), value, Double::sum);
+                    }
+                });
+            });
+        }
+        return windows;
+    }
+
+    /**
+     * Exports one day of raw points into a segment file, streaming the query result series by series.
+     */
+    private void exportDay(LocalDate day) throws IOException {
+        final Instant start = day.atStartOfDay(ZoneOffset.UTC).toInstant();
+        final FluxQuery fluxQuery = fluxQueryBuilder.coldExportQuery(start, start.plus(Duration.ofDays(1)));
+        final Path path = pathFor(day);
+
+        try (ColdSegment.Writer writer = ColdSegment.Writer.create(path, day)) {
+            final long[] points = {0};
+            fluxQueryExecutor.stream(fluxQuery, exportTimeout, record -> {
+                final Object deviceIdObj = record.getValueByKey("deviceId");
+                final Object userIdObj = record.getValueByKey("userId");
+                if (deviceIdObj == null || record.getTime() == null || !(record.getValue() instanceof Number value)) {
+                    return;
+                }
+
+                try {
+                    writer.append(Long.parseLong(deviceIdObj.toString()),
+                            userIdObj == null ? ColdSegment.NO_USER : Long.parseLong(userIdObj.toString()),
+                            record.getTime().toEpochMilli(),
+                            value.doubleValue());
+                    points[0]++;
+                } catch (NumberFormatException nfe) {
+                    log.warn("Skipping record with invalid deviceId/userId: {}/{}", deviceIdObj, userIdObj);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            writer.commit();
+
+            unmap(day);
+            log.info("Exported {} usage points for {} to {} ({} bytes)", points[0], day, path, Files.size(path));
+        }
+    }
+
+    private void forEachSeries(Long userId, Set<Long> deviceIds, QuerySegment segment, SeriesVisitor visitor) {
+        final LocalDate firstDay = LocalDate.ofInstant(segment.getStart(), ZoneOffset.UTC);
+        final LocalDate lastDay = LocalDate.ofInstant(segment.getStop().minusMillis(1), ZoneOffset.UTC);
+
+        for (LocalDate day = firstDay; !day.isAfter(lastDay); day = day.plusDays(1)) {
+            final ColdSegment coldSegment = retainSegment(day);
+            if (coldSegment == null) {
+                continue;
+            }
+
+            try {
+                for (Long deviceId : deviceIds) {
+                    for (ColdSeriesEntry entry : coldSegment.entriesFor(deviceId)) {
+                        // Same ownership rule as the InfluxDB queries: the user's points, or untagged ones
+                        // (compared as primitives, a null user only matches untagged points)
+                        if (entry.getUserId() == ColdSegment.NO_USER || (userId != null && entry.getUserId() == userId)) {
+                            visitor.visit(coldSegment, entry);
+                        }
+                    }
+                }
+            } finally {
+                coldSegment.release();
+            }
+        }
+    }
+
+    /**
+     * Returns the mapped segment of a day with a reference taken (to be released by the caller), mapping
+     * it if needed and unmapping the least recently used segment beyond the limit.
+     *
+     * @return The segment, or null if the day has no readable segment file
+     */
+    private ColdSegment retainSegment(LocalDate day) {
+        synchronized (segments) {
+            ColdSegment coldSegment = segments.get(day);
+            if (coldSegment == null) {
+                final Path path = pathFor(day);
+                if (!Files.exists(path)) {
+                    return null;
+                }
+
+                try {
+                    coldSegment = ColdSegment.open(path);
+                } catch (IOException e) {
+                    log.warn("Failed to open cold segment {}: {}", path, e.getMessage());
+                    return null;
+                }
+                segments.put(day, coldSegment);
+
+                // Segments still being read stay mapped until their readers release them
+                final Iterator<ColdSegment> leastRecentlyUsed = segments.values().iterator();
+                while (segments.size() > Math.max(1, maxOpenSegments)) {
+                    leastRecentlyUsed.next().close();
+                    leastRecentlyUsed.remove();
+                }
+            }
+
+            coldSegment.retain();
+            return coldSegment;
+        }
+    }
+
+    private void unmap(LocalDate day) {
+        final ColdSegment coldSegment;
+        synchronized (segments) {
+            coldSegment = segments.remove(day);
+        }
+        if (coldSegment != null) {
+            coldSegment.close();
+        }
+    }
+
+    private static LocalDate dayOf(Path path) {
+        final String name = path.getFileName().toString();
+        try {
+            return LocalDate.parse(name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length()));
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static List<QuerySegment> coldSegments(List<QuerySegment> plan) {
+        return plan.stream()
+                .filter(segment -> segment.getTier() == StorageTier.COLD)
+                .toList();
+    }
+
+    private Path pathFor(LocalDate day) {
+        return directory.resolve(FILE_PREFIX + day + FILE_SUFFIX);
+    }
+
+    @FunctionalInterface
+    private interface SeriesVisitor {
+        void visit(ColdSegment coldSegment, ColdSeriesEntry entry);
+    }
+}
@@ -0,0 +1,227 @@
+package com.neeraj.usageservice.service;
+
+import com.neeraj.usageservice.client.DeviceClient;
+import com.neeraj.usageservice.dto.DeviceDTO;
+import com.neeraj.usageservice.dto.DeviceDirectoryStatsDTO;
+import com.neeraj.usageservice.model.DeviceInfo;
+import com.neeraj.usageservice.model.MissingDeviceFilter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClientException;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local device -> user map used to tag energy usage points with their owner at write time.
+ * Entries are resolved lazily from device-service and re-resolved once they are older than the
+ * configured TTL, so a device that is moved to another user starts being tagged with the new
+ * owner within one TTL. Expired entries keep being served while they are re-resolved in the background
+ * ({@link CacheRefresher}), so only the first reading of a device waits for device-service.
+ * Whole device lists fetched for a user refresh the map immediately.
+ * Devices that device-service does not know (unregistered or deleted devices that still report) are
+ * remembered in a {@link MissingDeviceFilter}, so their readings skip the remote lookup until the
+ * missing-TTL has passed instead of calling device-service for every reading.
+ */
+@Component
+@Slf4j
+public class DeviceDirectory implements SnapshotParticipant {
+
+    private final DeviceClient deviceClient;
+    private final CacheRefresher cacheRefresher;
+    private final MissingDeviceFilter missingDevices;
+
+    private final Map<Long, DeviceInfo> devices = new ConcurrentHashMap<>();
+
+    private final AtomicLong remoteLookups = new AtomicLong();
+    private final AtomicLong skippedLookups = new AtomicLong();
+    private final AtomicLong failedLookups = new AtomicLong();
+
+    @Value("${usage.device-directory.ttl:10m}")
+    private Duration ttl;
+
+    public DeviceDirectory(DeviceClient deviceClient, CacheRefresher cacheRefresher,
+                           @Value("${usage.device-directory.missing-ttl:1h}") Duration missingTtl,
+                           @Value("${usage.device-directory.missing-max-device-id:16777216}") int missingMaxDeviceId) {
+        this.deviceClient = deviceClient;
+        this.cacheRefresher = cacheRefresher;
+        this.missingDevices = new MissingDeviceFilter(missingTtl.toMillis(), missingMaxDeviceId, System.currentTimeMillis());
+    }
+
+    /**
+     * Resolves the current owner of a device.
+     *
+     * @param deviceId The device ID
+     * @return The ID of the user owning the device, or null if the device is unknown
+     */
+    public Long resolveUserId(Long deviceId) {
+        final DeviceInfo device = resolve(deviceId);
+        return device == null ? null : device.getUserId();
+    }
+
+    /**
+     * Resolves device metadata from the local map. An expired entry is returned as is and re-resolved in
+     * the background; a missing entry is looked up in device-service right away, since the owner is written
+     * to InfluxDB with the reading. Devices recently found missing are not looked up again.
+     *
+     * @param deviceId The device ID
+     * @return The device metadata, or null if device-service does not know the device
+     */
+    public DeviceInfo resolve(Long deviceId) {
+        if (deviceId == null) {
+            return null;
+        }
+
+        final DeviceInfo cached = devices.get(deviceId);
+        if (cached != null) {
+            if (isExpired(cached)) {
+                cacheRefresher.refresh("device:" + deviceId, () -> lookup(deviceId, cached));
+            }
+            return cached;
+        }
+
+        if (missingDevices.contains(deviceId, System.currentTimeMillis())) {
+            skippedLookups.incrementAndGet();
+            return null;
+        }
+        return lookup(deviceId, null);
+    }
+
+    /**
+     * Looks a device up in device-service and stores the result.
+     *
+     * @param cached The entry being re-resolved, returned if device-service cannot be reached
+     */
+    private DeviceInfo lookup(Long deviceId, DeviceInfo cached) {
+        final DeviceDTO deviceResponse;
+        try {
+            remoteLookups.incrementAndGet();
+            deviceResponse = deviceClient.getDeviceById(deviceId);
+        } catch (RestClientException e) {
+            // device-service is unreachable - keep the last known owner rather than dropping it (or marking it missing)
+            failedLookups.incrementAndGet();
+            return cached;
+        }
+
+        if (deviceResponse == null || deviceResponse.id() == null || deviceResponse.userId() == null) {
+            // Device was deleted or never registered - stop attributing its usage to anyone
+            devices.remove(deviceId);
+            if (missingDevices.add(deviceId, System.currentTimeMillis())) {
+                log.info("Device {} is unknown to device-service, skipping its lookups for now", deviceId);
+            }
+            return null;
+        }
+
+        return register(deviceResponse);
+    }
+
+    /**
+     * Stores (or refreshes) the metadata of a device, logging ownership changes.
+     *
+     * @param deviceDto The device as returned by device-service
+     * @return The stored device metadata
+     */
+    public DeviceInfo register(DeviceDTO deviceDto) {
+        final DeviceInfo device = DeviceInfo.builder()
+                .id(deviceDto.id())
+                .name(deviceDto.name())
+                .type(deviceDto.type())
+                .location(deviceDto.location())
+                .userId(deviceDto.userId())
+                .resolvedAt(Instant.now())
+                .build();
+
+        final DeviceInfo previous = devices.put(deviceDto.id(), device);
+        missingDevices.remove(deviceDto.id());
+        if (previous != null && !Objects.equals(previous.getUserId(), device.getUserId())) {
+            log.info("Device {} reassigned from user {} to user {}", device.getId(), previous.getUserId(), device.getUserId());
+        }
+
+        return device;
+    }
+
+    /**
+     * Refreshes the map with a full device list, e.g. the devices fetched for a user.
+     *
+     * @param deviceDtos Devices as returned by device-service
+     */
+    public void registerAll(List<DeviceDTO> deviceDtos) {
+        for (DeviceDTO deviceDto : deviceDtos) {
+            if (deviceDto.id() != null && deviceDto.userId() != null) {
+                register(deviceDto);
+            }
+        }
+    }
+
+    /**
+     * Reports the size of the directory and how many reading lookups went to device-service or were skipped.
+     */
+    public DeviceDirectoryStatsDTO stats() {
+        return DeviceDirectoryStatsDTO.builder()
+                .cachedDevices(devices.size())
+                .missingDevices(missingDevices.size())
+                .remoteLookups(remoteLookups.get())
+                .skippedLookups(skippedLookups.get())
+                .failedLookups(failedLookups.get())
+                .build();
+    }
+
+    @Override
+    public String snapshotName() {
+        return "device-directory";
+    }
+
+    @Override
+    public void writeSnapshot(DataOutputStream out) throws IOException {
+        final List<DeviceInfo> snapshot = List.copyOf(devices.values());
+        out.writeInt(snapshot.size());
+        for (DeviceInfo device : snapshot) {
+            out.writeLong(device.getId());
+            SnapshotParticipant.writeString(out, device.getName());
+            SnapshotParticipant.writeString(out, device.getType());
+            SnapshotParticipant.writeString(out, device.getLocation());
+            out.writeLong(device.getUserId() == null ? -1L : device.getUserId());
+            out.writeLong(device.getResolvedAt().toEpochMilli());
+        }
+    }
+
+    @Override
+    public void restoreSnapshot(ByteBuffer section) {
+        final Map<Long, DeviceInfo> restored = new HashMap<>();
+        final int deviceCount = section.getInt();
+        for (int i = 0; i < deviceCount; i++) {
+            final long id = section.getLong();
+            final String name = SnapshotParticipant.readString(section);
+            final String type = SnapshotParticipant.readString(section);
+            final String location = SnapshotParticipant.readString(section);
+            final long userId = section.getLong();
+            final DeviceInfo device = DeviceInfo.builder()
+                    .id(id)
+                    .name(name)
+                    .type(type)
+                    .location(location)
+                    .userId(userId < 0 ? null : userId)
+                    // Entries keep their original age, so stale owners are still re-resolved after the TTL
+                    .resolvedAt(Instant.ofEpochMilli(section.getLong()))
+                    .build();
+            restored.put(device.getId(), device);
+        }
+
+        devices.putAll(restored);
+        log.info("Restored {} devices from snapshot", restored.size());
+    }
+
+    private boolean isExpired(DeviceInfo device) {
+        return device.getResolvedAt().plus(ttl).isBefore(Instant.now());
+    }
+}
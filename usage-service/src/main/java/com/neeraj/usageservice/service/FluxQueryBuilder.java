@@ -0,0 +1,461 @@
+package com.neeraj.usageservice.service;
+
+import com.influxdb.client.domain.Dialect;
+import com.influxdb.client.domain.Query;
+import com.neeraj.usageservice.model.FluxQuery;
+import com.neeraj.usageservice.model.QuerySegment;
+import com.neeraj.usageservice.model.StorageTier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Builds the Flux queries used by usage-service.
+ * Every value (buckets, time bounds, user IDs, ...) is passed through the {@code params} record instead
+ * of being formatted into the script. InfluxDB Cloud binds {@code params} natively; InfluxDB OSS does not
+ * support query parameters, so there the record is rendered as an escaped literal in front of the script.
+ * Device sets are matched with a single anchored regex (pushed down to the storage engine) instead of
+ * one equality predicate per device, and large sets are split into chunks that can run in parallel.
+ */
+@Component
+public class FluxQueryBuilder {
+
+    private static final Dialect DIALECT = new Dialect()
+            .header(true)
+            .delimiter(",")
+            .commentPrefix("#")
+            .annotations(List.of(
+                    Dialect.AnnotationsEnum.DATATYPE,
+                    Dialect.AnnotationsEnum.GROUP,
+                    Dialect.AnnotationsEnum.DEFAULT));
+
+    // Labels of the periods in comparison queries
+    public static final String PREVIOUS_PERIOD = "previous";
+    public static final String CURRENT_PERIOD = "current";
+
+    private static final String ENERGY_USAGE_FILTERS = """
+              |> filter(fn: (r) => r["_measurement"] == "energy_usage")
+              |> filter(fn: (r) => r["_field"] == "energyUsage")
+            """;
+
+    @Value("${influxdb.bucket}")
+    private String influxDbBucket;
+
+    @Value("${influxdb.org}")
+    private String influxDbOrg;
+
+    @Value("${influxdb.native-query-params:false}")
+    private boolean nativeQueryParams;
+
+    @Value("${usage.rollup.hourly-bucket}")
+    private String hourlyBucket;
+
+    @Value("${usage.rollup.daily-bucket}")
+    private String dailyBucket;
+
+    @Value("${usage.query.device-chunk-size:200}")
+    private int deviceChunkSize;
+
+    /**
+     * Builds the queries summing energy usage per device for a user's devices over planned segments.
+     * Device lists larger than the chunk size are split into one query per chunk; the results of the
+     * chunks are disjoint and can simply be merged.
+     *
+     * @param userId    The ID of the user owning the devices
+     * @param deviceIds IDs of the devices to include
+     * @param segments  Storage tier segments covering the requested range
+     * @return One query per device chunk (empty if there are no devices or segments)
+     */
+    public List<FluxQuery> deviceUsageQueries(Long userId, List<Long> deviceIds, List<QuerySegment> segments) {
+        return chunked(deviceIds, segments, chunk -> deviceUsageQuery(userId, chunk, segments));
+    }
+
+    /**
+     * Builds a query summing energy usage per device over planned segments.
+     * The per-segment sources are unioned, grouped by device and summed.
+     *
+     * @param userId    The ID of the user owning the devices
+     * @param deviceIds IDs of the devices to include
+     * @param segments  Storage tier segments covering the requested range
+     * @return The query
+     */
+    public FluxQuery deviceUsageQuery(Long userId, List<Long> deviceIds, List<QuerySegment> segments) {
+        final Map<String, Object> params = new LinkedHashMap<>();
+        final StringBuilder flux = new StringBuilder();
+        final List<String> sources = appendDeviceSources(flux, params, userId, deviceIds, segments);
+
+        flux.append("union(tables: [").append(String.join(", ", sources)).append("])\n")
+                .append("  |> group(columns: [\"deviceId\"])\n")
+                .append("  |> sum(column: \"_value\")\n");
+
+        return new FluxQuery(flux.toString(), params);
+    }
+
+    /**
+     * Builds the queries returning a usage series per device, downsampled to the given step inside InfluxDB.
+     * Each window is stamped with its start time and empty windows are left out. Records arrive one device
+     * table at a time, in time order.
+     *
+     * @param userId    The ID of the user owning the devices
+     * @param deviceIds IDs of the devices to include
+     * @param segments  Storage tier segments covering the requested range
+     * @param step      Window size of the series
+     * @return One query per device chunk (empty if there are no devices or segments)
+     */
+    public List<FluxQuery> deviceSeriesQueries(Long userId, List<Long> deviceIds, List<QuerySegment> segments, Duration step) {
+        return chunked(deviceIds, segments, chunk -> {
+            final Map<String, Object> params = new LinkedHashMap<>();
+            params.put("step", toFluxDuration(step));
+
+            final StringBuilder flux = new StringBuilder();
+            final List<String> sources = appendDeviceSources(flux, params, userId, chunk, segments);
+
+            flux.append("union(tables: [").append(String.join(", ", sources)).append("])\n")
+                    .append("  |> group(columns: [\"deviceId\"])\n")
+                    .append("  |> sort(columns: [\"_time\"])\n")
+                    .append("  |> aggregateWindow(every: duration(v: params.step), fn: sum, timeSrc: \"_start\", createEmpty: false)\n");
+
+            return new FluxQuery(flux.toString(), params);
+        });
+    }
+
+    /**
+     * Builds the queries returning the raw readings of the user's devices, one table per device in
+     * time order. Only the columns needed for an export are kept, so the result stays small on the wire.
+     *
+     * @param userId    The ID of the user owning the devices
+     * @param deviceIds IDs of the devices to include
+     * @param segments  Storage tier segments covering the requested range (RAW only)
+     * @return One query per device chunk (empty if there are no devices or segments)
+     */
+    public List<FluxQuery> deviceReadingsQueries(Long userId, List<Long> deviceIds, List<QuerySegment> segments) {
+        return chunked(deviceIds, segments, chunk -> {
+            final Map<String, Object> params = new LinkedHashMap<>();
+            final StringBuilder flux = new StringBuilder();
+            final List<String> sources = appendDeviceSources(flux, params, userId, chunk, segments);
+
+            flux.append("union(tables: [").append(String.join(", ", sources)).append("])\n")
+                    .append("  |> keep(columns: [\"_time\", \"_value\", \"deviceId\"])\n")
+                    .append("  |> group(columns: [\"deviceId\"])\n")
+                    .append("  |> sort(columns: [\"_time\"])\n");
+
+            return new FluxQuery(flux.toString(), params);
+        });
+    }
+
+    /**
+     * Builds the queries summing energy usage per device and owner tag for the devices of many users.
+     * Unlike the single-user queries nothing is filtered by owner; the caller attributes each (device, userId)
+     * sum to the device's current owner, counting untagged points and points tagged with that owner.
+     *
+     * @param deviceIds IDs of the devices to include
+     * @param segments  Storage tier segments covering the requested range
+     * @return One query per device chunk (empty if there are no devices or segments)
+     */
+    public List<FluxQuery> multiUserDeviceUsageQueries(List<Long> deviceIds, List<QuerySegment> segments) {
+        return chunked(deviceIds, segments, chunk -> {
+            final Map<String, Object> params = new LinkedHashMap<>();
+            final StringBuilder flux = new StringBuilder();
+            final List<String> sources = appendDeviceSources(flux, params, null, chunk, segments);
+
+            flux.append("union(tables: [").append(String.join(", ", sources)).append("])\n")
+                    .append("  |> group(columns: [\"deviceId\", \"userId\"])\n")
+                    .append("  |> sum(column: \"_value\")\n");
+
+            return new FluxQuery(flux.toString(), params);
+        });
+    }
+
+    /**
+     * Builds the queries summing energy usage per device over two periods in one scan. The segments of each
+     * period are read by their own sources, labelled with a {@code period} column ("previous" / "current"),
+     * unioned, and summed per device and period.
+     *
+     * @param userId           The ID of the user owning the devices
+     * @param deviceIds        IDs of the devices to include
+     * @param previousSegments Storage tier segments covering the previous period
+     * @param currentSegments  Storage tier segments covering the current period
+     * @return One query per device chunk (empty if there are no devices or segments)
+     */
+    public List<FluxQuery> devicePeriodComparisonQueries(Long userId, List<Long> deviceIds,
+                                                         List<QuerySegment> previousSegments, List<QuerySegment> currentSegments) {
+        final List<QuerySegment> segments = new ArrayList<>(previousSegments);
+        segments.addAll(currentSegments);
+
+        return chunked(deviceIds, segments, chunk -> {
+            final Map<String, Object> params = new LinkedHashMap<>();
+            final StringBuilder flux = new StringBuilder();
+            final List<String> sources = appendDeviceSources(flux, params, userId, chunk, segments);
+
+            final List<String> labelled = new ArrayList<>();
+            for (int i = 0; i < sources.size(); i++) {
+                final String period = i < previousSegments.size() ? PREVIOUS_PERIOD : CURRENT_PERIOD;
+                labelled.add(sources.get(i) + " |> set(key: \"period\", value: \"" + period + "\")");
+            }
+
+            flux.append("union(tables: [").append(String.join(", ", labelled)).append("])\n")
+                    .append("  |> group(columns: [\"deviceId\", \"period\"])\n")
+                    .append("  |> sum(column: \"_value\")\n");
+
+            return new FluxQuery(flux.toString(), params);
+        });
+    }
+
+    /**
+     * Builds a query summing the raw energy usage per user (by the userId tag) within [start, stop).
+     *
+     * @param start Start of the range (inclusive)
+     * @param stop  End of the range (exclusive)
+     * @return The query
+     */
+    public FluxQuery userUsageQuery(Instant start, Instant stop) {
+        final Map<String, Object> params = new LinkedHashMap<>();
+        params.put("bucket", influxDbBucket);
+        params.put("start", start.toString());
+        params.put("stop", stop.toString());
+
+        final String flux = """
+                from(bucket: params.bucket)
+                  |> range(start: time(v: params.start), stop: time(v: params.stop))
+                """ + ENERGY_USAGE_FILTERS + """
+                  |> filter(fn: (r) => exists r["userId"])
+                  |> group(columns: ["userId"])
+                  |> sum(column: "_value")
+                """;
+
+        return new FluxQuery(flux, params);
+    }
+
+    /**
+     * Builds a query returning the usage of every owned device on one day, read from the daily rollups
+     * (one point per device, owner and day).
+     *
+     * @param dayStart Start of the day (inclusive)
+     * @param dayEnd   End of the day (exclusive)
+     * @return The query
+     */
+    public FluxQuery dailyDeviceUsageQuery(Instant dayStart, Instant dayEnd) {
+        final Map<String, Object> params = new LinkedHashMap<>();
+        params.put("bucket", dailyBucket);
+        params.put("start", dayStart.toString());
+        params.put("stop", dayEnd.toString());
+
+        final String flux = """
+                from(bucket: params.bucket)
+                  |> range(start: time(v: params.start), stop: time(v: params.stop))
+                """ + ENERGY_USAGE_FILTERS + """
+                  |> filter(fn: (r) => exists r["userId"])
+                  |> group()
+                  |> keep(columns: ["_value", "deviceId", "userId"])
+                """;
+
+        return new FluxQuery(flux, params);
+    }
+
+    /**
+     * Builds a query aggregating one bucket into another per device and owner, stamping each window
+     * with its start time. Only a single row (the number of written points) is returned.
+     *
+     * @param sourceBucket Bucket to read
+     * @param targetBucket Bucket to write
+     * @param every        Window size
+     * @param start        Start of the range (inclusive)
+     * @param stop         End of the range (exclusive)
+     * @return The query
+     */
+    public FluxQuery rollupQuery(String sourceBucket, String targetBucket, Duration every, Instant start, Instant stop) {
+        final Map<String, Object> params = new LinkedHashMap<>();
+        params.put("sourceBucket", sourceBucket);
+        params.put("targetBucket", targetBucket);
+        params.put("org", influxDbOrg);
+        params.put("every", toFluxDuration(every));
+        params.put("start", start.toString());
+        params.put("stop", stop.toString());
+
+        final String flux = """
+                from(bucket: params.sourceBucket)
+                  |> range(start: time(v: params.start), stop: time(v: params.stop))
+                """ + ENERGY_USAGE_FILTERS + """
+                  |> group(columns: ["_measurement", "_field", "deviceId", "userId"])
+                  |> aggregateWindow(every: duration(v: params.every), fn: sum, timeSrc: "_start", createEmpty: false)
+                  |> to(bucket: params.targetBucket, org: params.org)
+                  |> group()
+                  |> count(column: "_value")
+                """;
+
+        return new FluxQuery(flux, params);
+    }
+
+    /**
+     * Builds a query returning the timestamp of the newest energy usage point of a bucket since a given time.
+     *
+     * @param bucket Bucket to read
+     * @param since  Oldest time to look at
+     * @return The query
+     */
+    public FluxQuery latestPointQuery(String bucket, Instant since) {
+        final Map<String, Object> params = new LinkedHashMap<>();
+        params.put("bucket", bucket);
+        params.put("start", since.toString());
+
+        final String flux = """
+                from(bucket: params.bucket)
+                  |> range(start: time(v: params.start))
+                  |> filter(fn: (r) => r["_measurement"] == "energy_usage")
+                  |> keep(columns: ["_time"])
+                  |> group()
+                  |> sort(columns: ["_time"], desc: true)
+                  |> limit(n: 1)
+                """;
+
+        return new FluxQuery(flux, params);
+    }
+
+    /**
+     * Builds a query returning the raw energy usage points within [start, stop) one (device, owner)
+     * series at a time, in time order, for export to cold storage.
+     *
+     * @param start Start of the range (inclusive)
+     * @param stop  End of the range (exclusive)
+     * @return The query
+     */
+    public FluxQuery coldExportQuery(Instant start, Instant stop) {
+        final Map<String, Object> params = new LinkedHashMap<>();
+        params.put("bucket", influxDbBucket);
+        params.put("start", start.toString());
+        params.put("stop", stop.toString());
+
+        final String flux = """
+                from(bucket: params.bucket)
+                  |> range(start: time(v: params.start), stop: time(v: params.stop))
+                """ + ENERGY_USAGE_FILTERS + """
+                  |> group(columns: ["deviceId", "userId"])
+                  |> sort(columns: ["_time"])
+                  |> keep(columns: ["_time", "_value", "deviceId", "userId"])
+                """;
+
+        return new FluxQuery(flux, params);
+    }
+
+    /**
+     * Resolves the InfluxDB bucket holding the data of a storage tier.
+     *
+     * @param tier The storage tier
+     * @return The bucket name
+     */
+    public String bucketFor(StorageTier tier) {
+        return switch (tier) {
+            case RAW -> influxDbBucket;
+            case HOURLY -> hourlyBucket;
+            case DAILY -> dailyBucket;
+            case COLD -> throw new IllegalArgumentException("The COLD tier is not stored in InfluxDB");
+        };
+    }
+
+    /**
+     * Converts a built query into an InfluxDB query, binding its params natively or as a rendered record.
+     *
+     * @param fluxQuery The built query
+     * @return The query to send to InfluxDB
+     */
+    public Query toInfluxQuery(FluxQuery fluxQuery) {
+        final Query query = new Query().dialect(DIALECT);
+        if (nativeQueryParams) {
+            return query.query(fluxQuery.getFlux()).params(fluxQuery.getParams());
+        }
+        return query.query(renderParams(fluxQuery.getParams()) + fluxQuery.getFlux());
+    }
+
+    private List<FluxQuery> chunked(List<Long> deviceIds, List<QuerySegment> segments, Function<List<Long>, FluxQuery> queryForChunk) {
+        final List<FluxQuery> queries = new ArrayList<>();
+        if (segments.isEmpty()) {
+            return queries;
+        }
+
+        for (int from = 0; from < deviceIds.size(); from += deviceChunkSize) {
+            queries.add(queryForChunk.apply(deviceIds.subList(from, Math.min(from + deviceChunkSize, deviceIds.size()))));
+        }
+        return queries;
+    }
+
+    /**
+     * Appends one source per segment, each reading its own bucket with the full filter chain (so filters are
+     * pushed down to storage). Points written before user tagging was introduced carry no userId tag and are
+     * matched by device ID only. Without a userId the points of all owners are read.
+     *
+     * @return The names of the appended sources, to be unioned by the caller
+     */
+    private List<String> appendDeviceSources(StringBuilder flux, Map<String, Object> params, Long userId,
+                                             List<Long> deviceIds, List<QuerySegment> segments) {
+        if (userId != null) {
+            params.put("userId", String.valueOf(userId));
+        }
+
+        final String deviceFilter = deviceIdRegex(deviceIds);
+        final List<String> sources = new ArrayList<>();
+        for (int i = 0; i < segments.size(); i++) {
+            final QuerySegment segment = segments.get(i);
+            params.put("bucket" + i, bucketFor(segment.getTier()));
+            params.put("start" + i, segment.getStart().toString());
+            params.put("stop" + i, segment.getStop().toString());
+
+            final String source = segment.getTier().name().toLowerCase() + i;
+            sources.add(source);
+            flux.append(source).append(" = from(bucket: params.bucket").append(i).append(")\n")
+                    .append("  |> range(start: time(v: params.start").append(i).append("), stop: time(v: params.stop").append(i).append("))\n")
+                    .append(ENERGY_USAGE_FILTERS)
+                    .append("  |> filter(fn: (r) => r[\"deviceId\"] =~ ").append(deviceFilter).append(")\n");
+            if (userId != null) {
+                flux.append("  |> filter(fn: (r) => r[\"userId\"] == params.userId or not exists r[\"userId\"])\n");
+            }
+        }
+        return sources;
+    }
+
+    /**
+     * Builds an anchored regex literal matching exactly the given device IDs, e.g. /^(1|2|3)$/.
+     * IDs are numbers, so they cannot inject anything into the script.
+     */
+    private static String deviceIdRegex(List<Long> deviceIds) {
+        return deviceIds.stream()
+                .map(String::valueOf)
+                .collect(Collectors.joining("|", "/^(", ")$/"));
+    }
+
+    private static String renderParams(Map<String, Object> params) {
+        return params.entrySet().stream()
+                .map(entry -> entry.getKey() + ": " + toFluxLiteral(entry.getValue()))
+                .collect(Collectors.joining(", ", "params = {", "}\n"));
+    }
+
+    private static String toFluxLiteral(Object value) {
+        if (value instanceof Number || value instanceof Boolean) {
+            return value.toString();
+        }
+        if (value instanceof Collection<?> values) {
+            return values.stream()
+                    .map(FluxQueryBuilder::toFluxLiteral)
+                    .collect(Collectors.joining(", ", "[", "]"));
+        }
+
+        // Escape backslashes, quotes and string interpolation
+        final String escaped = String.valueOf(value)
+                .replace("\\", "\\\\")
+                .replace("\"", "\\\"")
+                .replace("${", "\\${");
+        return "\"" + escaped + "\"";
+    }
+
+    private static String toFluxDuration(Duration duration) {
+        return duration.toSeconds() + "s";
+    }
+}
@@ -0,0 +1,112 @@
+package com.neeraj.usageservice.service;
+
+import com.influxdb.client.InfluxDBClient;
+import com.influxdb.query.FluxRecord;
+import com.neeraj.usageservice.exception.FluxQueryException;
+import com.neeraj.usageservice.model.FluxQuery;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Executes Flux queries with the blocking streaming API of the InfluxDB client, handing every record
+ * to the caller as soon as it is parsed from the response instead of materializing all FluxTables first.
+ * Records are read and consumed on the calling thread, so consumers never race with the caller and never
+ * hold up a shared client thread. Queries that exceed their deadline are cancelled by closing the response,
+ * which also stops a query that has not produced its first record yet.
+ */
+@Component
+@RequiredArgsConstructor
+public class FluxQueryExecutor {
+
+    private final InfluxDBClient influxDBClient;
+    private final FluxQueryBuilder fluxQueryBuilder;
+
+    // Closes the responses of queries that run past their deadline
+    private final ScheduledExecutorService deadlines = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "flux-query-deadline");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Value("${influxdb.org}")
+    private String influxDbOrg;
+
+    @Value("${influxdb.query-timeout:30s}")
+    private Duration queryTimeout;
+
+    @PreDestroy
+    public void stop() {
+        deadlines.shutdownNow();
+    }
+
+    /**
+     * Streams the records of a query to a consumer using the default deadline.
+     *
+     * @param fluxQuery The query to execute
+     * @param onRecord  Consumer receiving every record, called sequentially
+     */
+    public void stream(FluxQuery fluxQuery, Consumer<FluxRecord> onRecord) {
+        stream(fluxQuery, queryTimeout, onRecord);
+    }
+
+    /**
+     * Streams the records of a query to a consumer and blocks until the query completes.
+     * The consumer runs on the calling thread and has returned for the last time once this method returns
+     * or throws.
+     *
+     * @param fluxQuery The query to execute
+     * @param deadline  Maximum time for the query to complete
+     * @param onRecord  Consumer receiving every record, called sequentially
+     * @throws FluxQueryException if the query (or the consumer) fails, is interrupted or exceeds the deadline
+     */
+    public void stream(FluxQuery fluxQuery, Duration deadline, Consumer<FluxRecord> onRecord) {
+        final AtomicReference<Stream<FluxRecord>> running = new AtomicReference<>();
+        final AtomicBoolean expired = new AtomicBoolean(false);
+        final ScheduledFuture<?> watchdog = deadlines.schedule(() -> {
+            expired.set(true);
+            // Unblocks the reading thread; if the response has not arrived yet, the caller closes it on arrival
+            final Stream<FluxRecord> records = running.get();
+            if (records != null) {
+                records.close();
+            }
+        }, deadline.toMillis(), TimeUnit.MILLISECONDS);
+
+        try (Stream<FluxRecord> records = influxDBClient.getQueryApi().queryStream(fluxQueryBuilder.toInfluxQuery(fluxQuery), influxDbOrg)) {
+            running.set(records);
+            final Iterator<FluxRecord> iterator = records.iterator();
+            while (!expired.get() && iterator.hasNext()) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new FluxQueryException("Interrupted while waiting for Flux query");
+                }
+                onRecord.accept(iterator.next());
+            }
+        } catch (FluxQueryException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            if (expired.get()) {
+                throw new FluxQueryException("Flux query exceeded its deadline of " + deadline, e);
+            }
+            throw new FluxQueryException("Flux query failed: " + e.getMessage(), e);
+        } finally {
+            watchdog.cancel(false);
+        }
+
+        // The response may have been closed between two records, which ends the iteration early
+        if (expired.get()) {
+            throw new FluxQueryException("Flux query exceeded its deadline of " + deadline);
+        }
+    }
+}
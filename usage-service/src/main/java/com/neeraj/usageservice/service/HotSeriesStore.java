@@ -0,0 +1,255 @@
+package com.neeraj.usageservice.service;
+
+import com.neeraj.usageservice.dto.HotSeriesDeviceStatsDTO;
+import com.neeraj.usageservice.dto.HotSeriesStatsDTO;
+import com.neeraj.usageservice.model.CompressedSeries;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-memory store of the most recent energy usage points per device, fed by the Kafka listener
+ * alongside the InfluxDB writes. Points are kept Gorilla-compressed (about 1-2 bytes per point for
+ * regularly reporting devices), so the whole hot window of every device fits in a small budget.
+ * Usage queries whose range lies entirely inside the window, and for which every device's series
+ * is known to be complete, are answered from memory; everything else falls back to InfluxDB.
+ * Completeness assumes this instance consumes every partition of energy-usage and has replayed the
+ * Kafka tail after a restored snapshot, neither of which the store can tell by itself, so it is disabled
+ * by default: enable it only for a single usage-service instance, and expect answers over the replayed
+ * range to be incomplete until the replay has caught up.
+ */
+@Component
+@Slf4j
+public class HotSeriesStore implements SnapshotParticipant {
+
+    private final Map<Long, CompressedSeries> series = new ConcurrentHashMap<>();
+    private final AtomicLong usedBytes = new AtomicLong();
+    private final AtomicLong evictedBlocks = new AtomicLong();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    // Nothing older than this was ever seen by this instance (or by the snapshot it was restored from)
+    private volatile long startedAt = System.currentTimeMillis();
+
+    @Value("${usage.hot-cache.enabled:false}")
+    private boolean enabled;
+
+    @Value("${usage.hot-cache.window:25h}")
+    private Duration window;
+
+    @Value("${usage.hot-cache.block:1h}")
+    private Duration block;
+
+    @Value("${usage.hot-cache.max-memory:64MB}")
+    private DataSize maxMemory;
+
+    /**
+     * Records a point of a device. A device that changes owner starts a fresh series, because its
+     * earlier points belong to the previous owner.
+     *
+     * @param deviceId The device ID
+     * @param userId   The current owner of the device, or null if unknown
+     * @param time     Time of the reading
+     * @param value    Energy used
+     */
+    public void record(Long deviceId, Long userId, Instant time, double value) {
+        if (!enabled || deviceId == null || time == null) {
+            return;
+        }
+
+        // Appending inside compute keeps it atomic with the removal of empty series
+        final long now = System.currentTimeMillis();
+        final long[] grown = {0};
+        series.compute(deviceId, (id, existing) -> {
+            CompressedSeries deviceSeries = existing;
+            if (deviceSeries == null) {
+                deviceSeries = new CompressedSeries(id, userId, block.toMillis(), startedAt);
+            } else if (!Objects.equals(deviceSeries.getUserId(), userId)) {
+                grown[0] -= deviceSeries.sizeInBytes();
+                deviceSeries = new CompressedSeries(id, userId, block.toMillis(), now);
+            }
+            grown[0] += deviceSeries.append(time.toEpochMilli(), value);
+            return deviceSeries;
+        });
+
+        if (usedBytes.addAndGet(grown[0]) > maxMemory.toBytes()) {
+            enforceBudget();
+        }
+    }
+
+    /**
+     * Sums the usage per device within [start, stop) if the store holds every point of the range.
+     *
+     * @param userId    The ID of the user owning the devices
+     * @param deviceIds IDs of the devices to sum
+     * @param start     Start of the range (inclusive)
+     * @param stop      End of the range (exclusive)
+     * @return Map of deviceId to energy used, or null if the range must be read from InfluxDB
+     */
+    public Map<Long, Double> sumIfCovered(Long userId, List<Long> deviceIds, Instant start, Instant stop) {
+        if (!enabled) {
+            return null;
+        }
+
+        final long startMillis = start.toEpochMilli();
+        if (startMillis < System.currentTimeMillis() - window.toMillis()) {
+            return null;
+        }
+
+        // Every device must be complete from the start of the range; a device without a series
+        // has not reported since startup (or since its data aged out of the window)
+        for (Long deviceId : deviceIds) {
+            final CompressedSeries deviceSeries = series.get(deviceId);
+            final boolean covered = deviceSeries == null
+                    ? startedAt <= startMillis
+                    : Objects.equals(deviceSeries.getUserId(), userId) && deviceSeries.getCompleteSince() <= startMillis;
+            if (!covered) {
+                return null;
+            }
+        }
+
+        final long stopMillis = stop.toEpochMilli();
+        final Map<Long, Double> deviceEnergyMap = new HashMap<>();
+        for (Long deviceId : deviceIds) {
+            final CompressedSeries deviceSeries = series.get(deviceId);
+            if (deviceSeries != null) {
+                deviceEnergyMap.put(deviceId, deviceSeries.sum(startMillis, stopMillis));
+            }
+        }
+        return deviceEnergyMap;
+    }
+
+    /**
+     * Drops blocks that have aged out of the hot window, and series left empty long enough that
+     * an absent series is equivalent.
+     */
+    @Scheduled(fixedDelayString = "${usage.hot-cache.eviction-interval:60000}")
+    public void evictExpired() {
+        final long cutoff = System.currentTimeMillis() - window.toMillis();
+        series.values().forEach(deviceSeries -> usedBytes.addAndGet(-deviceSeries.evictBefore(cutoff)));
+        series.keySet().forEach(deviceId -> series.computeIfPresent(deviceId, (id, deviceSeries) ->
+                deviceSeries.isEmpty() && deviceSeries.getCompleteSince() < cutoff ? null : deviceSeries));
+    }
+
+    /**
+     * Reports the memory used by the store in total and per device.
+     *
+     * @return The store statistics, largest devices first
+     */
+    public HotSeriesStatsDTO stats() {
+        final List<HotSeriesDeviceStatsDTO> devices = series.values().stream()
+                .map(this::toStats)
+                .sorted(Comparator.comparingLong(HotSeriesDeviceStatsDTO::bytes).reversed())
+                .toList();
+
+        return HotSeriesStatsDTO.builder()
+                .enabled(enabled)
+                .usedBytes(usedBytes.get())
+                .maxBytes(maxMemory.toBytes())
+                .points(devices.stream().mapToLong(HotSeriesDeviceStatsDTO::points).sum())
+                .evictedBlocks(evictedBlocks.get())
+                .devices(devices)
+                .build();
+    }
+
+    @Override
+    public String snapshotName() {
+        return "hot-series";
+    }
+
+    @Override
+    public void writeSnapshot(DataOutputStream out) throws IOException {
+        out.writeLong(startedAt);
+        out.writeLong(evictedBlocks.get());
+
+        final List<CompressedSeries> snapshot = List.copyOf(series.values());
+        out.writeInt(snapshot.size());
+        for (CompressedSeries deviceSeries : snapshot) {
+            deviceSeries.writeTo(out);
+        }
+    }
+
+    @Override
+    public void restoreSnapshot(ByteBuffer section) {
+        final long restoredStartedAt = section.getLong();
+        final long restoredEvictedBlocks = section.getLong();
+
+        final Map<Long, CompressedSeries> restored = new HashMap<>();
+        long restoredBytes = 0;
+        final int seriesCount = section.getInt();
+        for (int i = 0; i < seriesCount; i++) {
+            final CompressedSeries deviceSeries = CompressedSeries.readFrom(section);
+            restored.put(deviceSeries.getDeviceId(), deviceSeries);
+            restoredBytes += deviceSeries.sizeInBytes();
+        }
+
+        // Completeness carries over because the Kafka tail after the snapshot is replayed
+        series.clear();
+        series.putAll(restored);
+        usedBytes.set(restoredBytes);
+        evictedBlocks.set(restoredEvictedBlocks);
+        startedAt = restoredStartedAt;
+        log.info("Restored {} hot series ({} bytes) from snapshot", restored.size(), restoredBytes);
+    }
+
+    /**
+     * Evicts the oldest blocks across all devices until usage is back under 90% of the budget.
+     * Only one thread evicts at a time; others keep appending.
+     */
+    private void enforceBudget() {
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+
+        try {
+            final long target = maxMemory.toBytes() * 9 / 10;
+            while (usedBytes.get() > target) {
+                final CompressedSeries oldest = series.values().stream()
+                        .filter(deviceSeries -> !deviceSeries.isEmpty())
+                        .min(Comparator.comparingLong(CompressedSeries::oldestBlockMaxTime))
+                        .orElse(null);
+                if (oldest == null) {
+                    break;
+                }
+
+                usedBytes.addAndGet(-oldest.evictOldest());
+                evictedBlocks.incrementAndGet();
+            }
+            log.debug("Hot series store trimmed to {} bytes", usedBytes.get());
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private HotSeriesDeviceStatsDTO toStats(CompressedSeries deviceSeries) {
+        final long points = deviceSeries.pointCount();
+        final long bytes = deviceSeries.sizeInBytes();
+
+        return HotSeriesDeviceStatsDTO.builder()
+                .deviceId(deviceSeries.getDeviceId())
+                .userId(deviceSeries.getUserId())
+                .points(points)
+                .blocks(deviceSeries.blockCount())
+                .bytes(bytes)
+                .bytesPerPoint(points == 0 ? 0.0 : (double) bytes / points)
+                .oldest(points == 0 ? null : Instant.ofEpochMilli(deviceSeries.minTime()))
+                .newest(points == 0 ? null : Instant.ofEpochMilli(deviceSeries.maxTime()))
+                .completeSince(Instant.ofEpochMilli(deviceSeries.getCompleteSince()))
+                .build();
+    }
+}
@@ -0,0 +1,178 @@
+package com.neeraj.usageservice.service;
+
+import com.neeraj.usageservice.model.DeviceInfo;
+import com.neeraj.usageservice.model.PeriodAccumulator;
+import com.neeraj.usageservice.model.TariffPlan;
+import com.neeraj.usageservice.model.UserProfile;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps a {@link PeriodAccumulator} for every known user and feeds it every energy usage event of the
+ * user's devices, priced with the user's tariff plan. The accumulators back both the daily / monthly
+ * budgets and the current cost endpoint. They are persisted with the usage snapshot, so a restart
+ * resumes the running totals instead of recomputing them from InfluxDB.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class PeriodUsageTracker implements SnapshotParticipant {
+
+    private final UserProfileCache userProfileCache;
+    private final TariffCatalog tariffCatalog;
+
+    private final Map<Long, PeriodAccumulator> accumulators = new ConcurrentHashMap<>();
+
+    @Value("${usage.period-usage.enabled:true}")
+    private boolean enabled;
+
+    // How long after tracking began the seed waits, so readings consumed late (with earlier timestamps,
+    // which the accumulator skips) have been written to InfluxDB before the seed query reads it
+    @Value("${usage.period-usage.seed-delay:2m}")
+    private Duration seedDelay;
+
+    /**
+     * Adds a reading to the accumulator of its owner, creating the accumulator when the owner is not
+     * tracked yet.
+     *
+     * @param device The device the reading belongs to (with its current owner), null for unknown devices
+     * @param time   Timestamp of the reading
+     * @param value  Energy used
+     */
+    public void record(DeviceInfo device, Instant time, double value) {
+        if (!enabled || device == null || device.getUserId() == null || time == null) {
+            return;
+        }
+
+        // Never waits for user-service on the listener thread; readings of a user not cached yet are skipped
+        // and, once the accumulator exists, covered by its seed
+        final UserProfile profile = userProfileCache.resolveCached(device.getUserId());
+        final long timeMillis = time.toEpochMilli();
+        final PeriodAccumulator accumulator = accumulatorFor(profile, timeMillis);
+        if (accumulator != null) {
+            final double rate = tariffCatalog.planFor(accumulator.getTariffPlan()).rateAt(timeMillis, accumulator.getZone());
+            accumulator.add(timeMillis, value, rate);
+        }
+    }
+
+    /**
+     * Returns the accumulator of a user, starting to track the user if needed, rolled to the given time.
+     *
+     * @param userId The user ID
+     * @param now    Current time
+     * @return The accumulator, or null if tracking is disabled or the user is unknown
+     */
+    public PeriodAccumulator track(Long userId, Instant now) {
+        if (!enabled) {
+            return null;
+        }
+
+        final PeriodAccumulator accumulator = accumulatorFor(userProfileCache.resolve(userId), now.toEpochMilli());
+        if (accumulator != null) {
+            accumulator.rollTo(now.toEpochMilli());
+        }
+        return accumulator;
+    }
+
+    /**
+     * Re-resolves the profile of every tracked user (dropping deleted users and restarting accumulators
+     * whose timezone or tariff plan changed) and rolls the accumulators to the given time, so periods
+     * without readings still reset.
+     *
+     * @param now Current time
+     * @return The accumulators of all tracked users
+     */
+    public List<PeriodAccumulator> refresh(Instant now) {
+        final List<PeriodAccumulator> tracked = new ArrayList<>();
+        if (!enabled) {
+            return tracked;
+        }
+
+        for (Long userId : new ArrayList<>(accumulators.keySet())) {
+            final PeriodAccumulator accumulator = accumulatorFor(userProfileCache.resolve(userId), now.toEpochMilli());
+            if (accumulator == null) {
+                accumulators.remove(userId);
+                continue;
+            }
+
+            accumulator.rollTo(now.toEpochMilli());
+            tracked.add(accumulator);
+        }
+        return tracked;
+    }
+
+    /**
+     * @return Whether the accumulator still needs its seed and tracking began long enough ago that every
+     * reading from before {@code trackedSince} has reached InfluxDB
+     */
+    public boolean readyToSeed(PeriodAccumulator accumulator, Instant now) {
+        return accumulator.needsSeed() && now.toEpochMilli() - accumulator.getTrackedSince() >= seedDelay.toMillis();
+    }
+
+    /**
+     * @return The tariff plan an accumulator is priced with
+     */
+    public TariffPlan planOf(PeriodAccumulator accumulator) {
+        return tariffCatalog.planFor(accumulator.getTariffPlan());
+    }
+
+    @Override
+    public String snapshotName() {
+        return "period-usage";
+    }
+
+    @Override
+    public void writeSnapshot(DataOutputStream out) throws IOException {
+        final List<PeriodAccumulator> snapshot = List.copyOf(accumulators.values());
+        out.writeInt(snapshot.size());
+        for (PeriodAccumulator accumulator : snapshot) {
+            accumulator.writeTo(out);
+        }
+    }
+
+    @Override
+    public void restoreSnapshot(ByteBuffer section) {
+        final Map<Long, PeriodAccumulator> restored = new HashMap<>();
+        final int accumulatorCount = section.getInt();
+        for (int i = 0; i < accumulatorCount; i++) {
+            final PeriodAccumulator accumulator = PeriodAccumulator.readFrom(section);
+            restored.put(accumulator.getUserId(), accumulator);
+        }
+
+        accumulators.putAll(restored);
+        log.info("Restored {} period usage accumulators from snapshot", restored.size());
+    }
+
+    /**
+     * @param trackedSince Start of tracking for a new accumulator: the timestamp of the reading that starts it
+     *                     (not the wall clock, so a lagging consumer does not skip the readings in between),
+     *                     or the current time when tracking starts without a reading
+     */
+    private PeriodAccumulator accumulatorFor(UserProfile profile, long trackedSince) {
+        if (profile == null) {
+            return null;
+        }
+
+        // Resolve through the catalog so users on unknown plans are tracked under the plan they are billed with
+        final String tariffPlan = tariffCatalog.planFor(profile.getTariffPlan()).getName();
+
+        // A new, re-zoned or re-planned accumulator counts from trackedSince on and is seeded with the earlier usage of its periods
+        return accumulators.compute(profile.getId(), (userId, existing) ->
+                existing != null && existing.getZone().equals(profile.getZone()) && existing.getTariffPlan().equals(tariffPlan)
+                        ? existing
+                        : new PeriodAccumulator(userId, profile.getZone(), tariffPlan, trackedSince));
+    }
+}
@@ -0,0 +1,59 @@
+package com.neeraj.usageservice.service;
+
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * In-memory state that is included in the periodic usage-service snapshot (see {@link UsageSnapshotService}).
+ * Every participant owns one named section of the snapshot file. Snapshots are taken while the Kafka
+ * listener is paused, so the state written must only be changed by processed events (or be a cache that
+ * is safe to restore slightly stale).
+ */
+public interface SnapshotParticipant {
+
+    /**
+     * @return Unique, stable name of the participant's section
+     */
+    String snapshotName();
+
+    /**
+     * Serializes the current state.
+     *
+     * @param out Stream of the participant's section
+     * @throws IOException if writing fails
+     */
+    void writeSnapshot(DataOutputStream out) throws IOException;
+
+    /**
+     * Replaces the current state with the contents of a section. Called once at startup, before the
+     * Kafka listener starts. Implementations must leave their state untouched if the section cannot be read.
+     *
+     * @param section The section, positioned at its start (a view of the memory-mapped snapshot file)
+     */
+    void restoreSnapshot(ByteBuffer section);
+
+    static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeByte(0);
+            return;
+        }
+
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeByte(1);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(ByteBuffer in) {
+        if (in.get() == 0) {
+            return null;
+        }
+
+        final byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
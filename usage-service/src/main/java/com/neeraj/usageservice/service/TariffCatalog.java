@@ -0,0 +1,31 @@
+package com.neeraj.usageservice.service;
+
+import com.neeraj.usageservice.model.TariffPlan;
+
+import java.util.Map;
+
+/**
+ * The configured tariff plans by name (see {@link com.neeraj.usageservice.config.TariffConfig}).
+ * Users without a plan, or with a plan that is not configured, are billed on the default plan.
+ */
+public class TariffCatalog {
+
+    private final Map<String, TariffPlan> plans;
+    private final TariffPlan defaultPlan;
+
+    public TariffCatalog(Map<String, TariffPlan> plans, TariffPlan defaultPlan) {
+        this.plans = Map.copyOf(plans);
+        this.defaultPlan = defaultPlan;
+    }
+
+    /**
+     * @param name Name of the plan (may be null)
+     * @return The plan, or the default plan if no plan with that name is configured
+     */
+    public TariffPlan planFor(String name) {
+        if (name == null) {
+            return defaultPlan;
+        }
+        return plans.getOrDefault(name, defaultPlan);
+    }
+}
@@ -0,0 +1,126 @@
+package com.neeraj.usageservice.service;
+
+import com.neeraj.usageservice.dto.DeviceDTO;
+import com.neeraj.usageservice.dto.UsageBreakdownDTO;
+import com.neeraj.usageservice.dto.UsageGroupDTO;
+import com.neeraj.usageservice.exception.InvalidUsageQueryException;
+import com.neeraj.usageservice.model.CachedUsage;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Serves a user's usage grouped by device type, by location and as the top-N devices, so clients get
+ * a small precomputed payload instead of the full device list. The groups are built in a single pass
+ * over the per-device totals (the InfluxDB result joined with the device metadata), which come from
+ * the {@link UsageResultCache}.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class UsageBreakdownService {
+
+    static final String UNKNOWN_GROUP = "UNKNOWN";
+
+    private final UsageResultCache usageResultCache;
+
+    @Value("${usage.breakdown.max-top:50}")
+    private int maxTop;
+
+    /**
+     * Builds the usage breakdown of a user. This method orchestrates the following steps:
+     * 1. Fetch the per-device totals (cached per time bucket)
+     * 2. Fold every device into its type group, its location group and the top-N heap in one pass
+     * 3. Sort the groups and the top devices by usage and build the response
+     *
+     * @param userId The ID of the user to fetch the breakdown for
+     * @param days   Number of days to look back for energy usage data
+     * @param top    Number of top devices to return
+     * @return The breakdown
+     * @throws InvalidUsageQueryException if top is out of range
+     */
+    public UsageBreakdownDTO getBreakdown(Long userId, int days, int top) {
+        if (top < 0 || top > maxTop) {
+            throw new InvalidUsageQueryException("'top' must be between 0 and " + maxTop);
+        }
+
+        // Step 1: Fetch the per-device totals (cached per time bucket)
+        final CachedUsage usage = usageResultCache.getXDaysUsageForUser(userId, days);
+        final List<DeviceDTO> devices = usage.getUsage().devices() == null ? List.of() : usage.getUsage().devices();
+
+        // Step 2: Fold every device into its type group, its location group and the top-N heap in one pass
+        final Map<String, GroupTotal> byType = new HashMap<>();
+        final Map<String, GroupTotal> byLocation = new HashMap<>();
+        final PriorityQueue<DeviceDTO> topDevices = new PriorityQueue<>(Comparator.comparingDouble(UsageBreakdownService::energyOf));
+        double total = 0.0;
+
+        for (DeviceDTO device : devices) {
+            final double energy = energyOf(device);
+            total += energy;
+            byType.computeIfAbsent(groupKey(device.type()), key -> new GroupTotal()).add(energy);
+            byLocation.computeIfAbsent(groupKey(device.location()), key -> new GroupTotal()).add(energy);
+
+            // Keep only the N largest devices - the heap's head is the smallest of them
+            if (top > 0) {
+                if (topDevices.size() < top) {
+                    topDevices.add(device);
+                } else if (energy > energyOf(topDevices.peek())) {
+                    topDevices.poll();
+                    topDevices.add(device);
+                }
+            }
+        }
+
+        // Step 3: Sort the groups and the top devices by usage and build the response
+        final List<DeviceDTO> sortedTop = new ArrayList<>(topDevices);
+        sortedTop.sort(Comparator.comparingDouble(UsageBreakdownService::energyOf).reversed());
+
+        return UsageBreakdownDTO.builder()
+                .userId(userId)
+                .days(days)
+                .totalEnergyConsumed(total)
+                .deviceCount(devices.size())
+                .byType(toGroups(byType, total))
+                .byLocation(toGroups(byLocation, total))
+                .topDevices(sortedTop)
+                .build();
+    }
+
+    private static List<UsageGroupDTO> toGroups(Map<String, GroupTotal> groups, double total) {
+        return groups.entrySet().stream()
+                .map(entry -> UsageGroupDTO.builder()
+                        .key(entry.getKey())
+                        .energyConsumed(entry.getValue().energy)
+                        .deviceCount(entry.getValue().devices)
+                        .share(total > 0 ? entry.getValue().energy / total * 100 : 0.0)
+                        .build())
+                .sorted(Comparator.comparingDouble(UsageGroupDTO::energyConsumed).reversed())
+                .toList();
+    }
+
+    private static String groupKey(String value) {
+        return value == null || value.isBlank() ? UNKNOWN_GROUP : value.trim();
+    }
+
+    private static double energyOf(DeviceDTO device) {
+        return device.energyConsumed() == null ? 0.0 : device.energyConsumed();
+    }
+
+    private static final class GroupTotal {
+        private double energy;
+        private int devices;
+
+        void add(double value) {
+            energy += value;
+            devices++;
+        }
+    }
+}
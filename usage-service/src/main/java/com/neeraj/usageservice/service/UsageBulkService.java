@@ -0,0 +1,218 @@
+package com.neeraj.usageservice.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonFactoryBuilder;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.StreamWriteFeature;
+import com.neeraj.usageservice.client.DeviceClient;
+import com.neeraj.usageservice.dto.DeviceDTO;
+import com.neeraj.usageservice.exception.InvalidUsageQueryException;
+import com.neeraj.usageservice.model.FluxQuery;
+import com.neeraj.usageservice.model.QuerySegment;
+import com.neeraj.usageservice.model.StorageTier;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Serves the usage of many users at once for batch consumers (nightly reporting, insight precomputation).
+ * Users are processed in batches: the devices of a whole batch are fetched from device-service in one call,
+ * their usage is summed by device-chunked Flux queries running in parallel, and one UsageDTO line per user
+ * is written (NDJSON) and flushed before the next batch starts, so memory stays bounded by the batch size.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class UsageBulkService {
+
+    // Never close the servlet stream; lines are separated explicitly instead of by the default root separator
+    private static final JsonFactory JSON_FACTORY = new JsonFactoryBuilder()
+            .disable(StreamWriteFeature.AUTO_CLOSE_TARGET)
+            .rootValueSeparator("")
+            .build();
+
+    private final DeviceClient deviceClient;
+    private final DeviceDirectory deviceDirectory;
+    private final UsageQueryPlanner usageQueryPlanner;
+    private final FluxQueryBuilder fluxQueryBuilder;
+    private final FluxQueryExecutor fluxQueryExecutor;
+    private final ColdStorageService coldStorageService;
+    private final ExecutorService influxQueryExecutor;
+
+    @Value("${usage.bulk.max-users:10000}")
+    private int maxUsers;
+
+    @Value("${usage.bulk.batch-size:200}")
+    private int batchSize;
+
+    @Value("${usage.bulk.max-days:366}")
+    private int maxDays;
+
+    /**
+     * Validates a bulk request before the response is committed, so invalid requests still get a 400.
+     *
+     * @param userIds IDs of the users to fetch usage for
+     * @param days    Number of days to look back
+     * @return The distinct user IDs in request order
+     * @throws InvalidUsageQueryException if the request is invalid
+     */
+    public List<Long> prepareBulk(List<Long> userIds, int days) {
+        if (userIds == null || userIds.isEmpty()) {
+            throw new InvalidUsageQueryException("At least one user ID is required");
+        }
+        if (days < 1 || days > maxDays) {
+            throw new InvalidUsageQueryException("'days' must be between 1 and " + maxDays);
+        }
+
+        final List<Long> distinct = userIds.stream()
+                .filter(Objects::nonNull)
+                .distinct()
+                .toList();
+        if (distinct.size() > maxUsers) {
+            throw new InvalidUsageQueryException("At most " + maxUsers + " users can be requested at once");
+        }
+        return distinct;
+    }
+
+    /**
+     * Streams the usage of the users as NDJSON, one {@code {"userId":..,"devices":[..]}} line per user.
+     * This method orchestrates the following steps for every batch of users:
+     * 1. Fetch the devices of all users of the batch in one call
+     * 2. Sum the usage of all their devices with parallel device-chunked Flux queries (and cold storage)
+     * 3. Write and flush one line per user
+     * If a batch fails the response is left truncated (the status is already sent), so the client can
+     * tell from the missing users where to resume.
+     *
+     * @param userIds      Validated user IDs
+     * @param days         Number of days to look back
+     * @param outputStream The response body
+     * @throws IOException if writing to the client fails
+     */
+    public void writeBulkUsage(List<Long> userIds, int days, OutputStream outputStream) throws IOException {
+        final Instant stop = Instant.now();
+        final Instant start = stop.minus(Duration.ofDays(days));
+        final List<QuerySegment> segments = usageQueryPlanner.plan(start, stop);
+        final List<QuerySegment> influxSegments = segments.stream()
+                .filter(segment -> segment.getTier() != StorageTier.COLD)
+                .toList();
+        final boolean hasColdSegments = influxSegments.size() != segments.size();
+
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(outputStream)) {
+            for (int from = 0; from < userIds.size(); from += batchSize) {
+                final List<Long> batch = userIds.subList(from, Math.min(from + batchSize, userIds.size()));
+
+                // Step 1: Fetch the devices of all users of the batch in one call
+                final Map<Long, List<DeviceDTO>> devicesByUser = fetchDevices(batch);
+
+                // Step 2: Sum the usage of all their devices with parallel device-chunked Flux queries
+                final Map<Long, Long> ownerByDevice = new HashMap<>();
+                devicesByUser.forEach((userId, devices) -> devices.forEach(device -> ownerByDevice.put(device.id(), userId)));
+                final Map<Long, Double> deviceEnergy = queryUsage(ownerByDevice, influxSegments);
+                if (hasColdSegments) {
+                    devicesByUser.forEach((userId, devices) -> coldStorageService
+                            .sumByDevice(userId, devices.stream().map(DeviceDTO::id).toList(), segments)
+                            .forEach((deviceId, energy) -> deviceEnergy.merge(deviceId, energy, Double::sum)));
+                }
+
+                // Step 3: Write and flush one line per user
+                for (Long userId : batch) {
+                    writeUserUsage(generator, userId, devicesByUser.getOrDefault(userId, List.of()), deviceEnergy);
+                }
+                generator.flush();
+            }
+        }
+    }
+
+    private Map<Long, List<DeviceDTO>> fetchDevices(List<Long> userIds) {
+        final List<DeviceDTO> devices = deviceClient.getAllDevicesForUsers(userIds);
+
+        // Refresh the local device -> user map so reassigned devices are tagged with their new owner right away
+        deviceDirectory.registerAll(devices);
+
+        final Map<Long, List<DeviceDTO>> devicesByUser = new LinkedHashMap<>();
+        for (DeviceDTO device : devices) {
+            if (device.id() != null && device.userId() != null) {
+                devicesByUser.computeIfAbsent(device.userId(), id -> new ArrayList<>()).add(device);
+            }
+        }
+        return devicesByUser;
+    }
+
+    /**
+     * Sums the usage per device, counting only untagged points and points tagged with the device's current owner.
+     */
+    private Map<Long, Double> queryUsage(Map<Long, Long> ownerByDevice, List<QuerySegment> influxSegments) {
+        final List<Long> deviceIds = List.copyOf(new LinkedHashSet<>(ownerByDevice.keySet()));
+        final List<FluxQuery> fluxQueries = fluxQueryBuilder.multiUserDeviceUsageQueries(deviceIds, influxSegments);
+
+        final List<CompletableFuture<Map<Long, Double>>> chunkResults = fluxQueries.stream()
+                .map(fluxQuery -> CompletableFuture.supplyAsync(() -> executeQuery(fluxQuery, ownerByDevice), influxQueryExecutor))
+                .toList();
+
+        final Map<Long, Double> deviceEnergy = new HashMap<>();
+        for (CompletableFuture<Map<Long, Double>> chunkResult : chunkResults) {
+            chunkResult.join().forEach((deviceId, energy) -> deviceEnergy.merge(deviceId, energy, Double::sum));
+        }
+        return deviceEnergy;
+    }
+
+    private Map<Long, Double> executeQuery(FluxQuery fluxQuery, Map<Long, Long> ownerByDevice) {
+        final Map<Long, Double> deviceEnergy = new HashMap<>();
+        fluxQueryExecutor.stream(fluxQuery, record -> {
+            final Object deviceIdObj = record.getValueByKey("deviceId");
+            if (deviceIdObj == null) {
+                return;
+            }
+
+            try {
+                final Long deviceId = Long.valueOf(deviceIdObj.toString());
+                final Object taggedUserId = record.getValueByKey("userId");
+                final Long owner = ownerByDevice.get(deviceId);
+                if (owner == null || (taggedUserId != null && !taggedUserId.toString().equals(String.valueOf(owner)))) {
+                    return;
+                }
+
+                final double energy = record.getValue() instanceof Number number ? number.doubleValue() : 0.0;
+                deviceEnergy.merge(deviceId, energy, Double::sum);
+            } catch (NumberFormatException nfe) {
+                log.warn("Failed to parse deviceId from flux record: {}", deviceIdObj, nfe);
+            }
+        });
+        return deviceEnergy;
+    }
+
+    private static void writeUserUsage(JsonGenerator generator, Long userId, List<DeviceDTO> devices,
+                                       Map<Long, Double> deviceEnergy) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("userId", userId);
+        generator.writeArrayFieldStart("devices");
+        for (DeviceDTO device : devices) {
+            generator.writeStartObject();
+            generator.writeNumberField("id", device.id());
+            generator.writeStringField("name", device.name());
+            generator.writeStringField("type", device.type());
+            generator.writeStringField("location", device.location());
+            generator.writeNumberField("userId", device.userId());
+            generator.writeNumberField("energyConsumed", deviceEnergy.getOrDefault(device.id(), 0.0));
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+    }
+}
@@ -0,0 +1,167 @@
+package com.neeraj.usageservice.service;
+
+import com.neeraj.usageservice.dto.DeviceComparisonDTO;
+import com.neeraj.usageservice.dto.UsageComparisonDTO;
+import com.neeraj.usageservice.exception.InvalidUsageQueryException;
+import com.neeraj.usageservice.model.Device;
+import com.neeraj.usageservice.model.FluxQuery;
+import com.neeraj.usageservice.model.QuerySegment;
+import com.neeraj.usageservice.model.StorageTier;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Compares a user's usage over the last N days with the N days before ("this week vs last week").
+ * Both periods are read with one device lookup and one InfluxDB scan per device chunk: each period is
+ * planned over the storage tiers separately and the query labels every source with its period, so
+ * the sums come back per (device, period). Parts of either period that have aged out of InfluxDB are
+ * read from cold storage.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class UsageComparisonService {
+
+    private final UsageService usageService;
+    private final UsageQueryPlanner usageQueryPlanner;
+    private final FluxQueryBuilder fluxQueryBuilder;
+    private final FluxQueryExecutor fluxQueryExecutor;
+    private final ColdStorageService coldStorageService;
+    private final ExecutorService influxQueryExecutor;
+
+    @Value("${usage.comparison.max-days:366}")
+    private int maxDays;
+
+    /**
+     * Compares the usage of the last {@code days} days with the preceding {@code days} days.
+     * This method orchestrates the following steps:
+     * 1. Fetch all devices owned by the user (once for both periods)
+     * 2. Plan both periods over the storage tiers and sum their cold parts from local files
+     * 3. Sum the InfluxDB parts of both periods per device in a single query per device chunk
+     * 4. Build the per-device and per-user deltas
+     *
+     * @param userId The ID of the user
+     * @param days   Length of each period in days
+     * @return The comparison
+     * @throws InvalidUsageQueryException if days is out of range
+     */
+    public UsageComparisonDTO compare(Long userId, int days) {
+        if (days < 1 || days > maxDays) {
+            throw new InvalidUsageQueryException("'days' must be between 1 and " + maxDays);
+        }
+
+        final Instant currentStop = Instant.now();
+        final Instant currentStart = currentStop.minus(Duration.ofDays(days));
+        final Instant previousStart = currentStart.minus(Duration.ofDays(days));
+
+        // Step 1: Fetch all devices owned by the user (once for both periods)
+        final List<Device> devices = usageService.fetchAndConvertUserDevices(userId);
+        final List<Long> deviceIds = devices.stream()
+                .map(Device::getId)
+                .filter(Objects::nonNull)
+                .toList();
+
+        // Step 2: Plan both periods over the storage tiers and sum their cold parts from local files
+        final List<QuerySegment> previousSegments = usageQueryPlanner.plan(previousStart, currentStart);
+        final List<QuerySegment> currentSegments = usageQueryPlanner.plan(currentStart, currentStop);
+        final Map<Long, Double> previous = coldStorageService.sumByDevice(userId, deviceIds, previousSegments);
+        final Map<Long, Double> current = coldStorageService.sumByDevice(userId, deviceIds, currentSegments);
+
+        // Step 3: Sum the InfluxDB parts of both periods per device in a single query per device chunk
+        final List<FluxQuery> fluxQueries = fluxQueryBuilder.devicePeriodComparisonQueries(userId, deviceIds,
+                influxSegments(previousSegments), influxSegments(currentSegments));
+        final List<CompletableFuture<PeriodTotals>> chunkResults = fluxQueries.size() == 1
+                ? List.of(CompletableFuture.completedFuture(executeComparisonQuery(fluxQueries.get(0))))
+                : fluxQueries.stream()
+                .map(fluxQuery -> CompletableFuture.supplyAsync(() -> executeComparisonQuery(fluxQuery), influxQueryExecutor))
+                .toList();
+        for (CompletableFuture<PeriodTotals> chunkResult : chunkResults) {
+            final PeriodTotals totals = chunkResult.join();
+            totals.previous().forEach((deviceId, energy) -> previous.merge(deviceId, energy, Double::sum));
+            totals.current().forEach((deviceId, energy) -> current.merge(deviceId, energy, Double::sum));
+        }
+
+        // Step 4: Build the per-device and per-user deltas
+        double currentTotal = 0.0;
+        double previousTotal = 0.0;
+        final List<DeviceComparisonDTO> deviceComparisons = new ArrayList<>();
+        for (Device device : devices) {
+            final double currentEnergy = current.getOrDefault(device.getId(), 0.0);
+            final double previousEnergy = previous.getOrDefault(device.getId(), 0.0);
+            currentTotal += currentEnergy;
+            previousTotal += previousEnergy;
+
+            deviceComparisons.add(DeviceComparisonDTO.builder()
+                    .id(device.getId())
+                    .name(device.getName())
+                    .type(device.getType())
+                    .location(device.getLocation())
+                    .currentEnergyConsumed(currentEnergy)
+                    .previousEnergyConsumed(previousEnergy)
+                    .delta(currentEnergy - previousEnergy)
+                    .deltaPercent(deltaPercent(currentEnergy, previousEnergy))
+                    .build());
+        }
+
+        return UsageComparisonDTO.builder()
+                .userId(userId)
+                .days(days)
+                .previousStart(previousStart)
+                .currentStart(currentStart)
+                .currentStop(currentStop)
+                .currentEnergyConsumed(currentTotal)
+                .previousEnergyConsumed(previousTotal)
+                .delta(currentTotal - previousTotal)
+                .deltaPercent(deltaPercent(currentTotal, previousTotal))
+                .devices(deviceComparisons)
+                .build();
+    }
+
+    private PeriodTotals executeComparisonQuery(FluxQuery fluxQuery) {
+        final PeriodTotals totals = new PeriodTotals(new HashMap<>(), new HashMap<>());
+        fluxQueryExecutor.stream(fluxQuery, record -> {
+            final Object deviceIdObj = record.getValueByKey("deviceId");
+            final Object period = record.getValueByKey("period");
+            if (deviceIdObj == null || period == null) {
+                return;
+            }
+
+            final double energy = record.getValue() instanceof Number number ? number.doubleValue() : 0.0;
+            try {
+                final Long deviceId = Long.valueOf(deviceIdObj.toString());
+                final Map<Long, Double> target = FluxQueryBuilder.PREVIOUS_PERIOD.equals(period.toString())
+                        ? totals.previous()
+                        : totals.current();
+                target.merge(deviceId, energy, Double::sum);
+            } catch (NumberFormatException nfe) {
+                log.warn("Failed to parse deviceId from flux record: {}", deviceIdObj, nfe);
+            }
+        });
+        return totals;
+    }
+
+    private static List<QuerySegment> influxSegments(List<QuerySegment> segments) {
+        return segments.stream()
+                .filter(segment -> segment.getTier() != StorageTier.COLD)
+                .toList();
+    }
+
+    private static Double deltaPercent(double current, double previous) {
+        return previous > 0 ? (current - previous) / previous * 100 : null;
+    }
+
+    private record PeriodTotals(Map<Long, Double> previous, Map<Long, Double> current) {
+    }
+}
@@ -0,0 +1,73 @@
+package com.neeraj.usageservice.service;
+
+import com.neeraj.usageservice.dto.PeriodCostDTO;
+import com.neeraj.usageservice.dto.UsageCostDTO;
+import com.neeraj.usageservice.exception.UserNotFoundException;
+import com.neeraj.usageservice.model.PeriodAccumulator;
+import com.neeraj.usageservice.model.TariffPlan;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+
+/**
+ * Serves the current day's and month's energy cost of a user from the running totals of the
+ * {@link PeriodUsageTracker}, so the answer costs no InfluxDB query once the user is tracked.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class UsageCostService {
+
+    private final PeriodUsageTracker periodUsageTracker;
+    private final UsageService usageService;
+
+    /**
+     * Returns the energy usage and cost of the user's current day and month in the user's timezone.
+     * This method orchestrates the following steps:
+     * 1. Look up (or start) the user's running totals
+     * 2. Seed them with the usage from before tracking began, if not done yet and the seed is due
+     * 3. Build the response from the totals
+     *
+     * @param userId The ID of the user
+     * @return The current costs
+     * @throws UserNotFoundException if the user is unknown
+     */
+    public UsageCostDTO getCurrentCost(Long userId) {
+        // Step 1: Look up (or start) the user's running totals
+        final PeriodAccumulator accumulator = periodUsageTracker.track(userId, Instant.now());
+        if (accumulator == null) {
+            throw new UserNotFoundException("User not found with id: " + userId);
+        }
+
+        // Step 2: Seed them with the usage from before tracking began, if not done yet and the seed is due
+        if (periodUsageTracker.readyToSeed(accumulator, Instant.now())) {
+            try {
+                usageService.seedPeriodAccumulator(accumulator);
+            } catch (Exception e) {
+                log.warn("Failed to seed period totals for userId: {}", userId, e);
+            }
+        }
+
+        // Step 3: Build the response from the totals
+        final TariffPlan plan = periodUsageTracker.planOf(accumulator);
+        return UsageCostDTO.builder()
+                .userId(userId)
+                .tariffPlan(plan.getName())
+                .currency(plan.getCurrency())
+                .timezone(accumulator.getZone().getId())
+                .day(PeriodCostDTO.builder()
+                        .start(Instant.ofEpochMilli(accumulator.dayStart()))
+                        .energyUsage(accumulator.dayEnergy())
+                        .cost(accumulator.dayCost())
+                        .build())
+                .month(PeriodCostDTO.builder()
+                        .start(Instant.ofEpochMilli(accumulator.monthStart()))
+                        .energyUsage(accumulator.monthEnergy())
+                        .cost(accumulator.monthCost())
+                        .build())
+                .complete(!accumulator.needsSeed())
+                .build();
+    }
+}
@@ -0,0 +1,355 @@
+package com.neeraj.usageservice.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonFactoryBuilder;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.StreamWriteFeature;
+import com.influxdb.query.FluxRecord;
+import com.neeraj.usageservice.exception.FluxQueryException;
+import com.neeraj.usageservice.exception.InvalidUsageQueryException;
+import com.neeraj.usageservice.model.Device;
+import com.neeraj.usageservice.model.ExportFormat;
+import com.neeraj.usageservice.model.FluxQuery;
+import com.neeraj.usageservice.model.QuerySegment;
+import com.neeraj.usageservice.model.StorageTier;
+import com.neeraj.usageservice.model.UsageExportRequest;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Exports the raw or downsampled readings of a user's devices as CSV or NDJSON. Rows are written to the
+ * response as the records are read from the InfluxDB response, on the request's own thread
+ * ({@link FluxQueryExecutor} reads on the calling thread), so memory stays constant however long the range is:
+ * nothing is collected, and a client reading slowly blocks the write, which stops the reading from InfluxDB
+ * (backpressure all the way to the database) without holding up any thread shared with other queries. Cold
+ * storage days are streamed the same way, one day at a time. The body has no length, so it is sent chunked,
+ * optionally gzip-compressed.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class UsageExportService {
+
+    // Never close the servlet stream; lines are separated explicitly instead of by the default root separator
+    private static final JsonFactory JSON_FACTORY = new JsonFactoryBuilder()
+            .disable(StreamWriteFeature.AUTO_CLOSE_TARGET)
+            .rootValueSeparator("")
+            .build();
+
+    // Raw exports must never be served from a rollup tier; any resolution below an hour keeps them on RAW / COLD
+    private static final Duration RAW_RESOLUTION = Duration.ofSeconds(1);
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final UsageService usageService;
+    private final UsageQueryPlanner usageQueryPlanner;
+    private final FluxQueryBuilder fluxQueryBuilder;
+    private final FluxQueryExecutor fluxQueryExecutor;
+    private final ColdStorageService coldStorageService;
+
+    @Value("${usage.export.max-range:90d}")
+    private Duration maxRange;
+
+    @Value("${usage.export.query-timeout:10m}")
+    private Duration queryTimeout;
+
+    /**
+     * Validates an export request and resolves everything needed to stream it.
+     * Runs before the response is committed, so invalid requests can still be rejected with a 400.
+     * This method orchestrates the following steps:
+     * 1. Parse and validate the time range, step and format
+     * 2. Fetch the user's devices and plan the storage tiers to read
+     *
+     * @param userId         The ID of the user to export the readings of
+     * @param from           Start of the range (inclusive), aligned down to the step when downsampling
+     * @param to             End of the range (exclusive), defaults to now
+     * @param step           Window size to downsample to (e.g. "5m" or "PT5M"), null for the raw readings
+     * @param format         "csv" or "ndjson", defaults to csv
+     * @param acceptEncoding The request's Accept-Encoding header, decides whether the body is gzip-compressed
+     * @return The resolved request
+     * @throws InvalidUsageQueryException if the range, step or format is invalid
+     */
+    public UsageExportRequest prepareExport(Long userId, Instant from, Instant to, String step, String format,
+                                            String acceptEncoding) {
+        // Step 1: Parse and validate the time range, step and format
+        final Instant stop = to != null ? to : Instant.now();
+        if (!from.isBefore(stop)) {
+            throw new InvalidUsageQueryException("'from' must be before 'to'");
+        }
+        if (Duration.between(from, stop).compareTo(maxRange) > 0) {
+            throw new InvalidUsageQueryException("At most " + maxRange.toDays() + " days can be exported at once");
+        }
+
+        final Duration parsedStep = parseStep(step);
+        final Instant start = parsedStep == null ? from : alignDown(from, parsedStep);
+
+        // Step 2: Fetch the user's devices and plan the storage tiers to read
+        return UsageExportRequest.builder()
+                .userId(userId)
+                .from(start)
+                .to(stop)
+                .step(parsedStep)
+                .format(parseFormat(format))
+                .gzip(acceptsGzip(acceptEncoding))
+                .deviceIds(usageService.fetchAndConvertUserDevices(userId).stream().map(Device::getId).toList())
+                .segments(usageQueryPlanner.plan(start, stop, parsedStep != null ? parsedStep : RAW_RESOLUTION))
+                .build();
+    }
+
+    /**
+     * Streams the rows of a prepared export. Rows are grouped by storage tier (cold storage days first,
+     * then InfluxDB) and within a tier by device, in time order. If a query fails half way the response is
+     * left truncated (the status is already sent) so the client cannot mistake it for a complete export.
+     *
+     * @param request      The prepared request
+     * @param outputStream The response body
+     * @throws IOException if writing to the client fails
+     */
+    public void writeExport(UsageExportRequest request, OutputStream outputStream) throws IOException {
+        final GZIPOutputStream gzipStream = request.isGzip() ? new GZIPOutputStream(outputStream, BUFFER_SIZE, true) : null;
+
+        try (RowWriter rowWriter = request.getFormat() == ExportFormat.CSV
+                ? new CsvRowWriter(gzipStream != null ? gzipStream : outputStream)
+                : new NdjsonRowWriter(gzipStream != null ? gzipStream : outputStream)) {
+            writeColdRows(request, rowWriter);
+            writeInfluxRows(request, rowWriter);
+        } catch (UncheckedIOException e) {
+            // The client went away (or is too slow) - there is nothing left to write to
+            throw e.getCause();
+        } catch (FluxQueryException e) {
+            if (e.getCause() instanceof UncheckedIOException ioException) {
+                throw ioException.getCause();
+            }
+            log.error("Failed to stream usage export for userId {}: {}", request.getUserId(), e.getMessage(), e);
+            throw e;
+        }
+
+        // Write the gzip trailer without closing the servlet stream
+        if (gzipStream != null) {
+            gzipStream.finish();
+        }
+    }
+
+    /**
+     * Writes the rows of the days that have aged out of InfluxDB, one day at a time, so a downsampled
+     * export only ever holds the windows of a single day.
+     */
+    private void writeColdRows(UsageExportRequest request, RowWriter rowWriter) throws IOException {
+        for (QuerySegment segment : request.getSegments()) {
+            if (segment.getTier() != StorageTier.COLD) {
+                continue;
+            }
+
+            for (Instant dayStart = segment.getStart(); dayStart.isBefore(segment.getStop()); ) {
+                final Instant dayStop = min(dayStart.truncatedTo(ChronoUnit.DAYS).plus(Duration.ofDays(1)), segment.getStop());
+                final List<QuerySegment> day = List.of(new QuerySegment(StorageTier.COLD, dayStart, dayStop));
+
+                if (request.getStep() == null) {
+                    coldStorageService.forEachPoint(request.getUserId(), request.getDeviceIds(), day, (deviceId, time, value) -> {
+                        try {
+                            rowWriter.write(deviceId, time, value);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+                } else {
+                    final Map<Long, NavigableMap<Long, Double>> windows = coldStorageService.windowedByDevice(
+                            request.getUserId(), request.getDeviceIds(), day, request.getStep());
+                    for (Map.Entry<Long, NavigableMap<Long, Double>> device : windows.entrySet()) {
+                        for (Map.Entry<Long, Double> window : device.getValue().entrySet()) {
+                            rowWriter.write(device.getKey(), window.getKey(), window.getValue());
+                        }
+                    }
+                }
+                rowWriter.flush();
+                dayStart = dayStop;
+            }
+        }
+    }
+
+    private void writeInfluxRows(UsageExportRequest request, RowWriter rowWriter) throws IOException {
+        final List<QuerySegment> influxSegments = request.getSegments().stream()
+                .filter(segment -> segment.getTier() != StorageTier.COLD)
+                .toList();
+        final List<FluxQuery> fluxQueries = request.getStep() == null
+                ? fluxQueryBuilder.deviceReadingsQueries(request.getUserId(), request.getDeviceIds(), influxSegments)
+                : fluxQueryBuilder.deviceSeriesQueries(request.getUserId(), request.getDeviceIds(), influxSegments, request.getStep());
+
+        // Runs the consumer on this thread and only returns (or throws, also on the deadline) once it will not be
+        // called again, so the row writer is never written to after writeExport closes it
+        for (FluxQuery fluxQuery : fluxQueries) {
+            fluxQueryExecutor.stream(fluxQuery, queryTimeout, record -> writeRecord(record, rowWriter));
+            rowWriter.flush();
+        }
+    }
+
+    private static void writeRecord(FluxRecord record, RowWriter rowWriter) {
+        final Object deviceIdObj = record.getValueByKey("deviceId");
+        if (deviceIdObj == null || record.getTime() == null) {
+            return;
+        }
+
+        try {
+            final long deviceId = Long.parseLong(deviceIdObj.toString());
+            final double energy = record.getValue() instanceof Number number ? number.doubleValue() : 0.0;
+            rowWriter.write(deviceId, record.getTime().toEpochMilli(), energy);
+        } catch (NumberFormatException nfe) {
+            log.warn("Failed to parse deviceId from flux record: {}", deviceIdObj, nfe);
+        } catch (IOException e) {
+            // Blocks (or fails) on a slow or gone client, which holds back reading the InfluxDB response too
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Duration parseStep(String step) {
+        if (step == null || step.isBlank()) {
+            return null;
+        }
+
+        final Duration parsed;
+        try {
+            parsed = DurationStyle.detectAndParse(step);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidUsageQueryException("Invalid step: " + step);
+        }
+
+        // Windows are passed to Flux in whole seconds, and must not straddle the (daily) cold storage boundaries
+        if (parsed.toSeconds() < 1 || parsed.toMillis() % 1000 != 0 || Duration.ofDays(1).toMillis() % parsed.toMillis() != 0) {
+            throw new InvalidUsageQueryException("'step' must be a whole number of seconds that divides a day");
+        }
+        return parsed;
+    }
+
+    private static ExportFormat parseFormat(String format) {
+        if (format == null || format.isBlank()) {
+            return ExportFormat.CSV;
+        }
+
+        try {
+            return ExportFormat.valueOf(format.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidUsageQueryException("'format' must be one of csv, ndjson");
+        }
+    }
+
+    /**
+     * @return Whether the Accept-Encoding header lists gzip (or *) without refusing it with q=0
+     */
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+
+        for (String coding : acceptEncoding.split(",")) {
+            final String[] parts = coding.trim().split(";");
+            final String name = parts[0].trim();
+            if (name.equalsIgnoreCase("gzip") || name.equals("*")) {
+                final boolean refused = parts.length > 1 && parts[1].trim().replace(" ", "").matches("q=0(\\.0*)?");
+                return !refused;
+            }
+        }
+        return false;
+    }
+
+    private static Instant alignDown(Instant instant, Duration step) {
+        final long millis = instant.toEpochMilli();
+        return Instant.ofEpochMilli(millis - Math.floorMod(millis, step.toMillis()));
+    }
+
+    private static Instant min(Instant a, Instant b) {
+        return a.isBefore(b) ? a : b;
+    }
+
+    /**
+     * Writes export rows to the response. Rows are buffered until {@link #flush()} (or a full buffer),
+     * and closing finishes the format without closing the underlying stream.
+     */
+    private interface RowWriter extends AutoCloseable {
+
+        void write(long deviceId, long time, double energyUsage) throws IOException;
+
+        void flush() throws IOException;
+
+        @Override
+        void close() throws IOException;
+    }
+
+    private static final class CsvRowWriter implements RowWriter {
+
+        private final Writer writer;
+
+        private CsvRowWriter(OutputStream outputStream) throws IOException {
+            this.writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), BUFFER_SIZE);
+            writer.write("deviceId,time,energyUsage\n");
+        }
+
+        @Override
+        public void write(long deviceId, long time, double energyUsage) throws IOException {
+            writer.write(Long.toString(deviceId));
+            writer.write(',');
+            writer.write(Instant.ofEpochMilli(time).toString());
+            writer.write(',');
+            writer.write(Double.toString(energyUsage));
+            writer.write('\n');
+        }
+
+        @Override
+        public void flush() throws IOException {
+            writer.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            // Flush only - closing the writer would close the servlet stream
+            writer.flush();
+        }
+    }
+
+    private static final class NdjsonRowWriter implements RowWriter {
+
+        private final JsonGenerator generator;
+
+        private NdjsonRowWriter(OutputStream outputStream) throws IOException {
+            this.generator = JSON_FACTORY.createGenerator(outputStream);
+        }
+
+        @Override
+        public void write(long deviceId, long time, double energyUsage) throws IOException {
+            generator.writeStartObject();
+            generator.writeNumberField("deviceId", deviceId);
+            generator.writeStringField("time", Instant.ofEpochMilli(time).toString());
+            generator.writeNumberField("energyUsage", energyUsage);
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        }
+
+        @Override
+        public void flush() throws IOException {
+            generator.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            generator.close();
+        }
+    }
+}
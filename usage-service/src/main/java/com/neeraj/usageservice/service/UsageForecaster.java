@@ -0,0 +1,153 @@
+package com.neeraj.usageservice.service;
+
+import com.neeraj.usageservice.model.ThresholdForecast;
+import com.neeraj.usageservice.model.UsageTrend;
+import com.neeraj.usageservice.model.UserProfile;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Early warnings for the energy alert threshold. Every user keeps a constant-size {@link UsageTrend}
+ * fed by the energy usage events of the user's devices; after each reading the total of the current
+ * threshold window is projected from the trend, and a warning is queued (bounded) the first time in a
+ * window that the projection crosses the user's threshold while the usage so far is still below it.
+ * Trends are persisted with the usage snapshot.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class UsageForecaster implements SnapshotParticipant {
+
+    private final UserProfileCache userProfileCache;
+
+    private final Map<Long, UsageTrend> trends = new ConcurrentHashMap<>();
+    private final BlockingQueue<ThresholdForecast> forecasts = new ArrayBlockingQueue<>(10_000);
+    private final AtomicLong droppedForecasts = new AtomicLong();
+
+    @Value("${usage.forecast.enabled:true}")
+    private boolean enabled;
+
+    @Value("${usage.forecast.window:1h}")
+    private Duration window;
+
+    @Value("${usage.forecast.slice:5m}")
+    private Duration slice;
+
+    @Value("${usage.forecast.decay:0.8}")
+    private double decay;
+
+    @Value("${usage.forecast.min-slices:3}")
+    private int minSlices;
+
+    // Don't extrapolate from the first few minutes of a window
+    @Value("${usage.forecast.min-window-fraction:0.2}")
+    private double minWindowFraction;
+
+    /**
+     * Adds a reading to the trend of its owner and queues a warning if the owner's current window is
+     * now projected to exceed the alert threshold.
+     *
+     * @param userId The ID of the user owning the device (null for unknown devices)
+     * @param time   Timestamp of the reading
+     * @param value  Energy used
+     */
+    public void record(Long userId, Instant time, double value) {
+        if (!enabled || userId == null || time == null) {
+            return;
+        }
+
+        // Never waits for user-service on the listener thread; readings of a user not cached yet are skipped
+        final UserProfile user = userProfileCache.resolveCached(userId);
+        if (user == null || !user.isAlertEnabled() || user.getEnergyAlertThreshold() == null) {
+            trends.remove(userId);
+            return;
+        }
+
+        final long timeMillis = time.toEpochMilli();
+        final UsageTrend trend = trends.computeIfAbsent(userId, id -> new UsageTrend(id, slice.toMillis(), window.toMillis()));
+        trend.add(timeMillis, value, decay);
+
+        // Only readings of the current window say anything about it
+        if (Math.floorMod(timeMillis, window.toMillis()) < window.toMillis() * minWindowFraction
+                || trend.windowStart() != timeMillis - Math.floorMod(timeMillis, window.toMillis())) {
+            return;
+        }
+
+        final double threshold = user.getEnergyAlertThreshold();
+        final double currentTotal = trend.windowTotal();
+        final double projectedTotal = trend.projectedTotal(timeMillis, minSlices);
+        if (currentTotal < threshold && projectedTotal > threshold && trend.markWarned()) {
+            final ThresholdForecast forecast = ThresholdForecast.builder()
+                    .userId(userId)
+                    .threshold(threshold)
+                    .currentTotal(currentTotal)
+                    .projectedTotal(projectedTotal)
+                    .windowEnd(Instant.ofEpochMilli(trend.windowStart() + window.toMillis()))
+                    .detectedAt(time)
+                    .build();
+            if (!forecasts.offer(forecast)) {
+                droppedForecasts.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * @return The warnings queued since the last call
+     */
+    public List<ThresholdForecast> drainForecasts() {
+        final List<ThresholdForecast> drained = new ArrayList<>();
+        forecasts.drainTo(drained);
+        return drained;
+    }
+
+    public long droppedForecasts() {
+        return droppedForecasts.get();
+    }
+
+    @Override
+    public String snapshotName() {
+        return "usage-forecast";
+    }
+
+    @Override
+    public void writeSnapshot(DataOutputStream out) throws IOException {
+        final List<UsageTrend> snapshot = List.copyOf(trends.values());
+        out.writeInt(snapshot.size());
+        for (UsageTrend trend : snapshot) {
+            trend.writeTo(out);
+        }
+    }
+
+    @Override
+    public void restoreSnapshot(ByteBuffer section) {
+        final Map<Long, UsageTrend> restored = new HashMap<>();
+        final int trendCount = section.getInt();
+        for (int i = 0; i < trendCount; i++) {
+            final UsageTrend trend = UsageTrend.readFrom(section);
+
+            // Trends built with a different window or slice size are rebuilt from the replayed events
+            if (trend.hasGeometry(slice.toMillis(), window.toMillis())) {
+                restored.put(trend.getUserId(), trend);
+            }
+        }
+
+        trends.putAll(restored);
+        log.info("Restored usage trends of {} users from snapshot", restored.size());
+    }
+}
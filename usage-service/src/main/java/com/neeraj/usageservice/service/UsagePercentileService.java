@@ -0,0 +1,229 @@
+package com.neeraj.usageservice.service;
+
+import com.neeraj.usageservice.client.DeviceClient;
+import com.neeraj.usageservice.dto.DeviceDTO;
+import com.neeraj.usageservice.dto.UsagePercentileDTO;
+import com.neeraj.usageservice.exception.DeviceServiceException;
+import com.neeraj.usageservice.exception.FluxQueryException;
+import com.neeraj.usageservice.exception.PercentileUnavailableException;
+import com.neeraj.usageservice.exception.UserNotFoundException;
+import com.neeraj.usageservice.model.DailyUsage;
+import com.neeraj.usageservice.model.DeviceTypeMix;
+import com.neeraj.usageservice.model.QuantileSketch;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClientException;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Ranks a user's daily usage against similar homes ("you use more than 80% of similar homes").
+ * The daily totals of every user are read from the daily rollups in InfluxDB, which hold all readings
+ * regardless of which replica consumed them, so every replica sees complete totals of every home. Each
+ * completed (UTC) day is added to a {@link QuantileSketch} of that day, per segment (the configured device
+ * types that reported usage that day) and overall. The sketches of the last days are merged into a sealed
+ * population view, so ranking a user is a constant-time lookup. A home is counted once per retained day.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class UsagePercentileService {
+
+    static final String ALL_SEGMENT = "ALL";
+    private static final String NO_SEGMENT_TYPES = "NONE";
+
+    private final UsageRollupService usageRollupService;
+    private final FluxQueryBuilder fluxQueryBuilder;
+    private final FluxQueryExecutor fluxQueryExecutor;
+    private final DeviceClient deviceClient;
+    private final UserProfileCache userProfileCache;
+
+    // Sketches of the retained days: day (epoch day) -> segment -> sketch
+    private final NavigableMap<Long, Map<String, QuantileSketch>> dailySketches = new TreeMap<>();
+
+    // Daily totals per user of the newest retained day, used to look up the user being ranked
+    private volatile Map<Long, DailyUsage> latestDay = Map.of();
+
+    // Retained days merged per segment and sealed, used for ranking
+    private volatile Map<String, QuantileSketch> population = Map.of();
+
+    @Value("${usage.percentile.enabled:true}")
+    private boolean enabled;
+
+    @Value("${usage.percentile.days:7}")
+    private int days;
+
+    @Value("${usage.percentile.segment-types:AIR_CONDITIONER,REFRIGERATOR,THERMOSTAT}")
+    private List<String> segmentTypes;
+
+    // Segments with fewer user-days fall back to the whole population
+    @Value("${usage.percentile.min-user-days:50}")
+    private long minUserDays;
+
+    // Users whose devices are fetched from device-service in one call
+    @Value("${usage.percentile.device-batch-size:500}")
+    private int deviceBatchSize;
+
+    /**
+     * Periodically refreshes the population view. This method orchestrates the following steps:
+     * 1. Find the completed days covered by the daily rollups
+     * 2. Load the days not loaded yet into daily sketches
+     * 3. Drop the days that are no longer retained
+     * 4. Merge the retained days into the sealed population view
+     */
+    @Scheduled(fixedDelayString = "${usage.percentile.refresh-interval:300000}")
+    public void refreshPopulation() {
+        if (!enabled) {
+            return;
+        }
+
+        // Step 1: Find the completed days covered by the daily rollups
+        final Instant dailyWatermark = usageRollupService.getDailyWatermark();
+        if (dailyWatermark == null) {
+            return;
+        }
+        final long lastDay = LocalDate.ofInstant(dailyWatermark, ZoneOffset.UTC).toEpochDay() - 1;
+        final long firstRetainedDay = lastDay - days + 1;
+
+        final Map<String, QuantileSketch> merged = new HashMap<>();
+        synchronized (dailySketches) {
+            // Step 2: Load the days not loaded yet into daily sketches, newest first
+            for (long day = lastDay; day >= firstRetainedDay; day--) {
+                if (dailySketches.containsKey(day)) {
+                    continue;
+                }
+                try {
+                    final Map<Long, DailyUsage> usageByUser = loadDay(LocalDate.ofEpochDay(day));
+                    dailySketches.put(day, sketchesOf(usageByUser));
+                    if (day == lastDay) {
+                        latestDay = usageByUser;
+                    }
+                } catch (FluxQueryException | DeviceServiceException | RestClientException e) {
+                    log.warn("Failed to load the daily usage of {}, retrying in the next refresh: {}", LocalDate.ofEpochDay(day), e.getMessage());
+                    break;
+                }
+            }
+
+            // Step 3: Drop the days that are no longer retained
+            dailySketches.headMap(firstRetainedDay).clear();
+
+            // Step 4: Merge the retained days into the sealed population view
+            for (Map<String, QuantileSketch> sketches : dailySketches.values()) {
+                sketches.forEach((segment, sketch) -> merged.computeIfAbsent(segment, s -> new QuantileSketch()).merge(sketch));
+            }
+        }
+        merged.values().forEach(QuantileSketch::seal);
+        population = merged;
+    }
+
+    /**
+     * Ranks the user's last completed day against the homes with the same device-type mix (or all homes
+     * if that segment is too small).
+     *
+     * @param userId The ID of the user
+     * @return The user's percentile
+     * @throws UserNotFoundException          if the user is unknown
+     * @throws PercentileUnavailableException if the user has no usage on the last completed day or there is no population yet
+     */
+    public UsagePercentileDTO getPercentile(Long userId) {
+        final DailyUsage day = latestDay.get(userId);
+        if (day == null) {
+            if (userProfileCache.resolve(userId) == null) {
+                throw new UserNotFoundException("User not found with id: " + userId);
+            }
+            throw new PercentileUnavailableException("No complete day of usage yet for user with id: " + userId);
+        }
+
+        final Map<String, QuantileSketch> current = population;
+        String segment = segmentOf(day.getDeviceTypes());
+        QuantileSketch sketch = current.get(segment);
+        if (sketch == null || sketch.getTotal() < minUserDays) {
+            segment = ALL_SEGMENT;
+            sketch = current.get(ALL_SEGMENT);
+        }
+        if (sketch == null || sketch.getTotal() == 0) {
+            throw new PercentileUnavailableException("Not enough usage data to rank user with id: " + userId);
+        }
+
+        return UsagePercentileDTO.builder()
+                .userId(userId)
+                .day(day.getDay())
+                .dailyUsage(day.getEnergyUsage())
+                .segment(segment)
+                .percentile(sketch.rank(day.getEnergyUsage()) * 100)
+                .userDays(sketch.getTotal())
+                .build();
+    }
+
+    /**
+     * Reads the daily totals of every user on a day from the daily rollups, together with the types of
+     * the devices that reported usage.
+     */
+    private Map<Long, DailyUsage> loadDay(LocalDate day) {
+        final Instant dayStart = day.atStartOfDay(ZoneOffset.UTC).toInstant();
+        final Instant dayEnd = day.plusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant();
+
+        final Map<Long, DailyUsage> usageByUser = new HashMap<>();
+        final Map<Long, Long> ownerByDevice = new HashMap<>();
+        fluxQueryExecutor.stream(fluxQueryBuilder.dailyDeviceUsageQuery(dayStart, dayEnd), record -> {
+            final Object userIdObj = record.getValueByKey("userId");
+            final Object deviceIdObj = record.getValueByKey("deviceId");
+            if (userIdObj == null || deviceIdObj == null || !(record.getValue() instanceof Number energy)) {
+                return;
+            }
+            try {
+                final Long userId = Long.valueOf(userIdObj.toString());
+                final DailyUsage usage = usageByUser.computeIfAbsent(userId, id -> DailyUsage.builder().userId(id).day(day).build());
+                usage.setEnergyUsage(usage.getEnergyUsage() + energy.doubleValue());
+                if (energy.doubleValue() > 0) {
+                    ownerByDevice.put(Long.valueOf(deviceIdObj.toString()), userId);
+                }
+            } catch (NumberFormatException nfe) {
+                log.warn("Skipping daily usage record with invalid IDs: userId={}, deviceId={}", userIdObj, deviceIdObj);
+            }
+        });
+
+        // Look up the types of the devices that reported usage, a batch of users at a time
+        final List<Long> userIds = new ArrayList<>(usageByUser.keySet());
+        for (int from = 0; from < userIds.size(); from += deviceBatchSize) {
+            for (DeviceDTO device : deviceClient.getAllDevicesForUsers(userIds.subList(from, Math.min(from + deviceBatchSize, userIds.size())))) {
+                final Long owner = ownerByDevice.get(device.id());
+                if (owner != null) {
+                    final DailyUsage usage = usageByUser.get(owner);
+                    usage.setDeviceTypes(usage.getDeviceTypes() | DeviceTypeMix.bitOf(device.type()));
+                }
+            }
+        }
+
+        log.info("Loaded the daily usage of {} users on {}", usageByUser.size(), day);
+        return usageByUser;
+    }
+
+    private Map<String, QuantileSketch> sketchesOf(Map<Long, DailyUsage> usageByUser) {
+        final Map<String, QuantileSketch> sketches = new HashMap<>();
+        for (DailyUsage usage : usageByUser.values()) {
+            sketches.computeIfAbsent(segmentOf(usage.getDeviceTypes()), segment -> new QuantileSketch()).add(usage.getEnergyUsage());
+            sketches.computeIfAbsent(ALL_SEGMENT, segment -> new QuantileSketch()).add(usage.getEnergyUsage());
+        }
+        return sketches;
+    }
+
+    /**
+     * @return The segment of a home: the configured device types it used, e.g. "AIR_CONDITIONER+THERMOSTAT"
+     */
+    private String segmentOf(int deviceTypes) {
+        final List<String> types = DeviceTypeMix.typesOf(deviceTypes & DeviceTypeMix.maskOf(segmentTypes));
+        return types.isEmpty() ? NO_SEGMENT_TYPES : String.join("+", types);
+    }
+}
@@ -0,0 +1,168 @@
+package com.neeraj.usageservice.service;
+
+import com.neeraj.usageservice.model.QuerySegment;
+import com.neeraj.usageservice.model.StorageTier;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits a time range into segments that can each be answered by the cheapest storage tier:
+ * whole rolled-up days from the daily bucket, whole rolled-up hours from the hourly bucket,
+ * and only the partial-hour edges (and anything newer than the rollups) from raw points.
+ * A 30-day range therefore reads ~30 daily points, up to ~46 hourly points and two partial
+ * hours of raw readings per device instead of every raw reading.
+ * Parts of the range older than the retention of the tier that would serve them are moved to the
+ * COLD tier (local segment files), which keeps the history InfluxDB has already dropped.
+ */
+@Component
+@RequiredArgsConstructor
+public class UsageQueryPlanner {
+
+    private final UsageRollupService usageRollupService;
+
+    @Value("${usage.cold.enabled:true}")
+    private boolean coldEnabled;
+
+    @Value("${usage.rollup.raw-retention}")
+    private Duration rawRetention;
+
+    @Value("${usage.rollup.hourly-retention}")
+    private Duration hourlyRetention;
+
+    @Value("${usage.rollup.daily-retention}")
+    private Duration dailyRetention;
+
+    /**
+     * Plans the segments covering [start, stop).
+     *
+     * @param start Start of the range (inclusive)
+     * @param stop  End of the range (exclusive)
+     * @return Non-overlapping, non-empty segments in chronological order
+     */
+    public List<QuerySegment> plan(Instant start, Instant stop) {
+        return plan(start, stop, null);
+    }
+
+    /**
+     * Plans the segments covering [start, stop) for results bucketed at the given resolution.
+     * A rollup tier is only used when its period divides the resolution, so that no rollup
+     * point straddles two result buckets.
+     *
+     * @param start      Start of the range (inclusive)
+     * @param stop       End of the range (exclusive)
+     * @param resolution Size of the result buckets, or null for a single total
+     * @return Non-overlapping, non-empty segments in chronological order
+     */
+    public List<QuerySegment> plan(Instant start, Instant stop, Duration resolution) {
+        return moveExpiredToCold(planInfluxTiers(start, stop, resolution));
+    }
+
+    private List<QuerySegment> planInfluxTiers(Instant start, Instant stop, Duration resolution) {
+        final List<QuerySegment> segments = new ArrayList<>();
+        final boolean useHourly = divides(ChronoUnit.HOURS, resolution);
+
+        final Instant dailyWatermark = usageRollupService.getDailyWatermark();
+        if (dailyWatermark != null && divides(ChronoUnit.DAYS, resolution)) {
+            final Instant dayStart = ceil(start, ChronoUnit.DAYS);
+            final Instant dayStop = min(stop.truncatedTo(ChronoUnit.DAYS), dailyWatermark);
+
+            if (dayStart.isBefore(dayStop)) {
+                planHourly(start, dayStart, useHourly, segments);
+                segments.add(new QuerySegment(StorageTier.DAILY, dayStart, dayStop));
+                planHourly(dayStop, stop, useHourly, segments);
+                return segments;
+            }
+        }
+
+        planHourly(start, stop, useHourly, segments);
+        return segments;
+    }
+
+    private void planHourly(Instant start, Instant stop, boolean useHourly, List<QuerySegment> segments) {
+        if (!start.isBefore(stop)) {
+            return;
+        }
+
+        final Instant hourlyWatermark = usageRollupService.getHourlyWatermark();
+        if (hourlyWatermark != null && useHourly) {
+            final Instant hourStart = ceil(start, ChronoUnit.HOURS);
+            final Instant hourStop = min(stop.truncatedTo(ChronoUnit.HOURS), hourlyWatermark);
+
+            if (hourStart.isBefore(hourStop)) {
+                addRaw(start, hourStart, segments);
+                segments.add(new QuerySegment(StorageTier.HOURLY, hourStart, hourStop));
+                addRaw(hourStop, stop, segments);
+                return;
+            }
+        }
+
+        addRaw(start, stop, segments);
+    }
+
+    /**
+     * Replaces the parts of segments that InfluxDB no longer holds (older than the start of the first
+     * day fully inside the tier's retention) with COLD segments, merging adjacent ones.
+     */
+    private List<QuerySegment> moveExpiredToCold(List<QuerySegment> segments) {
+        if (!coldEnabled) {
+            return segments;
+        }
+
+        final Instant now = Instant.now();
+        final List<QuerySegment> result = new ArrayList<>();
+        for (QuerySegment segment : segments) {
+            final Instant horizon = ceil(now.minus(retentionOf(segment.getTier())), ChronoUnit.DAYS);
+            if (!segment.getStart().isBefore(horizon)) {
+                result.add(segment);
+                continue;
+            }
+
+            final Instant coldStop = min(segment.getStop(), horizon);
+            final QuerySegment previous = result.isEmpty() ? null : result.get(result.size() - 1);
+            if (previous != null && previous.getTier() == StorageTier.COLD && previous.getStop().equals(segment.getStart())) {
+                previous.setStop(coldStop);
+            } else {
+                result.add(new QuerySegment(StorageTier.COLD, segment.getStart(), coldStop));
+            }
+
+            if (coldStop.isBefore(segment.getStop())) {
+                result.add(new QuerySegment(segment.getTier(), coldStop, segment.getStop()));
+            }
+        }
+        return result;
+    }
+
+    private Duration retentionOf(StorageTier tier) {
+        return switch (tier) {
+            case RAW, COLD -> rawRetention;
+            case HOURLY -> hourlyRetention;
+            case DAILY -> dailyRetention;
+        };
+    }
+
+    private void addRaw(Instant start, Instant stop, List<QuerySegment> segments) {
+        if (start.isBefore(stop)) {
+            segments.add(new QuerySegment(StorageTier.RAW, start, stop));
+        }
+    }
+
+    private static boolean divides(ChronoUnit unit, Duration resolution) {
+        return resolution == null || resolution.toMillis() % unit.getDuration().toMillis() == 0;
+    }
+
+    private static Instant ceil(Instant instant, ChronoUnit unit) {
+        final Instant truncated = instant.truncatedTo(unit);
+        return truncated.equals(instant) ? truncated : truncated.plus(1, unit);
+    }
+
+    private static Instant min(Instant a, Instant b) {
+        return a.isBefore(b) ? a : b;
+    }
+}
@@ -0,0 +1,300 @@
+package com.neeraj.usageservice.service;
+
+import com.neeraj.usageservice.dto.DeviceDTO;
+import com.neeraj.usageservice.dto.UsageDTO;
+import com.neeraj.usageservice.exception.FluxQueryException;
+import com.neeraj.usageservice.exception.InvalidUsageQueryException;
+import com.neeraj.usageservice.model.CachedUsage;
+import com.neeraj.usageservice.model.Device;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches usage results per (userId, days) for time buckets aligned to a fixed size, so repeated
+ * requests within a bucket (e.g. insight-service asking for the same 5-day usage twice) are served
+ * without querying InfluxDB.
+ * When a new bucket starts, the previous result is slid forward by adding the usage of the new tail
+ * and subtracting the usage of the expired head instead of re-summing the whole window. Concurrent
+ * identical requests share a single computation, and failed computations are never cached.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class UsageResultCache {
+
+    private final UsageService usageService;
+
+    // Latest result per (userId, days), used as the base of incremental refreshes
+    private final Map<UsageKey, CachedUsage> latest = new ConcurrentHashMap<>();
+
+    // Result (or in-flight computation) per (userId, days, window end)
+    private final Map<BucketKey, CompletableFuture<CachedUsage>> computations = new ConcurrentHashMap<>();
+
+    @Value("${usage.cache.enabled:true}")
+    private boolean cacheEnabled;
+
+    @Value("${usage.cache.bucket:1m}")
+    private Duration bucket;
+
+    @Value("${usage.cache.settle:10s}")
+    private Duration settle;
+
+    @Value("${usage.cache.incremental-max-days:6}")
+    private int incrementalMaxDays;
+
+    @Value("${usage.cache.max-incremental-refreshes:30}")
+    private int maxIncrementalRefreshes;
+
+    @Value("${usage.cache.idle-ttl:15m}")
+    private Duration idleTtl;
+
+    @Value("${usage.cache.max-days:366}")
+    private int maxDays;
+
+    /**
+     * Returns the usage of a user's devices over the last {@code days} days, ending at the start
+     * of the current time bucket.
+     *
+     * @param userId The ID of the user to fetch usage data for
+     * @param days   Number of days to look back for energy usage data
+     * @return The cached (or freshly computed) usage together with its ETag
+     * @throws InvalidUsageQueryException if days is out of range
+     */
+    public CachedUsage getXDaysUsageForUser(Long userId, int days) {
+        if (days < 1 || days > maxDays) {
+            throw new InvalidUsageQueryException("'days' must be between 1 and " + maxDays);
+        }
+
+        final Instant windowEnd = alignedWindowEnd(Instant.now());
+        if (!cacheEnabled) {
+            return compute(new UsageKey(userId, days), windowEnd, null);
+        }
+
+        final BucketKey bucketKey = new BucketKey(userId, days, windowEnd);
+        final CompletableFuture<CachedUsage> created = new CompletableFuture<>();
+        final CompletableFuture<CachedUsage> existing = computations.putIfAbsent(bucketKey, created);
+
+        // Another request already computed (or is computing) this bucket - wait for it
+        if (existing != null) {
+            final CachedUsage cached = join(existing);
+            cached.setLastAccessed(Instant.now());
+            return cached;
+        }
+
+        try {
+            final UsageKey usageKey = new UsageKey(userId, days);
+            final CachedUsage computed = compute(usageKey, windowEnd, latest.get(usageKey));
+            latest.put(usageKey, computed);
+            created.complete(computed);
+            return computed;
+        } catch (RuntimeException e) {
+            computations.remove(bucketKey, created);
+            created.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Computes how long the result stays valid before the next bucket replaces it, for Cache-Control headers.
+     *
+     * @param cachedUsage The cached usage
+     * @return Time until the next bucket starts
+     */
+    public Duration timeToLive(CachedUsage cachedUsage) {
+        final Instant nextRefresh = cachedUsage.getWindowEnd().plus(bucket).plus(settle);
+        final Duration remaining = Duration.between(Instant.now(), nextRefresh);
+        return remaining.isNegative() ? Duration.ZERO : remaining;
+    }
+
+    /**
+     * Drops results that have not been read for a while and computations of past buckets.
+     */
+    @Scheduled(fixedDelayString = "${usage.cache.eviction-interval:60000}")
+    public void evictIdleEntries() {
+        final Instant now = Instant.now();
+        final Instant currentWindowEnd = alignedWindowEnd(now);
+
+        computations.entrySet().removeIf(entry ->
+                entry.getValue().isDone() && entry.getKey().windowEnd().isBefore(currentWindowEnd));
+        latest.entrySet().removeIf(entry ->
+                entry.getValue().getLastAccessed().plus(idleTtl).isBefore(now));
+    }
+
+    /**
+     * Computes the usage of a window, incrementally from the previous result when possible. Failures of
+     * device-service or InfluxDB are thrown rather than turned into empty or partial results, so they are
+     * never cached; a failed incremental refresh falls back to a full recomputation.
+     */
+    private CachedUsage compute(UsageKey key, Instant windowEnd, CachedUsage previous) {
+        final Instant windowStart = windowEnd.minus(Duration.ofDays(key.days()));
+
+        // Device metadata is re-read on every bucket so renamed, added or removed devices show up
+        final List<Device> devices = usageService.fetchAndConvertUserDevices(key.userId());
+        if (devices.isEmpty()) {
+            log.warn("No devices found for userId: {}", key.userId());
+            return toCachedUsage(key, usageService.buildEmptyUsageDTO(key.userId()), Map.of(), windowStart, windowEnd, 0);
+        }
+
+        Map<Long, Double> deviceEnergyMap = null;
+        int incrementalRefreshes = 0;
+        if (canRefreshIncrementally(previous, devices, key.days(), windowEnd)) {
+            try {
+                deviceEnergyMap = slideForward(key.userId(), devices, previous, windowStart, windowEnd);
+                incrementalRefreshes = previous.getIncrementalRefreshes() + 1;
+            } catch (FluxQueryException e) {
+                log.warn("Incremental usage refresh failed for userId {}, recomputing the whole window: {}", key.userId(), e.getMessage());
+            }
+        }
+        if (deviceEnergyMap == null) {
+            deviceEnergyMap = usageService.queryDeviceEnergyUsage(key.userId(), devices, windowStart, windowEnd);
+        }
+
+        usageService.populateDevicesWithEnergyData(devices, deviceEnergyMap);
+        return toCachedUsage(key, usageService.buildUsageDTO(key.userId(), devices), deviceEnergyMap, windowStart, windowEnd, incrementalRefreshes);
+    }
+
+    /**
+     * Slides the previous window forward: adds the new tail and subtracts the expired head.
+     */
+    private Map<Long, Double> slideForward(Long userId, List<Device> devices, CachedUsage previous, Instant windowStart, Instant windowEnd) {
+        final Map<Long, Double> tail = usageService.queryDeviceEnergyUsage(userId, devices, previous.getWindowEnd(), windowEnd);
+        final Map<Long, Double> head = usageService.queryDeviceEnergyUsage(userId, devices, previous.getWindowStart(), windowStart);
+
+        final Map<Long, Double> deviceEnergyMap = new HashMap<>(previous.getDeviceEnergy());
+        tail.forEach((deviceId, energy) -> deviceEnergyMap.merge(deviceId, energy, Double::sum));
+        head.forEach((deviceId, energy) -> deviceEnergyMap.merge(deviceId, -energy, Double::sum));
+        // Guard against tiny negative values caused by floating point subtraction
+        deviceEnergyMap.replaceAll((deviceId, energy) -> Math.max(0.0, energy));
+        return deviceEnergyMap;
+    }
+
+    /**
+     * An incremental refresh is only exact while the head being subtracted is still in the raw bucket
+     * and the device set is unchanged; a full recomputation is also forced periodically to pick up late
+     * readings and reset floating point drift.
+     */
+    private boolean canRefreshIncrementally(CachedUsage previous, List<Device> devices, int days, Instant windowEnd) {
+        if (previous == null || days > incrementalMaxDays || previous.getIncrementalRefreshes() >= maxIncrementalRefreshes) {
+            return false;
+        }
+
+        if (!previous.getWindowEnd().isBefore(windowEnd)
+                || Duration.between(previous.getWindowEnd(), windowEnd).compareTo(Duration.ofDays(days)) >= 0) {
+            return false;
+        }
+
+        final List<Long> previousDeviceIds = previous.getUsage().devices().stream()
+                .map(DeviceDTO::id)
+                .sorted()
+                .toList();
+        final List<Long> deviceIds = devices.stream()
+                .map(Device::getId)
+                .filter(Objects::nonNull)
+                .sorted()
+                .toList();
+        return previousDeviceIds.equals(deviceIds);
+    }
+
+    private CachedUsage toCachedUsage(UsageKey key, UsageDTO usage, Map<Long, Double> deviceEnergy, Instant windowStart, Instant windowEnd, int incrementalRefreshes) {
+        return CachedUsage.builder()
+                .usage(usage)
+                .deviceEnergy(deviceEnergy)
+                .windowStart(windowStart)
+                .windowEnd(windowEnd)
+                .incrementalRefreshes(incrementalRefreshes)
+                .etag(etagOf(key, windowEnd, usage))
+                .lastAccessed(Instant.now())
+                .build();
+    }
+
+    /**
+     * Builds the ETag of a result from its key, its window end and a SHA-256 digest of its content, so
+     * different results never share an ETag (and never get a wrong 304), whichever instance computed them.
+     */
+    private static String etagOf(UsageKey key, Instant windowEnd, UsageDTO usage) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+
+        // Every field is length-prefixed or null-flagged, so distinct results never encode to the same bytes
+        try (DataOutputStream out = new DataOutputStream(new DigestOutputStream(OutputStream.nullOutputStream(), digest))) {
+            writeNullable(out, usage.userId());
+            final List<DeviceDTO> devices = usage.devices() == null ? List.of() : usage.devices();
+            out.writeInt(devices.size());
+            for (DeviceDTO device : devices) {
+                writeNullable(out, device.id());
+                writeNullable(out, device.name());
+                writeNullable(out, device.type());
+                writeNullable(out, device.location());
+                writeNullable(out, device.userId());
+                writeNullable(out, device.energyConsumed());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return "\"" + key.userId() + "-" + key.days() + "-" + windowEnd.toEpochMilli() + "-"
+                + HexFormat.of().formatHex(digest.digest()) + "\"";
+    }
+
+    private static void writeNullable(DataOutputStream out, Object value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value instanceof Long number) {
+            out.writeLong(number);
+        } else if (value instanceof Double number) {
+            out.writeDouble(number);
+        } else if (value != null) {
+            out.writeUTF(value.toString());
+        }
+    }
+
+    /**
+     * Aligns a timestamp to the start of its bucket, after leaving some time for in-flight readings to land.
+     */
+    private Instant alignedWindowEnd(Instant now) {
+        final long bucketMillis = bucket.toMillis();
+        final long settledMillis = now.minus(settle).toEpochMilli();
+        return Instant.ofEpochMilli(settledMillis - Math.floorMod(settledMillis, bucketMillis));
+    }
+
+    private static CachedUsage join(CompletableFuture<CachedUsage> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw e;
+        }
+    }
+
+    private record UsageKey(Long userId, int days) {
+    }
+
+    private record BucketKey(Long userId, int days, Instant windowEnd) {
+    }
+}
@@ -0,0 +1,222 @@
+package com.neeraj.usageservice.service;
+
+import com.influxdb.client.BucketsApi;
+import com.influxdb.client.InfluxDBClient;
+import com.influxdb.client.domain.Bucket;
+import com.influxdb.client.domain.BucketRetentionRules;
+import com.influxdb.client.domain.Organization;
+import com.influxdb.query.FluxRecord;
+import com.influxdb.query.FluxTable;
+import com.neeraj.usageservice.model.FluxQuery;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+/**
+ * Maintains hourly and daily per-device rollups of the raw energy usage points in separate,
+ * longer-retention buckets. Rollups keep the deviceId and userId tags of the raw points, so
+ * they can be queried with the same filters. Writes are idempotent (same series and timestamp),
+ * which lets every run safely re-roll the most recent periods to pick up late readings.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class UsageRollupService {
+
+    private final InfluxDBClient influxDBClient;
+    private final FluxQueryBuilder fluxQueryBuilder;
+
+    @Value("${influxdb.bucket}")
+    private String influxDbBucket;
+
+    @Value("${influxdb.org}")
+    private String influxDbOrg;
+
+    @Value("${usage.rollup.enabled:true}")
+    private boolean rollupEnabled;
+
+    @Value("${usage.rollup.hourly-bucket}")
+    private String hourlyBucket;
+
+    @Value("${usage.rollup.hourly-retention}")
+    private Duration hourlyRetention;
+
+    @Value("${usage.rollup.daily-bucket}")
+    private String dailyBucket;
+
+    @Value("${usage.rollup.daily-retention}")
+    private Duration dailyRetention;
+
+    @Value("${usage.rollup.raw-retention}")
+    private Duration rawRetention;
+
+    @Value("${usage.rollup.late-arrival:1h}")
+    private Duration lateArrival;
+
+    // End (exclusive) of the most recent period that has been fully rolled up, null until the first run completes
+    @Getter
+    private volatile Instant hourlyWatermark;
+
+    @Getter
+    private volatile Instant dailyWatermark;
+
+    /**
+     * Creates the rollup buckets if needed and catches up on any periods missed while the
+     * service was down (or backfills the whole raw retention on first start).
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void initializeRollups() {
+        if (!rollupEnabled) {
+            log.info("Usage rollups are disabled, queries will always read raw points");
+            return;
+        }
+
+        try {
+            ensureBucketExists(hourlyBucket, hourlyRetention);
+            ensureBucketExists(dailyBucket, dailyRetention);
+
+            hourlyWatermark = findLastRolledUpPeriodEnd(hourlyBucket, ChronoUnit.HOURS);
+            dailyWatermark = findLastRolledUpPeriodEnd(dailyBucket, ChronoUnit.DAYS);
+            log.info("Usage rollups resuming from hourly watermark {} and daily watermark {}", hourlyWatermark, dailyWatermark);
+        } catch (Exception e) {
+            log.error("Failed to initialize usage rollup buckets: {}", e.getMessage(), e);
+            return;
+        }
+
+        rollUpHours();
+        rollUpDays();
+    }
+
+    /**
+     * Rolls every completed hour since the hourly watermark (plus the late-arrival window)
+     * from the raw bucket into the hourly bucket.
+     */
+    @Scheduled(cron = "${usage.rollup.hourly-cron:0 2 * * * *}")
+    public void rollUpHours() {
+        if (!rollupEnabled) {
+            return;
+        }
+
+        final Instant stop = Instant.now().truncatedTo(ChronoUnit.HOURS);
+        final Instant start = rollupStart(hourlyWatermark, stop, ChronoUnit.HOURS);
+
+        if (rollUp(influxDbBucket, hourlyBucket, Duration.ofHours(1), start, stop)) {
+            hourlyWatermark = stop;
+        }
+    }
+
+    /**
+     * Rolls every completed day that is fully covered by the hourly rollups from the hourly
+     * bucket into the daily bucket.
+     */
+    @Scheduled(cron = "${usage.rollup.daily-cron:0 10 0 * * *}")
+    public void rollUpDays() {
+        final Instant hourly = hourlyWatermark;
+        if (!rollupEnabled || hourly == null) {
+            return;
+        }
+
+        final Instant stop = hourly.truncatedTo(ChronoUnit.DAYS);
+        final Instant start = rollupStart(dailyWatermark, stop, ChronoUnit.DAYS);
+
+        if (rollUp(hourlyBucket, dailyBucket, Duration.ofDays(1), start, stop)) {
+            dailyWatermark = stop;
+        }
+    }
+
+    /**
+     * Computes where a rollup run should start: at the watermark, moved back by the late-arrival
+     * window, or at the beginning of the raw retention when nothing has been rolled up yet.
+     */
+    private Instant rollupStart(Instant watermark, Instant stop, ChronoUnit unit) {
+        final Instant earliest = Instant.now().minus(rawRetention).truncatedTo(unit);
+        if (watermark == null) {
+            return earliest;
+        }
+
+        Instant start = watermark.minus(lateArrival).truncatedTo(unit);
+        if (start.isBefore(earliest)) {
+            start = earliest;
+        }
+        return start.isAfter(stop) ? stop : start;
+    }
+
+    /**
+     * Aggregates one bucket into another per device (and owner) with the given window size.
+     * Long ranges are processed one day at a time to keep each query small.
+     *
+     * @return true if every chunk was rolled up successfully
+     */
+    private boolean rollUp(String sourceBucket, String targetBucket, Duration every, Instant start, Instant stop) {
+        Instant chunkStart = start;
+        while (chunkStart.isBefore(stop)) {
+            final Instant chunkStop = min(chunkStart.plus(1, ChronoUnit.DAYS), stop);
+
+            // Sum each window per device/owner, stamp it with the window start and write it to the target bucket
+            final FluxQuery fluxQuery = fluxQueryBuilder.rollupQuery(sourceBucket, targetBucket, every, chunkStart, chunkStop);
+
+            try {
+                influxDBClient.getQueryApi().query(fluxQueryBuilder.toInfluxQuery(fluxQuery), influxDbOrg);
+            } catch (Exception e) {
+                log.error("Failed to roll up {} into {} for [{}, {}): {}", sourceBucket, targetBucket, chunkStart, chunkStop, e.getMessage(), e);
+                return false;
+            }
+
+            chunkStart = chunkStop;
+        }
+
+        log.info("Rolled up {} into {} for [{}, {})", sourceBucket, targetBucket, start, stop);
+        return true;
+    }
+
+    /**
+     * Finds the end of the most recent period that has a rollup point, so rolling can resume from there.
+     *
+     * @return The end of the last rolled-up period, or null if the bucket is empty
+     */
+    private Instant findLastRolledUpPeriodEnd(String bucket, ChronoUnit unit) {
+        final FluxQuery fluxQuery = fluxQueryBuilder.latestPointQuery(bucket, Instant.now().minus(rawRetention));
+
+        final List<FluxTable> tables = influxDBClient.getQueryApi().query(fluxQueryBuilder.toInfluxQuery(fluxQuery), influxDbOrg);
+        for (FluxTable table : tables) {
+            for (FluxRecord record : table.getRecords()) {
+                if (record.getTime() != null) {
+                    return record.getTime().truncatedTo(unit).plus(1, unit);
+                }
+            }
+        }
+        return null;
+    }
+
+    private void ensureBucketExists(String name, Duration retention) {
+        final BucketsApi bucketsApi = influxDBClient.getBucketsApi();
+        if (bucketsApi.findBucketByName(name) != null) {
+            return;
+        }
+
+        final Organization organization = influxDBClient.getOrganizationsApi().findOrganizations().stream()
+                .filter(org -> influxDbOrg.equals(org.getName()))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("InfluxDB organization not found: " + influxDbOrg));
+
+        final BucketRetentionRules retentionRule = new BucketRetentionRules();
+        retentionRule.setEverySeconds(retention.toSeconds());
+
+        final Bucket bucket = bucketsApi.createBucket(name, retentionRule, organization);
+        log.info("Created rollup bucket {} with retention {}", bucket.getName(), retention);
+    }
+
+    private static Instant min(Instant a, Instant b) {
+        return a.isBefore(b) ? a : b;
+    }
+}
@@ -0,0 +1,320 @@
+package com.neeraj.usageservice.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.StreamWriteFeature;
+import com.influxdb.query.FluxRecord;
+import com.neeraj.usageservice.exception.FluxQueryException;
+import com.neeraj.usageservice.exception.InvalidUsageQueryException;
+import com.neeraj.usageservice.model.Device;
+import com.neeraj.usageservice.model.FluxQuery;
+import com.neeraj.usageservice.model.QuerySegment;
+import com.neeraj.usageservice.model.StorageTier;
+import com.neeraj.usageservice.model.UsageSeriesRequest;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+
+/**
+ * Serves per-device usage series for dashboards. Series are downsampled inside InfluxDB with
+ * aggregateWindow, and the step is coarsened automatically so no series exceeds the point cap.
+ * The JSON response is written record by record as the query result streams in, so memory use
+ * does not grow with the size of the response.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class UsageSeriesService {
+
+    // Steps a coarsened series snaps to, so clients get round window sizes
+    private static final List<Duration> STEPS = List.of(
+            Duration.ofMinutes(1), Duration.ofMinutes(5), Duration.ofMinutes(15), Duration.ofMinutes(30),
+            Duration.ofHours(1), Duration.ofHours(3), Duration.ofHours(6), Duration.ofHours(12),
+            Duration.ofDays(1), Duration.ofDays(7));
+
+    // Never close the servlet stream, and never auto-complete a response that failed half way
+    private static final JsonFactory JSON_FACTORY = JsonFactory.builder()
+            .disable(StreamWriteFeature.AUTO_CLOSE_TARGET)
+            .disable(StreamWriteFeature.AUTO_CLOSE_CONTENT)
+            .build();
+
+    private final UsageService usageService;
+    private final UsageQueryPlanner usageQueryPlanner;
+    private final FluxQueryBuilder fluxQueryBuilder;
+    private final FluxQueryExecutor fluxQueryExecutor;
+    private final ColdStorageService coldStorageService;
+
+    @Value("${usage.series.max-points:1000}")
+    private int maxPoints;
+
+    @Value("${usage.series.default-step:1m}")
+    private Duration defaultStep;
+
+    @Value("${usage.series.query-timeout:2m}")
+    private Duration queryTimeout;
+
+    /**
+     * Validates a series request and resolves everything needed to stream it.
+     * Runs before the response is committed, so invalid requests can still be rejected with a 400.
+     * This method orchestrates the following steps:
+     * 1. Parse and validate the time range and step
+     * 2. Coarsen the step until every series fits within the point cap
+     * 3. Fetch the user's devices and plan the storage tiers to read
+     *
+     * @param userId The ID of the user to fetch the series for
+     * @param from   Start of the range (inclusive), aligned down to the step
+     * @param to     End of the range (exclusive), defaults to now
+     * @param step   Requested window size (e.g. "5m" or "PT5M"), defaults to the configured step
+     * @return The resolved request
+     * @throws InvalidUsageQueryException if the range or step is invalid
+     */
+    public UsageSeriesRequest prepareSeries(Long userId, Instant from, Instant to, String step) {
+        // Step 1: Parse and validate the time range and step
+        final Instant stop = to != null ? to : Instant.now();
+        if (!from.isBefore(stop)) {
+            throw new InvalidUsageQueryException("'from' must be before 'to'");
+        }
+
+        final Duration requestedStep = parseStep(step);
+
+        // Step 2: Coarsen the step until every series fits within the point cap
+        final Duration effectiveStep = coarsen(requestedStep, Duration.between(from, stop));
+        final Instant start = alignDown(from, effectiveStep);
+
+        // Step 3: Fetch the user's devices and plan the storage tiers to read
+        return UsageSeriesRequest.builder()
+                .userId(userId)
+                .from(start)
+                .to(stop)
+                .requestedStep(requestedStep)
+                .step(effectiveStep)
+                .devices(usageService.fetchAndConvertUserDevices(userId))
+                .segments(usageQueryPlanner.plan(start, stop, effectiveStep))
+                .build();
+    }
+
+    /**
+     * Streams the series of a prepared request as JSON. Each device's points are flushed to the client
+     * as soon as its series is complete; devices without readings are listed with an empty series.
+     * If the query fails half way the response is left truncated (the status is already sent) so the
+     * client cannot mistake it for a complete result.
+     *
+     * @param request      The prepared request
+     * @param outputStream The response body
+     * @throws IOException if writing to the client fails
+     */
+    public void writeSeries(UsageSeriesRequest request, OutputStream outputStream) throws IOException {
+        final Map<Long, Device> devicesById = new LinkedHashMap<>();
+        request.getDevices().forEach(device -> devicesById.put(device.getId(), device));
+
+        // Windows of days that have aged out of InfluxDB come from cold storage, the rest from Flux
+        final List<Long> deviceIds = List.copyOf(devicesById.keySet());
+        final Map<Long, NavigableMap<Long, Double>> coldWindows = coldStorageService.windowedByDevice(
+                request.getUserId(), deviceIds, request.getSegments(), request.getStep());
+        final List<QuerySegment> influxSegments = request.getSegments().stream()
+                .filter(segment -> segment.getTier() != StorageTier.COLD)
+                .toList();
+        final List<FluxQuery> fluxQueries = fluxQueryBuilder.deviceSeriesQueries(request.getUserId(),
+                deviceIds, influxSegments, request.getStep());
+
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(outputStream)) {
+            generator.writeStartObject();
+            generator.writeNumberField("userId", request.getUserId());
+            generator.writeStringField("from", request.getFrom().toString());
+            generator.writeStringField("to", request.getTo().toString());
+            generator.writeStringField("requestedStep", request.getRequestedStep().toString());
+            generator.writeStringField("step", request.getStep().toString());
+            generator.writeArrayFieldStart("series");
+
+            final SeriesWriter seriesWriter = new SeriesWriter(generator, devicesById, coldWindows);
+            for (FluxQuery fluxQuery : fluxQueries) {
+                fluxQueryExecutor.stream(fluxQuery, queryTimeout, seriesWriter::write);
+            }
+            seriesWriter.finish();
+
+            generator.writeEndArray();
+            generator.writeEndObject();
+        } catch (FluxQueryException e) {
+            // The client went away - there is nothing left to write to
+            if (e.getCause() instanceof UncheckedIOException ioException) {
+                throw ioException.getCause();
+            }
+            log.error("Failed to stream usage series for userId {}: {}", request.getUserId(), e.getMessage(), e);
+            throw e;
+        }
+    }
+
+    private Duration parseStep(String step) {
+        final Duration parsed;
+        try {
+            parsed = step == null || step.isBlank() ? defaultStep : DurationStyle.detectAndParse(step);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidUsageQueryException("Invalid step: " + step);
+        }
+
+        // Windows are passed to Flux in whole seconds
+        if (parsed.toSeconds() < 1 || parsed.toMillis() % 1000 != 0) {
+            throw new InvalidUsageQueryException("'step' must be a positive whole number of seconds");
+        }
+        return parsed;
+    }
+
+    /**
+     * Returns the requested step if the range fits in the point cap with it, otherwise the smallest
+     * round step that does (whole days beyond the largest round step).
+     */
+    private Duration coarsen(Duration step, Duration range) {
+        final long minStepMillis = Math.ceilDiv(range.toMillis(), maxPoints);
+        if (step.toMillis() >= minStepMillis) {
+            return step;
+        }
+
+        for (Duration candidate : STEPS) {
+            if (candidate.toMillis() >= minStepMillis) {
+                return candidate;
+            }
+        }
+        return Duration.ofDays(Math.ceilDiv(minStepMillis, Duration.ofDays(1).toMillis()));
+    }
+
+    /**
+     * Aligns a timestamp down to the epoch-aligned window boundaries used by aggregateWindow,
+     * so the first window is not a partial one.
+     */
+    private static Instant alignDown(Instant instant, Duration step) {
+        final long millis = instant.toEpochMilli();
+        return Instant.ofEpochMilli(millis - Math.floorMod(millis, step.toMillis()));
+    }
+
+    /**
+     * Writes records to the response as they arrive. Records come one device table at a time, so a
+     * series is opened on the first record of a device and closed (and flushed) when the next one starts.
+     * A series starts with the device's cold storage windows, which are older than anything in InfluxDB;
+     * a window split across both is merged by holding back the last written point until the next one.
+     */
+    private static final class SeriesWriter {
+
+        private final JsonGenerator generator;
+        private final Map<Long, Device> devicesById;
+        private final Map<Long, NavigableMap<Long, Double>> coldWindows;
+        private final Set<Long> written = new HashSet<>();
+        private Long currentDeviceId;
+
+        private boolean hasPending;
+        private long pendingTime;
+        private double pendingEnergy;
+
+        private SeriesWriter(JsonGenerator generator, Map<Long, Device> devicesById, Map<Long, NavigableMap<Long, Double>> coldWindows) {
+            this.generator = generator;
+            this.devicesById = devicesById;
+            this.coldWindows = coldWindows;
+        }
+
+        void write(FluxRecord record) {
+            final Object deviceIdObj = record.getValueByKey("deviceId");
+            if (deviceIdObj == null || record.getTime() == null) {
+                return;
+            }
+
+            try {
+                final Long deviceId = Long.valueOf(deviceIdObj.toString());
+                if (!deviceId.equals(currentDeviceId)) {
+                    closeSeries();
+                    openSeries(deviceId);
+                }
+
+                final double energy = record.getValue() instanceof Number number ? number.doubleValue() : 0.0;
+                emit(record.getTime().toEpochMilli(), energy);
+            } catch (NumberFormatException nfe) {
+                log.warn("Failed to parse deviceId from flux record: {}", deviceIdObj, nfe);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        void finish() throws IOException {
+            closeSeries();
+
+            // Devices without readings in InfluxDB still get a series (cold windows only, or empty)
+            for (Long deviceId : devicesById.keySet()) {
+                if (!written.contains(deviceId)) {
+                    openSeries(deviceId);
+                    closeSeries();
+                }
+            }
+        }
+
+        private void openSeries(Long deviceId) throws IOException {
+            final Device device = devicesById.get(deviceId);
+            currentDeviceId = deviceId;
+            written.add(deviceId);
+
+            generator.writeStartObject();
+            generator.writeNumberField("deviceId", deviceId);
+            if (device != null) {
+                generator.writeStringField("name", device.getName());
+                generator.writeStringField("type", device.getType());
+                generator.writeStringField("location", device.getLocation());
+            }
+            generator.writeArrayFieldStart("points");
+
+            final NavigableMap<Long, Double> cold = coldWindows.get(deviceId);
+            if (cold != null) {
+                for (Map.Entry<Long, Double> window : cold.entrySet()) {
+                    emit(window.getKey(), window.getValue());
+                }
+            }
+        }
+
+        private void closeSeries() throws IOException {
+            if (currentDeviceId == null) {
+                return;
+            }
+
+            flushPending();
+            generator.writeEndArray();
+            generator.writeEndObject();
+            // Push the finished series to the client instead of waiting for the buffer to fill
+            generator.flush();
+            currentDeviceId = null;
+        }
+
+        private void emit(long time, double energy) throws IOException {
+            if (hasPending && pendingTime == time) {
+                pendingEnergy += energy;
+                return;
+            }
+
+            flushPending();
+            hasPending = true;
+            pendingTime = time;
+            pendingEnergy = energy;
+        }
+
+        private void flushPending() throws IOException {
+            if (!hasPending) {
+                return;
+            }
+
+            generator.writeStartObject();
+            generator.writeStringField("time", Instant.ofEpochMilli(pendingTime).toString());
+            generator.writeNumberField("energy", pendingEnergy);
+            generator.writeEndObject();
+            hasPending = false;
+        }
+    }
+}
@@ -1,41 +1,66 @@
 package com.neeraj.usageservice.service;
 
 import com.influxdb.client.InfluxDBClient;
-import com.influxdb.client.QueryApi;
 import com.influxdb.client.domain.WritePrecision;
 import com.influxdb.client.write.Point;
-import com.influxdb.query.FluxRecord;
-import com.influxdb.query.FluxTable;
+import com.neeraj.kafka.event.AlertType;
 import com.neeraj.kafka.event.AlertingEvent;
 import com.neeraj.kafka.event.EnergyUsageEvent;
 import com.neeraj.usageservice.client.DeviceClient;
-import com.neeraj.usageservice.client.UserClient;
 import com.neeraj.usageservice.dto.DeviceDTO;
 import com.neeraj.usageservice.dto.UsageDTO;
-import com.neeraj.usageservice.dto.UserDTO;
+import com.neeraj.usageservice.exception.FluxQueryException;
+import com.neeraj.usageservice.model.AnomalyType;
 import com.neeraj.usageservice.model.Device;
-import com.neeraj.usageservice.model.DeviceWithEnergyUsageForUser;
+import com.neeraj.usageservice.model.DeviceInfo;
+import com.neeraj.usageservice.model.FluxQuery;
+import com.neeraj.usageservice.model.PeriodAccumulator;
+import com.neeraj.usageservice.model.QuerySegment;
+import com.neeraj.usageservice.model.RuleBreach;
+import com.neeraj.usageservice.model.StorageTier;
+import com.neeraj.usageservice.model.TariffPlan;
+import com.neeraj.usageservice.model.ThresholdForecast;
+import com.neeraj.usageservice.model.UsageAnomaly;
+import com.neeraj.usageservice.model.UserProfile;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.TopicPartition;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.kafka.core.KafkaTemplate;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.kafka.listener.ConsumerSeekAware;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
 
 
 @Service
 @Slf4j
 @RequiredArgsConstructor
-public class UsageService {
+public class UsageService implements ConsumerSeekAware {
 
     private final InfluxDBClient influxDBClient;
     private final DeviceClient deviceClient;
-    private final UserClient userClient;
+    private final DeviceDirectory deviceDirectory;
+    private final HotSeriesStore hotSeriesStore;
+    private final ColdStorageService coldStorageService;
+    private final UsageQueryPlanner usageQueryPlanner;
+    private final FluxQueryBuilder fluxQueryBuilder;
+    private final FluxQueryExecutor fluxQueryExecutor;
+    private final ExecutorService influxQueryExecutor;
+    private final UserProfileCache userProfileCache;
+    private final PeriodUsageTracker periodUsageTracker;
+    private final AlertRuleEngine alertRuleEngine;
+    private final AnomalyDetector anomalyDetector;
+    private final UsageForecaster usageForecaster;
+    private final UsageSnapshotService usageSnapshotService;
 
     private final KafkaTemplate<String, AlertingEvent> kafkaTemplate;
 
@@ -46,134 +71,119 @@ public class UsageService {
     private String influxDbOrg;
 
     @KafkaListener(topics = "energy-usage", groupId = "usage-service")
-    public void processEnergyUsageEvent(EnergyUsageEvent event) {
+    public void processEnergyUsageEvent(EnergyUsageEvent event,
+                                        @Header(KafkaHeaders.RECEIVED_PARTITION) int partition,
+                                        @Header(KafkaHeaders.OFFSET) long offset) {
 //        log.info("Received energy usage event: {}", event);
 
-        Point point = Point.measurement("energy_usage")
-                .addTag("deviceId", String.valueOf(event.deviceId()))
-                .addField("energyUsage", event.energyUsage())
-                .time(event.timestamp(), WritePrecision.MS);
+        // Applied through the snapshot service so the snapshot offsets always match the in-memory state
+        usageSnapshotService.process("energy-usage", partition, offset, () -> {
+            Point point = Point.measurement("energy_usage")
+                    .addTag("deviceId", String.valueOf(event.deviceId()))
+                    .addField("energyUsage", event.energyUsage())
+                    .time(event.timestamp(), WritePrecision.MS);
+
+            // Tag the point with the device's current owner so aggregations can group by user inside InfluxDB.
+            // Points of unknown devices are still stored, just without a userId tag.
+            final DeviceInfo device = deviceDirectory.resolve(event.deviceId());
+            final Long userId = device == null ? null : device.getUserId();
+            if (userId != null) {
+                point.addTag("userId", String.valueOf(userId));
+            }
 
-        influxDBClient.getWriteApiBlocking().writePoint(influxDbBucket, influxDbOrg, point);
+            influxDBClient.getWriteApiBlocking().writePoint(influxDbBucket, influxDbOrg, point);
+
+            // Keep the reading in memory as well, so queries over recent data can skip InfluxDB,
+            // add it to the owner's running day / month usage and cost, to the rules referencing the device,
+            // and check it against the device's usual behaviour
+            if (event.energyUsage() != null) {
+                hotSeriesStore.record(event.deviceId(), userId, event.timestamp(), event.energyUsage());
+                periodUsageTracker.record(device, event.timestamp(), event.energyUsage());
+                alertRuleEngine.record(device, event.timestamp(), event.energyUsage());
+                anomalyDetector.record(event.deviceId(), userId, event.timestamp(), event.energyUsage());
+                usageForecaster.record(userId, event.timestamp(), event.energyUsage());
+            }
+        });
     }
 
     /**
-     * Main method to aggregate device energy usage and send alerts when thresholds are exceeded.
-     * This is a scheduled job that runs every 10 seconds to monitor energy consumption.
+     * Resumes the energy-usage partitions from the offsets of the restored snapshot (if any),
+     * so only the events after the snapshot are replayed into the in-memory state.
+     */
+    @Override
+    public void onPartitionsAssigned(Map<TopicPartition, Long> assignments, ConsumerSeekCallback callback) {
+        usageSnapshotService.seekToSnapshot(assignments, callback);
+    }
+
+    /**
+     * Main method to aggregate energy usage per user and send alerts when thresholds are exceeded.
+     * Runs every 10 seconds (adapting to slow cycles) on the dedicated thread of the {@link AggregationScheduler}.
      * This method orchestrates the following steps:
-     * 1. Fetch energy usage data from InfluxDB for all devices in the last hour
-     * 2. Enrich device data with user information by calling device-service
-     * 3. Group devices by their userId to calculate total energy per user
-     * 4. Fetch user details (email, alert threshold) from user-service
-     * 5. Check each user's total energy usage against their threshold and send alerts if exceeded
+     * 1. Fetch total energy usage per user from InfluxDB for the last hour (grouped by the userId tag)
+     * 2. Fetch user details (email, alert threshold) from user-service
+     * 3. Check each user's total energy usage against their threshold and send alerts if exceeded
+     * 4. Check the running daily / monthly totals of users with budgets and send alerts if exceeded
+     * 5. Send alerts for the device / device type / location / user rules that fired since the last run
+     * 6. Send alerts for the device anomalies (spikes, stuck-on devices) detected since the last run
+     * 7. Send early warnings to users whose usage trend is projected to exceed their threshold this hour
      *
      * This automated monitoring ensures users are notified in near real-time when their
      * energy consumption exceeds their configured alert thresholds.
      */
-    @Scheduled(cron = "*/10 * * * * *")
     public void aggregateDeviceEnergyUsage() {
-        // Step 1: Fetch energy usage data from InfluxDB for all devices in the last hour
-        List<DeviceWithEnergyUsageForUser> deviceEnergies = fetchDeviceEnergyUsageFromInfluxDB();
-
-        // Step 2: Enrich device data with user information by calling device-service
-        enrichDevicesWithUserInfo(deviceEnergies);
+        // Step 1: Fetch total energy usage per user from InfluxDB for the last hour
+        Map<Long, Double> userEnergyUsageMap = fetchUserEnergyUsageFromInfluxDB();
 
-        // Step 3: Group devices by their userId to calculate total energy per user
-        Map<Long, List<DeviceWithEnergyUsageForUser>> userDeviceEnergiesUsageMap = groupDevicesByUser(deviceEnergies);
-
-        // Step 4: Fetch user details (email, alert threshold) from user-service
+        // Step 2: Fetch user details (email, alert threshold) from user-service
         Map<Long, Double> userEnergyThresholdsMap = new HashMap<>();
         Map<Long, String> userEmailMap = new HashMap<>();
-        fetchUserThresholdsAndEmails(userDeviceEnergiesUsageMap.keySet(), userEnergyThresholdsMap, userEmailMap);
+        fetchUserThresholdsAndEmails(userEnergyUsageMap.keySet(), userEnergyThresholdsMap, userEmailMap);
+
+        // Step 3: Check each user's total energy usage against their threshold and send alerts if exceeded
+        checkThresholdsAndSendAlerts(userEnergyUsageMap, userEnergyThresholdsMap, userEmailMap);
 
-        // Step 5: Check each user's total energy usage against their threshold and send alerts if exceeded
-        checkThresholdsAndSendAlerts(userDeviceEnergiesUsageMap, userEnergyThresholdsMap, userEmailMap);
+        // Step 4: Check the incrementally maintained budget totals and send alerts if exceeded
+        checkBudgetsAndSendAlerts();
+
+        // Step 5: Send alerts for the rules the alert rule engine found exceeded while processing events
+        sendRuleAlerts();
+
+        // Step 6: Send alerts for the anomalies the anomaly detector found while processing events
+        sendAnomalyAlerts();
+
+        // Step 7: Send early warnings for the threshold crossings the usage forecaster projected while processing events
+        sendForecastAlerts();
     }
 
     /**
-     * Fetches aggregated energy usage data from InfluxDB for the last hour.
-     * Queries InfluxDB and converts the results into DeviceWithEnergyUsageForUser objects.
+     * Fetches the total energy usage per user from InfluxDB for the last hour.
+     * Points are tagged with their owner at write time, so the device -> user join
+     * happens inside InfluxDB and only one row per user is returned.
      *
-     * @return List of devices with their energy usage for the last hour
+     * @return Map of userId to total energy usage for the last hour
      */
-    private List<DeviceWithEnergyUsageForUser> fetchDeviceEnergyUsageFromInfluxDB() {
+    private Map<Long, Double> fetchUserEnergyUsageFromInfluxDB() {
         final Instant now = Instant.now();
         final Instant oneHourAgo = now.minusSeconds(3600);
 
-        // Build InfluxDB Flux query to sum energy usage per device for the last hour
-        String fluxQuery = String.format("""
-                from(bucket: "%s")
-                |> range(start: time(v: %s), stop: time(v: %s))
-                |> filter(fn: (r) => r["_measurement"] == "energy_usage")
-                |> filter(fn: (r) => r["_field"] == "energyUsage")
-                |> group(columns: ["deviceId"])
-                |> sum(column: "_value")
-                """, influxDbBucket, oneHourAgo.toString(), now);
-
-        // Execute the query against InfluxDB
-        QueryApi queryApi = influxDBClient.getQueryApi();
-        List<FluxTable> tables = queryApi.query(fluxQuery, influxDbOrg);
-
-        // Convert FluxTable records to DeviceWithEnergyUsageForUser objects
-        List<DeviceWithEnergyUsageForUser> deviceEnergies = new ArrayList<>();
-        for (FluxTable table : tables) {
-            for (FluxRecord record : table.getRecords()) {
-                String deviceIdStr = (String) record.getValueByKey("deviceId");
-                Double energyUsage = record.getValueByKey("_value") instanceof Number ?
-                        ((Number) record.getValueByKey("_value")).doubleValue() : 0.0;
-
-                deviceEnergies.add(DeviceWithEnergyUsageForUser.builder()
-                        .deviceId(Long.valueOf(deviceIdStr))
-                        .energyUsage(energyUsage)
-                        .build());
-            }
-        }
-//        log.info("Aggregated device energy usage for the last hour: {}", deviceEnergies);
-        return deviceEnergies;
-    }
+        // Build InfluxDB Flux query to sum energy usage per user for the last hour
+        FluxQuery fluxQuery = fluxQueryBuilder.userUsageQuery(oneHourAgo, now);
 
-    /**
-     * Enriches device energy data with user information by calling the device-service.
-     * For each device, fetches the device details and sets the userId.
-     * Removes devices that don't have an associated user.
-     *
-     * @param deviceEnergies List of devices to enrich with user information
-     */
-    private void enrichDevicesWithUserInfo(List<DeviceWithEnergyUsageForUser> deviceEnergies) {
-        // For each device, fetch device details from device-service to get the userId
-        for (DeviceWithEnergyUsageForUser deviceEnergy : deviceEnergies) {
-            try {
-                final DeviceDTO deviceResponse = deviceClient.getDeviceById(deviceEnergy.getDeviceId());
-                if (deviceResponse == null || deviceResponse.id() == null) {
-                    log.warn("Device not found for deviceId: {}", deviceEnergy.getDeviceId());
-                    continue;
-                }
+        // Stream the records from InfluxDB straight into a userId -> total energy map
+        Map<Long, Double> userEnergyUsageMap = new HashMap<>();
+        fluxQueryExecutor.stream(fluxQuery, record -> {
+            String userIdStr = (String) record.getValueByKey("userId");
+            Double energyUsage = record.getValueByKey("_value") instanceof Number ?
+                    ((Number) record.getValueByKey("_value")).doubleValue() : 0.0;
 
-                // Set the userId from the device response
-                deviceEnergy.setUserId(deviceResponse.userId());
-            } catch (Exception e) {
-                log.warn("Error fetching device for deviceId: {}", deviceEnergy.getDeviceId(), e);
+            try {
+                userEnergyUsageMap.merge(Long.valueOf(userIdStr), energyUsage, Double::sum);
+            } catch (NumberFormatException nfe) {
+                log.warn("Failed to parse userId from flux record: {}", userIdStr, nfe);
             }
-        }
-
-        // Remove devices that don't have an associated user
-        deviceEnergies.removeIf(deviceEnergy -> deviceEnergy.getUserId() == null);
-    }
-
-    /**
-     * Groups devices by their userId to calculate total energy consumption per user.
-     *
-     * @param deviceEnergies List of devices with energy usage and user information
-     * @return Map of userId to list of devices owned by that user
-     */
-    private Map<Long, List<DeviceWithEnergyUsageForUser>> groupDevicesByUser(
-            List<DeviceWithEnergyUsageForUser> deviceEnergies) {
-        // Group devices by userId using Java Streams
-        Map<Long, List<DeviceWithEnergyUsageForUser>> userDeviceEnergiesUsageMap =
-                deviceEnergies.stream()
-                        .collect(Collectors.groupingBy(DeviceWithEnergyUsageForUser::getUserId));
-//        log.info("User-device energy usage map: {}", userDeviceEnergiesUsageMap);
-        return userDeviceEnergiesUsageMap;
+        });
+//        log.info("Aggregated user energy usage for the last hour: {}", userEnergyUsageMap);
+        return userEnergyUsageMap;
     }
 
     /**
@@ -189,23 +199,19 @@ public class UsageService {
             Map<Long, Double> userEnergyThresholdsMap,
             Map<Long, String> userEmailMap) {
 
-        // For each user, fetch their details from user-service
+        // For each user, fetch their details from user-service (cached locally for a few minutes)
         for (final Long userId : userIds) {
-            try {
-                UserDTO user = userClient.getUserById(userId);
+            final UserProfile user = userProfileCache.resolve(userId);
 
-                // Skip users who don't exist or don't have alerts enabled
-                if (user == null || user.id() == null || !user.alertEnabled()) {
-                    log.warn("User not found or alert not enabled for userId: {}", userId);
-                    continue;
-                }
-
-                // Store the user's energy threshold and email for later use
-                userEnergyThresholdsMap.put(userId, user.energyAlertThreshold());
-                userEmailMap.put(userId, user.email());
-            } catch (Exception e) {
-                log.warn("Error fetching user energy threshold for userId: {}", userId, e);
+            // Skip users who don't exist or don't have alerts enabled
+            if (user == null || !user.isAlertEnabled() || user.getEnergyAlertThreshold() == null) {
+                log.warn("User not found or alert not enabled for userId: {}", userId);
+                continue;
             }
+
+            // Store the user's energy threshold and email for later use
+            userEnergyThresholdsMap.put(userId, user.getEnergyAlertThreshold());
+            userEmailMap.put(userId, user.getEmail());
         }
 //        log.info("User energy thresholds map: {}", userEnergyThresholdsMap);
 //        log.info("User email map: {}", userEmailMap);
@@ -215,24 +221,21 @@ public class UsageService {
      * Checks each user's total energy usage against their configured threshold.
      * Sends an alert via Kafka if the threshold is exceeded.
      *
-     * @param userDeviceEnergiesUsageMap Map of userId to their devices with energy usage
-     * @param userEnergyThresholdsMap    Map of userId to their energy alert threshold
-     * @param userEmailMap               Map of userId to their email address
+     * @param userEnergyUsageMap      Map of userId to their total energy usage
+     * @param userEnergyThresholdsMap Map of userId to their energy alert threshold
+     * @param userEmailMap            Map of userId to their email address
      */
     private void checkThresholdsAndSendAlerts(
-            Map<Long, List<DeviceWithEnergyUsageForUser>> userDeviceEnergiesUsageMap,
+            Map<Long, Double> userEnergyUsageMap,
             Map<Long, Double> userEnergyThresholdsMap,
             Map<Long, String> userEmailMap) {
 
         // Iterate through all users who have thresholds configured
         for (final Long userId : userEnergyThresholdsMap.keySet()) {
             final Double threshold = userEnergyThresholdsMap.get(userId);
-            final List<DeviceWithEnergyUsageForUser> devices = userDeviceEnergiesUsageMap.get(userId);
 
-            // Calculate total energy usage by summing all devices for this user
-            final Double totalEnergyUsage = devices.stream()
-                    .mapToDouble(DeviceWithEnergyUsageForUser::getEnergyUsage)
-                    .sum();
+            // Total energy usage was already summed per user by InfluxDB
+            final Double totalEnergyUsage = userEnergyUsageMap.getOrDefault(userId, 0.0);
 
             // Check if user has exceeded their threshold
             if (totalEnergyUsage > threshold) {
@@ -242,6 +245,7 @@ public class UsageService {
                 // Create an alert event with user details and energy usage information
                 final AlertingEvent alertingEvent = AlertingEvent.builder()
                         .userId(userId)
+                        .type(AlertType.THRESHOLD)
                         .message("ALERT: Energy usage exceeded threshold")
                         .threshold(threshold)
                         .totalEnergyUsage(totalEnergyUsage)
@@ -257,6 +261,244 @@ public class UsageService {
         }
     }
 
+    /**
+     * Checks the running daily and monthly totals of every user with a budget and sends an alert via Kafka
+     * the first time a budget is exceeded in a period. Totals are maintained per event by the
+     * {@link PeriodUsageTracker}; InfluxDB is only queried once per accumulator, to seed it with the usage of
+     * its periods from before it started tracking.
+     */
+    private void checkBudgetsAndSendAlerts() {
+        final Instant now = Instant.now();
+        for (PeriodAccumulator accumulator : periodUsageTracker.refresh(now)) {
+            final UserProfile user = userProfileCache.resolve(accumulator.getUserId());
+            if (user == null || !user.hasBudget()) {
+                continue;
+            }
+
+            // Budgets are only checked on complete totals; a failed seed is retried in the next run
+            if (accumulator.needsSeed()) {
+                if (!periodUsageTracker.readyToSeed(accumulator, now)) {
+                    continue;
+                }
+                try {
+                    seedPeriodAccumulator(accumulator);
+                } catch (Exception e) {
+                    log.warn("Failed to seed period totals for userId: {}", accumulator.getUserId(), e);
+                    continue;
+                }
+            }
+
+            if (!user.isAlertEnabled()) {
+                continue;
+            }
+
+            if (user.getDailyBudget() != null && accumulator.dayEnergy() > user.getDailyBudget()
+                    && accumulator.markDailyAlerted()) {
+                sendBudgetAlert(user, AlertType.DAILY_BUDGET, "ALERT: Daily energy budget exceeded", user.getDailyBudget(), accumulator.dayEnergy());
+            }
+            if (user.getMonthlyBudget() != null && accumulator.monthEnergy() > user.getMonthlyBudget()
+                    && accumulator.markMonthlyAlerted()) {
+                sendBudgetAlert(user, AlertType.MONTHLY_BUDGET, "ALERT: Monthly energy budget exceeded", user.getMonthlyBudget(), accumulator.monthEnergy());
+            }
+        }
+    }
+
+    /**
+     * Sends an alert via Kafka for every rule breach detected by the {@link AlertRuleEngine}
+     * since the last run, for users who have alerts enabled.
+     */
+    private void sendRuleAlerts() {
+        for (RuleBreach breach : alertRuleEngine.drainBreaches()) {
+            final UserProfile user = userProfileCache.resolve(breach.getUserId());
+            if (user == null || !user.isAlertEnabled()) {
+                continue;
+            }
+
+            final String subject = switch (breach.getScope()) {
+                case DEVICE -> "device " + breach.getTarget();
+                case DEVICE_TYPE -> "device type " + breach.getTarget();
+                case LOCATION -> "location " + breach.getTarget();
+                case USER -> "all devices";
+            };
+            final String message = "ALERT: Energy usage of " + subject + " exceeded threshold within "
+                    + breach.getWindowMinutes() + " minutes";
+            log.info("{} for user with ID {} (rule {}). Total Energy Usage: {}, Rule's Threshold: {}",
+                    message, breach.getUserId(), breach.getRuleId(), breach.getTotal(), breach.getThreshold());
+
+            final AlertingEvent alertingEvent = AlertingEvent.builder()
+                    .userId(breach.getUserId())
+                    .type(AlertType.RULE)
+                    .message(message)
+                    .threshold(breach.getThreshold())
+                    .totalEnergyUsage(breach.getTotal())
+                    .email(user.getEmail())
+                    .build();
+
+            kafkaTemplate.send("energy-alerts", alertingEvent);
+        }
+    }
+
+    /**
+     * Sends an alert via Kafka for every device anomaly detected by the {@link AnomalyDetector}
+     * since the last run, for users who have alerts enabled.
+     */
+    private void sendAnomalyAlerts() {
+        for (UsageAnomaly anomaly : anomalyDetector.drainAnomalies()) {
+            final UserProfile user = userProfileCache.resolve(anomaly.getUserId());
+            if (user == null || !user.isAlertEnabled()) {
+                continue;
+            }
+
+            final String message = switch (anomaly.getType()) {
+                case SPIKE -> "ALERT: Unusual energy usage spike of device " + anomaly.getDeviceId();
+                case SUSTAINED -> "ALERT: Device " + anomaly.getDeviceId() + " has been using unusually much energy for a while";
+            };
+            log.info("{} for user with ID {}. Energy Usage: {}, Expected at most: {} (z-score {})",
+                    message, anomaly.getUserId(), anomaly.getValue(), anomaly.getExpected(), anomaly.getZScore());
+
+            // The threshold is the upper bound of the device's usual readings, the usage the reading (spike)
+            // or the recent average reading (sustained usage) that exceeded it
+            final AlertingEvent alertingEvent = AlertingEvent.builder()
+                    .userId(anomaly.getUserId())
+                    .type(anomaly.getType() == AnomalyType.SPIKE ? AlertType.SPIKE : AlertType.SUSTAINED_USAGE)
+                    .message(message)
+                    .threshold(anomaly.getExpected())
+                    .totalEnergyUsage(anomaly.getValue())
+                    .email(user.getEmail())
+                    .build();
+
+            kafkaTemplate.send("energy-alerts", alertingEvent);
+        }
+    }
+
+    /**
+     * Sends an early warning via Kafka for every projected threshold crossing found by the
+     * {@link UsageForecaster} since the last run, for users who have alerts enabled.
+     */
+    private void sendForecastAlerts() {
+        for (ThresholdForecast forecast : usageForecaster.drainForecasts()) {
+            final UserProfile user = userProfileCache.resolve(forecast.getUserId());
+            if (user == null || !user.isAlertEnabled()) {
+                continue;
+            }
+
+            final String message = "WARNING: Energy usage is projected to exceed threshold by " + forecast.getWindowEnd();
+            log.info("{} for user with ID {}. Energy Usage so far: {}, Projected: {}, User's Threshold: {}",
+                    message, forecast.getUserId(), forecast.getCurrentTotal(), forecast.getProjectedTotal(), forecast.getThreshold());
+
+            final AlertingEvent alertingEvent = AlertingEvent.builder()
+                    .userId(forecast.getUserId())
+                    .type(AlertType.FORECAST)
+                    .message(message)
+                    .threshold(forecast.getThreshold())
+                    .totalEnergyUsage(forecast.getProjectedTotal())
+                    .email(user.getEmail())
+                    .build();
+
+            kafkaTemplate.send("energy-alerts", alertingEvent);
+        }
+    }
+
+    /**
+     * Adds the usage and cost of the accumulator's current day and month from before it started tracking.
+     * The earlier usage is read as hourly windows, each priced at the tariff rate of its start.
+     * Any failure (device-service or InfluxDB) is thrown before the seed is applied, so the accumulator
+     * keeps needing the seed and it is retried later.
+     */
+    public void seedPeriodAccumulator(PeriodAccumulator accumulator) {
+        final Long userId = accumulator.getUserId();
+        final long dayStart = accumulator.dayStart();
+        final long monthStart = accumulator.monthStart();
+        final Instant trackedSince = Instant.ofEpochMilli(accumulator.getTrackedSince());
+        final TariffPlan plan = periodUsageTracker.planOf(accumulator);
+
+        final List<Device> devices = fetchAndConvertUserDevices(userId);
+        final NavigableMap<Long, Double> dayWindows = queryHourlyEnergyUsage(userId, devices, Instant.ofEpochMilli(dayStart), trackedSince);
+        final NavigableMap<Long, Double> monthWindows = queryHourlyEnergyUsage(userId, devices, Instant.ofEpochMilli(monthStart), trackedSince);
+
+        final double daySeed = sumUsage(dayWindows);
+        final double dayCostSeed = sumCost(dayWindows, plan, accumulator);
+        final double monthSeed = sumUsage(monthWindows);
+        final double monthCostSeed = sumCost(monthWindows, plan, accumulator);
+
+        accumulator.applySeed(dayStart, daySeed, dayCostSeed, monthStart, monthSeed, monthCostSeed);
+        log.info("Seeded period totals for userId {}: day {} ({} {}), month {} ({} {})", userId,
+                daySeed, dayCostSeed, plan.getCurrency(), monthSeed, monthCostSeed, plan.getCurrency());
+    }
+
+    private static double sumUsage(Map<Long, Double> windows) {
+        return windows.values().stream()
+                .mapToDouble(Double::doubleValue)
+                .sum();
+    }
+
+    private static double sumCost(Map<Long, Double> windows, TariffPlan plan, PeriodAccumulator accumulator) {
+        double cost = 0.0;
+        for (Map.Entry<Long, Double> window : windows.entrySet()) {
+            cost += window.getValue() * plan.rateAt(window.getKey(), accumulator.getZone());
+        }
+        return cost;
+    }
+
+    /**
+     * Queries the energy consumption of all of the given devices combined, summed into hourly windows,
+     * within [start, stop). Parts of the range that have aged out of InfluxDB are read from cold storage.
+     *
+     * @param userId  The ID of the user owning the devices
+     * @param devices List of devices to query energy data for
+     * @param start   Start time for the query range (inclusive)
+     * @param stop    End time for the query range (exclusive)
+     * @return Map of window start (epoch ms) to total energy consumed in that hour
+     */
+    NavigableMap<Long, Double> queryHourlyEnergyUsage(Long userId, List<Device> devices, Instant start, Instant stop) {
+        final NavigableMap<Long, Double> windows = new TreeMap<>();
+        if (!start.isBefore(stop)) {
+            return windows;
+        }
+
+        final Duration step = Duration.ofHours(1);
+        final List<Long> deviceIds = devices.stream()
+                .map(Device::getId)
+                .filter(Objects::nonNull)
+                .toList();
+        if (deviceIds.isEmpty()) {
+            return windows;
+        }
+
+        final List<QuerySegment> segments = usageQueryPlanner.plan(start, stop, step);
+
+        // Days that have aged out of InfluxDB are read from the local cold segment files
+        coldStorageService.windowedByDevice(userId, deviceIds, segments, step).values()
+                .forEach(deviceWindows -> deviceWindows.forEach((time, energy) -> windows.merge(time, energy, Double::sum)));
+        final List<QuerySegment> influxSegments = segments.stream()
+                .filter(segment -> segment.getTier() != StorageTier.COLD)
+                .toList();
+
+        for (FluxQuery fluxQuery : fluxQueryBuilder.deviceSeriesQueries(userId, deviceIds, influxSegments, step)) {
+            fluxQueryExecutor.stream(fluxQuery, record -> {
+                if (record.getTime() != null && record.getValue() instanceof Number energy) {
+                    windows.merge(record.getTime().toEpochMilli(), energy.doubleValue(), Double::sum);
+                }
+            });
+        }
+        return windows;
+    }
+
+    private void sendBudgetAlert(UserProfile user, AlertType type, String message, double budget, double totalEnergyUsage) {
+        log.info("{} for user with ID {}. Total Energy Usage: {}, User's Budget: {}", message, user.getId(), totalEnergyUsage, budget);
+
+        final AlertingEvent alertingEvent = AlertingEvent.builder()
+                .userId(user.getId())
+                .type(type)
+                .message(message)
+                .threshold(budget)
+                .totalEnergyUsage(totalEnergyUsage)
+                .email(user.getEmail())
+                .build();
+
+        kafkaTemplate.send("energy-alerts", alertingEvent);
+    }
+
     /**
      * Main method to get energy usage data for a specific user over a specified number of days.
      * This method orchestrates the following steps:
@@ -282,7 +524,7 @@ public class UsageService {
         }
 
         // Step 2: Query InfluxDB to get aggregated energy consumption for each device
-        Map<Long, Double> deviceEnergyMap = queryDeviceEnergyUsage(devices, days);
+        Map<Long, Double> deviceEnergyMap = queryDeviceEnergyUsage(userId, devices, days);
 
         // Step 3: Populate each device with its energy consumption from InfluxDB results
         populateDevicesWithEnergyData(devices, deviceEnergyMap);
@@ -298,10 +540,13 @@ public class UsageService {
      * @param userId The ID of the user whose devices to fetch
      * @return List of Device entities owned by the user
      */
-    private List<Device> fetchAndConvertUserDevices(Long userId) {
+    List<Device> fetchAndConvertUserDevices(Long userId) {
         // Call device-service to get all devices for this user
         final List<DeviceDTO> devicesDto = deviceClient.getAllDevicesForUser(userId);
 
+        // Refresh the local device -> user map so reassigned devices are tagged with their new owner right away
+        deviceDirectory.registerAll(devicesDto);
+
         // Convert DeviceDTO objects to Device entities for internal processing
         final List<Device> devices = new ArrayList<>();
         for (DeviceDTO deviceDto : devicesDto) {
@@ -325,108 +570,122 @@ public class UsageService {
 
     /**
      * Queries InfluxDB to get aggregated energy consumption for each device over the specified time period.
-     * Builds a Flux query that filters by device IDs and sums energy usage within the time range.
+     * Builds a Flux query that filters by the owning user and sums energy usage within the time range.
      *
+     * @param userId  The ID of the user owning the devices
      * @param devices List of devices to query energy data for
      * @param days    Number of days to look back
      * @return Map of deviceId to total energy consumed (in kWh)
      */
-    private Map<Long, Double> queryDeviceEnergyUsage(List<Device> devices, int days) {
+    private Map<Long, Double> queryDeviceEnergyUsage(Long userId, List<Device> devices, int days) {
         // Calculate the time range for the query
         final Instant now = Instant.now();
         final Instant start = now.minusSeconds((long) days * 24 * 3600);
 
-        // Build the Flux query to fetch energy data from InfluxDB
-        String fluxQuery = buildFluxQueryForDevices(devices, start, now);
-
-        // Execute the query and parse results into a map
-        return executeFluxQueryAndAggregateResults(fluxQuery, devices.size());
+        return queryDeviceEnergyUsage(userId, devices, start, now);
     }
 
     /**
-     * Builds a Flux query string to fetch energy usage data for specific devices within a time range.
-     * The query filters by measurement name, field name, and device IDs, then groups and sums by device.
+     * Queries InfluxDB to get aggregated energy consumption for each device within [start, stop).
+     * Ranges covered by the in-memory hot series store are summed there instead, and parts of the range
+     * that have aged out of InfluxDB are read from cold storage.
      *
-     * @param devices List of devices to include in the query
-     * @param start   Start time for the query range
-     * @param now     End time for the query range
-     * @return Formatted Flux query string ready to execute
+     * @param userId  The ID of the user owning the devices
+     * @param devices List of devices to query energy data for
+     * @param start   Start time for the query range (inclusive)
+     * @param stop    End time for the query range (exclusive)
+     * @return Map of deviceId to total energy consumed (in kWh)
      */
-    private String buildFluxQueryForDevices(List<Device> devices, Instant start, Instant now) {
-        // Extract device IDs and convert to strings for use in Flux query
-        List<String> deviceIdStrings = devices.stream()
+    Map<Long, Double> queryDeviceEnergyUsage(Long userId, List<Device> devices, Instant start, Instant stop) {
+        // Nothing to query for an empty range
+        if (!start.isBefore(stop)) {
+            return new HashMap<>();
+        }
+
+        final List<Long> deviceIds = devices.stream()
                 .map(Device::getId)
                 .filter(Objects::nonNull)
-                .map(String::valueOf)
                 .toList();
 
-        // Build device filter: r["deviceId"] == "1" or r["deviceId"] == "2" or ...
-        final String deviceFilter = deviceIdStrings.stream()
-                .map(idStr -> String.format("r[\"deviceId\"] == \"%s\"", idStr))
-                .collect(Collectors.joining(" or "));
-
-        // Construct the complete Flux query
-        // This query:
-        // 1. Selects data from the specified bucket
-        // 2. Filters by time range (start to now)
-        // 3. Filters for "energy_usage" measurement and "energyUsage" field
-        // 4. Filters for specific device IDs
-        // 5. Groups by deviceId and sums the energy values
-        return String.format("""
-                from(bucket: "%s")
-                  |> range(start: time(v: "%s"), stop: time(v: "%s"))
-                  |> filter(fn: (r) => r["_measurement"] == "energy_usage")
-                  |> filter(fn: (r) => r["_field"] == "energyUsage")
-                  |> filter(fn: (r) => %s)
-                  |> group(columns: ["deviceId"])
-                  |> sum(column: "_value")
-                """, influxDbBucket, start.toString(), now.toString(), deviceFilter);
+        // Ranges fully inside the hot window are answered from memory
+        final Map<Long, Double> hotEnergyMap = hotSeriesStore.sumIfCovered(userId, deviceIds, start, stop);
+        if (hotEnergyMap != null) {
+            return hotEnergyMap;
+        }
+
+        // Split the range into cold / raw / hourly / daily segments
+        final List<QuerySegment> segments = usageQueryPlanner.plan(start, stop);
+
+        // Days that have aged out of InfluxDB are read from the local cold segment files
+        final Map<Long, Double> aggregatedMap = coldStorageService.sumByDevice(userId, deviceIds, segments);
+        final List<QuerySegment> influxSegments = segments.stream()
+                .filter(segment -> segment.getTier() != StorageTier.COLD)
+                .toList();
+
+        // Build the Flux queries to fetch energy data from InfluxDB - one per chunk of devices
+        final List<FluxQuery> fluxQueries = fluxQueryBuilder.deviceUsageQueries(userId, deviceIds, influxSegments);
+
+        // Small device sets need a single query, executed on the calling thread;
+        // larger ones run their chunks in parallel
+        final List<CompletableFuture<Map<Long, Double>>> chunkResults = fluxQueries.size() == 1
+                ? List.of(CompletableFuture.completedFuture(executeFluxQueryAndAggregateResults(fluxQueries.get(0), deviceIds.size())))
+                : fluxQueries.stream()
+                .map(fluxQuery -> CompletableFuture.supplyAsync(
+                        () -> executeFluxQueryAndAggregateResults(fluxQuery, deviceIds.size()), influxQueryExecutor))
+                .toList();
+
+        // Merge the (disjoint) chunk results with the cold storage results; a failed chunk fails the whole query
+        for (CompletableFuture<Map<Long, Double>> chunkResult : chunkResults) {
+            try {
+                chunkResult.join().forEach((deviceId, energy) -> aggregatedMap.merge(deviceId, energy, Double::sum));
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+        return aggregatedMap;
     }
 
     /**
-     * Executes the Flux query against InfluxDB and parses the results into a map.
-     * Each FluxRecord contains a deviceId and aggregated energy value.
+     * Executes the Flux query against InfluxDB and aggregates the streamed records into a map.
+     * Each FluxRecord contains a deviceId and aggregated energy value. Records are folded into the map
+     * as they are parsed, so no FluxTable is ever materialized.
      *
      * @param fluxQuery    The Flux query to execute
      * @param deviceCount  Number of devices being queried (for logging)
      * @return Map of deviceId to total energy consumed
+     * @throws FluxQueryException if the query fails; the records folded in so far are discarded
      */
-    private Map<Long, Double> executeFluxQueryAndAggregateResults(String fluxQuery, int deviceCount) {
+    private Map<Long, Double> executeFluxQueryAndAggregateResults(FluxQuery fluxQuery, int deviceCount) {
         final Map<Long, Double> aggregatedMap = new HashMap<>();
 
         try {
-            // Execute the Flux query
-            QueryApi queryApi = influxDBClient.getQueryApi();
-            List<FluxTable> tables = queryApi.query(fluxQuery, influxDbOrg);
-
-            // Parse each table and record to extract deviceId and energy values
-            for (FluxTable table : tables) {
-                for (FluxRecord record : table.getRecords()) {
-                    // Extract deviceId from the record
-                    Object deviceIdObj = record.getValueByKey("deviceId");
-                    String deviceIdStr = deviceIdObj == null ? null : deviceIdObj.toString();
-                    if (deviceIdStr == null) {
-                        log.warn("Found record with null deviceId, skipping");
-                        continue;
-                    }
-
-                    // Extract energy value from the record
-                    Double energyConsumed = record.getValueByKey("_value") instanceof Number
-                            ? ((Number) record.getValueByKey("_value")).doubleValue()
-                            : 0.0;
-
-                    try {
-                        // Store the aggregated energy for this device
-                        Long deviceId = Long.valueOf(deviceIdStr);
-                        aggregatedMap.put(deviceId, aggregatedMap.getOrDefault(deviceId, 0.0) + energyConsumed);
-                    } catch (NumberFormatException nfe) {
-                        log.warn("Failed to parse deviceId from flux record: {}", deviceIdStr, nfe);
-                    }
+            // Execute the Flux query and fold each record into the map as soon as it arrives
+            fluxQueryExecutor.stream(fluxQuery, record -> {
+                // Extract deviceId from the record
+                Object deviceIdObj = record.getValueByKey("deviceId");
+                String deviceIdStr = deviceIdObj == null ? null : deviceIdObj.toString();
+                if (deviceIdStr == null) {
+                    log.warn("Found record with null deviceId, skipping");
+                    return;
                 }
-            }
-        } catch (Exception e) {
+
+                // Extract energy value from the record
+                Double energyConsumed = record.getValueByKey("_value") instanceof Number
+                        ? ((Number) record.getValueByKey("_value")).doubleValue()
+                        : 0.0;
+
+                try {
+                    // Store the aggregated energy for this device
+                    Long deviceId = Long.valueOf(deviceIdStr);
+                    aggregatedMap.merge(deviceId, energyConsumed, Double::sum);
+                } catch (NumberFormatException nfe) {
+                    log.warn("Failed to parse deviceId from flux record: {}", deviceIdStr, nfe);
+                }
+            });
+        } catch (FluxQueryException e) {
+            // Never hand out a partial result as the usage of the devices
             log.error("Failed to query InfluxDB: {}", e.getMessage(), e);
-            // Return empty map on error - devices will get 0.0 energy by default
+            throw e;
         }
 
         return aggregatedMap;
@@ -439,7 +698,7 @@ public class UsageService {
      * @param devices         List of devices to populate
      * @param deviceEnergyMap Map of deviceId to energy consumption
      */
-    private void populateDevicesWithEnergyData(List<Device> devices, Map<Long, Double> deviceEnergyMap) {
+    void populateDevicesWithEnergyData(List<Device> devices, Map<Long, Double> deviceEnergyMap) {
         // Set energy consumed for each device from the aggregated results
         for (Device device : devices) {
             if (device == null || device.getId() == null) {
@@ -461,7 +720,7 @@ public class UsageService {
      * @param devices List of devices with populated energy data
      * @return UsageDTO ready to be returned to the client
      */
-    private UsageDTO buildUsageDTO(Long userId, List<Device> devices) {
+    UsageDTO buildUsageDTO(Long userId, List<Device> devices) {
         // Convert Device entities to DeviceDTO objects for the API response
         final List<DeviceDTO> resultDevices = devices.stream()
                 .map(d -> DeviceDTO.builder()
@@ -488,7 +747,7 @@ public class UsageService {
      * @param userId The user ID
      * @return UsageDTO with empty device list
      */
-    private UsageDTO buildEmptyUsageDTO(Long userId) {
+    UsageDTO buildEmptyUsageDTO(Long userId) {
         return UsageDTO.builder()
                 .userId(userId)
                 .devices(List.of())
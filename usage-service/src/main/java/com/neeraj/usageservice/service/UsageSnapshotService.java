@@ -0,0 +1,273 @@
+package com.neeraj.usageservice.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.listener.ConsumerSeekAware;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Periodically writes the in-memory state of every {@link SnapshotParticipant} to a local binary file,
+ * together with the Kafka offsets the state covers. At startup the file is memory-mapped and restored
+ * before the listeners start, and the listeners seek to the stored offsets, so only the tail of the
+ * topics written since the snapshot is replayed (InfluxDB writes are idempotent, so replaying events
+ * that were already written is harmless).
+ * File layout: magic | version | created at | offsets (topic, partition, next offset)* |
+ * sections (name, length, bytes)* | CRC32 of everything before it.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class UsageSnapshotService implements SmartInitializingSingleton {
+
+    private static final int MAGIC = 0x55535331; // "USS1"
+    // Bumped whenever a participant's section layout changes; snapshots of another version are ignored
+    private static final int VERSION = 2;
+
+    private final List<SnapshotParticipant> participants;
+
+    // Listeners hold the read lock while applying an event; a snapshot takes the write lock
+    private final ReentrantReadWriteLock stateLock = new ReentrantReadWriteLock();
+
+    // Next offset to process per partition, as reflected in the in-memory state
+    private final Map<TopicPartition, Long> processedOffsets = new ConcurrentHashMap<>();
+
+    // Offsets to seek to on the first partition assignment after a restore
+    private final Map<TopicPartition, Long> restoredOffsets = new ConcurrentHashMap<>();
+
+    @Value("${usage.snapshot.enabled:true}")
+    private boolean snapshotEnabled;
+
+    @Value("${usage.snapshot.path:data/usage-snapshot.bin}")
+    private Path snapshotPath;
+
+    @Value("${usage.snapshot.max-age:24h}")
+    private Duration maxAge;
+
+    /**
+     * Applies a Kafka event to the in-memory state and records its offset, atomically with respect
+     * to snapshots.
+     *
+     * @param topic     Topic of the event
+     * @param partition Partition of the event
+     * @param offset    Offset of the event
+     * @param handler   Applies the event
+     */
+    public void process(String topic, int partition, long offset, Runnable handler) {
+        stateLock.readLock().lock();
+        try {
+            handler.run();
+            processedOffsets.merge(new TopicPartition(topic, partition), offset + 1, Math::max);
+        } finally {
+            stateLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Seeks newly assigned partitions to the offsets of the restored snapshot. Only the first
+     * assignment after startup seeks; later rebalances resume from the committed offsets.
+     *
+     * @param assignments Assigned partitions with their current offsets
+     * @param callback    Seek callback of the listener container
+     */
+    public void seekToSnapshot(Map<TopicPartition, Long> assignments, ConsumerSeekAware.ConsumerSeekCallback callback) {
+        for (TopicPartition partition : assignments.keySet()) {
+            final Long offset = restoredOffsets.remove(partition);
+            if (offset != null) {
+                log.info("Replaying {} from offset {} (snapshot)", partition, offset);
+                callback.seek(partition.topic(), partition.partition(), offset);
+            }
+        }
+    }
+
+    /**
+     * Restores the latest snapshot, if any, before the Kafka listener containers start.
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!snapshotEnabled || !Files.exists(snapshotPath)) {
+            return;
+        }
+
+        try {
+            restore();
+        } catch (Exception e) {
+            log.warn("Ignoring unreadable usage snapshot {}: {}", snapshotPath, e.getMessage());
+        }
+    }
+
+    /**
+     * Writes a snapshot. State is serialized to memory while the listeners are paused, and written
+     * to disk (temporary file, fsync, atomic rename) after they resume.
+     */
+    @Scheduled(fixedDelayString = "${usage.snapshot.interval:60000}", initialDelayString = "${usage.snapshot.interval:60000}")
+    public void writeSnapshot() {
+        if (!snapshotEnabled) {
+            return;
+        }
+
+        final Map<TopicPartition, Long> offsets;
+        final Map<String, byte[]> sections = new HashMap<>();
+        final long started = System.nanoTime();
+
+        stateLock.writeLock().lock();
+        try {
+            offsets = Map.copyOf(processedOffsets);
+            for (SnapshotParticipant participant : participants) {
+                final ByteArrayOutputStream section = new ByteArrayOutputStream();
+                try (DataOutputStream out = new DataOutputStream(section)) {
+                    participant.writeSnapshot(out);
+                }
+                sections.put(participant.snapshotName(), section.toByteArray());
+            }
+        } catch (IOException e) {
+            log.error("Failed to serialize usage snapshot: {}", e.getMessage(), e);
+            return;
+        } finally {
+            stateLock.writeLock().unlock();
+        }
+        final long pausedMillis = (System.nanoTime() - started) / 1_000_000;
+
+        try {
+            writeFile(offsets, sections);
+            log.info("Wrote usage snapshot covering {} partitions ({} bytes, listeners paused {} ms)",
+                    offsets.size(), Files.size(snapshotPath), pausedMillis);
+        } catch (IOException e) {
+            log.error("Failed to write usage snapshot {}: {}", snapshotPath, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Takes a final snapshot on shutdown; the listener containers are already stopped at this point.
+     */
+    @PreDestroy
+    public void snapshotOnShutdown() {
+        writeSnapshot();
+    }
+
+    private void writeFile(Map<TopicPartition, Long> offsets, Map<String, byte[]> sections) throws IOException {
+        Files.createDirectories(snapshotPath.toAbsolutePath().getParent());
+        final Path temp = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+
+        final CRC32 crc = new CRC32();
+        try (OutputStream file = Files.newOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(file), crc))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(System.currentTimeMillis());
+
+            out.writeInt(offsets.size());
+            for (Map.Entry<TopicPartition, Long> entry : offsets.entrySet()) {
+                SnapshotParticipant.writeString(out, entry.getKey().topic());
+                out.writeInt(entry.getKey().partition());
+                out.writeLong(entry.getValue());
+            }
+
+            out.writeInt(sections.size());
+            for (Map.Entry<String, byte[]> section : sections.entrySet()) {
+                SnapshotParticipant.writeString(out, section.getKey());
+                out.writeInt(section.getValue().length);
+                out.write(section.getValue());
+            }
+
+            // The checksum itself is not part of the checksummed content
+            out.flush();
+            final long checksum = crc.getValue();
+            new DataOutputStream(file).writeLong(checksum);
+        }
+
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temp, snapshotPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void restore() throws IOException {
+        final long started = System.nanoTime();
+
+        try (FileChannel channel = FileChannel.open(snapshotPath, StandardOpenOption.READ)) {
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            final int contentLength = buffer.capacity() - Long.BYTES;
+
+            final CRC32 crc = new CRC32();
+            crc.update(buffer.slice(0, contentLength));
+            if (contentLength < 16 || crc.getValue() != buffer.getLong(contentLength)) {
+                throw new IOException("checksum mismatch");
+            }
+
+            final ByteBuffer in = buffer.slice(0, contentLength);
+            if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+                throw new IOException("unsupported snapshot format");
+            }
+
+            // The Kafka tail after an old snapshot may already have been deleted
+            final Instant createdAt = Instant.ofEpochMilli(in.getLong());
+            if (createdAt.plus(maxAge).isBefore(Instant.now())) {
+                log.info("Ignoring usage snapshot from {}, older than {}", createdAt, maxAge);
+                return;
+            }
+
+            final Map<TopicPartition, Long> offsets = new HashMap<>();
+            final int offsetCount = in.getInt();
+            for (int i = 0; i < offsetCount; i++) {
+                final String topic = SnapshotParticipant.readString(in);
+                offsets.put(new TopicPartition(topic, in.getInt()), in.getLong());
+            }
+
+            final Map<String, SnapshotParticipant> participantsByName = new HashMap<>();
+            participants.forEach(participant -> participantsByName.put(participant.snapshotName(), participant));
+
+            final int sectionCount = in.getInt();
+            for (int i = 0; i < sectionCount; i++) {
+                final String name = SnapshotParticipant.readString(in);
+                final int length = in.getInt();
+                final ByteBuffer section = in.slice(in.position(), length);
+                in.position(in.position() + length);
+
+                final SnapshotParticipant participant = participantsByName.get(name);
+                if (participant == null) {
+                    log.warn("Skipping snapshot section {} without a participant", name);
+                    continue;
+                }
+
+                try {
+                    participant.restoreSnapshot(section);
+                } catch (RuntimeException e) {
+                    log.warn("Failed to restore snapshot section {}, starting it empty: {}", name, e.getMessage());
+                }
+            }
+
+            // Events are replayed from the snapshot's offsets, so state and offsets stay consistent
+            restoredOffsets.putAll(offsets);
+            processedOffsets.putAll(offsets);
+            log.info("Restored usage snapshot from {} with {} sections in {} ms", createdAt, sectionCount,
+                    (System.nanoTime() - started) / 1_000_000);
+        }
+    }
+}
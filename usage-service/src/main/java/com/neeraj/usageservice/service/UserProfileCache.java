@@ -0,0 +1,138 @@
+package com.neeraj.usageservice.service;
+
+import com.neeraj.usageservice.client.UserClient;
+import com.neeraj.usageservice.dto.UserDTO;
+import com.neeraj.usageservice.model.UserProfile;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClientException;
+
+import java.time.DateTimeException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Local cache of the user settings usage-service needs (email, alert threshold, budgets, timezone, tariff plan).
+ * Entries are resolved lazily from user-service and re-resolved once they are older than the
+ * configured TTL. Expired entries keep being served while they are re-resolved in the background
+ * ({@link CacheRefresher}). If user-service cannot be reached, the last known profile keeps being used.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class UserProfileCache {
+
+    private final UserClient userClient;
+    private final CacheRefresher cacheRefresher;
+
+    private final Map<Long, UserProfile> profiles = new ConcurrentHashMap<>();
+
+    @Value("${usage.user-profile.ttl:5m}")
+    private Duration ttl;
+
+    /**
+     * Resolves the profile of a user from the cache, falling back to user-service when the entry
+     * is missing. An expired entry is returned as is and re-resolved in the background.
+     *
+     * @param userId The user ID
+     * @return The profile, or null if the user does not exist (or was never reachable)
+     */
+    public UserProfile resolve(Long userId) {
+        if (userId == null) {
+            return null;
+        }
+
+        final UserProfile cached = profiles.get(userId);
+        if (cached == null) {
+            return load(userId, null);
+        }
+        refreshIfExpired(userId, cached);
+        return cached;
+    }
+
+    /**
+     * Resolves the profile of a user from the cache only, for callers on the Kafka listener thread.
+     * A missing or expired entry is (re-)resolved in the background.
+     *
+     * @param userId The user ID
+     * @return The cached profile, or null if the user is not cached yet
+     */
+    public UserProfile resolveCached(Long userId) {
+        if (userId == null) {
+            return null;
+        }
+
+        final UserProfile cached = profiles.get(userId);
+        if (cached == null) {
+            cacheRefresher.refresh("user:" + userId, () -> load(userId, null));
+            return null;
+        }
+        refreshIfExpired(userId, cached);
+        return cached;
+    }
+
+    private void refreshIfExpired(Long userId, UserProfile cached) {
+        if (!cached.getResolvedAt().plus(ttl).isAfter(Instant.now())) {
+            cacheRefresher.refresh("user:" + userId, () -> load(userId, cached));
+        }
+    }
+
+    /**
+     * Fetches a profile from user-service and stores it.
+     *
+     * @param cached The entry being re-resolved, returned if user-service cannot be reached
+     */
+    private UserProfile load(Long userId, UserProfile cached) {
+        try {
+            final UserDTO user = userClient.getUserById(userId);
+            if (user == null || user.id() == null) {
+                profiles.remove(userId);
+                return null;
+            }
+
+            final UserProfile profile = toProfile(user);
+            profiles.put(userId, profile);
+            return profile;
+        } catch (HttpClientErrorException.NotFound e) {
+            profiles.remove(userId);
+            return null;
+        } catch (RestClientException e) {
+            log.warn("Failed to fetch user {} from user-service, using cached profile: {}", userId, e.getMessage());
+            return cached;
+        }
+    }
+
+    private static UserProfile toProfile(UserDTO user) {
+        return UserProfile.builder()
+                .id(user.id())
+                .email(user.email())
+                .alertEnabled(Boolean.TRUE.equals(user.alertEnabled()))
+                .energyAlertThreshold(user.energyAlertThreshold())
+                .dailyBudget(user.dailyBudget())
+                .monthlyBudget(user.monthlyBudget())
+                .zone(toZone(user))
+                .tariffPlan(user.tariffPlan())
+                .resolvedAt(Instant.now())
+                .build();
+    }
+
+    private static ZoneId toZone(UserDTO user) {
+        if (user.timezone() == null) {
+            return ZoneOffset.UTC;
+        }
+
+        try {
+            return ZoneId.of(user.timezone());
+        } catch (DateTimeException e) {
+            log.warn("User {} has an invalid timezone {}, using UTC", user.id(), user.timezone());
+            return ZoneOffset.UTC;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.neeraj.usageservice.benchmark;
+
+import com.influxdb.client.InfluxDBClient;
+import com.influxdb.client.InfluxDBClientFactory;
+import com.influxdb.client.domain.BucketRetentionRules;
+import com.influxdb.client.domain.Organization;
+import com.influxdb.client.domain.WritePrecision;
+import com.influxdb.client.write.Point;
+import com.neeraj.usageservice.model.FluxQuery;
+import com.neeraj.usageservice.model.QuerySegment;
+import com.neeraj.usageservice.model.StorageTier;
+import com.neeraj.usageservice.service.FluxQueryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Measures the latency of the per-device usage query for users with 10, 100 and 1,000 devices,
+ * comparing the old chain of equality predicates with the regex filter of FluxQueryBuilder
+ * (as one query and split into parallel chunks), and checks that all three return one table per device.
+ * p50/p95 latencies are logged per query shape.
+ *
+ * Tagged "benchmark" and skipped unless an InfluxDB is given; it seeds its own bucket on first run:
+ * <pre>
+ * docker-compose up -d influxdb
+ * ./mvnw test -Dgroups=benchmark -Dinfluxdb.url=http://localhost:8072
+ * </pre>
+ */
+@Tag("benchmark")
+@Slf4j
+class FluxQueryBenchmarkTest {
+
+    private static final String URL = System.getProperty("influxdb.url");
+    private static final String TOKEN = System.getProperty("influxdb.token", "my-token");
+    private static final String ORG = System.getProperty("influxdb.org", "neeraj");
+    private static final String BUCKET = System.getProperty("benchmark.bucket", "usage-benchmark");
+
+    private static final long USER_ID = 1L;
+    private static final int MAX_DEVICES = 1_000;
+    private static final int READINGS_PER_DEVICE = 288; // one reading every 5 minutes for a day
+    private static final int WARMUP_RUNS = 3;
+    private static final int MEASURED_RUNS = 20;
+
+    private static InfluxDBClient client;
+    private static ExecutorService executor;
+    private static Instant start;
+    private static Instant stop;
+
+    @BeforeAll
+    static void connect() {
+        assumeTrue(URL != null, "Set -Dinfluxdb.url to run the Flux query benchmark");
+
+        client = InfluxDBClientFactory.create(URL, TOKEN.toCharArray(), ORG);
+        executor = Executors.newFixedThreadPool(4);
+        stop = Instant.now().truncatedTo(ChronoUnit.MINUTES);
+        start = stop.minus(1, ChronoUnit.DAYS);
+
+        if (client.getBucketsApi().findBucketByName(BUCKET) == null) {
+            createBucket();
+            seed();
+        }
+    }
+
+    @AfterAll
+    static void close() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+        if (client != null) {
+            client.close();
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {10, 100, 1_000})
+    void measuresDeviceUsageQueries(int deviceCount) {
+        final List<Long> deviceIds = LongStream.rangeClosed(1, deviceCount).boxed().toList();
+        final List<QuerySegment> segments = List.of(new QuerySegment(StorageTier.RAW, start, stop));
+
+        final String legacy = legacyQuery(deviceIds);
+        assertEquals(deviceCount, measure(deviceCount, "equality chain", () -> run(legacy)));
+
+        final FluxQueryBuilder single = builder(Integer.MAX_VALUE);
+        final FluxQuery regex = single.deviceUsageQuery(USER_ID, deviceIds, segments);
+        assertEquals(deviceCount, measure(deviceCount, "regex", () -> run(single, regex)));
+
+        final FluxQueryBuilder chunked = builder(200);
+        final List<FluxQuery> chunks = chunked.deviceUsageQueries(USER_ID, deviceIds, segments);
+        assertEquals(deviceCount, measure(deviceCount, "regex, parallel chunks", () -> chunks.stream()
+                .map(chunk -> CompletableFuture.supplyAsync(() -> run(chunked, chunk), executor))
+                .toList().stream()
+                .mapToInt(CompletableFuture::join)
+                .sum()));
+    }
+
+    private static FluxQueryBuilder builder(int chunkSize) {
+        final FluxQueryBuilder builder = new FluxQueryBuilder();
+        ReflectionTestUtils.setField(builder, "influxDbBucket", BUCKET);
+        ReflectionTestUtils.setField(builder, "influxDbOrg", ORG);
+        ReflectionTestUtils.setField(builder, "deviceChunkSize", chunkSize);
+        return builder;
+    }
+
+    /**
+     * The query shape used before FluxQueryBuilder: one equality predicate per device.
+     */
+    private static String legacyQuery(List<Long> deviceIds) {
+        final String deviceFilter = deviceIds.stream()
+                .map(id -> String.format("r[\"deviceId\"] == \"%s\"", id))
+                .collect(Collectors.joining(" or "));
+
+        return String.format("""
+                from(bucket: "%s")
+                  |> range(start: time(v: "%s"), stop: time(v: "%s"))
+                  |> filter(fn: (r) => r["_measurement"] == "energy_usage")
+                  |> filter(fn: (r) => r["_field"] == "energyUsage")
+                  |> filter(fn: (r) => %s)
+                  |> group(columns: ["deviceId"])
+                  |> sum(column: "_value")
+                """, BUCKET, start, stop, deviceFilter);
+    }
+
+    private static int run(String flux) {
+        return client.getQueryApi().query(flux, ORG).size();
+    }
+
+    private static int run(FluxQueryBuilder builder, FluxQuery fluxQuery) {
+        return client.getQueryApi().query(builder.toInfluxQuery(fluxQuery), ORG).size();
+    }
+
+    /**
+     * Runs the query repeatedly and logs its p50/p95 latency.
+     *
+     * @return The number of tables returned by the last run
+     */
+    private static int measure(int deviceCount, String name, Supplier<Integer> query) {
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            query.get();
+        }
+
+        final long[] latencies = new long[MEASURED_RUNS];
+        int tables = 0;
+        for (int i = 0; i < MEASURED_RUNS; i++) {
+            final long begin = System.nanoTime();
+            tables = query.get();
+            latencies[i] = System.nanoTime() - begin;
+        }
+        Arrays.sort(latencies);
+
+        log.info("{} devices, {}: p50 {} ms, p95 {} ms ({} tables)", deviceCount, name,
+                String.format("%.1f", latencies[MEASURED_RUNS / 2] / 1e6),
+                String.format("%.1f", latencies[(int) (MEASURED_RUNS * 0.95)] / 1e6), tables);
+        return tables;
+    }
+
+    private static void createBucket() {
+        final Organization organization = client.getOrganizationsApi().findOrganizations().stream()
+                .filter(org -> ORG.equals(org.getName()))
+                .findFirst()
+                .orElseThrow();
+
+        final BucketRetentionRules retentionRule = new BucketRetentionRules();
+        retentionRule.setEverySeconds(7L * 24 * 3600);
+        client.getBucketsApi().createBucket(BUCKET, retentionRule, organization);
+    }
+
+    private static void seed() {
+        log.info("Seeding {} devices x {} readings into {}", MAX_DEVICES, READINGS_PER_DEVICE, BUCKET);
+
+        final List<Point> batch = new ArrayList<>();
+        for (long deviceId = 1; deviceId <= MAX_DEVICES; deviceId++) {
+            for (int reading = 0; reading < READINGS_PER_DEVICE; reading++) {
+                batch.add(Point.measurement("energy_usage")
+                        .addTag("deviceId", String.valueOf(deviceId))
+                        .addTag("userId", String.valueOf(USER_ID))
+                        .addField("energyUsage", (deviceId % 50) / 10.0)
+                        .time(start.plus(reading * 5L, ChronoUnit.MINUTES), WritePrecision.MS));
+            }
+
+            if (batch.size() >= 10_000) {
+                client.getWriteApiBlocking().writePoints(BUCKET, ORG, batch);
+                batch.clear();
+            }
+        }
+        client.getWriteApiBlocking().writePoints(BUCKET, ORG, batch);
+    }
+}
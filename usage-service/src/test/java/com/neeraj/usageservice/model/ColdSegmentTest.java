@@ -0,0 +1,116 @@
+package com.neeraj.usageservice.model;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ColdSegmentTest {
+
+    private static final LocalDate DAY = LocalDate.of(2026, 3, 1);
+    private static final long DAY_START = DAY.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void roundTripsSeriesOfSeveralDevicesAndOwners() throws IOException {
+        final Path path = directory.resolve("usage-" + DAY + ".ucs");
+        try (ColdSegment.Writer writer = ColdSegment.Writer.create(path, DAY)) {
+            for (int i = 0; i < 1440; i++) {
+                writer.append(1L, 10L, DAY_START + i * 60_000L, i * 0.01);
+            }
+            // Device 2 changed owner during the day, and reported while unknown (untagged)
+            writer.append(2L, 10L, DAY_START + 1_000, 1.5);
+            writer.append(2L, 10L, DAY_START + 2_000, -0.0);
+            writer.append(2L, 20L, DAY_START + 3_600_000, 2.5);
+            writer.append(2L, ColdSegment.NO_USER, DAY_START + 7_200_000, Double.NaN);
+            writer.append(3L, ColdSegment.NO_USER, DAY_START + 86_399_999, 4.0);
+            writer.commit();
+        }
+
+        try (ColdSegment segment = ColdSegment.open(path)) {
+            assertEquals(DAY, segment.getDay());
+            assertEquals(5, segment.getEntries().size());
+            assertTrue(segment.entriesFor(4L).isEmpty());
+
+            final ColdSeriesEntry first = segment.entriesFor(1L).getFirst();
+            assertEquals(10L, first.getUserId());
+            assertEquals(1440, first.getCount());
+            assertEquals(DAY_START, first.getMinTime());
+            assertEquals(DAY_START + 1439 * 60_000L, first.getMaxTime());
+            assertEquals(1439 * 1440 / 2 * 0.01, first.getSum(), 1e-9);
+            final List<long[]> points = decode(segment, first);
+            assertEquals(1440, points.size());
+            assertArrayEquals(new long[]{DAY_START + 60_000L, Double.doubleToRawLongBits(0.01)}, points.get(1));
+
+            final List<ColdSeriesEntry> second = segment.entriesFor(2L);
+            assertEquals(List.of(10L, 20L, ColdSegment.NO_USER), second.stream().map(ColdSeriesEntry::getUserId).toList());
+            assertArrayEquals(new long[]{DAY_START + 2_000, Double.doubleToRawLongBits(-0.0)}, decode(segment, second.get(0)).get(1));
+            assertArrayEquals(new long[]{DAY_START + 7_200_000, Double.doubleToRawLongBits(Double.NaN)}, decode(segment, second.get(2)).getFirst());
+
+            final ColdSeriesEntry untagged = segment.entriesFor(3L).getFirst();
+            assertEquals(ColdSegment.NO_USER, untagged.getUserId());
+            assertEquals(4.0, untagged.getSum());
+            assertEquals(DAY_START + 86_399_999, untagged.getMaxTime());
+        }
+    }
+
+    @Test
+    void leavesNoFileWithoutCommit() throws IOException {
+        final Path path = directory.resolve("usage-" + DAY + ".ucs");
+        try (ColdSegment.Writer writer = ColdSegment.Writer.create(path, DAY)) {
+            writer.append(1L, 10L, DAY_START, 1.0);
+        }
+
+        assertFalse(Files.exists(path));
+        try (var files = Files.list(directory)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void rejectsFilesThatAreNotSegments() throws IOException {
+        final Path path = directory.resolve("usage-" + DAY + ".ucs");
+        Files.write(path, new byte[64]);
+
+        assertThrows(IOException.class, () -> ColdSegment.open(path));
+    }
+
+    @Test
+    void staysMappedUntilTheLastReferenceIsReleased() throws IOException {
+        final Path path = directory.resolve("usage-" + DAY + ".ucs");
+        try (ColdSegment.Writer writer = ColdSegment.Writer.create(path, DAY)) {
+            writer.append(1L, 10L, DAY_START, 1.0);
+            writer.append(1L, 10L, DAY_START + 1_000, 2.0);
+            writer.commit();
+        }
+
+        final ColdSegment segment = ColdSegment.open(path);
+        segment.retain();
+        // The opener's reference is gone, the reader's keeps the file mapped
+        segment.close();
+        assertEquals(2, decode(segment, segment.entriesFor(1L).getFirst()).size());
+
+        segment.release();
+        assertThrows(IllegalStateException.class, segment::retain);
+    }
+
+    private static List<long[]> decode(ColdSegment segment, ColdSeriesEntry entry) {
+        final List<long[]> points = new ArrayList<>();
+        segment.forEachPoint(entry, (time, value) -> points.add(new long[]{time, Double.doubleToRawLongBits(value)}));
+        return points;
+    }
+}
@@ -0,0 +1,123 @@
+package com.neeraj.usageservice.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompressedSeriesTest {
+
+    private static final long HOUR = 3_600_000L;
+    private static final long START = 1_700_000_000_000L / HOUR * HOUR;
+
+    @Test
+    void startsANewBlockForEveryTimeSlice() {
+        final CompressedSeries series = new CompressedSeries(1L, 7L, HOUR, START);
+        for (long time = START; time < START + 3 * HOUR; time += 60_000) {
+            series.append(time, 1.0);
+        }
+
+        assertEquals(3, series.blockCount());
+        assertEquals(180, series.pointCount());
+        assertEquals(START, series.minTime());
+        assertEquals(START + 3 * HOUR - 60_000, series.maxTime());
+    }
+
+    @Test
+    void keepsLatePointsInTheActiveBlock() {
+        final CompressedSeries series = new CompressedSeries(1L, 7L, HOUR, START);
+        series.append(START + HOUR + 1_000, 1.0);
+        // Arrives after the next slice started, but belongs to the previous one
+        series.append(START + HOUR - 1_000, 2.0);
+
+        assertEquals(1, series.blockCount());
+        assertEquals(2.0, series.sum(START, START + HOUR), 1e-12);
+        assertEquals(3.0, series.sum(START, START + 2 * HOUR), 1e-12);
+    }
+
+    @Test
+    void sumsSubRangesAcrossBlocks() {
+        final Random random = new Random(7);
+        final CompressedSeries series = new CompressedSeries(1L, 7L, HOUR, START);
+        final long[] times = new long[2000];
+        final double[] values = new double[times.length];
+        long time = START;
+        for (int i = 0; i < times.length; i++) {
+            // Irregular intervals with an occasional gap of several hours
+            time += i % 500 == 499 ? 5 * HOUR : 1_000 + random.nextInt(20_000);
+            times[i] = time;
+            values[i] = random.nextInt(2000) / 100.0 - 2.0;
+            series.append(time, values[i]);
+        }
+        assertTrue(series.blockCount() > 3);
+
+        final long last = times[times.length - 1];
+        final long[][] ranges = {
+                {START, last + 1},                          // everything, whole blocks only
+                {START + HOUR / 2, START + 2 * HOUR + 17},  // straddling block bounds
+                {times[10], times[11]},                     // a single point
+                {times[10] + 1, times[11]},                 // no point
+                {last + 1, last + HOUR},                    // after the newest point
+                {START - HOUR, START},                       // before the oldest point
+                {times[499] + 1, times[500] + 1},           // inside the gap up to its end
+        };
+        for (long[] range : ranges) {
+            assertEquals(expectedSum(times, values, range[0], range[1]), series.sum(range[0], range[1]), 1e-9,
+                    "sum of [" + range[0] + ", " + range[1] + ")");
+        }
+    }
+
+    @Test
+    void evictionDropsWholeBlocksAndMovesCompleteSince() {
+        final CompressedSeries series = new CompressedSeries(1L, 7L, HOUR, START);
+        for (long time = START; time < START + 3 * HOUR; time += 60_000) {
+            series.append(time, 1.0);
+        }
+        final long sizeBefore = series.sizeInBytes();
+
+        final long freed = series.evictBefore(START + HOUR);
+
+        assertEquals(2, series.blockCount());
+        assertEquals(sizeBefore - freed, series.sizeInBytes());
+        assertEquals(START + HOUR - 60_000 + 1, series.getCompleteSince());
+        assertEquals(120.0, series.sum(START, START + 3 * HOUR), 1e-12);
+    }
+
+    @Test
+    void keepsAppendingAfterSerialization() throws IOException {
+        final CompressedSeries series = new CompressedSeries(1L, null, HOUR, START);
+        for (long time = START; time < START + 90 * 60_000; time += 60_000) {
+            series.append(time, 0.5);
+        }
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        series.writeTo(new DataOutputStream(bytes));
+        final CompressedSeries restored = CompressedSeries.readFrom(ByteBuffer.wrap(bytes.toByteArray()));
+        for (long time = START + 90 * 60_000; time < START + 3 * HOUR; time += 60_000) {
+            restored.append(time, 0.5);
+        }
+
+        assertNull(restored.getUserId());
+        assertEquals(START, restored.getCompleteSince());
+        assertEquals(3, restored.blockCount());
+        assertEquals(180, restored.pointCount());
+        assertEquals(90.0, restored.sum(START, START + 3 * HOUR), 1e-12);
+    }
+
+    private static double expectedSum(long[] times, double[] values, long start, long stop) {
+        double sum = 0.0;
+        for (int i = 0; i < times.length; i++) {
+            if (times[i] >= start && times[i] < stop) {
+                sum += values[i];
+            }
+        }
+        return sum;
+    }
+}
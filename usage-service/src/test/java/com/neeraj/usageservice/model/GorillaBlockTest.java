@@ -0,0 +1,154 @@
+package com.neeraj.usageservice.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GorillaBlockTest {
+
+    private static final long START = 1_700_000_000_000L;
+
+    @Test
+    void roundTripsRegularIntervals() {
+        final Random random = new Random(42);
+        final long[] times = new long[1000];
+        final double[] values = new double[times.length];
+        for (int i = 0; i < times.length; i++) {
+            times[i] = START + i * 10_000L;
+            values[i] = Math.round(random.nextDouble() * 5000) / 1000.0;
+        }
+
+        assertRoundTrip(times, values);
+    }
+
+    @Test
+    void roundTripsIrregularIntervalsAndLargeGaps() {
+        final long[] times = {
+                START,
+                START + 1,                       // 1 ms apart
+                START + 7_001,                   // irregular
+                START + 7_002,
+                START + 3 * 86_400_000L,         // three-day gap
+                START + 3 * 86_400_000L - 3_600_000L, // an hour back (out of order)
+                START + 3 * 86_400_000L + 10_000,
+                START + (1L << 40),              // delta-of-delta needs the 64-bit encoding
+                START + (1L << 40) + 10_000,
+                START - 86_400_000L,             // far back again
+        };
+        final double[] values = new double[times.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 0.25 * i;
+        }
+
+        assertRoundTrip(times, values);
+    }
+
+    @Test
+    void roundTripsNegativeZeroAndNaNValues() {
+        final double[] values = {
+                0.0, -0.0, -1.5, 1.5, Double.NaN, Double.longBitsToDouble(0x7ff8_0000_0000_0001L),
+                Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, Double.MAX_VALUE, -Double.MAX_VALUE,
+                Double.MIN_VALUE, 1e-300, 0.0, 0.0, -42.125, -42.125,
+        };
+        final long[] times = new long[values.length];
+        for (int i = 0; i < times.length; i++) {
+            times[i] = START + i * 1_000L;
+        }
+
+        final GorillaBlock block = assertRoundTrip(times, values);
+        assertTrue(Double.isNaN(block.getSum()));
+    }
+
+    @Test
+    void tracksCountTimeRangeAndSum() {
+        final GorillaBlock block = new GorillaBlock();
+        block.append(START + 5_000, 1.0);
+        block.append(START, 2.5);
+        block.append(START + 2_000, -0.5);
+
+        assertEquals(3, block.getCount());
+        assertEquals(START, block.getMinTime());
+        assertEquals(START + 5_000, block.getMaxTime());
+        assertEquals(3.0, block.getSum(), 1e-12);
+    }
+
+    @Test
+    void sealedBlockDecodesButRejectsAppends() {
+        final GorillaBlock block = new GorillaBlock();
+        for (int i = 0; i < 100; i++) {
+            block.append(START + i * 1_000L, i);
+        }
+        final long sizeBefore = block.sizeInBytes();
+
+        block.seal();
+
+        assertTrue(block.sizeInBytes() <= sizeBefore);
+        assertEquals(100, decode(block).size());
+        assertThrows(IllegalStateException.class, () -> block.append(START + 100_000, 1.0));
+    }
+
+    @Test
+    void keepsAppendingAfterSerialization() throws IOException {
+        final GorillaBlock block = new GorillaBlock();
+        final long[] times = new long[200];
+        final double[] values = new double[times.length];
+        for (int i = 0; i < times.length; i++) {
+            times[i] = START + i * 10_000L + (i % 7) * 13;
+            values[i] = (i % 5) * 0.1 - 0.2;
+        }
+        for (int i = 0; i < 100; i++) {
+            block.append(times[i], values[i]);
+        }
+
+        final GorillaBlock restored = GorillaBlock.readFrom(serialize(block));
+        for (int i = 100; i < times.length; i++) {
+            restored.append(times[i], values[i]);
+        }
+
+        assertPoints(times, values, restored);
+    }
+
+    private static GorillaBlock assertRoundTrip(long[] times, double[] values) {
+        final GorillaBlock block = new GorillaBlock();
+        for (int i = 0; i < times.length; i++) {
+            block.append(times[i], values[i]);
+        }
+
+        assertPoints(times, values, block);
+        block.seal();
+        assertPoints(times, values, block);
+        return block;
+    }
+
+    private static void assertPoints(long[] times, double[] values, GorillaBlock block) {
+        final List<long[]> points = decode(block);
+        assertEquals(times.length, points.size());
+        for (int i = 0; i < times.length; i++) {
+            // Compare the raw bits, so -0.0 and NaN payloads must survive as well
+            assertArrayEquals(new long[]{times[i], Double.doubleToRawLongBits(values[i])}, points.get(i));
+        }
+    }
+
+    private static List<long[]> decode(GorillaBlock block) {
+        final List<long[]> points = new ArrayList<>();
+        block.forEach((time, value) -> points.add(new long[]{time, Double.doubleToRawLongBits(value)}));
+        return points;
+    }
+
+    private static ByteBuffer serialize(GorillaBlock block) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        block.writeTo(new DataOutputStream(bytes));
+        return ByteBuffer.wrap(bytes.toByteArray());
+    }
+}
@@ -0,0 +1,153 @@
+package com.neeraj.usageservice.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QuantileSketchTest {
+
+    private static final double GAMMA = (1 + QuantileSketch.RELATIVE_ACCURACY) / (1 - QuantileSketch.RELATIVE_ACCURACY);
+
+    @Test
+    void ranksWithinTheRelativeAccuracy() {
+        final Random random = new Random(1);
+        final double[] values = new double[100_000];
+        for (int i = 0; i < values.length; i++) {
+            // Daily usage of homes is roughly log-normal, spanning several orders of magnitude
+            values[i] = Math.exp(2 + 1.5 * random.nextGaussian());
+        }
+        final QuantileSketch sketch = sketchOf(values).seal();
+        Arrays.sort(values);
+
+        for (double p = 0.01; p < 1; p += 0.01) {
+            final double value = values[(int) (p * values.length)];
+            final double rank = sketch.rank(value);
+            // Everything in the value's bucket lies within a factor gamma of it
+            assertTrue(rank >= fractionAtMost(values, value / GAMMA) - 1e-9 && rank <= fractionAtMost(values, value * GAMMA) + 1e-9,
+                    "rank " + rank + " of " + value + " (p" + Math.round(p * 100) + ")");
+            assertEquals(p, rank, 0.02, "rank of the p" + Math.round(p * 100) + " value");
+        }
+        assertEquals(0.0, sketch.rank(values[0] / 2));
+        assertEquals(1.0, sketch.rank(values[values.length - 1] * 2));
+    }
+
+    @Test
+    void mergesExactlyHoweverTheValuesWereSplit() {
+        final Random random = new Random(2);
+        final double[] values = new double[10_000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i % 10 == 0 ? 0.0 : Math.exp(8 * random.nextDouble() - 4);
+        }
+
+        final QuantileSketch[] parts = {new QuantileSketch(), new QuantileSketch(), new QuantileSketch()};
+        for (double value : values) {
+            parts[random.nextInt(parts.length)].add(value);
+        }
+        final QuantileSketch forward = new QuantileSketch();
+        final QuantileSketch backward = new QuantileSketch();
+        for (int i = 0; i < parts.length; i++) {
+            forward.merge(parts[i]);
+            backward.merge(parts[parts.length - 1 - i]);
+        }
+
+        assertSameBuckets(sketchOf(values), forward);
+        assertSameBuckets(sketchOf(values), backward);
+    }
+
+    @Test
+    void mergesSketchesWithDisjointRanges() {
+        final QuantileSketch low = sketchOf(0.001, 0.002, 0.003);
+        final QuantileSketch high = sketchOf(1000, 2000);
+        final QuantileSketch middle = sketchOf(1, 2, 3, 4);
+
+        final QuantileSketch merged = middle.copy();
+        merged.merge(high);
+        merged.merge(low);
+        merged.merge(new QuantileSketch());
+
+        assertSameBuckets(sketchOf(1, 2, 3, 4, 1000, 2000, 0.001, 0.002, 0.003), merged);
+        assertEquals(4, middle.getTotal());
+        merged.seal();
+        assertEquals(3.0 / 9, merged.rank(0.5), 1e-12);
+        assertEquals(7.0 / 9, merged.rank(500), 1e-12);
+    }
+
+    @Test
+    void countsZeroAndNegativeValuesAsZeroAndIgnoresNaN() {
+        final QuantileSketch sketch = sketchOf(0.0, -1.0, -0.0, 1e-7, Double.NaN, 5.0);
+        sketch.add(5.0, 0);
+
+        assertEquals(5, sketch.getTotal());
+        assertEquals(4, sketch.getZeroCount());
+        sketch.seal();
+        // The zeros rank below every positive value; equal values count half
+        assertEquals(2.0 / 5, sketch.rank(0.0), 1e-12);
+        assertEquals(4.0 / 5, sketch.rank(1.0), 1e-12);
+        assertEquals(0.9, sketch.rank(5.0), 1e-12);
+    }
+
+    @Test
+    void clampsValuesAboveTheMaximum() {
+        final QuantileSketch sketch = sketchOf(1e12, 1e15, 1.0).seal();
+
+        assertEquals(3, sketch.getTotal());
+        assertEquals(1.0 / 6, sketch.rank(1.0), 1e-12);
+        assertEquals(4.0 / 6, sketch.rank(1e20), 1e-12);
+    }
+
+    @Test
+    void requiresSealingToRankAndIsReadOnlyOnceSealed() {
+        final QuantileSketch sketch = sketchOf(1, 2, 3);
+        assertThrows(IllegalStateException.class, () -> sketch.rank(2));
+
+        sketch.seal();
+        assertThrows(IllegalStateException.class, () -> sketch.add(4));
+        assertThrows(IllegalStateException.class, () -> sketch.merge(sketchOf(4)));
+        assertTrue(Double.isNaN(new QuantileSketch().seal().rank(1)));
+    }
+
+    @Test
+    void roundTripsThroughSerialization() throws IOException {
+        final QuantileSketch sketch = sketchOf(0.0, 0.5, 1.5, 1.5, 250, 1e8);
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        sketch.writeTo(new DataOutputStream(bytes));
+        final QuantileSketch restored = QuantileSketch.readFrom(ByteBuffer.wrap(bytes.toByteArray()));
+
+        assertSameBuckets(sketch, restored);
+        assertThrows(IllegalArgumentException.class, () -> QuantileSketch.of(0, 0, new long[]{1, -1}));
+    }
+
+    private static QuantileSketch sketchOf(double... values) {
+        final QuantileSketch sketch = new QuantileSketch();
+        for (double value : values) {
+            sketch.add(value);
+        }
+        return sketch;
+    }
+
+    private static double fractionAtMost(double[] sorted, double value) {
+        int count = 0;
+        while (count < sorted.length && sorted[count] <= value) {
+            count++;
+        }
+        return (double) count / sorted.length;
+    }
+
+    private static void assertSameBuckets(QuantileSketch expected, QuantileSketch actual) {
+        assertEquals(expected.getTotal(), actual.getTotal());
+        assertEquals(expected.getZeroCount(), actual.getZeroCount());
+        assertEquals(expected.getOffset(), actual.getOffset());
+        assertArrayEquals(expected.getCounts(), actual.getCounts());
+    }
+}
@@ -0,0 +1,113 @@
+package com.neeraj.usageservice.service;
+
+import com.neeraj.usageservice.model.ColdSegment;
+import com.neeraj.usageservice.model.QuerySegment;
+import com.neeraj.usageservice.model.StorageTier;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ColdStorageServiceTest {
+
+    private static final LocalDate TODAY = LocalDate.now(ZoneOffset.UTC);
+
+    @TempDir
+    Path directory;
+
+    private ColdStorageService coldStorageService;
+
+    @BeforeEach
+    void setUp() {
+        // Exporting is not exercised, so the InfluxDB collaborators are not needed
+        coldStorageService = new ColdStorageService(null, null);
+        ReflectionTestUtils.setField(coldStorageService, "coldEnabled", true);
+        ReflectionTestUtils.setField(coldStorageService, "directory", directory);
+        ReflectionTestUtils.setField(coldStorageService, "coldRetention", Duration.ofDays(30));
+        ReflectionTestUtils.setField(coldStorageService, "rawRetention", Duration.ofDays(7));
+        ReflectionTestUtils.setField(coldStorageService, "maxOpenSegments", 2);
+    }
+
+    @Test
+    void sumsTheUsersAndUntaggedSeries() throws IOException {
+        final LocalDate day = TODAY.minusDays(10);
+        writeSegment(day);
+
+        assertEquals(Map.of(1L, 3.0, 2L, 4.0), coldStorageService.sumByDevice(10L, List.of(1L, 2L), wholeDay(day)));
+        assertEquals(Map.of(1L, 7.0, 2L, 4.0), coldStorageService.sumByDevice(20L, List.of(1L, 2L), wholeDay(day)));
+        // Without a known user only the untagged points count
+        assertEquals(Map.of(2L, 4.0), coldStorageService.sumByDevice(null, List.of(1L, 2L), wholeDay(day)));
+    }
+
+    @Test
+    void keepsAnsweringWhileUnmappingTheLeastRecentlyUsedSegments() throws IOException {
+        for (int daysAgo = 8; daysAgo <= 12; daysAgo++) {
+            writeSegment(TODAY.minusDays(daysAgo));
+        }
+
+        for (int round = 0; round < 2; round++) {
+            for (int daysAgo = 8; daysAgo <= 12; daysAgo++) {
+                assertEquals(Map.of(1L, 3.0), coldStorageService.sumByDevice(10L, List.of(1L), wholeDay(TODAY.minusDays(daysAgo))));
+            }
+        }
+    }
+
+    @Test
+    void deletesAndUnmapsDaysOlderThanTheRetention() throws IOException {
+        final LocalDate expired = TODAY.minusDays(40);
+        final LocalDate retained = TODAY.minusDays(10);
+        final Path expiredPath = writeSegment(expired);
+        final Path retainedPath = writeSegment(retained);
+        // Map the expired day, so deleting it has to unmap it
+        assertEquals(Map.of(1L, 3.0), coldStorageService.sumByDevice(10L, List.of(1L), wholeDay(expired)));
+
+        coldStorageService.deleteExpiredDays();
+
+        assertFalse(Files.exists(expiredPath));
+        assertTrue(Files.exists(retainedPath));
+        assertEquals(Map.of(), coldStorageService.sumByDevice(10L, List.of(1L), wholeDay(expired)));
+        assertEquals(Map.of(1L, 3.0), coldStorageService.sumByDevice(10L, List.of(1L), wholeDay(retained)));
+    }
+
+    @Test
+    void neverDeletesDaysInsideTheRawRetention() throws IOException {
+        ReflectionTestUtils.setField(coldStorageService, "coldRetention", Duration.ofDays(1));
+        final Path path = writeSegment(TODAY.minusDays(5));
+
+        coldStorageService.deleteExpiredDays();
+
+        assertTrue(Files.exists(path));
+    }
+
+    private Path writeSegment(LocalDate day) throws IOException {
+        final long dayStart = day.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+        final Path path = directory.resolve("usage-" + day + ".ucs");
+        try (ColdSegment.Writer writer = ColdSegment.Writer.create(path, day)) {
+            writer.append(1L, 10L, dayStart + 1_000, 1.0);
+            writer.append(1L, 10L, dayStart + 2_000, 2.0);
+            writer.append(1L, 20L, dayStart + 3_000, 7.0);
+            writer.append(2L, ColdSegment.NO_USER, dayStart + 4_000, 4.0);
+            writer.commit();
+        }
+        return path;
+    }
+
+    private static List<QuerySegment> wholeDay(LocalDate day) {
+        final Instant start = day.atStartOfDay(ZoneOffset.UTC).toInstant();
+        return List.of(new QuerySegment(StorageTier.COLD, start, start.plus(Duration.ofDays(1))));
+    }
+}
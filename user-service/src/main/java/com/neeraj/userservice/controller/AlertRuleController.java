@@ -0,0 +1,42 @@
+package com.neeraj.userservice.controller;
+
+import com.neeraj.userservice.dto.AlertRuleDTO;
+import com.neeraj.userservice.service.AlertRuleService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/v1/user/{userId}/alert-rules")
+@RequiredArgsConstructor
+public class AlertRuleController {
+    private final AlertRuleService alertRuleService;
+
+    @GetMapping
+    public ResponseEntity<List<AlertRuleDTO>> getAlertRules(@PathVariable Long userId) {
+        List<AlertRuleDTO> alertRules = alertRuleService.getAlertRules(userId);
+        return ResponseEntity.ok(alertRules);
+    }
+
+    @PostMapping
+    public ResponseEntity<AlertRuleDTO> createAlertRule(@PathVariable Long userId, @RequestBody AlertRuleDTO alertRuleDTO) {
+        AlertRuleDTO savedAlertRule = alertRuleService.createAlertRule(userId, alertRuleDTO);
+        return ResponseEntity.status(HttpStatus.CREATED).body(savedAlertRule);
+    }
+
+    @PutMapping("/{ruleId}")
+    public ResponseEntity<AlertRuleDTO> updateAlertRule(@PathVariable Long userId, @PathVariable Long ruleId,
+                                                        @RequestBody AlertRuleDTO alertRuleDTO) {
+        AlertRuleDTO updatedAlertRule = alertRuleService.updateAlertRule(userId, ruleId, alertRuleDTO);
+        return ResponseEntity.ok(updatedAlertRule);
+    }
+
+    @DeleteMapping("/{ruleId}")
+    public ResponseEntity<Void> deleteAlertRule(@PathVariable Long userId, @PathVariable Long ruleId) {
+        alertRuleService.deleteAlertRule(userId, ruleId);
+        return ResponseEntity.noContent().build();
+    }
+}
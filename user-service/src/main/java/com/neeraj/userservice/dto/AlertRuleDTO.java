@@ -0,0 +1,21 @@
+package com.neeraj.userservice.dto;
+
+import com.neeraj.userservice.model.AlertRuleScope;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class AlertRuleDTO {
+    private Long id;
+    private Long userId;
+    private AlertRuleScope scope;
+    private String target;
+    private Integer windowMinutes;
+    private Double threshold;
+    private Boolean enabled;
+}
@@ -17,4 +17,8 @@ public class UserDTO {
     private String address;
     private Boolean alertEnabled;
     private Double energyAlertThreshold;
+    private Double dailyBudget;
+    private Double monthlyBudget;
+    private String timezone;
+    private String tariffPlan;
 }
@@ -0,0 +1,40 @@
+package com.neeraj.userservice.entity;
+
+import com.neeraj.userservice.model.AlertRuleScope;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Entity
+@Table(name = "alert_rule")
+public class AlertRule {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "scope", nullable = false)
+    private AlertRuleScope scope;
+
+    // Device ID, device type or location, depending on the scope (unused for USER rules)
+    @Column(name = "target")
+    private String target;
+
+    @Column(name = "window_minutes", nullable = false)
+    private Integer windowMinutes;
+
+    @Column(name = "threshold", nullable = false)
+    private Double threshold;
+
+    @Column(name = "enabled", nullable = false, columnDefinition = "BOOLEAN DEFAULT TRUE")
+    private Boolean enabled;
+}
@@ -34,4 +34,18 @@ public class User {
 
     @Column(name = "energy_alert_threshold", nullable = false, columnDefinition = "DOUBLE DEFAULT 0.0")
     private Double energyAlertThreshold;
+
+    // Optional daily / monthly energy budgets (kWh), evaluated in the user's timezone
+    @Column(name = "daily_budget")
+    private Double dailyBudget;
+
+    @Column(name = "monthly_budget")
+    private Double monthlyBudget;
+
+    @Column(name = "timezone", nullable = false, columnDefinition = "VARCHAR(64) DEFAULT 'UTC'")
+    private String timezone;
+
+    // Time-of-use tariff plan the user is billed on (null for the default plan)
+    @Column(name = "tariff_plan")
+    private String tariffPlan;
 }
@@ -0,0 +1,7 @@
+package com.neeraj.userservice.exception;
+
+public class AlertRuleNotFoundException extends RuntimeException {
+    public AlertRuleNotFoundException(String message) {
+        super(message);
+    }
+}
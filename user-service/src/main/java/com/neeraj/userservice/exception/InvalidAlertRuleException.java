@@ -0,0 +1,7 @@
+package com.neeraj.userservice.exception;
+
+public class InvalidAlertRuleException extends RuntimeException {
+    public InvalidAlertRuleException(String message) {
+        super(message);
+    }
+}
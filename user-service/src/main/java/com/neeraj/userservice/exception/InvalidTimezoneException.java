@@ -0,0 +1,7 @@
+package com.neeraj.userservice.exception;
+
+public class InvalidTimezoneException extends RuntimeException {
+    public InvalidTimezoneException(String message) {
+        super(message);
+    }
+}
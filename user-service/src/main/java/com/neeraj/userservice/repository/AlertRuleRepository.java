@@ -0,0 +1,15 @@
+package com.neeraj.userservice.repository;
+
+import com.neeraj.userservice.entity.AlertRule;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface AlertRuleRepository extends JpaRepository<AlertRule, Long> {
+    List<AlertRule> findAllByUserId(Long userId);
+
+    Optional<AlertRule> findByIdAndUserId(Long id, Long userId);
+}
@@ -0,0 +1,116 @@
+package com.neeraj.userservice.service;
+
+import com.neeraj.userservice.dto.AlertRuleDTO;
+import com.neeraj.userservice.entity.AlertRule;
+import com.neeraj.userservice.exception.AlertRuleNotFoundException;
+import com.neeraj.userservice.exception.InvalidAlertRuleException;
+import com.neeraj.userservice.exception.UserNotFoundException;
+import com.neeraj.userservice.model.AlertRuleScope;
+import com.neeraj.userservice.repository.AlertRuleRepository;
+import com.neeraj.userservice.repository.UserRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class AlertRuleService {
+
+    // Rules are evaluated over sliding windows held in memory by usage-service
+    private static final int MAX_WINDOW_MINUTES = 24 * 60;
+
+    private final AlertRuleRepository alertRuleRepository;
+    private final UserRepository userRepository;
+
+    public List<AlertRuleDTO> getAlertRules(Long userId) {
+        return alertRuleRepository.findAllByUserId(userId).stream()
+                .map(this::toAlertRuleDTO)
+                .toList();
+    }
+
+    public AlertRuleDTO createAlertRule(Long userId, AlertRuleDTO alertRuleDTO) {
+        if (!userRepository.existsById(userId)) {
+            throw new UserNotFoundException("User not found with id: " + userId);
+        }
+        validate(alertRuleDTO);
+
+        final AlertRule alertRule = AlertRule.builder()
+                .userId(userId)
+                .scope(alertRuleDTO.getScope())
+                .target(normalizeTarget(alertRuleDTO))
+                .windowMinutes(alertRuleDTO.getWindowMinutes())
+                .threshold(alertRuleDTO.getThreshold())
+                .enabled(alertRuleDTO.getEnabled() == null || alertRuleDTO.getEnabled())
+                .build();
+
+        final AlertRule savedAlertRule = alertRuleRepository.save(alertRule);
+        return toAlertRuleDTO(savedAlertRule);
+    }
+
+    public AlertRuleDTO updateAlertRule(Long userId, Long ruleId, AlertRuleDTO alertRuleDTO) {
+        final AlertRule alertRule = alertRuleRepository.findByIdAndUserId(ruleId, userId)
+                .orElseThrow(() -> new AlertRuleNotFoundException("Alert rule not found with id: " + ruleId));
+        validate(alertRuleDTO);
+
+        alertRule.setScope(alertRuleDTO.getScope());
+        alertRule.setTarget(normalizeTarget(alertRuleDTO));
+        alertRule.setWindowMinutes(alertRuleDTO.getWindowMinutes());
+        alertRule.setThreshold(alertRuleDTO.getThreshold());
+        alertRule.setEnabled(alertRuleDTO.getEnabled() == null || alertRuleDTO.getEnabled());
+
+        final AlertRule updatedAlertRule = alertRuleRepository.save(alertRule);
+        return toAlertRuleDTO(updatedAlertRule);
+    }
+
+    public void deleteAlertRule(Long userId, Long ruleId) {
+        final AlertRule alertRule = alertRuleRepository.findByIdAndUserId(ruleId, userId)
+                .orElseThrow(() -> new AlertRuleNotFoundException("Alert rule not found with id: " + ruleId));
+
+        alertRuleRepository.delete(alertRule);
+    }
+
+    private void validate(AlertRuleDTO alertRuleDTO) {
+        if (alertRuleDTO.getScope() == null) {
+            throw new InvalidAlertRuleException("Alert rule scope is required");
+        }
+        if (alertRuleDTO.getScope() != AlertRuleScope.USER
+                && (alertRuleDTO.getTarget() == null || alertRuleDTO.getTarget().isBlank())) {
+            throw new InvalidAlertRuleException("Alert rule target is required for scope " + alertRuleDTO.getScope());
+        }
+        if (alertRuleDTO.getScope() == AlertRuleScope.DEVICE && !alertRuleDTO.getTarget().trim().matches("\\d+")) {
+            throw new InvalidAlertRuleException("Alert rule target must be a device ID for scope DEVICE");
+        }
+        if (alertRuleDTO.getWindowMinutes() == null || alertRuleDTO.getWindowMinutes() < 1
+                || alertRuleDTO.getWindowMinutes() > MAX_WINDOW_MINUTES) {
+            throw new InvalidAlertRuleException("Alert rule window must be between 1 and " + MAX_WINDOW_MINUTES + " minutes");
+        }
+        if (alertRuleDTO.getThreshold() == null || alertRuleDTO.getThreshold() <= 0) {
+            throw new InvalidAlertRuleException("Alert rule threshold must be positive");
+        }
+    }
+
+    private static String normalizeTarget(AlertRuleDTO alertRuleDTO) {
+        if (alertRuleDTO.getScope() == AlertRuleScope.USER) {
+            return null;
+        }
+
+        // Device types are matched by their enum name
+        final String target = alertRuleDTO.getTarget().trim();
+        return alertRuleDTO.getScope() == AlertRuleScope.DEVICE_TYPE ? target.toUpperCase() : target;
+    }
+
+    private AlertRuleDTO toAlertRuleDTO(AlertRule alertRule) {
+        return AlertRuleDTO.builder()
+                .id(alertRule.getId())
+                .userId(alertRule.getUserId())
+                .scope(alertRule.getScope())
+                .target(alertRule.getTarget())
+                .windowMinutes(alertRule.getWindowMinutes())
+                .threshold(alertRule.getThreshold())
+                .enabled(alertRule.getEnabled())
+                .build();
+    }
+}
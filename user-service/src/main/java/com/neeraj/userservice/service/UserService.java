@@ -3,12 +3,16 @@ package com.neeraj.userservice.service;
 import com.neeraj.userservice.dto.UserDTO;
 import com.neeraj.userservice.entity.User;
 import com.neeraj.userservice.exception.EmailAlreadyExistsException;
+import com.neeraj.userservice.exception.InvalidTimezoneException;
 import com.neeraj.userservice.exception.UserNotFoundException;
 import com.neeraj.userservice.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
+import java.time.DateTimeException;
+import java.time.ZoneId;
+
 @Service
 @Slf4j
 @RequiredArgsConstructor
@@ -28,6 +32,10 @@ public class UserService {
                 .address(userDTO.getAddress())
                 .alertEnabled(userDTO.getAlertEnabled())
                 .energyAlertThreshold(userDTO.getEnergyAlertThreshold())
+                .dailyBudget(userDTO.getDailyBudget())
+                .monthlyBudget(userDTO.getMonthlyBudget())
+                .timezone(normalizeTimezone(userDTO.getTimezone()))
+                .tariffPlan(normalizeTariffPlan(userDTO.getTariffPlan()))
                 .build();
 
         final User savedUser = userRepository.save(createdUser);
@@ -43,9 +51,36 @@ public class UserService {
                 .address(savedUser.getAddress())
                 .alertEnabled(savedUser.getAlertEnabled())
                 .energyAlertThreshold(savedUser.getEnergyAlertThreshold())
+                .dailyBudget(savedUser.getDailyBudget())
+                .monthlyBudget(savedUser.getMonthlyBudget())
+                .timezone(savedUser.getTimezone())
+                .tariffPlan(savedUser.getTariffPlan())
                 .build();
     }
 
+    /**
+     * Validates a timezone ID (e.g. "Europe/Berlin"), defaulting to UTC when none is given.
+     * Budget periods are evaluated in this timezone.
+     */
+    private String normalizeTimezone(String timezone) {
+        if (timezone == null || timezone.isBlank()) {
+            return "UTC";
+        }
+
+        try {
+            return ZoneId.of(timezone.trim()).getId();
+        } catch (DateTimeException e) {
+            throw new InvalidTimezoneException("Invalid timezone: " + timezone);
+        }
+    }
+
+    /**
+     * Tariff plans are defined by usage-service; blank names select its default plan.
+     */
+    private String normalizeTariffPlan(String tariffPlan) {
+        return tariffPlan == null || tariffPlan.isBlank() ? null : tariffPlan.trim();
+    }
+
     public UserDTO getUser(Long id) {
         final User user = userRepository.findById(id)
                 .orElseThrow(() -> new UserNotFoundException("User not found with id: " + id));
@@ -63,6 +98,10 @@ public class UserService {
         user.setAddress(userDTO.getAddress());
         user.setAlertEnabled(userDTO.getAlertEnabled());
         user.setEnergyAlertThreshold(userDTO.getEnergyAlertThreshold());
+        user.setDailyBudget(userDTO.getDailyBudget());
+        user.setMonthlyBudget(userDTO.getMonthlyBudget());
+        user.setTimezone(normalizeTimezone(userDTO.getTimezone()));
+        user.setTariffPlan(normalizeTariffPlan(userDTO.getTariffPlan()));
 
         final User updatedUser = userRepository.save(user);
         return toUserDTO(updatedUser);
@@ -0,0 +1,4 @@
+-- Digests are kept per user and alert message, so alerts of different kinds are never mixed in one row
+ALTER TABLE `alert`
+    ADD COLUMN `message` VARCHAR(255) NULL,
+    ADD INDEX `idx_alert_user_id_message_window_end` (`user_id`, `message`, `window_end`);
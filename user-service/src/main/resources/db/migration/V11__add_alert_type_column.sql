@@ -0,0 +1,3 @@
+-- Kind of the alerts in a digest (threshold, budget, rule, anomaly, forecast), which decides the email's wording
+ALTER TABLE `alert`
+    ADD COLUMN `alert_type` VARCHAR(16) NULL;
@@ -0,0 +1,4 @@
+ALTER TABLE `user`
+    ADD COLUMN `daily_budget` DOUBLE NULL,
+    ADD COLUMN `monthly_budget` DOUBLE NULL,
+    ADD COLUMN `timezone` VARCHAR(64) NOT NULL DEFAULT 'UTC';
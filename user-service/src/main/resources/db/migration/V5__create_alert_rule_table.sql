@@ -0,0 +1,11 @@
+CREATE TABLE  IF NOT EXISTS `alert_rule` (
+    `id` BIGINT AUTO_INCREMENT PRIMARY KEY,
+    `user_id` BIGINT NOT NULL,
+    `scope` VARCHAR(32) NOT NULL,
+    `target` VARCHAR(255),
+    `window_minutes` INT NOT NULL,
+    `threshold` DOUBLE NOT NULL,
+    `enabled` BOOLEAN NOT NULL DEFAULT TRUE,
+    FOREIGN KEY (`user_id`) REFERENCES `user` (`id`) ON DELETE CASCADE,
+    INDEX `idx_alert_rule_user_id` (`user_id`)
+);
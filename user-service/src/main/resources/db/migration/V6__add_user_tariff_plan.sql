@@ -0,0 +1,2 @@
+ALTER TABLE `user`
+    ADD COLUMN `tariff_plan` VARCHAR(64) NULL;
@@ -0,0 +1,8 @@
+CREATE TABLE IF NOT EXISTS `id_generator` (
+    `name` VARCHAR(64) PRIMARY KEY,
+    `next_val` BIGINT NOT NULL
+);
+
+-- alert-service allocates alert IDs in blocks of 100 from here, so inserts can be batched; start above the existing IDs
+INSERT INTO `id_generator` (`name`, `next_val`)
+SELECT 'alert', COALESCE(MAX(`id`), 0) + 101 FROM `alert`;
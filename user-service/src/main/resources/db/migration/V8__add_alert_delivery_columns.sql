@@ -0,0 +1,12 @@
+ALTER TABLE `alert`
+    ADD COLUMN `status` VARCHAR(16) NOT NULL DEFAULT 'SENT',
+    ADD COLUMN `email` VARCHAR(255) NULL,
+    ADD COLUMN `subject` VARCHAR(255) NULL,
+    ADD COLUMN `body` TEXT NULL,
+    ADD COLUMN `attempts` INT NOT NULL DEFAULT 0,
+    ADD COLUMN `next_attempt_at` TIMESTAMP NULL,
+    ADD INDEX `idx_alert_status_next_attempt_at` (`status`, `next_attempt_at`);
+
+-- Alerts recorded before delivery was asynchronous were attempted exactly once
+UPDATE `alert` SET `status` = 'FAILED', `attempts` = 1 WHERE `sent` = FALSE;
+UPDATE `alert` SET `attempts` = 1 WHERE `sent` = TRUE;
@@ -0,0 +1,8 @@
+ALTER TABLE `alert`
+    ADD COLUMN `alert_count` INT NOT NULL DEFAULT 1,
+    ADD COLUMN `peak_usage` DOUBLE NULL,
+    ADD COLUMN `threshold` DOUBLE NULL,
+    ADD COLUMN `window_start` TIMESTAMP NULL,
+    ADD COLUMN `window_end` TIMESTAMP NULL,
+    ADD COLUMN `version` BIGINT NOT NULL DEFAULT 0,
+    ADD INDEX `idx_alert_user_id_window_end` (`user_id`, `window_end`);